@@ -1,10 +1,15 @@
 package org.blackcat.trunk.conf;
 
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.blackcat.trunk.conf.exceptions.ConfigurationException;
+import org.blackcat.trunk.streams.throttle.BandwidthLimits;
 import org.blackcat.trunk.util.Utils;
 
 import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,18 +30,26 @@ final public class Configuration {
     private boolean useSSL;
     private String keystoreFilename;
     private String keystorePassword;
+    private Set<String> admins;
 
     /* database section */
     private String dbType;
     private String dbHost;
     private int dbPort;
     private String dbName;
+    private int dbCacheSize;
+    private long dbCacheTTL;
+    private boolean shareInheritance;
+    private int shareRewriteBatchSize;
+    private int shareRewriteConcurrency;
 
     /* oauth2 section */
 
     private String oauth2Provider;
     private String oauth2ClientID;
     private String oauth2ClientSecret;
+    private String oauth2UserInfoSource;
+    private long oauth2UserInfoCacheTTL;
 
     /* keycloak only */
     private String oauth2AuthServerURL;
@@ -45,6 +58,18 @@ final public class Configuration {
 
     /* storage section */
     private String storageRoot;
+    private long storageCacheSize;
+    private int storageArchiveWorkers;
+    private int storageArchiveChunkSize;
+    private int storageArchiveCompressionLevel;
+    private long storageUploadExpiry;
+    private boolean storageDeduplicate;
+    private long storageUserQuota;
+    private long storageUsageReconcileInterval;
+    private int storageDeleteRate;
+
+    /* bandwidth section */
+    private BandwidthLimits bandwidthLimits;
 
     public String getDomain() {
         return domain;
@@ -74,6 +99,10 @@ final public class Configuration {
         return startTimeout;
     }
 
+    public boolean isAdmin(String email) {
+        return email != null && admins.contains(email);
+    }
+
     void parseServerSection(JsonObject jsonObject) {
         JsonObject serverSection = jsonObject.getJsonObject(SERVER_SECTION, new JsonObject());
 
@@ -90,6 +119,14 @@ final public class Configuration {
         if (domain == null) {
             domain = String.format("%s://%s:%d", useSSL ? "https" : "http", httpHost, httpPort);
         }
+
+        Set<String> admins = new HashSet<>();
+        for (Object admin : serverSection.getJsonArray(SERVER_ADMINS, new JsonArray())) {
+            if (! (admin instanceof String))
+                throw new ConfigurationException(MessageFormat.format("Invalid admin: {0}", admin));
+            admins.add((String) admin);
+        }
+        this.admins = Collections.unmodifiableSet(admins);
     }
 
     public String getOauth2Provider() {
@@ -104,6 +141,14 @@ final public class Configuration {
         return oauth2ClientSecret;
     }
 
+    public String getOauth2UserInfoSource() {
+        return oauth2UserInfoSource;
+    }
+
+    public long getOauth2UserInfoCacheTTL() {
+        return oauth2UserInfoCacheTTL;
+    }
+
     public String getOauth2AuthServerURL() {
         return oauth2AuthServerURL;
     }
@@ -132,10 +177,70 @@ final public class Configuration {
         return dbName;
     }
 
+    public int getDatabaseCacheSize() {
+        return dbCacheSize;
+    }
+
+    public long getDatabaseCacheTTL() {
+        return dbCacheTTL;
+    }
+
+    public boolean isShareInheritanceEnabled() {
+        return shareInheritance;
+    }
+
+    public int getShareRewriteBatchSize() {
+        return shareRewriteBatchSize;
+    }
+
+    public int getShareRewriteConcurrency() {
+        return shareRewriteConcurrency;
+    }
+
     public String getStorageRoot() {
         return storageRoot;
     }
 
+    public long getStorageCacheSize() {
+        return storageCacheSize;
+    }
+
+    public int getStorageArchiveWorkers() {
+        return storageArchiveWorkers;
+    }
+
+    public int getStorageArchiveChunkSize() {
+        return storageArchiveChunkSize;
+    }
+
+    public int getStorageArchiveCompressionLevel() {
+        return storageArchiveCompressionLevel;
+    }
+
+    public long getStorageUploadExpiry() {
+        return storageUploadExpiry;
+    }
+
+    public boolean isStorageDeduplicationEnabled() {
+        return storageDeduplicate;
+    }
+
+    public long getStorageUserQuota() {
+        return storageUserQuota;
+    }
+
+    public long getStorageUsageReconcileInterval() {
+        return storageUsageReconcileInterval;
+    }
+
+    public int getStorageDeleteRate() {
+        return storageDeleteRate;
+    }
+
+    public BandwidthLimits getBandwidthLimits() {
+        return bandwidthLimits;
+    }
+
     void parseDatabaseSection(JsonObject jsonObject) {
         JsonObject databaseSection = jsonObject.getJsonObject(DATABASE_SECTION, new JsonObject());
 
@@ -150,6 +255,34 @@ final public class Configuration {
         this.dbHost = databaseSection.getString(DATABASE_HOST, DEFAULT_DATABASE_HOST);
         this.dbPort = databaseSection.getInteger(DATABASE_PORT, DEFAULT_DATABASE_PORT);
         this.dbName = databaseSection.getString(DATABASE_NAME, DEFAULT_DATABASE_NAME);
+
+        this.dbCacheSize = databaseSection.getInteger(DATABASE_CACHE_SIZE, DEFAULT_DATABASE_CACHE_SIZE);
+        if (dbCacheSize < 0) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Invalid database cache size: {0}", dbCacheSize));
+        }
+
+        this.dbCacheTTL = databaseSection.getLong(DATABASE_CACHE_TTL, DEFAULT_DATABASE_CACHE_TTL);
+        if (dbCacheTTL < 0) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Invalid database cache TTL: {0}", dbCacheTTL));
+        }
+
+        this.shareInheritance = databaseSection.getBoolean(DATABASE_SHARE_INHERITANCE, DEFAULT_DATABASE_SHARE_INHERITANCE);
+
+        this.shareRewriteBatchSize = databaseSection.getInteger(DATABASE_SHARE_REWRITE_BATCH_SIZE,
+            DEFAULT_DATABASE_SHARE_REWRITE_BATCH_SIZE);
+        if (shareRewriteBatchSize <= 0) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Invalid share rewrite batch size: {0}", shareRewriteBatchSize));
+        }
+
+        this.shareRewriteConcurrency = databaseSection.getInteger(DATABASE_SHARE_REWRITE_CONCURRENCY,
+            DEFAULT_DATABASE_SHARE_REWRITE_CONCURRENCY);
+        if (shareRewriteConcurrency <= 0) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Invalid share rewrite concurrency: {0}", shareRewriteConcurrency));
+        }
     }
 
     void parseOAuth2Section(JsonObject jsonObject) {
@@ -182,6 +315,26 @@ final public class Configuration {
         } else if (oauth2Provider.equals(OAUTH2_PROVIDER_KEYCLOAK)) {
             validateKeyCloakOauth2Settings(oauth2Section);
         }
+
+        parseOAuth2UserInfoSettings(oauth2Section);
+    }
+
+    private void parseOAuth2UserInfoSettings(JsonObject oauth2Section) {
+        this.oauth2UserInfoSource = oauth2Section.getString(OAUTH2_USER_INFO_SOURCE, DEFAULT_OAUTH2_USER_INFO_SOURCE);
+        if (oauth2UserInfoSource.equals(OAUTH2_USER_INFO_SOURCE_JWT)) {
+            /* claims can be trusted only if the token signature can be verified locally */
+            if (! oauth2Provider.equals(OAUTH2_PROVIDER_KEYCLOAK) || oauth2AuthServerPublicKey == null)
+                throw new ConfigurationException("Reading user info from token claims requires a keycloak realm public key");
+        } else if (! oauth2UserInfoSource.equals(OAUTH2_USER_INFO_SOURCE_ENDPOINT)) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Unsupported user info source: {0}", oauth2UserInfoSource));
+        }
+
+        this.oauth2UserInfoCacheTTL = oauth2Section.getLong(OAUTH2_USER_INFO_CACHE_TTL, DEFAULT_OAUTH2_USER_INFO_CACHE_TTL);
+        if (oauth2UserInfoCacheTTL < 0) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Invalid user info cache TTL: {0}", oauth2UserInfoCacheTTL));
+        }
     }
 
     private void validateGoogleOauth2Settings(JsonObject oauth2Section) {
@@ -255,6 +408,68 @@ final public class Configuration {
     void parseStorageSection(JsonObject jsonObject) {
         JsonObject storageSection = jsonObject.getJsonObject(STORAGE_SECTION, new JsonObject());
         this.storageRoot = storageSection.getString(STORAGE_ROOT, DEFAULT_STORAGE_ROOT);
+
+        this.storageCacheSize = storageSection.getLong(STORAGE_CACHE_SIZE, DEFAULT_STORAGE_CACHE_SIZE);
+        if (storageCacheSize < 0) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Invalid storage cache size: {0}", storageCacheSize));
+        }
+
+        this.storageArchiveWorkers = storageSection.getInteger(STORAGE_ARCHIVE_WORKERS, DEFAULT_STORAGE_ARCHIVE_WORKERS);
+        if (storageArchiveWorkers <= 0) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Invalid number of archive workers: {0}", storageArchiveWorkers));
+        }
+
+        this.storageArchiveChunkSize = storageSection.getInteger(STORAGE_ARCHIVE_CHUNK_SIZE, DEFAULT_STORAGE_ARCHIVE_CHUNK_SIZE);
+        if (storageArchiveChunkSize < 512) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Invalid archive chunk size: {0}", storageArchiveChunkSize));
+        }
+
+        this.storageArchiveCompressionLevel = storageSection.getInteger(STORAGE_ARCHIVE_COMPRESSION_LEVEL,
+            DEFAULT_STORAGE_ARCHIVE_COMPRESSION_LEVEL);
+        if (storageArchiveCompressionLevel < 1 || storageArchiveCompressionLevel > 9) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Invalid archive compression level: {0}", storageArchiveCompressionLevel));
+        }
+
+        this.storageUploadExpiry = storageSection.getLong(STORAGE_UPLOAD_EXPIRY, DEFAULT_STORAGE_UPLOAD_EXPIRY);
+        if (storageUploadExpiry <= 0) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Invalid upload expiry: {0}", storageUploadExpiry));
+        }
+
+        this.storageDeduplicate = storageSection.getBoolean(STORAGE_DEDUPLICATE, DEFAULT_STORAGE_DEDUPLICATE);
+
+        this.storageUserQuota = storageSection.getLong(STORAGE_USER_QUOTA, DEFAULT_STORAGE_USER_QUOTA);
+        if (storageUserQuota < 0) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Invalid user quota: {0}", storageUserQuota));
+        }
+
+        this.storageUsageReconcileInterval = storageSection.getLong(STORAGE_USAGE_RECONCILE_INTERVAL,
+            DEFAULT_STORAGE_USAGE_RECONCILE_INTERVAL);
+        if (storageUsageReconcileInterval <= 0) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Invalid usage reconcile interval: {0}", storageUsageReconcileInterval));
+        }
+
+        this.storageDeleteRate = storageSection.getInteger(STORAGE_DELETE_RATE, DEFAULT_STORAGE_DELETE_RATE);
+        if (storageDeleteRate <= 0) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Invalid delete rate: {0}", storageDeleteRate));
+        }
+    }
+
+    void parseBandwidthSection(JsonObject jsonObject) {
+        JsonObject bandwidthSection = jsonObject.getJsonObject(BANDWIDTH_SECTION, new JsonObject());
+        try {
+            this.bandwidthLimits = BandwidthLimits.fromJson(bandwidthSection);
+        } catch (IllegalArgumentException | ClassCastException e) {
+            throw new ConfigurationException(MessageFormat.format(
+                "Invalid bandwidth settings: {0}", e.getMessage()));
+        }
     }
 
     public Configuration(JsonObject jsonObject) {
@@ -262,6 +477,7 @@ final public class Configuration {
         parseDatabaseSection(jsonObject);
         parseOAuth2Section(jsonObject);
         parseStorageSection(jsonObject);
+        parseBandwidthSection(jsonObject);
     }
 
     @Override
@@ -278,15 +494,34 @@ final public class Configuration {
             sb.append(String.format(",keystorePassword=<hidden>"));
         }
 
+        sb.append(String.format(",admins=%s", admins));
+
         sb.append(String.format(",storageRoot='%s'", storageRoot));
+        sb.append(String.format(",storageCacheSize=%d", storageCacheSize));
+        sb.append(String.format(",storageArchiveWorkers=%d", storageArchiveWorkers));
+        sb.append(String.format(",storageArchiveChunkSize=%d", storageArchiveChunkSize));
+        sb.append(String.format(",storageArchiveCompressionLevel=%d", storageArchiveCompressionLevel));
+        sb.append(String.format(",storageUploadExpiry=%d", storageUploadExpiry));
+        sb.append(String.format(",storageDeduplicate=%s", storageDeduplicate));
+        sb.append(String.format(",storageUserQuota=%d", storageUserQuota));
+        sb.append(String.format(",storageUsageReconcileInterval=%d", storageUsageReconcileInterval));
+        sb.append(String.format(",storageDeleteRate=%d", storageDeleteRate));
+        sb.append(String.format(",bandwidthLimits=%s", bandwidthLimits));
         sb.append(String.format(",dbType='%s'", dbType));
         sb.append(String.format(",dbHost='%s'", dbHost));
         sb.append(String.format(",dbPort=%d", dbPort));
         sb.append(String.format(",dbName='%s'", dbName));
+        sb.append(String.format(",dbCacheSize=%d", dbCacheSize));
+        sb.append(String.format(",dbCacheTTL=%d", dbCacheTTL));
+        sb.append(String.format(",shareInheritance=%s", shareInheritance));
+        sb.append(String.format(",shareRewriteBatchSize=%d", shareRewriteBatchSize));
+        sb.append(String.format(",shareRewriteConcurrency=%d", shareRewriteConcurrency));
 
         sb.append(String.format(",oauth2Provider='%s'", oauth2Provider));
         sb.append(String.format(",oauth2ClientID='%s'", oauth2ClientID));
         sb.append(String.format(",oauth2ClientSecret='%s'", oauth2ClientSecret));
+        sb.append(String.format(",oauth2UserInfoSource='%s'", oauth2UserInfoSource));
+        sb.append(String.format(",oauth2UserInfoCacheTTL=%d", oauth2UserInfoCacheTTL));
 
         if (oauth2Provider.equals("keycloak")) {
             sb.append(String.format(",keyCloakServerURL='%s'", oauth2AuthServerRealm));
@@ -23,11 +23,63 @@ final public class Keys {
     public static final String SERVER_START_TIMEOUT = "timeout";
     public static final int DEFAULT_SERVER_START_TIMEOUT = 30;
 
+    /* emails of the users allowed on /admin endpoints (none by default) */
+    public static final String SERVER_ADMINS = "admins";
+
     /* STORAGE */
     public static final String STORAGE_SECTION = "storage";
     public static final String STORAGE_ROOT = "root";
     public static final String DEFAULT_STORAGE_ROOT = "/var/lib/trunk";
 
+    public static final String STORAGE_CACHE_SIZE = "cacheSize";
+    public static final long DEFAULT_STORAGE_CACHE_SIZE = 100000;
+
+    /* archives are produced on a dedicated pool of this many threads ... */
+    public static final String STORAGE_ARCHIVE_WORKERS = "archiveWorkers";
+    public static final int DEFAULT_STORAGE_ARCHIVE_WORKERS = 4;
+
+    /* ... in chunks of at most this many bytes (starting at 8 KB, growing while the client keeps up) */
+    public static final String STORAGE_ARCHIVE_CHUNK_SIZE = "archiveChunkSize";
+    public static final int DEFAULT_STORAGE_ARCHIVE_CHUNK_SIZE = 1048576;
+
+    /* deflate level of compressed archives (1, fastest, to 9, smallest) */
+    public static final String STORAGE_ARCHIVE_COMPRESSION_LEVEL = "archiveCompressionLevel";
+    public static final int DEFAULT_STORAGE_ARCHIVE_COMPRESSION_LEVEL = 6;
+
+    /* resumable uploads not updated for this long (seconds) are dropped */
+    public static final String STORAGE_UPLOAD_EXPIRY = "uploadExpiry";
+    public static final long DEFAULT_STORAGE_UPLOAD_EXPIRY = 86400;
+
+    /* documents are stored once per content, under its SHA-256 (requires hard links) */
+    public static final String STORAGE_DEDUPLICATE = "deduplicate";
+    public static final boolean DEFAULT_STORAGE_DEDUPLICATE = false;
+
+    /* bytes each user may store (0 means unlimited) ... */
+    public static final String STORAGE_USER_QUOTA = "userQuota";
+    public static final long DEFAULT_STORAGE_USER_QUOTA = 0;
+
+    /* ... as accounted incrementally, and recomputed from scratch this often (seconds) */
+    public static final String STORAGE_USAGE_RECONCILE_INTERVAL = "usageReconcileInterval";
+    public static final long DEFAULT_STORAGE_USAGE_RECONCILE_INTERVAL = 86400;
+
+    /* deleted collections are removed in the background, at most this many entries per second */
+    public static final String STORAGE_DELETE_RATE = "deleteRate";
+    public static final int DEFAULT_STORAGE_DELETE_RATE = 1000;
+
+    /* BANDWIDTH (bytes per second, 0 means unlimited) */
+    public static final String BANDWIDTH_SECTION = "bandwidth";
+    public static final String BANDWIDTH_GLOBAL_LIMIT = "globalLimit";
+    public static final long DEFAULT_BANDWIDTH_GLOBAL_LIMIT = 0;
+
+    public static final String BANDWIDTH_USER_LIMIT = "userLimit";
+    public static final long DEFAULT_BANDWIDTH_USER_LIMIT = 0;
+
+    /* by route, i.e. method and first path segment, e.g. { "GET /protected": 1048576 } */
+    public static final String BANDWIDTH_ROUTE_LIMITS = "routeLimits";
+
+    /* relative shares of users' transfers (1 if missing), e.g. { "joe@example.com": 4 } */
+    public static final String BANDWIDTH_USER_WEIGHTS = "userWeights";
+
     /* DATABASE */
     public static final String DATABASE_SECTION = "database";
 
@@ -43,6 +95,26 @@ final public class Keys {
     public static final String DATABASE_NAME = "name";
     public static final String DEFAULT_DATABASE_NAME = "data";
 
+    /* user and share lookups cache, 0 disables caching */
+    public static final String DATABASE_CACHE_SIZE = "cacheSize";
+    public static final int DEFAULT_DATABASE_CACHE_SIZE = 10000;
+
+    /* seconds */
+    public static final String DATABASE_CACHE_TTL = "cacheTTL";
+    public static final long DEFAULT_DATABASE_CACHE_TTL = 60;
+
+    /* shares are stored where they are set and inherited by descendants, or stored per path */
+    public static final String DATABASE_SHARE_INHERITANCE = "shareInheritance";
+    public static final boolean DEFAULT_DATABASE_SHARE_INHERITANCE = true;
+
+    /* per path shares are rewritten in batches of this many entities ... */
+    public static final String DATABASE_SHARE_REWRITE_BATCH_SIZE = "shareRewriteBatchSize";
+    public static final int DEFAULT_DATABASE_SHARE_REWRITE_BATCH_SIZE = 500;
+
+    /* ... with at most this many batches in flight */
+    public static final String DATABASE_SHARE_REWRITE_CONCURRENCY = "shareRewriteConcurrency";
+    public static final int DEFAULT_DATABASE_SHARE_REWRITE_CONCURRENCY = 4;
+
     /* OAUTH2 */
     public static final String OAUTH2_SECTION = "oauth2";
 
@@ -52,6 +124,16 @@ final public class Keys {
     public static final String OAUTH2_CLIENT_ID = "clientID";
     public static final String OAUTH2_CLIENT_SECRET = "clientSecret";
 
+    /* where the user email comes from: the provider's userinfo endpoint, or the (locally verified) token claims */
+    public static final String OAUTH2_USER_INFO_SOURCE = "userInfoSource";
+    public static final String OAUTH2_USER_INFO_SOURCE_ENDPOINT = "endpoint";
+    public static final String OAUTH2_USER_INFO_SOURCE_JWT = "jwt";
+    public static final String DEFAULT_OAUTH2_USER_INFO_SOURCE = OAUTH2_USER_INFO_SOURCE_ENDPOINT;
+
+    /* seconds, 0 disables caching */
+    public static final String OAUTH2_USER_INFO_CACHE_TTL = "userInfoCacheTTL";
+    public static final long DEFAULT_OAUTH2_USER_INFO_CACHE_TTL = 300;
+
     /* reserved for keycloak oauth2 */
     public static final String OAUTH2_KEYCLOAK_SECTION = "keycloak";
     public static final String OAUTH2_KEYCLOAK_AUTH_SERVER_URL = "URL";
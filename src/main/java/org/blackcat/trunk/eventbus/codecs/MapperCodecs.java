@@ -0,0 +1,50 @@
+package org.blackcat.trunk.eventbus.codecs;
+
+import io.vertx.core.Vertx;
+import org.blackcat.trunk.mappers.ShareMapper;
+import org.blackcat.trunk.mappers.UserMapper;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Data store replies travel as mapper instances rather than JSON.
+ *
+ * Mappers are mutable entities, so within the JVM the receiver gets a copy of the
+ * instance sent (a few strings, far cheaper than a round trip through JSON): neither
+ * side sees what the other does to its instance afterwards.
+ */
+final public class MapperCodecs {
+
+    /* codecs can be registered only once per event bus */
+    static final private Set<Vertx> registered = ConcurrentHashMap.newKeySet();
+
+    private MapperCodecs() {
+    }
+
+    /**
+     * @param reply a data store reply
+     * @return a copy of reply if it is a mapper, reply itself otherwise
+     */
+    static public Object copyOf(Object reply) {
+        if (reply instanceof UserMapper)
+            return UserMapperCodec.copyOf((UserMapper) reply);
+        if (reply instanceof ShareMapper)
+            return ShareMapperCodec.copyOf((ShareMapper) reply);
+        return reply;
+    }
+
+    /**
+     * Registers mapper codecs as default codecs on the event bus of vertx. Subsequent calls
+     * have no effect.
+     *
+     * @param vertx
+     */
+    static public synchronized void register(Vertx vertx) {
+        if (registered.add(vertx)) {
+            vertx.eventBus()
+                .registerDefaultCodec(UserMapper.class, new UserMapperCodec())
+                .registerDefaultCodec(ShareMapper.class, new ShareMapperCodec());
+        }
+    }
+}
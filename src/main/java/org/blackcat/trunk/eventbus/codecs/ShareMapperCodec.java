@@ -0,0 +1,89 @@
+package org.blackcat.trunk.eventbus.codecs;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import org.blackcat.trunk.mappers.ShareMapper;
+import org.blackcat.trunk.mappers.UserMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.blackcat.trunk.eventbus.codecs.WireFormat.readString;
+import static org.blackcat.trunk.eventbus.codecs.WireFormat.writeString;
+
+/**
+ * Passes {@link ShareMapper} instances as copies within the JVM, in a compact binary
+ * form across the cluster.
+ */
+final public class ShareMapperCodec implements MessageCodec<ShareMapper, ShareMapper> {
+
+    public static final String NAME = "share-mapper";
+
+    @Override
+    public void encodeToWire(Buffer buffer, ShareMapper shareMapper) {
+        writeString(buffer, shareMapper.getId());
+        writeString(buffer, shareMapper.getCollectionPath());
+
+        UserMapper owner = shareMapper.getOwner();
+        buffer.appendByte((byte) (owner != null ? 1 : 0));
+        if (owner != null)
+            new UserMapperCodec().encodeToWire(buffer, owner);
+
+        List<String> authorizedUsers = shareMapper.getAuthorizedUsers();
+        buffer.appendInt(authorizedUsers.size());
+        for (String authorizedUser : authorizedUsers)
+            writeString(buffer, authorizedUser);
+    }
+
+    @Override
+    public ShareMapper decodeFromWire(int pos, Buffer buffer) {
+        int[] position = { pos };
+
+        ShareMapper shareMapper = new ShareMapper();
+        shareMapper.setId(readString(buffer, position));
+        shareMapper.setCollectionPath(readString(buffer, position));
+
+        byte hasOwner = buffer.getByte(position[0] ++);
+        if (hasOwner != 0)
+            shareMapper.setOwner(UserMapperCodec.read(buffer, position));
+
+        int count = buffer.getInt(position[0]);
+        position[0] += 4;
+
+        List<String> authorizedUsers = new ArrayList<>(count);
+        for (int i = 0; i < count; ++ i)
+            authorizedUsers.add(readString(buffer, position));
+        shareMapper.setAuthorizedUsers(authorizedUsers);
+
+        return shareMapper;
+    }
+
+    @Override
+    public ShareMapper transform(ShareMapper shareMapper) {
+        return copyOf(shareMapper);
+    }
+
+    /**
+     * @param shareMapper
+     * @return a copy of shareMapper, its owner included
+     */
+    public static ShareMapper copyOf(ShareMapper shareMapper) {
+        ShareMapper copy = new ShareMapper();
+        copy.setId(shareMapper.getId());
+        copy.setCollectionPath(shareMapper.getCollectionPath());
+        if (shareMapper.getOwner() != null)
+            copy.setOwner(UserMapperCodec.copyOf(shareMapper.getOwner()));
+        copy.setAuthorizedUsers(shareMapper.getAuthorizedUsers());
+        return copy;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
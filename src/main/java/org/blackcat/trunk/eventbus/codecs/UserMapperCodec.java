@@ -0,0 +1,86 @@
+package org.blackcat.trunk.eventbus.codecs;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.JsonObject;
+import org.blackcat.trunk.mappers.UserMapper;
+
+import static org.blackcat.trunk.eventbus.codecs.WireFormat.readString;
+import static org.blackcat.trunk.eventbus.codecs.WireFormat.writeString;
+
+/**
+ * Passes {@link UserMapper} instances as copies within the JVM, in a compact binary
+ * form across the cluster.
+ */
+final public class UserMapperCodec implements MessageCodec<UserMapper, UserMapper> {
+
+    public static final String NAME = "user-mapper";
+
+    @Override
+    public void encodeToWire(Buffer buffer, UserMapper userMapper) {
+        writeString(buffer, userMapper.getId());
+        writeString(buffer, userMapper.getEmail());
+        writeString(buffer, userMapper.getUuid());
+    }
+
+    @Override
+    public UserMapper decodeFromWire(int pos, Buffer buffer) {
+        return read(buffer, new int[] { pos });
+    }
+
+    @Override
+    public UserMapper transform(UserMapper userMapper) {
+        return copyOf(userMapper);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+
+    static UserMapper read(Buffer buffer, int[] pos) {
+        UserMapper userMapper = new UserMapper();
+        userMapper.setId(readString(buffer, pos));
+        userMapper.setEmail(readString(buffer, pos));
+        userMapper.setUuid(readString(buffer, pos));
+        return userMapper;
+    }
+
+    /**
+     * @param userMapper
+     * @return a copy of userMapper, mappers are mutable
+     */
+    public static UserMapper copyOf(UserMapper userMapper) {
+        UserMapper copy = new UserMapper();
+        copy.setId(userMapper.getId());
+        copy.setEmail(userMapper.getEmail());
+        copy.setUuid(userMapper.getUuid());
+        return copy;
+    }
+
+    /**
+     * Query parameters are JSON, this is how a user travels within them.
+     *
+     * @param userMapper
+     * @return
+     */
+    public static JsonObject toJson(UserMapper userMapper) {
+        return new JsonObject()
+                   .put("id", userMapper.getId())
+                   .put("email", userMapper.getEmail())
+                   .put("uuid", userMapper.getUuid());
+    }
+
+    public static UserMapper fromJson(JsonObject json) {
+        UserMapper userMapper = new UserMapper();
+        userMapper.setId(json.getString("id"));
+        userMapper.setEmail(json.getString("email"));
+        userMapper.setUuid(json.getString("uuid"));
+        return userMapper;
+    }
+}
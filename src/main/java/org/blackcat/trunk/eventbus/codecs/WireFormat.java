@@ -0,0 +1,40 @@
+package org.blackcat.trunk.eventbus.codecs;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.nio.charset.StandardCharsets;
+
+/* length prefixed UTF-8 strings, -1 stands for null */
+final class WireFormat {
+
+    private WireFormat() {
+    }
+
+    static void writeString(Buffer buffer, String s) {
+        if (s == null) {
+            buffer.appendInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            buffer.appendInt(bytes.length);
+            buffer.appendBytes(bytes);
+        }
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}.
+     *
+     * @param buffer
+     * @param pos the position of the string, updated to point past it
+     * @return
+     */
+    static String readString(Buffer buffer, int[] pos) {
+        int length = buffer.getInt(pos[0]);
+        pos[0] += 4;
+        if (length < 0)
+            return null;
+
+        String s = buffer.getString(pos[0], pos[0] + length, StandardCharsets.UTF_8.name());
+        pos[0] += length;
+        return s;
+    }
+}
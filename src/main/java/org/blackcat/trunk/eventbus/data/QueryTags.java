@@ -9,4 +9,7 @@ public final class QueryTags {
 
     /** Updates an existing share. If requested share entity does not exist, a new one is created and persisted. */
     static final String QRY_UPDATE_SHARE = "find-update-share";
+
+    /** Updates (or creates) the share entities of many paths at once, with the same owner and authorized users. */
+    static final String QRY_BULK_UPDATE_SHARES = "bulk-update-shares";
 }
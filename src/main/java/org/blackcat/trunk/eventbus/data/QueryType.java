@@ -8,6 +8,7 @@ public enum QueryType {
 
     /* share queries */
     FIND_UPDATE_SHARE(QRY_UPDATE_SHARE),
+    BULK_UPDATE_SHARES(QRY_BULK_UPDATE_SHARES),
     FIND_SHARE(QRY_FIND_SHARE);
 
     private final String tag;
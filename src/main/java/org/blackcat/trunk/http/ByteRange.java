@@ -0,0 +1,122 @@
+package org.blackcat.trunk.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A satisfiable byte range (RFC 7233), both ends inclusive.
+ */
+final public class ByteRange {
+
+    /** Requests asking for more ranges than this are served in full */
+    public static final int MAX_RANGES = 32;
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    private final long first;
+    private final long last;
+
+    public ByteRange(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    public long getFirst() {
+        return first;
+    }
+
+    public long getLast() {
+        return last;
+    }
+
+    public long getLength() {
+        return last - first + 1;
+    }
+
+    public String contentRange(long totalLength) {
+        return String.format("bytes %d-%d/%d", first, last, totalLength);
+    }
+
+    public static String unsatisfiedContentRange(long totalLength) {
+        return String.format("bytes */%d", totalLength);
+    }
+
+    /**
+     * Parses a Range header value against a representation of the given length.
+     *
+     * @param header the Range header value
+     * @param totalLength the length of the selected representation
+     * @return null if the header is missing, malformed or asks for too many ranges (i.e.
+     * it must be ignored); an empty list if no range is satisfiable; the satisfiable
+     * ranges otherwise, in the order they were requested.
+     */
+    public static List<ByteRange> parse(String header, long totalLength) {
+        if (header == null || ! header.startsWith(BYTES_UNIT))
+            return null;
+
+        String[] specs = header.substring(BYTES_UNIT.length()).split(",");
+        if (specs.length > MAX_RANGES)
+            return null;
+
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String spec : specs) {
+            spec = spec.trim();
+
+            int dash = spec.indexOf('-');
+            if (dash < 0)
+                return null;
+
+            String firstString = spec.substring(0, dash).trim();
+            String lastString = spec.substring(dash + 1).trim();
+
+            try {
+                /* suffix range: last n bytes */
+                if (firstString.isEmpty()) {
+                    long suffixLength = Long.parseLong(lastString);
+                    if (suffixLength < 0)
+                        return null;
+
+                    if (suffixLength > 0 && totalLength > 0)
+                        ranges.add(new ByteRange(Math.max(0, totalLength - suffixLength), totalLength - 1));
+                }
+
+                else {
+                    long first = Long.parseLong(firstString);
+                    long last = lastString.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastString);
+                    if (first < 0 || last < first)
+                        return null;
+
+                    if (first < totalLength)
+                        ranges.add(new ByteRange(first, Math.min(last, totalLength - 1)));
+                }
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+        }
+
+        return Collections.unmodifiableList(ranges);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ByteRange)) return false;
+
+        ByteRange that = (ByteRange) o;
+        return first == that.first && last == that.last;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(first) + Long.hashCode(last);
+    }
+
+    @Override
+    public String toString() {
+        return "ByteRange{" +
+                "first=" + first +
+                ", last=" + last +
+                '}';
+    }
+}
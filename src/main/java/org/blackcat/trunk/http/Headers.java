@@ -7,10 +7,33 @@ public final class Headers {
     public static final String ALLOW_HEADER = "Allow";
     public static final String ETAG_HEADER = "Etag";
     public static final String IF_NONE_MATCH_HEADER = "if-none-match";
+    public static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
     public static final String LOCATION_HEADER = "Location";
     public static final String CONTENT_TYPE_HEADER = "Content-Type";
     public static final String CONTENT_DISPOSITION = "Content-Disposition";
     public static final String CONTENT_LENGTH_HEADER = "Content-Length";
+    public static final String CONTENT_RANGE_HEADER = "Content-Range";
+    public static final String ACCEPT_RANGES_HEADER = "Accept-Ranges";
+    public static final String RANGE_HEADER = "Range";
+    public static final String IF_RANGE_HEADER = "If-Range";
+    public static final String LAST_MODIFIED_HEADER = "Last-Modified";
+    public static final String CACHE_CONTROL_HEADER = "Cache-Control";
+    public static final String DIGEST_HEADER = "Digest";
+    public static final String CONTENT_MD5_HEADER = "Content-MD5";
+    public static final String EXPECT_HEADER = "Expect";
+    public static final String EXPECT_CONTINUE = "100-continue";
+
+    /* resumable uploads (tus 1.0) */
+    public static final String TUS_RESUMABLE_HEADER = "Tus-Resumable";
+    public static final String TUS_VERSION = "1.0.0";
+    public static final String UPLOAD_LENGTH_HEADER = "Upload-Length";
+    public static final String UPLOAD_OFFSET_HEADER = "Upload-Offset";
+    public static final String UPLOAD_CONTENT_TYPE = "application/offset+octet-stream";
+    public static final String UPLOAD_CHECKSUM_HEADER = "Upload-Checksum";
+
+    /* parallel uploads (chunks of a fixed size, in any order) */
+    public static final String UPLOAD_CHUNK_SIZE_HEADER = "Upload-Chunk-Size";
+    public static final String UPLOAD_MISSING_CHUNKS_HEADER = "Upload-Missing-Chunks";
 
     private Headers()
     {}
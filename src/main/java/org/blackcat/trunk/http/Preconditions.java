@@ -0,0 +1,73 @@
+package org.blackcat.trunk.http;
+
+import org.blackcat.trunk.resource.ResourceVersion;
+import org.blackcat.trunk.util.Utils;
+
+/**
+ * Evaluation of conditional request headers (RFC 7232) against a resource version.
+ */
+final public class Preconditions {
+
+    private Preconditions()
+    {}
+
+    /**
+     * Tells whether a GET can be answered with 304 Not Modified. If-Modified-Since is
+     * evaluated only in the absence of If-None-Match.
+     *
+     * @param ifNoneMatch the If-None-Match header value, or null
+     * @param ifModifiedSince the If-Modified-Since header value, or null
+     * @param version the current version of the resource
+     * @return
+     */
+    public static boolean isNotModified(String ifNoneMatch, String ifModifiedSince, ResourceVersion version) {
+        if (ifNoneMatch != null)
+            return matchesAny(ifNoneMatch, version.getEntityTag(), false);
+
+        if (ifModifiedSince != null) {
+            Long date = Utils.parseHttpDate(ifModifiedSince);
+            return date != null && version.getLastModifiedTime() / 1000 <= date / 1000;
+        }
+
+        return false;
+    }
+
+    /**
+     * Tells whether a range request can be honored, i.e. the If-Range validator (if
+     * any) still matches the resource. Entity tags are compared strongly.
+     *
+     * @param ifRange the If-Range header value, or null
+     * @param version the current version of the resource
+     * @return
+     */
+    public static boolean isRangeApplicable(String ifRange, ResourceVersion version) {
+        if (ifRange == null)
+            return true;
+
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            return matchesAny(ifRange, version.getEntityTag(), true);
+
+        Long date = Utils.parseHttpDate(ifRange);
+        return date != null && date / 1000 == version.getLastModifiedTime() / 1000;
+    }
+
+    /* matches a comma separated list of entity tags (or "*") against a quoted tag */
+    private static boolean matchesAny(String header, String entityTag, boolean strong) {
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*"))
+                return true;
+
+            if (candidate.startsWith("W/")) {
+                if (strong)
+                    continue;
+                candidate = candidate.substring(2);
+            }
+
+            if (candidate.equals(entityTag))
+                return true;
+        }
+        return false;
+    }
+}
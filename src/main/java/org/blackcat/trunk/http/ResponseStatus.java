@@ -6,8 +6,12 @@ package org.blackcat.trunk.http;
 
 public enum ResponseStatus {
     OK(200, "OK"),
+    CREATED(201, "Created"),
+    NO_CONTENT(204, "No Content"),
+    PARTIAL_CONTENT(206, "Partial Content"),
 
     FOUND(302, "Found"),
+    NOT_MODIFIED(304, "Not Modified"),
 
     BAD_REQUEST(400, "Bad Request"),
     FORBIDDEN(403, "Forbidden"),
@@ -15,8 +19,13 @@ public enum ResponseStatus {
     METHOD_NOT_ALLOWED(405, "Method Not Allowed"),
     NOT_ACCEPTABLE(406, "Not Acceptable"),
     CONFLICT(409, "Conflict"),
+    PAYLOAD_TOO_LARGE(413, "Payload Too Large"),
+    UNSUPPORTED_MEDIA_TYPE(415, "Unsupported Media Type"),
+    RANGE_NOT_SATISFIABLE(416, "Range Not Satisfiable"),
+    CHECKSUM_MISMATCH(460, "Checksum Mismatch"),
 
-    INTERNAL_SERVER_ERROR(500, "Internal Server Error");
+    INTERNAL_SERVER_ERROR(500, "Internal Server Error"),
+    INSUFFICIENT_STORAGE(507, "Insufficient Storage");
 
     private final int statusCode;
     private final String statusMessage;
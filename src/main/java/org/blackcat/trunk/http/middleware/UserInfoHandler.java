@@ -2,6 +2,8 @@ package org.blackcat.trunk.http.middleware;
 
 import io.vertx.core.Handler;
 import io.vertx.ext.web.RoutingContext;
+import org.blackcat.trunk.conf.Configuration;
+import org.blackcat.trunk.conf.Keys;
 import org.blackcat.trunk.http.middleware.impl.UserInfoHandlerImpl;
 
 public interface UserInfoHandler extends Handler<RoutingContext> {
@@ -13,4 +15,16 @@ public interface UserInfoHandler extends Handler<RoutingContext> {
     static UserInfoHandler create() {
         return new UserInfoHandlerImpl();
     }
+
+    /**
+     * Create a new handler, caching user info as configured
+     *
+     * @param configuration the server configuration
+     * @return  the handler
+     */
+    static UserInfoHandler create(Configuration configuration) {
+        return new UserInfoHandlerImpl(
+            Keys.OAUTH2_USER_INFO_SOURCE_JWT.equals(configuration.getOauth2UserInfoSource()),
+            configuration.getOauth2UserInfoCacheTTL());
+    }
 }
\ No newline at end of file
@@ -6,12 +6,42 @@ import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.auth.User;
 import io.vertx.ext.auth.oauth2.AccessToken;
 import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.Session;
 import org.blackcat.trunk.http.middleware.UserInfoHandler;
 
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the email of the logged in user into the routing context.
+ *
+ * The email is cached in the session along with the access token it was resolved
+ * for, so that the oauth2 server is contacted again only once the cache entry has
+ * expired or the token has changed (i.e. it has been refreshed). Optionally, the
+ * email can be taken from the claims of the (locally verified) token altogether.
+ */
 final public class UserInfoHandlerImpl implements UserInfoHandler {
 
     final private Logger logger = LoggerFactory.getLogger(UserInfoHandlerImpl.class);
 
+    final static String userInfoSessionKey = "userInfo";
+    final static String emailClaim = "email";
+
+    final private boolean useTokenClaims;
+    final private long cacheTTL;
+
+    public UserInfoHandlerImpl() {
+        this(false, 0);
+    }
+
+    /**
+     * @param useTokenClaims read the email from the token claims, if any
+     * @param cacheTTL how long a resolved email can be reused, in seconds (0 disables caching)
+     */
+    public UserInfoHandlerImpl(boolean useTokenClaims, long cacheTTL) {
+        this.useTokenClaims = useTokenClaims;
+        this.cacheTTL = TimeUnit.SECONDS.toMillis(cacheTTL);
+    }
+
     @Override
     public void handle(RoutingContext ctx) {
         User user = ctx.user();
@@ -35,6 +65,24 @@ final public class UserInfoHandlerImpl implements UserInfoHandler {
     }
 
     private void userInfo(RoutingContext ctx, AccessToken accessToken) {
+        String email = cachedEmail(ctx, accessToken);
+        if (email != null) {
+            logger.trace("Using cached user data for user {}", email);
+            proceed(ctx, email);
+            return;
+        }
+
+        if (useTokenClaims) {
+            email = tokenClaimsEmail(accessToken);
+            if (email != null) {
+                logger.debug("Successfully retrieved user data from token claims for user {}", email);
+                cacheEmail(ctx, accessToken, email);
+                proceed(ctx, email);
+                return;
+            }
+            logger.debug("No email claim in token, falling back to oauth2 server.");
+        }
+
         accessToken.userInfo(ar -> {
             if (ar.failed()) {
                 logger.error("Cannot retrieve user data from oauth2 server for this user.");
@@ -42,12 +90,58 @@ final public class UserInfoHandlerImpl implements UserInfoHandler {
                 ctx.fail(ar.cause());
             } else {
                 JsonObject result = ar.result();
-                String email = result.getString("email");
-                logger.debug("Successfully retrieved user data from oauth2 server for user {}", email);
+                String resultEmail = result.getString(emailClaim);
+                logger.debug("Successfully retrieved user data from oauth2 server for user {}", resultEmail);
 
-                ctx.put("email", email);
-                ctx.next();
+                cacheEmail(ctx, accessToken, resultEmail);
+                proceed(ctx, resultEmail);
             }
         });
     }
-}
\ No newline at end of file
+
+    private void proceed(RoutingContext ctx, String email) {
+        ctx.put("email", email);
+        ctx.next();
+    }
+
+    private String tokenClaimsEmail(AccessToken accessToken) {
+        JsonObject claims = accessToken.accessToken();
+        if (claims != null && claims.getString(emailClaim) != null)
+            return claims.getString(emailClaim);
+
+        claims = accessToken.idToken();
+        return claims != null ? claims.getString(emailClaim) : null;
+    }
+
+    private String cachedEmail(RoutingContext ctx, AccessToken accessToken) {
+        Session session = ctx.session();
+        String token = opaqueToken(accessToken);
+        if (cacheTTL == 0 || session == null || token == null)
+            return null;
+
+        JsonObject userInfo = session.get(userInfoSessionKey);
+        if (userInfo == null || ! token.equals(userInfo.getString("token")) ||
+                userInfo.getLong("expiresAt") < System.currentTimeMillis())
+            return null;
+
+        return userInfo.getString(emailClaim);
+    }
+
+    private void cacheEmail(RoutingContext ctx, AccessToken accessToken, String email) {
+        Session session = ctx.session();
+        String token = opaqueToken(accessToken);
+        if (cacheTTL == 0 || session == null || token == null || email == null)
+            return;
+
+        /* bound to the token too: a refreshed (or different) token always misses */
+        session.put(userInfoSessionKey, new JsonObject()
+                                            .put("token", token)
+                                            .put(emailClaim, email)
+                                            .put("expiresAt", System.currentTimeMillis() + cacheTTL));
+    }
+
+    private String opaqueToken(AccessToken accessToken) {
+        JsonObject principal = accessToken.principal();
+        return principal != null ? principal.getString("access_token") : null;
+    }
+}
@@ -5,13 +5,17 @@ import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpServerRequest;
 import org.blackcat.trunk.conf.Configuration;
 import org.blackcat.trunk.http.requests.impl.MainHandlerImpl;
+import org.blackcat.trunk.jobs.JobRegistry;
 import org.blackcat.trunk.storage.Storage;
+import org.blackcat.trunk.uploads.UploadRegistry;
 
 public interface MainHandler extends Handler<HttpServerRequest> {
 
     String vertxKey = "vertx";
     String storageKey = "storage";
     String configurationKey = "configuration";
+    String jobRegistryKey = "jobRegistry";
+    String uploadRegistryKey = "uploadRegistry";
     String jsonResponseBuilderKey = "jsonResponseBuilder";
     String htmlResponseBuilderKey = "htmlResponseBuilder";
 
@@ -20,7 +24,8 @@ public interface MainHandler extends Handler<HttpServerRequest> {
      *
      * @return  the handler
      */
-    static MainHandler create(Vertx vertx, Configuration configuration, Storage storage) {
-        return new MainHandlerImpl(vertx, configuration, storage);
+    static MainHandler create(Vertx vertx, Configuration configuration, Storage storage,
+                              JobRegistry jobRegistry, UploadRegistry uploadRegistry) {
+        return new MainHandlerImpl(vertx, configuration, storage, jobRegistry, uploadRegistry);
     }
 }
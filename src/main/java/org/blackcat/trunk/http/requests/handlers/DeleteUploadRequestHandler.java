@@ -0,0 +1,16 @@
+package org.blackcat.trunk.http.requests.handlers;
+
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+import org.blackcat.trunk.http.requests.handlers.impl.DeleteUploadRequestHandlerImpl;
+
+public interface DeleteUploadRequestHandler extends Handler<RoutingContext> {
+    /**
+     * Create a new handler
+     *
+     * @return  the handler
+     */
+    static DeleteUploadRequestHandler create() {
+        return new DeleteUploadRequestHandlerImpl();
+    }
+}
@@ -0,0 +1,16 @@
+package org.blackcat.trunk.http.requests.handlers;
+
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+import org.blackcat.trunk.http.requests.handlers.impl.PutUploadChunkRequestHandlerImpl;
+
+public interface PutUploadChunkRequestHandler extends Handler<RoutingContext> {
+    /**
+     * Create a new handler
+     *
+     * @return  the handler
+     */
+    static PutUploadChunkRequestHandler create() {
+        return new PutUploadChunkRequestHandlerImpl();
+    }
+}
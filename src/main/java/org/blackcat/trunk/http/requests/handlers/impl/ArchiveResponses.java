@@ -0,0 +1,95 @@
+package org.blackcat.trunk.http.requests.handlers.impl;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.Pump;
+import io.vertx.ext.web.RoutingContext;
+import org.blackcat.trunk.http.requests.response.ResponseUtils;
+import org.blackcat.trunk.storage.Storage;
+import org.blackcat.trunk.streams.pump.PumpImpl;
+import org.blackcat.trunk.streams.tar.TarballReadStream;
+import org.blackcat.trunk.util.SortedWalk;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Helpers shared by the handlers serving archives.
+ */
+final class ArchiveResponses {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveResponses.class);
+
+    /* paths listed at once while laying out an archive */
+    private static final int WALK_BATCH_SIZE = 1024;
+
+    private ArchiveResponses() {
+    }
+
+    /**
+     * Collects the regular files at or below path, hidden ones excepted, in a deterministic
+     * order so that the same archive can be laid out again (blocking).
+     *
+     * @param storage
+     * @param resolvedPath a document or a collection
+     * @param members the collection files are added to
+     * @throws IOException
+     */
+    static void addMembers(Storage storage, Path resolvedPath, Collection<Path> members) throws IOException {
+        SortedWalk walk = new SortedWalk(resolvedPath, null);
+
+        List<Path> paths;
+        do {
+            paths = walk.next(WALK_BATCH_SIZE);
+            for (Path path : paths) {
+                if (storage.resourceProperties(path).isRegularFile())
+                    members.add(path);
+            }
+        } while (paths.size() == WALK_BATCH_SIZE);
+    }
+
+    /**
+     * Pumps an archive into the response, which must have its headers set already.
+     *
+     * @param ctx
+     * @param tarballReadStream
+     * @param archiveName
+     */
+    static void stream(RoutingContext ctx, TarballReadStream tarballReadStream, String archiveName) {
+        Pump pump = Pump.pump(tarballReadStream, ctx.response());
+
+        /* interruption handlers */
+        ctx.response()
+            .closeHandler(event -> {
+                logger.warn("interrupted by client");
+                pump.stop();
+                tarballReadStream.cancel();
+            })
+            .exceptionHandler(exception -> {
+                logger.warn("archive file transfer failed: {}", exception.toString());
+                pump.stop();
+                tarballReadStream.cancel();
+            });
+
+        tarballReadStream
+            .exceptionHandler( exception -> {
+                logger.error(exception.toString());
+                pump.stop();
+                ctx.fail(exception);
+            })
+
+            /* when all is done on the destination stream, report stats and close the response. */
+            .endHandler(event -> {
+                pump.stop();
+                logger.debug("... archive file transfer completed, {} bytes transferred.",
+                    ((PumpImpl) pump).getBytesPumped());
+
+                ResponseUtils.complete(ctx);
+            });
+
+        logger.debug("archive file transfer started for {} ...", archiveName);
+        pump.start();
+    }
+}
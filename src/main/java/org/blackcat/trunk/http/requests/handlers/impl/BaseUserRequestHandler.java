@@ -12,7 +12,11 @@ import org.blackcat.trunk.http.Headers;
 import org.blackcat.trunk.http.requests.MainHandler;
 import org.blackcat.trunk.http.requests.response.impl.HtmlResponseBuilderImpl;
 import org.blackcat.trunk.http.requests.response.impl.JsonResponseBuilderImpl;
+import org.blackcat.trunk.jobs.JobRegistry;
 import org.blackcat.trunk.storage.Storage;
+import org.blackcat.trunk.streams.pump.TransferRegistry;
+import org.blackcat.trunk.streams.throttle.BandwidthLimiter;
+import org.blackcat.trunk.uploads.UploadRegistry;
 
 import java.text.MessageFormat;
 
@@ -24,6 +28,8 @@ abstract public class BaseUserRequestHandler implements Handler<RoutingContext>
     protected Vertx vertx;
     protected Storage storage;
     protected Configuration configuration;
+    protected JobRegistry jobRegistry;
+    protected UploadRegistry uploadRegistry;
     protected JsonResponseBuilderImpl jsonResponseBuilder;
     protected HtmlResponseBuilderImpl htmlResponseBuilder;
 
@@ -51,6 +57,16 @@ abstract public class BaseUserRequestHandler implements Handler<RoutingContext>
             ctx.fail(new BaseUserRequestException("configuration == null"));
         }
 
+        jobRegistry = ctx.get(MainHandler.jobRegistryKey);
+        if (jobRegistry == null) {
+            ctx.fail(new BaseUserRequestException("jobRegistry == null"));
+        }
+
+        uploadRegistry = ctx.get(MainHandler.uploadRegistryKey);
+        if (uploadRegistry == null) {
+            ctx.fail(new BaseUserRequestException("uploadRegistry == null"));
+        }
+
         jsonResponseBuilder = ctx.get(MainHandler.jsonResponseBuilderKey);
         if (jsonResponseBuilder == null) {
             ctx.fail(new BaseUserRequestException("jsonResponseBuilder == null"));
@@ -62,6 +78,34 @@ abstract public class BaseUserRequestHandler implements Handler<RoutingContext>
         }
 
         ctx.put(requestTypeKey, doesAcceptJson(ctx) ? RequestType.JSON : RequestType.HTML);
+
+        /* transfers from and to this request are subject to bandwidth limits */
+        String route = routeOf(ctx.request());
+        BandwidthLimiter.getInstance().bind(ctx.request(), ctx.get("email"), route);
+        BandwidthLimiter.getInstance().bind(ctx.response(), ctx.get("email"), route);
+
+        /* ... and tracked while in flight */
+        String path = ctx.request().path();
+        TransferRegistry.getInstance().bind(ctx.request(), ctx.get("email"), path, TransferRegistry.Direction.UPLOAD);
+        TransferRegistry.getInstance().bind(ctx.response(), ctx.get("email"), path, TransferRegistry.Direction.DOWNLOAD);
+    }
+
+    /* e.g. "GET /protected", as bandwidth limits are configured by route */
+    private static String routeOf(HttpServerRequest request) {
+        String path = request.path();
+        int slash = path == null ? -1 : path.indexOf('/', 1);
+        String prefix = path == null ? "/" : slash < 0 ? path : path.substring(0, slash);
+
+        return request.method() + " " + prefix;
+    }
+
+    /**
+     * @param ctx
+     * @return true if responses to this request are subject to bandwidth limits, i.e.
+     * must go through a pump rather than being sent straight from disk.
+     */
+    protected boolean isBandwidthLimited(RoutingContext ctx) {
+        return BandwidthLimiter.getInstance().isLimited(ctx.response());
     }
 
     private boolean doesAcceptJson(RoutingContext ctx) {
@@ -5,6 +5,9 @@ import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.web.RoutingContext;
 import org.blackcat.trunk.http.requests.handlers.DeleteResourceRequestHandler;
+import org.blackcat.trunk.jobs.JobStatus;
+import org.blackcat.trunk.jobs.TreeDeleteJob;
+import org.blackcat.trunk.resource.TreeSize;
 import org.blackcat.trunk.resource.exceptions.NotFoundException;
 
 import java.nio.file.Path;
@@ -22,8 +25,16 @@ final public class DeleteResourceRequestHandlerImpl extends BaseUserRequestHandl
             Path protectedPath = protectedPath(ctx);
             logger.info("Deleting resource {}", protectedPath);
 
+            /* a whole trunk is never deleted */
+            if (protectedPath.getNameCount() <= 1) {
+                logger.warn("Refusing to delete top-level collection {}", protectedPath);
+                jsonResponseBuilder.methodNotAllowed(ctx);
+                return;
+            }
+
             Path resolvedPath = storage.getRoot().resolve(protectedPath);
-            storage.delete(resolvedPath, asyncResult -> {
+            TreeSize treeSize = storage.getUsageAccounting().treeSize(resolvedPath);
+            storage.deleteTree(resolvedPath, asyncResult -> {
                 if (asyncResult.failed()) {
                     Throwable cause = asyncResult.cause();
                     if (cause instanceof NotFoundException) {
@@ -33,11 +44,26 @@ final public class DeleteResourceRequestHandlerImpl extends BaseUserRequestHandl
                         logger.warn("Could not delete resource {}.", asyncResult.cause());
                         jsonResponseBuilder.conflict(ctx);
                     }
-                } else {
+                } else if (asyncResult.result() == null) {
                     logger.info("Successfully deleted {}", ctx.request().uri());
                     jsonResponseBuilder.success(ctx, new JsonObject());
+                } else {
+                    asyncRemoveCollection(ctx, protectedPath, asyncResult.result(),
+                        treeSize != null ? treeSize.getDocuments() : -1);
                 }
             });
         });
     }
+
+    /* the collection is gone already, its contents are removed in background */
+    private void asyncRemoveCollection(RoutingContext ctx, Path protectedPath, Path tombstone, long documents) {
+        JobStatus status = TreeDeleteJob.newStatus(ctx.get("email"), protectedPath, tombstone, documents);
+        TreeDeleteJob.create(vertx, jobRegistry, status, configuration.getStorageDeleteRate()).start();
+
+        logger.info("Successfully deleted {}, removing its contents (job {})", ctx.request().uri(), status.getId());
+        jsonResponseBuilder.success(ctx, new JsonObject()
+                                             .put("data", new JsonObject()
+                                                              .put("job", status.getId())
+                                                              .put("href", "/jobs/" + status.getId())));
+    }
 }
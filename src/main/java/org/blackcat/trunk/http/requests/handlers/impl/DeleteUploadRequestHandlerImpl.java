@@ -0,0 +1,40 @@
+package org.blackcat.trunk.http.requests.handlers.impl;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+import org.blackcat.trunk.http.ResponseStatus;
+import org.blackcat.trunk.http.requests.handlers.DeleteUploadRequestHandler;
+import org.blackcat.trunk.uploads.Upload;
+
+final public class DeleteUploadRequestHandlerImpl extends BaseUserRequestHandler
+    implements DeleteUploadRequestHandler {
+
+    final private Logger logger = LoggerFactory.getLogger(DeleteUploadRequestHandlerImpl.class);
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        super.handle(ctx);
+
+        Upload upload = UploadResponses.lookup(ctx, uploadRegistry);
+        if (upload == null) {
+            UploadResponses.statusResponse(ctx, ResponseStatus.NOT_FOUND);
+            return;
+        }
+
+        /* not while a chunk is being received */
+        if (! upload.acquire()) {
+            UploadResponses.statusResponse(ctx, ResponseStatus.CONFLICT);
+            return;
+        }
+
+        uploadRegistry.remove(upload);
+        storage.delete(upload.getTempPath(), deleteAsyncResult -> {
+            if (deleteAsyncResult.failed())
+                logger.warn("Could not delete {}: {}", upload.getTempPath(), deleteAsyncResult.cause().toString());
+
+            logger.info("Upload {} terminated", upload.getId());
+            UploadResponses.statusResponse(ctx, ResponseStatus.NO_CONTENT);
+        });
+    }
+}
@@ -0,0 +1,45 @@
+package org.blackcat.trunk.http.requests.handlers.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+import org.blackcat.trunk.http.requests.handlers.GetJobStatusRequestHandler;
+import org.blackcat.trunk.jobs.JobStatus;
+
+import static org.blackcat.trunk.util.Utils.urlDecode;
+
+final public class GetJobStatusRequestHandlerImpl extends BaseUserRequestHandler
+    implements GetJobStatusRequestHandler {
+
+    final private Logger logger = LoggerFactory.getLogger(GetJobStatusRequestHandlerImpl.class);
+
+    private static final String JOBS_PREFIX = "/jobs/";
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        super.handle(ctx);
+        checkJsonRequest(ctx, ok -> {
+            String email = ctx.get("email");
+            String id = urlDecode(ctx.request().path()).substring(JOBS_PREFIX.length());
+
+            /* the jobs of the current user */
+            if (id.isEmpty()) {
+                JsonArray jobs = new JsonArray();
+                jobRegistry.list(email).forEach(status -> jobs.add(status.toReport()));
+                jsonResponseBuilder.success(ctx, new JsonObject().put("data", jobs));
+                return;
+            }
+
+            /* other users' jobs do not exist, as far as the requester is concerned */
+            JobStatus status = jobRegistry.get(id);
+            if (status == null || ! email.equals(status.getOwner())) {
+                logger.debug("No job {} for {}", id, email);
+                jsonResponseBuilder.notFound(ctx);
+            } else {
+                jsonResponseBuilder.success(ctx, new JsonObject().put("data", status.toReport()));
+            }
+        });
+    }
+}
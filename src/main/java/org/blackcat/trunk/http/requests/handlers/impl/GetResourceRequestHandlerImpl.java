@@ -1,6 +1,9 @@
 package org.blackcat.trunk.http.requests.handlers.impl;
 
 import com.mitchellbosecke.pebble.utils.Pair;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
@@ -8,26 +11,43 @@ import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.core.streams.Pump;
 import io.vertx.ext.web.RoutingContext;
+import org.blackcat.trunk.http.ByteRange;
 import org.blackcat.trunk.http.Headers;
+import org.blackcat.trunk.http.Preconditions;
+import org.blackcat.trunk.http.ResponseStatus;
 import org.blackcat.trunk.http.requests.handlers.GetResourceRequestHandler;
 import org.blackcat.trunk.http.requests.response.ResponseUtils;
 import org.blackcat.trunk.mappers.ShareMapper;
 import org.blackcat.trunk.mappers.UserMapper;
 import org.blackcat.trunk.queries.Queries;
 import org.blackcat.trunk.resource.Resource;
+import org.blackcat.trunk.resource.ResourceVersion;
+import org.blackcat.trunk.resource.TreeSize;
 import org.blackcat.trunk.resource.exceptions.NotFoundException;
+import org.blackcat.trunk.resource.impl.CollectionDescriptorResource;
 import org.blackcat.trunk.resource.impl.CollectionResource;
 import org.blackcat.trunk.resource.impl.DocumentContentResource;
 import org.blackcat.trunk.resource.impl.DocumentDescriptorResource;
 import org.blackcat.trunk.streams.pump.PumpImpl;
-import org.blackcat.trunk.streams.async.AsyncInputStream;
-import org.blackcat.trunk.streams.tar.TarballInputStream;
+import org.blackcat.trunk.streams.pump.TransferRegistry;
+import org.blackcat.trunk.streams.range.RangeReadStream;
+import org.blackcat.trunk.streams.tar.ArchiveFormat;
+import org.blackcat.trunk.streams.tar.TarLayout;
+import org.blackcat.trunk.streams.tar.TarballReadStream;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -37,7 +57,7 @@ final public class GetResourceRequestHandlerImpl extends BaseUserRequestHandler
 
     final private Logger logger = LoggerFactory.getLogger(GetResourceRequestHandlerImpl.class);
 
-    final static String tarMimeType = "application/x-tar";
+    final static String defaultMimeType = "application/octet-stream";
 
     @Override
     public void handle(RoutingContext ctx) {
@@ -102,6 +122,63 @@ final public class GetResourceRequestHandlerImpl extends BaseUserRequestHandler
         Path resolvedPath = storage.getRoot().resolve(protectedPath);
         logger.trace("GET {} -> {}", protectedPath.toString(), resolvedPath.toString());
 
+        HttpServerRequest request = ctx.request();
+        String ifNoneMatch = request.getHeader(Headers.IF_NONE_MATCH_HEADER);
+        String ifModifiedSince = request.getHeader(Headers.IF_MODIFIED_SINCE_HEADER);
+
+        /* conditional GET: validators are checked before any document is opened or any listing is built */
+        if (ifNoneMatch != null || ifModifiedSince != null) {
+            storage.getVersion(resolvedPath, versionAsyncResult -> {
+                ResourceVersion version = versionAsyncResult.succeeded() ? versionAsyncResult.result() : null;
+
+                if (version != null && hasValidators(ctx, version) &&
+                        Preconditions.isNotModified(ifNoneMatch, ifModifiedSince, version))
+                    notModifiedResponse(ctx, version);
+                else
+                    getResourceContent(ctx, resolvedPath, shareMapper, isOwner);
+            });
+        } else {
+            getResourceContent(ctx, resolvedPath, shareMapper, isOwner);
+        }
+    }
+
+    /*
+     * Validators are emitted for document contents and JSON listings (HTML listings depend on sharing, too).
+     * JSON listings tell the tree sizes of their collections, so they are checked once built.
+     */
+    private boolean hasValidators(RoutingContext ctx, ResourceVersion version) {
+        return ! version.isCollection() && ! hasTrailingSlash(ctx);
+    }
+
+    private boolean isArchiveRequest(HttpServerRequest request) {
+        return "t".equals(request.getParam("tarball")) || request.getParam("archive") != null;
+    }
+
+    /* ?tarball=t is the original, uncompressed download */
+    private ArchiveFormat archiveFormat(HttpServerRequest request) {
+        return "t".equals(request.getParam("tarball"))
+                   ? ArchiveFormat.TAR : ArchiveFormat.of(request.getParam("archive"));
+    }
+
+    private void notModifiedResponse(RoutingContext ctx, ResourceVersion version) {
+        logger.debug("Not modified: {}", ctx.request().uri());
+
+        setValidators(ctx.response(), version)
+            .setStatusCode(ResponseStatus.NOT_MODIFIED.getStatusCode())
+            .setStatusMessage(ResponseStatus.NOT_MODIFIED.getStatusMessage())
+            .end();
+    }
+
+    private HttpServerResponse setValidators(HttpServerResponse response, ResourceVersion version) {
+        if (version != null) {
+            response
+                .putHeader(Headers.ETAG_HEADER, version.getEntityTag())
+                .putHeader(Headers.LAST_MODIFIED_HEADER, httpDate(version.getLastModifiedTime()));
+        }
+        return response;
+    }
+
+    private void getResourceContent(RoutingContext ctx, Path resolvedPath, ShareMapper shareMapper, boolean isOwner) {
         storage.get(resolvedPath, resourceAsyncResult -> {
             if (resourceAsyncResult.failed()) {
                 Throwable cause = resourceAsyncResult.cause();
@@ -118,6 +195,8 @@ final public class GetResourceRequestHandlerImpl extends BaseUserRequestHandler
                     collectionResourceResponse(ctx, (CollectionResource) resource, resolvedPath, shareMapper, isOwner);
                 } else if (resource instanceof DocumentDescriptorResource) {
                     documentDescriptorResponse(ctx, (DocumentDescriptorResource) resource);
+                } else if (resource instanceof CollectionDescriptorResource) {
+                    collectionDescriptorResponse(ctx, (CollectionDescriptorResource) resource);
                 } else if (resource instanceof DocumentContentResource) {
                     documentContentResponse(ctx, (DocumentContentResource) resource);
                 }
@@ -131,8 +210,14 @@ final public class GetResourceRequestHandlerImpl extends BaseUserRequestHandler
             HttpServerRequest request = ctx.request();
             Path protectedPath = protectedPath(ctx);
 
-            if ("t".equals(request.getParam("tarball"))) {
-                collectionTarballResponse(ctx, resolvedPath);
+            if (isArchiveRequest(request)) {
+                ArchiveFormat format = archiveFormat(request);
+                if (format != null)
+                    collectionTarballResponse(ctx, resolvedPath, format);
+                else {
+                    logger.warn("Unsupported archive format: {}", request.getParam("archive"));
+                    htmlResponseBuilder.badRequest(ctx);
+                }
             } else if (ctx.get("requestType").equals(RequestType.JSON)) {
                 collectionJsonResponse(ctx, protectedPath, resource);
             } else {
@@ -144,12 +229,24 @@ final public class GetResourceRequestHandlerImpl extends BaseUserRequestHandler
     private void collectionJsonResponse(RoutingContext ctx,
                                         Path protectedPath, CollectionResource collection) {
         HttpServerRequest request = ctx.request();
+        Map<String, TreeSize> treeSizes = treeSizes(protectedPath, collection);
+
+        /* the sizes of the collections listed change along with anything below them */
+        ResourceVersion version =
+            collection.getVersion() != null ? collection.getVersion().withTreeSizes(treeSizes) : null;
+        if (version != null && Preconditions.isNotModified(request.getHeader(Headers.IF_NONE_MATCH_HEADER),
+                request.getHeader(Headers.IF_MODIFIED_SINCE_HEADER), version)) {
+            notModifiedResponse(ctx, version);
+            return;
+        }
+        setValidators(ctx.response(), version);
+
         List<JsonObject> entries =
             collection.getItems().stream()
                 .filter(this::isCollectionOrDocumentDescriptor)
                 .map(res -> {
                     if (res instanceof CollectionResource)
-                        return collectionResourceJsonObject(request, res);
+                        return collectionResourceJsonObject(request, res, treeSizes.get(res.getName()));
                     else
                         return documentDescriptorResourceJsonObject(request, res);
                 }).collect(Collectors.toList());
@@ -159,6 +256,20 @@ final public class GetResourceRequestHandlerImpl extends BaseUserRequestHandler
                                                               .put(protectedPath.getFileName().toString(), entries)));
     }
 
+    /* folder sizes come from the usage tree, fresh on every listing; listings may be cached and shared */
+    private Map<String, TreeSize> treeSizes(Path protectedPath, CollectionResource collection) {
+        Path resolvedPath = storage.getRoot().resolve(protectedPath);
+        Map<String, TreeSize> treeSizes = new HashMap<>();
+        for (Resource item : collection.getItems()) {
+            if (item instanceof CollectionResource) {
+                TreeSize treeSize = storage.getUsageAccounting().treeSize(resolvedPath.resolve(item.getName()));
+                if (treeSize != null)
+                    treeSizes.put(item.getName(), treeSize);
+            }
+        }
+        return treeSizes;
+    }
+
     private boolean isCollectionOrDocumentDescriptor(Resource resource) {
         return resource instanceof CollectionResource || resource instanceof DocumentDescriptorResource ;
     }
@@ -176,13 +287,21 @@ final public class GetResourceRequestHandlerImpl extends BaseUserRequestHandler
                    .put("length", documentDescriptorResource.getHumanLength());
     }
 
-    private JsonObject collectionResourceJsonObject(HttpServerRequest request, Resource res) {
+    private JsonObject collectionResourceJsonObject(HttpServerRequest request, Resource res,
+                                                    @Nullable TreeSize treeSize) {
         CollectionResource collectionResource = (CollectionResource) res;
-        return new JsonObject()
-                   .put("href", collectionAbsoluteURI(request, collectionResource))
-                   .put("name", collectionResource.getName())
-                   .put("class", "collection")
-                   .put("count", Integer.valueOf(collectionResource.getSize()).toString());
+        JsonObject jsonObject = new JsonObject()
+                                    .put("href", collectionAbsoluteURI(request, collectionResource))
+                                    .put("name", collectionResource.getName())
+                                    .put("class", "collection")
+                                    .put("count", Integer.valueOf(collectionResource.getSize()).toString());
+
+        if (treeSize != null) {
+            jsonObject
+                .put("length", humanReadableByteCount(treeSize.getBytes()))
+                .put("documents", Long.valueOf(treeSize.getDocuments()).toString());
+        }
+        return jsonObject;
     }
 
     @NotNull
@@ -231,7 +350,10 @@ final public class GetResourceRequestHandlerImpl extends BaseUserRequestHandler
             .put("collectionTitle", collectionTitle(ctx))
             .put("collectionPath", protectedPath)
             .put("pathFragments", frags)
-            .put("entries", collection.getItems());
+            .put("entries", collection.getItems())
+            .put("treeLengths", treeSizes(protectedPath, collection).entrySet().stream()
+                                    .collect(Collectors.toMap(Map.Entry::getKey,
+                                        entry -> humanReadableByteCount(entry.getValue().getBytes()))));
 
         htmlResponseBuilder.success(ctx, "collection");
     }
@@ -240,46 +362,95 @@ final public class GetResourceRequestHandlerImpl extends BaseUserRequestHandler
         return String.format("trunk (%s)", ctx.<String>get("email"));
     }
 
-    private void collectionTarballResponse(RoutingContext ctx, Path resolvedPath) {
-        TarballInputStream tarballInputStream = TarballInputStream.create(storage, resolvedPath);
+    private void collectionTarballResponse(RoutingContext ctx, Path resolvedPath, ArchiveFormat format) {
+        String archiveName = resolvedPath.getFileName().toString() + "." + format.getExtension();
+
+        /* the archive is laid out up front: its length and version are known before it is produced */
+        vertx.executeBlocking((Future<TarLayout> future) -> {
+            try {
+                List<Path> members = new ArrayList<>();
+                ArchiveResponses.addMembers(storage, resolvedPath, members);
+                future.complete(TarLayout.of(storage.getRoot(), members.iterator()));
+            } catch (Exception e) {
+                future.fail(e);
+            }
+        }, false, layoutAsyncResult -> {
+            if (layoutAsyncResult.failed()) {
+                ctx.fail(layoutAsyncResult.cause());
+                return;
+            }
 
-        String archiveName = resolvedPath.getFileName().toString() + ".tar";
-        ctx.response()
-            .putHeader(Headers.CONTENT_TYPE_HEADER, tarMimeType)
-            .putHeader(Headers.CONTENT_DISPOSITION, String.format("attachment; filename=\"%s\"", archiveName))
-            .setChunked(true); // required
+            TarLayout layout = layoutAsyncResult.result();
+            if (format != ArchiveFormat.TAR) {
+                collectionCompressedArchiveResponse(ctx, layout, format, archiveName);
+                return;
+            }
 
-        setupTarballTransfer(ctx, tarballInputStream, archiveName);
-    }
+            HttpServerRequest request = ctx.request();
+            if (Preconditions.isNotModified(request.getHeader(Headers.IF_NONE_MATCH_HEADER),
+                    request.getHeader(Headers.IF_MODIFIED_SINCE_HEADER), layout.getVersion())) {
+                notModifiedResponse(ctx, layout.getVersion());
+                return;
+            }
 
-    private void setupTarballTransfer(RoutingContext ctx, TarballInputStream tarballInputStream, String archiveName) {
-        /* interruption handler */
-        ctx.response()
-            .closeHandler(event -> {
-                logger.warn("interrupted by client");
-                tarballInputStream.setCanceled(true);
-            });
+            HttpServerResponse response = setValidators(ctx.response(), layout.getVersion())
+                                              .putHeader(Headers.CONTENT_TYPE_HEADER, format.getMimeType())
+                                              .putHeader(Headers.CONTENT_DISPOSITION,
+                                                  String.format("attachment; filename=\"%s\"", archiveName))
+                                              .putHeader(Headers.ACCEPT_RANGES_HEADER, "bytes");
+
+            List<ByteRange> ranges = null;
+            if (Preconditions.isRangeApplicable(request.getHeader(Headers.IF_RANGE_HEADER), layout.getVersion()))
+                ranges = ByteRange.parse(request.getHeader(Headers.RANGE_HEADER), layout.getLength());
+
+            if (ranges != null && ranges.isEmpty()) {
+                logger.debug("Range not satisfiable: {}", request.getHeader(Headers.RANGE_HEADER));
+                response
+                    .setStatusCode(ResponseStatus.RANGE_NOT_SATISFIABLE.getStatusCode())
+                    .setStatusMessage(ResponseStatus.RANGE_NOT_SATISFIABLE.getStatusMessage())
+                    .putHeader(Headers.CONTENT_RANGE_HEADER, ByteRange.unsatisfiedContentRange(layout.getLength()))
+                    .putHeader(Headers.CONTENT_LENGTH_HEADER, "0")
+                    .end();
+                return;
+            }
 
-        AsyncInputStream asyncInputStream = AsyncInputStream.create(vertx, tarballInputStream);
-        Pump pump = Pump.pump(asyncInputStream, ctx.response());
+            /* multiple ranges are not worth a multipart archive, the whole of it is sent instead */
+            ByteRange range = ranges != null && ranges.size() == 1
+                                  ? ranges.get(0) : new ByteRange(0, layout.getLength() - 1);
+            boolean partial = ranges != null && ranges.size() == 1;
 
-        asyncInputStream
-            .exceptionHandler( exception -> {
-                logger.error(exception.toString());
-                ctx.fail(exception);
-            })
+            ResponseStatus status = ResponseStatus.OK;
+            if (partial) {
+                status = ResponseStatus.PARTIAL_CONTENT;
+                response.putHeader(Headers.CONTENT_RANGE_HEADER, range.contentRange(layout.getLength()));
+            }
+            response.putHeader(Headers.CONTENT_LENGTH_HEADER, String.valueOf(range.getLength()));
 
-            /* when all is done on the destination stream, report stats and close the response. */
-            .endHandler(event -> {
-                pump.stop();
-                logger.debug("... archive file transfer completed, {} bytes transferred.",
-                    ((PumpImpl) pump).getBytesPumped());
+            TarballReadStream tarballReadStream = TarballReadStream.create(vertx, layout,
+                range.getFirst(), range.getLength(),
+                configuration.getStorageArchiveWorkers(), configuration.getStorageArchiveChunkSize());
 
-                ResponseUtils.complete(ctx);
-            });
+            response
+                .setStatusCode(status.getStatusCode())
+                .setStatusMessage(status.getStatusMessage());
 
-        logger.debug("archive file transfer started for {} ...", archiveName);
-        pump.start();
+            ArchiveResponses.stream(ctx, tarballReadStream, archiveName);
+        });
+    }
+
+    /* the length of compressed archives is unknown until they are produced: no ranges */
+    private void collectionCompressedArchiveResponse(RoutingContext ctx, TarLayout layout,
+                                                     ArchiveFormat format, String archiveName) {
+        TarballReadStream tarballReadStream = TarballReadStream.create(vertx, layout, format,
+            configuration.getStorageArchiveCompressionLevel(),
+            configuration.getStorageArchiveWorkers(), configuration.getStorageArchiveChunkSize());
+
+        ctx.response()
+            .putHeader(Headers.CONTENT_TYPE_HEADER, format.getMimeType())
+            .putHeader(Headers.CONTENT_DISPOSITION, String.format("attachment; filename=\"%s\"", archiveName))
+            .setChunked(true); // required
+
+        ArchiveResponses.stream(ctx, tarballReadStream, archiveName);
     }
 
     private void documentDescriptorResponse(RoutingContext ctx, DocumentDescriptorResource resource) {
@@ -298,6 +469,21 @@ final public class GetResourceRequestHandlerImpl extends BaseUserRequestHandler
         });
     }
 
+    private void collectionDescriptorResponse(RoutingContext ctx, CollectionDescriptorResource resource) {
+        checkJsonRequest(ctx, ok -> {
+            TreeSize treeSize = resource.getTreeSize();
+            jsonResponseBuilder.success(ctx,
+                new JsonObject()
+                    .put("meta", new JsonObject()
+                                     .put("href", ctx.request().absoluteURI())
+                                     .put("name", resource.getName())
+                                     .put("class", "collection")
+                                     .put("modified", treeSize.getLastModifiedTime())
+                                     .put("length", treeSize.getBytes())
+                                     .put("documents", treeSize.getDocuments())));
+        });
+    }
+
     @NotNull
     private String metaResourceURL(RoutingContext ctx, DocumentDescriptorResource resource) {
         return ctx.request().absoluteURI() +
@@ -306,32 +492,242 @@ final public class GetResourceRequestHandlerImpl extends BaseUserRequestHandler
 
     private void documentContentResponse(RoutingContext ctx, DocumentContentResource resource) {
         if (! forceNoTrailingSlash(ctx)) {
+            HttpServerRequest request = ctx.request();
             HttpServerResponse response = ctx.response();
 
+            setValidators(response, resource.getVersion());
+
+            /* digests of the whole content (RFC 3230), computed once when it was written */
+            if (resource.getContentDigest() != null)
+                response.putHeader(Headers.DIGEST_HEADER, resource.getContentDigest().toDigestHeader());
+
+            List<ByteRange> ranges = null;
+            if (resource.isSeekable() && resource.getVersion() != null) {
+                response.putHeader(Headers.ACCEPT_RANGES_HEADER, "bytes");
+                if (Preconditions.isRangeApplicable(request.getHeader(Headers.IF_RANGE_HEADER), resource.getVersion()))
+                    ranges = ByteRange.parse(request.getHeader(Headers.RANGE_HEADER), resource.getLength());
+            }
+
+            if (ranges == null) {
+                if (canSendFile(ctx, resource))
+                    documentSendFileResponse(ctx, resource, new ByteRange(0, resource.getLength() - 1), false);
+                else
+                    documentFullContentResponse(ctx, resource);
+            }
+            else if (ranges.isEmpty())
+                documentRangeNotSatisfiableResponse(ctx, resource);
+            else if (ranges.size() == 1) {
+                if (canSendFile(ctx, resource))
+                    documentSendFileResponse(ctx, resource, ranges.get(0), true);
+                else
+                    documentSingleRangeResponse(ctx, resource, ranges.get(0));
+            }
+            else
+                documentMultipleRangesResponse(ctx, resource, ranges);
+        }
+    }
+
+    /* sendfile(2) bypasses the JVM entirely (and the pump's throttling), but TLS has to encrypt the bytes in user space */
+    private boolean canSendFile(RoutingContext ctx, DocumentContentResource resource) {
+        return ! configuration.isSSLEnabled() && resource.getPath() != null && resource.getVersion() != null &&
+                   ! isBandwidthLimited(ctx);
+    }
+
+    /*
+     * Validators come from the handle the storage opened, while sendfile(2) opens the path once more: should
+     * the document have been replaced in between, the content is streamed from the open handle instead.
+     */
+    private void documentSendFileResponse(RoutingContext ctx, DocumentContentResource resource,
+                                          ByteRange range, boolean partial) {
+        vertx.executeBlocking((Future<Boolean> future) -> {
+            try {
+                ResourceVersion current =
+                    ResourceVersion.of(Files.readAttributes(resource.getPath(), BasicFileAttributes.class));
+                future.complete(current.getEntityTag().equals(resource.getVersion().getEntityTag()));
+            } catch (IOException ioe) {
+                future.complete(false);
+            }
+        }, false, unchangedAsyncResult -> {
+            if (unchangedAsyncResult.succeeded() && unchangedAsyncResult.result())
+                documentSendFile(ctx, resource, range, partial);
+            else {
+                logger.info("{} changed since it was opened, not using sendfile", resource.getPath());
+                if (partial)
+                    documentSingleRangeResponse(ctx, resource, range);
+                else
+                    documentFullContentResponse(ctx, resource);
+            }
+        });
+    }
+
+    private void documentSendFile(RoutingContext ctx, DocumentContentResource resource,
+                                  ByteRange range, boolean partial) {
+        HttpServerResponse response = ctx.response();
+
+        if (partial) {
             response
-                .putHeader(Headers.CONTENT_TYPE_HEADER, resource.getMimeType())
-                .putHeader(Headers.CONTENT_LENGTH_HEADER, String.valueOf(resource.getLength()));
+                .setStatusCode(ResponseStatus.PARTIAL_CONTENT.getStatusCode())
+                .setStatusMessage(ResponseStatus.PARTIAL_CONTENT.getStatusMessage())
+                .putHeader(Headers.CONTENT_RANGE_HEADER, range.contentRange(resource.getLength()));
+        }
+
+        response
+            .putHeader(Headers.CONTENT_TYPE_HEADER, resource.getMimeType())
+            .putHeader(Headers.CONTENT_LENGTH_HEADER, String.valueOf(Math.max(0, range.getLength())));
+
+        /* the kernel reads the file by itself, the async handle opened by the storage is not needed */
+        resource.getCloseHandler().handle(null);
+
+        /* sendfile(2) reports no progress, bytes are accounted once done */
+        TransferRegistry.Transfer transfer = TransferRegistry.getInstance().open(resource.getPath(), response);
+
+        logger.debug("outgoing file transfer started (sendfile, {}) ...", range);
+        response.sendFile(resource.getPath().toString(), range.getFirst(), Math.max(0, range.getLength()), done -> {
+            if (done.failed())
+                logger.error("Outgoing file transfer failed: {}", done.cause().toString());
+            else {
+                logger.info("... outgoing file transfer completed, {} bytes transferred.", range.getLength());
+                transfer.add(Math.max(0, range.getLength()));
+            }
+            transfer.close();
+        });
+    }
+
+    private void documentFullContentResponse(RoutingContext ctx, DocumentContentResource resource) {
+        HttpServerResponse response = ctx.response();
+
+        response
+            .putHeader(Headers.CONTENT_TYPE_HEADER, resource.getMimeType())
+            .putHeader(Headers.CONTENT_LENGTH_HEADER, String.valueOf(resource.getLength()));
+
+        Pump pump = Pump.pump(resource.getReadStream(), response, 8192);
+        stopOnInterruption(ctx, resource, pump);
+
+        /* when all is done on the source stream, report stats and close the response. */
+        resource.getReadStream()
+            .endHandler(event -> {
+                pump.stop();
+                logger.info("... outgoing file transfer completed, {} bytes transferred.",
+                    ((PumpImpl) pump).getBytesPumped());
+
+                resource.getCloseHandler()
+                    .handle(null);
 
-            Pump pump = Pump.pump(resource.getReadStream(), response, 8192);
+                ResponseUtils.complete(ctx);
+            });
+
+        logger.debug("outgoing file transfer started ...");
+        pump.start();
+    }
 
-            /* when all is done on the source stream, report stats and close the response. */
-            resource.getReadStream()
-                .endHandler(event -> {
-                    pump.stop();
-                    logger.info("... outgoing file transfer completed, {} bytes transferred.",
-                        ((PumpImpl) pump).getBytesPumped());
+    private void documentRangeNotSatisfiableResponse(RoutingContext ctx, DocumentContentResource resource) {
+        logger.debug("Range not satisfiable: {}", ctx.request().getHeader(Headers.RANGE_HEADER));
+        resource.getCloseHandler().handle(null);
 
-                    resource.getCloseHandler()
-                        .handle(null);
+        ctx.response()
+            .setStatusCode(ResponseStatus.RANGE_NOT_SATISFIABLE.getStatusCode())
+            .setStatusMessage(ResponseStatus.RANGE_NOT_SATISFIABLE.getStatusMessage())
+            .putHeader(Headers.CONTENT_RANGE_HEADER, ByteRange.unsatisfiedContentRange(resource.getLength()))
+            .putHeader(Headers.CONTENT_LENGTH_HEADER, "0")
+            .end();
+    }
+
+    private void documentSingleRangeResponse(RoutingContext ctx, DocumentContentResource resource, ByteRange range) {
+        ctx.response()
+            .setStatusCode(ResponseStatus.PARTIAL_CONTENT.getStatusCode())
+            .setStatusMessage(ResponseStatus.PARTIAL_CONTENT.getStatusMessage())
+            .putHeader(Headers.CONTENT_TYPE_HEADER, resource.getMimeType())
+            .putHeader(Headers.CONTENT_RANGE_HEADER, range.contentRange(resource.getLength()))
+            .putHeader(Headers.CONTENT_LENGTH_HEADER, String.valueOf(range.getLength()));
+
+        logger.debug("outgoing partial file transfer started ({}) ...", range);
+        pumpRange(ctx, resource, range, done -> {
+            logger.info("... outgoing partial file transfer completed, {} bytes transferred.", done);
+            resource.getCloseHandler().handle(null);
+            ResponseUtils.complete(ctx);
+        });
+    }
+
+    private void documentMultipleRangesResponse(RoutingContext ctx, DocumentContentResource resource,
+                                                List<ByteRange> ranges) {
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        String mimeType = resource.getMimeType() != null ? resource.getMimeType() : defaultMimeType;
+
+        List<Buffer> partHeaders = ranges.stream()
+            .map(range -> Buffer.buffer(String.format("\r\n--%s\r\n%s: %s\r\n%s: %s\r\n\r\n", boundary,
+                Headers.CONTENT_TYPE_HEADER, mimeType,
+                Headers.CONTENT_RANGE_HEADER, range.contentRange(resource.getLength()))))
+            .collect(Collectors.toList());
+
+        Buffer trailer = Buffer.buffer(String.format("\r\n--%s--\r\n", boundary));
+
+        long contentLength = trailer.length();
+        for (int i = 0; i < ranges.size(); ++ i)
+            contentLength += partHeaders.get(i).length() + ranges.get(i).getLength();
+
+        ctx.response()
+            .setStatusCode(ResponseStatus.PARTIAL_CONTENT.getStatusCode())
+            .setStatusMessage(ResponseStatus.PARTIAL_CONTENT.getStatusMessage())
+            .putHeader(Headers.CONTENT_TYPE_HEADER, "multipart/byteranges; boundary=" + boundary)
+            .putHeader(Headers.CONTENT_LENGTH_HEADER, String.valueOf(contentLength));
 
-                    ResponseUtils.complete(ctx);
-                });
+        logger.debug("outgoing multipart file transfer started ({} ranges) ...", ranges.size());
+        pumpRanges(ctx, resource, ranges.iterator(), partHeaders.iterator(), trailer);
+    }
 
-            logger.debug("outgoing file transfer started ...");
-            pump.start();
+    private void pumpRanges(RoutingContext ctx, DocumentContentResource resource,
+                            Iterator<ByteRange> ranges, Iterator<Buffer> partHeaders, Buffer trailer) {
+        HttpServerResponse response = ctx.response();
+
+        if (! ranges.hasNext()) {
+            logger.info("... outgoing multipart file transfer completed.");
+            resource.getCloseHandler().handle(null);
+            response.end(trailer);
+        } else {
+            response.write(partHeaders.next());
+            pumpRange(ctx, resource, ranges.next(),
+                done -> pumpRanges(ctx, resource, ranges, partHeaders, trailer));
         }
     }
 
+    /* pumps a single range of the document into the response, then invokes the handler with the bytes transferred */
+    private void pumpRange(RoutingContext ctx, DocumentContentResource resource, ByteRange range,
+                           Handler<Long> completionHandler) {
+        RangeReadStream rangeReadStream = resource.getRangeReadStream(range.getFirst(), range.getLength());
+        Pump pump = Pump.pump(rangeReadStream, ctx.response(), 8192);
+        stopOnInterruption(ctx, resource, pump);
+
+        rangeReadStream
+            .exceptionHandler(exception -> {
+                pump.stop();
+                logger.error("Outgoing partial file transfer failed: {}", exception.toString());
+
+                resource.getCloseHandler().handle(null);
+                ctx.response().close();
+            })
+            .endHandler(event -> {
+                pump.stop();
+                completionHandler.handle(rangeReadStream.getBytesRead());
+            });
+
+        pump.start();
+    }
+
+    /* should the client go away mid-transfer, the pump is stopped and the document closed */
+    private void stopOnInterruption(RoutingContext ctx, DocumentContentResource resource, Pump pump) {
+        Handler<Void> interrupted = event -> {
+            pump.stop();
+            resource.getCloseHandler().handle(null);
+        };
+
+        ctx.response()
+            .closeHandler(interrupted)
+            .exceptionHandler(exception -> {
+                logger.warn("Outgoing file transfer interrupted: {}", exception.toString());
+                interrupted.handle(null);
+            });
+    }
+
     private boolean forceNoTrailingSlash(RoutingContext ctx) {
         boolean res = hasTrailingSlash(ctx);
         if (res) {
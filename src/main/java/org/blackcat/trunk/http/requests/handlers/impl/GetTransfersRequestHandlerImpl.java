@@ -0,0 +1,35 @@
+package org.blackcat.trunk.http.requests.handlers.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+import org.blackcat.trunk.http.requests.handlers.GetTransfersRequestHandler;
+import org.blackcat.trunk.streams.pump.TransferRegistry;
+import org.blackcat.trunk.streams.throttle.BandwidthLimiter;
+
+/**
+ * Reports in-flight transfers, transfer totals and bandwidth limiter statistics (admins only).
+ */
+final public class GetTransfersRequestHandlerImpl extends BaseUserRequestHandler
+    implements GetTransfersRequestHandler {
+
+    final private Logger logger = LoggerFactory.getLogger(GetTransfersRequestHandlerImpl.class);
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        super.handle(ctx);
+        checkJsonRequest(ctx, ok -> {
+            String email = ctx.get("email");
+            if (! configuration.isAdmin(email)) {
+                logger.warn("{} is not an admin", email);
+                jsonResponseBuilder.forbidden(ctx);
+                return;
+            }
+
+            JsonObject data = TransferRegistry.getInstance().statistics()
+                                  .put("bandwidth", BandwidthLimiter.getInstance().statistics());
+            jsonResponseBuilder.success(ctx, new JsonObject().put("data", data));
+        });
+    }
+}
@@ -0,0 +1,27 @@
+package org.blackcat.trunk.http.requests.handlers.impl;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+import org.blackcat.trunk.http.ResponseStatus;
+import org.blackcat.trunk.http.requests.handlers.HeadUploadRequestHandler;
+import org.blackcat.trunk.uploads.Upload;
+
+final public class HeadUploadRequestHandlerImpl extends BaseUserRequestHandler
+    implements HeadUploadRequestHandler {
+
+    final private Logger logger = LoggerFactory.getLogger(HeadUploadRequestHandlerImpl.class);
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        super.handle(ctx);
+
+        Upload upload = UploadResponses.lookup(ctx, uploadRegistry);
+        if (upload == null) {
+            logger.debug("No upload at {}", ctx.request().path());
+            UploadResponses.statusResponse(ctx, ResponseStatus.NOT_FOUND);
+        } else {
+            UploadResponses.offsetResponse(ctx, ResponseStatus.OK, upload);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.blackcat.trunk.http.requests.handlers.impl;
+
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+import org.blackcat.trunk.http.Headers;
+import org.blackcat.trunk.http.ResponseStatus;
+import org.blackcat.trunk.http.requests.handlers.PatchUploadRequestHandler;
+import org.blackcat.trunk.resource.exceptions.NotFoundException;
+import org.blackcat.trunk.uploads.Upload;
+
+/**
+ * Appends a chunk to an upload, at the offset the client believes the upload to be. If
+ * the connection drops mid-chunk, what has been received is kept: the client asks for
+ * the offset (HEAD) and resumes from there. The last chunk commits the document; should
+ * that fail, an empty PATCH at the end of the content retries the commit (parallel uploads
+ * included).
+ */
+final public class PatchUploadRequestHandlerImpl extends BaseUserRequestHandler
+    implements PatchUploadRequestHandler {
+
+    final private Logger logger = LoggerFactory.getLogger(PatchUploadRequestHandlerImpl.class);
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        super.handle(ctx);
+        HttpServerRequest request = ctx.request();
+
+        Upload upload = UploadResponses.lookup(ctx, uploadRegistry);
+        if (upload == null) {
+            UploadResponses.statusResponse(ctx, ResponseStatus.NOT_FOUND);
+            return;
+        }
+
+        String contentType = request.getHeader(Headers.CONTENT_TYPE_HEADER);
+        if (! Headers.UPLOAD_CONTENT_TYPE.equals(contentType)) {
+            UploadResponses.statusResponse(ctx, ResponseStatus.UNSUPPORTED_MEDIA_TYPE);
+            return;
+        }
+
+        if (! UploadResponses.reserve(ctx, storage, upload))
+            return;
+
+        Long offset = UploadResponses.parseLength(request.getHeader(Headers.UPLOAD_OFFSET_HEADER));
+        Long contentLength = UploadResponses.parseLength(request.getHeader(Headers.CONTENT_LENGTH_HEADER));
+        if (offset == null || contentLength == null) {
+            UploadResponses.statusResponse(ctx, ResponseStatus.BAD_REQUEST);
+            return;
+        }
+
+        /* parallel uploads are sent in chunks (see PutUploadChunkRequestHandlerImpl), only commits are retried here */
+        if (upload.isParallel()) {
+            if (contentLength != 0 || offset != upload.getLength() || ! upload.isComplete() || ! upload.acquire()) {
+                UploadResponses.offsetResponse(ctx, ResponseStatus.CONFLICT, upload);
+                return;
+            }
+
+            request.resume();
+            UploadResponses.commit(ctx, storage, uploadRegistry, upload);
+            return;
+        }
+
+        /* chunks are received one at a time, in order */
+        if (! upload.acquire()) {
+            UploadResponses.statusResponse(ctx, ResponseStatus.CONFLICT);
+            return;
+        }
+        if (offset != upload.getOffset()) {
+            logger.debug("Upload {} is at {}, not {}", upload.getId(), upload.getOffset(), offset);
+            upload.release();
+            UploadResponses.statusResponse(ctx, ResponseStatus.CONFLICT);
+            return;
+        }
+        if (offset + contentLength > upload.getLength()) {
+            upload.release();
+            UploadResponses.statusResponse(ctx, ResponseStatus.PAYLOAD_TOO_LARGE);
+            return;
+        }
+
+        storage.appendDocumentUpload(upload.getTempPath(), offset, request, appendAsyncResult -> {
+            if (appendAsyncResult.failed()) {
+                Throwable cause = appendAsyncResult.cause();
+                upload.release();
+
+                if (cause instanceof NotFoundException) {
+                    logger.warn("Upload {} lost its temporary file", upload.getId());
+                    uploadRegistry.remove(upload);
+                    UploadResponses.statusResponse(ctx, ResponseStatus.NOT_FOUND);
+                } else {
+                    logger.warn("Upload {} failed: {}", upload.getId(), cause.toString());
+                    UploadResponses.statusResponse(ctx, ResponseStatus.INTERNAL_SERVER_ERROR);
+                }
+                return;
+            }
+
+            upload.setOffset(appendAsyncResult.result());
+            logger.debug("Upload {} at {} of {} bytes", upload.getId(), upload.getOffset(), upload.getLength());
+
+            if (! upload.isComplete()) {
+                upload.release();
+                UploadResponses.offsetResponse(ctx, ResponseStatus.NO_CONTENT, upload);
+                return;
+            }
+
+            UploadResponses.commit(ctx, storage, uploadRegistry, upload);
+        });
+    }
+}
@@ -0,0 +1,188 @@
+package org.blackcat.trunk.http.requests.handlers.impl;
+
+import io.vertx.core.Future;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+import org.blackcat.trunk.http.Headers;
+import org.blackcat.trunk.http.requests.handlers.PostArchiveRequestHandler;
+import org.blackcat.trunk.mappers.UserMapper;
+import org.blackcat.trunk.queries.Queries;
+import org.blackcat.trunk.resource.exceptions.NotFoundException;
+import org.blackcat.trunk.streams.tar.ArchiveFormat;
+import org.blackcat.trunk.streams.tar.TarLayout;
+import org.blackcat.trunk.streams.tar.TarballReadStream;
+import org.blackcat.trunk.util.SortedWalk;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.blackcat.trunk.util.Utils.urlDecode;
+
+/**
+ * Archives a selection of documents and collections of the user's trunk, e.g.
+ *
+ * POST /archive {"format": "zip", "resources": ["/protected/uuid/a.txt", "/protected/uuid/photos/"]}
+ *
+ * Resources are given by their href (absolute or not). Members are named relative to
+ * the closest collection holding every selected resource.
+ */
+final public class PostArchiveRequestHandlerImpl extends BaseUserRequestHandler
+    implements PostArchiveRequestHandler {
+
+    final private Logger logger = LoggerFactory.getLogger(PostArchiveRequestHandlerImpl.class);
+
+    /** Selections larger than this are rejected */
+    static final int MAX_RESOURCES = 1000;
+
+    private static final Path PROTECTED_PREFIX = Paths.get("/protected");
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        super.handle(ctx);
+
+        JsonObject body;
+        try {
+            body = ctx.getBodyAsJson();
+        } catch (DecodeException de) {
+            logger.warn("Malformed archive request: {}", de.toString());
+            jsonResponseBuilder.badRequest(ctx);
+            return;
+        }
+
+        ArchiveFormat format = body == null ? null : ArchiveFormat.of(body.getString("format", "tar"));
+        List<Path> protectedPaths = body == null ? null : protectedPaths(body.getValue("resources"));
+        if (format == null || protectedPaths == null) {
+            logger.warn("Invalid archive request: {}", body);
+            jsonResponseBuilder.badRequest(ctx);
+            return;
+        }
+
+        Queries.findCreateUserEntityByEmail(ctx.vertx(), ctx.get("email"), userMapperAsyncResult -> {
+            if (userMapperAsyncResult.failed()) {
+                ctx.fail(userMapperAsyncResult.cause());
+                return;
+            }
+
+            /* only the owner's own resources can be archived */
+            UserMapper userMapper = userMapperAsyncResult.result();
+            Path userPath = Paths.get(userMapper.getUuid());
+            for (Path protectedPath : protectedPaths) {
+                if (! protectedPath.startsWith(userPath)) {
+                    logger.warn("{} is not owned by {}. Access denied.", protectedPath, userMapper.getEmail());
+                    jsonResponseBuilder.forbidden(ctx);
+                    return;
+                }
+            }
+
+            List<Path> resolvedPaths = new ArrayList<>();
+            protectedPaths.forEach(protectedPath -> resolvedPaths.add(storage.getRoot().resolve(protectedPath)));
+            archiveResponse(ctx, resolvedPaths, format);
+        });
+    }
+
+    private void archiveResponse(RoutingContext ctx, List<Path> resolvedPaths, ArchiveFormat format) {
+        Path archiveRoot = commonParent(resolvedPaths);
+
+        vertx.executeBlocking((Future<TarLayout> future) -> {
+            try {
+                /* overlapping selections yield each file once, in walk order */
+                Set<Path> members = new TreeSet<>(SortedWalk::compare);
+                for (Path resolvedPath : resolvedPaths) {
+                    if (! Files.exists(resolvedPath, LinkOption.NOFOLLOW_LINKS))
+                        throw new NotFoundException();
+
+                    ArchiveResponses.addMembers(storage, resolvedPath, members);
+                }
+                future.complete(TarLayout.of(archiveRoot, members.iterator()));
+            } catch (Exception e) {
+                future.fail(e);
+            }
+        }, false, layoutAsyncResult -> {
+            if (layoutAsyncResult.failed()) {
+                if (layoutAsyncResult.cause() instanceof NotFoundException)
+                    jsonResponseBuilder.notFound(ctx);
+                else
+                    ctx.fail(layoutAsyncResult.cause());
+                return;
+            }
+
+            TarLayout layout = layoutAsyncResult.result();
+            String archiveName = (archiveRoot.equals(storage.getRoot())
+                                      ? "trunk" : archiveRoot.getFileName().toString()) + "." + format.getExtension();
+
+            HttpServerResponse response = ctx.response()
+                                              .putHeader(Headers.CONTENT_TYPE_HEADER, format.getMimeType())
+                                              .putHeader(Headers.CONTENT_DISPOSITION,
+                                                  String.format("attachment; filename=\"%s\"", archiveName));
+
+            TarballReadStream tarballReadStream;
+            if (format == ArchiveFormat.TAR) {
+                response.putHeader(Headers.CONTENT_LENGTH_HEADER, String.valueOf(layout.getLength()));
+                tarballReadStream = TarballReadStream.create(vertx, layout, 0, layout.getLength(),
+                    configuration.getStorageArchiveWorkers(), configuration.getStorageArchiveChunkSize());
+            } else {
+                response.setChunked(true);
+                tarballReadStream = TarballReadStream.create(vertx, layout, format,
+                    configuration.getStorageArchiveCompressionLevel(),
+                    configuration.getStorageArchiveWorkers(), configuration.getStorageArchiveChunkSize());
+            }
+
+            logger.info("Archiving {} members of {} as {}", layout.getMembers().size(), archiveRoot, archiveName);
+            ArchiveResponses.stream(ctx, tarballReadStream, archiveName);
+        });
+    }
+
+    /* protected paths of the selected resources, null if anything is amiss */
+    static List<Path> protectedPaths(Object resources) {
+        if (! (resources instanceof JsonArray))
+            return null;
+
+        JsonArray hrefs = (JsonArray) resources;
+        if (hrefs.isEmpty() || hrefs.size() > MAX_RESOURCES)
+            return null;
+
+        List<Path> protectedPaths = new ArrayList<>();
+        for (Object href : hrefs) {
+            if (! (href instanceof String))
+                return null;
+
+            try {
+                String rawPath = new URI((String) href).getRawPath();
+                if (rawPath == null)
+                    return null;
+
+                Path path = Paths.get(urlDecode(rawPath)).normalize();
+                if (! path.startsWith(PROTECTED_PREFIX) || path.getNameCount() < 2)
+                    return null;
+
+                protectedPaths.add(PROTECTED_PREFIX.relativize(path));
+            } catch (URISyntaxException use) {
+                return null;
+            }
+        }
+        return protectedPaths;
+    }
+
+    /* the closest collection holding every path */
+    static Path commonParent(List<Path> paths) {
+        Path parent = paths.get(0).getParent();
+        for (Path path : paths) {
+            while (! path.startsWith(parent) || path.equals(parent))
+                parent = parent.getParent();
+        }
+        return parent;
+    }
+}
@@ -6,10 +6,18 @@ import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.core.streams.Pump;
 import io.vertx.ext.web.RoutingContext;
+import org.blackcat.trunk.http.Headers;
+import org.blackcat.trunk.http.ResponseStatus;
 import org.blackcat.trunk.http.requests.handlers.PostResourceRequestHandler;
 import org.blackcat.trunk.resource.Resource;
+import org.blackcat.trunk.resource.exceptions.DigestMismatchException;
+import org.blackcat.trunk.resource.exceptions.QuotaExceededException;
 import org.blackcat.trunk.resource.impl.DocumentContentResource;
+import org.blackcat.trunk.storage.UsageAccounting;
+import org.blackcat.trunk.streams.digest.DigestCalculator;
 import org.blackcat.trunk.streams.pump.PumpImpl;
+import org.blackcat.trunk.uploads.Upload;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.file.Path;
 
@@ -19,30 +27,71 @@ final public class PostResourceRequestHandlerImpl extends BaseUserRequestHandler
 
     final private Logger logger = LoggerFactory.getLogger(PostResourceRequestHandlerImpl.class);
 
+    /* bounds the bookkeeping of parallel uploads */
+    private static final long MAX_UPLOAD_CHUNKS = 100000;
+
     @Override
     public void handle(RoutingContext ctx) {
         super.handle(ctx);
 
-        if (ctx.get("requestType").equals(RequestType.HTML))
+        /* resumable uploads are negotiated with headers, whatever the client accepts */
+        if (ctx.request().getHeader(Headers.UPLOAD_LENGTH_HEADER) != null)
+            createUpload(ctx);
+
+        else if (ctx.get("requestType").equals(RequestType.HTML))
             jsonResponseBuilder.badRequest(ctx);
 
         else {
             HttpServerRequest request = ctx.request();
             Path protectedPath = protectedPath(ctx);
 
+            /* declared digests are checked before the document is replaced */
+            if (! new DigestCalculator().expect(request.getHeader(Headers.DIGEST_HEADER),
+                    request.getHeader(Headers.CONTENT_MD5_HEADER))) {
+                jsonResponseBuilder.badRequest(ctx);
+                return;
+            }
+
             Path resolvedPath = storage.getRoot().resolve(protectedPath);
             logger.debug("POST {} -> {}", protectedPath, resolvedPath);
 
-            storage.putDocumentResource(resolvedPath, resourceAsyncResult -> {
+            /* uploads that would not fit are refused before the client sends them (it waits for 100 Continue) */
+            Long contentLength = UploadResponses.parseLength(request.getHeader(Headers.CONTENT_LENGTH_HEADER));
+            UsageAccounting.Reservation reservation =
+                contentLength != null ? storage.getUsageAccounting().reserve(resolvedPath, contentLength) : null;
+            if (contentLength != null && reservation == null) {
+                logger.warn("Quota exceeded, refusing {} bytes for {}", contentLength, resolvedPath);
+                jsonResponseBuilder.insufficientStorage(ctx);
+                return;
+            }
+            if (Headers.EXPECT_CONTINUE.equalsIgnoreCase(request.getHeader(Headers.EXPECT_HEADER)))
+                ctx.response().writeContinue();
+
+            storage.putDocumentResource(resolvedPath, reservation, resourceAsyncResult -> {
+                Resource resource = resourceAsyncResult.result();
+
+                /* held until the content has been moved into place, or will never be */
+                if (reservation != null && ! (resource instanceof DocumentContentResource))
+                    reservation.release();
+
                 if (resourceAsyncResult.failed()) {
                     Throwable cause = resourceAsyncResult.cause();
-                    logger.warn("Conflict: {}", cause.toString());
-                    jsonResponseBuilder.conflict(ctx);
+                    if (cause instanceof DigestMismatchException) {
+                        logger.warn("Bad request: {}", cause.toString());
+                        jsonResponseBuilder.badRequest(ctx);
+                    } else if (cause instanceof QuotaExceededException) {
+                        logger.warn("Quota exceeded: {}", resolvedPath);
+                        jsonResponseBuilder.insufficientStorage(ctx);
+                    } else {
+                        logger.warn("Conflict: {}", cause.toString());
+                        jsonResponseBuilder.conflict(ctx);
+                    }
                 } else {
-                    Resource resource = resourceAsyncResult.result();
                     if (resource instanceof DocumentContentResource) {
                         DocumentContentResource documentResource = (DocumentContentResource) resource;
-                        setupContentTransfer(request, documentResource);
+                        documentResource.getDigestCalculator().expect(request.getHeader(Headers.DIGEST_HEADER),
+                            request.getHeader(Headers.CONTENT_MD5_HEADER));
+                        setupContentTransfer(request, documentResource, reservation);
                     } else {
                         jsonResponseBuilder.success(ctx, new JsonObject());
                     }
@@ -51,17 +100,129 @@ final public class PostResourceRequestHandlerImpl extends BaseUserRequestHandler
         }
     }
 
+    private void createUpload(RoutingContext ctx) {
+        HttpServerRequest request = ctx.request();
+        Long length = UploadResponses.parseLength(request.getHeader(Headers.UPLOAD_LENGTH_HEADER));
+
+        /* parallel uploads come in chunks of the given size */
+        String chunkSizeHeader = request.getHeader(Headers.UPLOAD_CHUNK_SIZE_HEADER);
+        Long chunkSize = chunkSizeHeader == null ? Long.valueOf(0) : UploadResponses.parseLength(chunkSizeHeader);
+
+        if (length == null || chunkSize == null ||
+                (chunkSizeHeader != null && (chunkSize == 0 || length == 0 || (length - 1) / chunkSize >= MAX_UPLOAD_CHUNKS))) {
+            UploadResponses.statusResponse(ctx, ResponseStatus.BAD_REQUEST);
+            return;
+        }
+
+        String checksumHeader = request.getHeader(Headers.UPLOAD_CHECKSUM_HEADER);
+        UploadResponses.Checksum checksum = UploadResponses.parseChecksum(checksumHeader);
+        if (checksumHeader != null && checksum == null) {
+            UploadResponses.statusResponse(ctx, ResponseStatus.BAD_REQUEST);
+            return;
+        }
+
+        Path resolvedPath = storage.getRoot().resolve(protectedPath(ctx));
+        logger.debug("POST (resumable, {} bytes) {}", length, resolvedPath);
+
+        if (checksum == null || ! checksum.isSHA256()) {
+            startUpload(ctx, resolvedPath, length, chunkSize);
+            return;
+        }
+
+        /* content known to the storage already is not transferred again (the storage reserves for it) */
+        storage.putDocumentByDigest(resolvedPath, checksum.expected, length, digestAsyncResult -> {
+            if (digestAsyncResult.failed()) {
+                logger.warn("Conflict: {}", digestAsyncResult.cause().toString());
+                UploadResponses.statusResponse(ctx, UploadResponses.failureStatus(digestAsyncResult.cause()));
+            } else if (digestAsyncResult.result()) {
+                logger.info("Document {} put by digest, {} bytes not transferred", resolvedPath, length);
+                ctx.response()
+                    .putHeader(Headers.UPLOAD_OFFSET_HEADER, String.valueOf(length))
+                    .putHeader(Headers.UPLOAD_LENGTH_HEADER, String.valueOf(length));
+                UploadResponses.statusResponse(ctx, ResponseStatus.NO_CONTENT);
+            } else {
+                startUpload(ctx, resolvedPath, length, chunkSize);
+            }
+        });
+    }
+
+    private void startUpload(RoutingContext ctx, Path resolvedPath, long length, long chunkSize) {
+        /* held by the upload until it is committed, terminated or expired */
+        UsageAccounting.Reservation reservation = storage.getUsageAccounting().reserve(resolvedPath, length);
+        if (reservation == null) {
+            logger.warn("Quota exceeded, refusing {} bytes for {}", length, resolvedPath);
+            UploadResponses.statusResponse(ctx, ResponseStatus.INSUFFICIENT_STORAGE);
+            return;
+        }
+
+        storage.putDocumentUpload(resolvedPath, tempPathAsyncResult -> {
+            if (tempPathAsyncResult.failed()) {
+                reservation.release();
+                logger.warn("Conflict: {}", tempPathAsyncResult.cause().toString());
+                UploadResponses.statusResponse(ctx, ResponseStatus.CONFLICT);
+                return;
+            }
+
+            Upload upload = new Upload(ctx.get("email"), resolvedPath, tempPathAsyncResult.result(), length, chunkSize);
+            upload.setReservation(reservation);
+            if (! upload.isParallel()) {
+                registerUpload(ctx, upload);
+                return;
+            }
+
+            /* chunks are written at their positions, in whatever order they come */
+            storage.allocateDocumentUpload(upload.getTempPath(), length, allocateAsyncResult -> {
+                if (allocateAsyncResult.failed()) {
+                    reservation.release();
+                    logger.warn("Could not allocate {}: {}", upload.getTempPath(), allocateAsyncResult.cause().toString());
+                    UploadResponses.statusResponse(ctx, ResponseStatus.CONFLICT);
+                } else {
+                    registerUpload(ctx, upload);
+                }
+            });
+        });
+    }
+
+    private void registerUpload(RoutingContext ctx, Upload upload) {
+        uploadRegistry.register(upload, registerAsyncResult -> {
+            if (registerAsyncResult.failed()) {
+                upload.releaseReservation();
+                logger.error("Could not register upload: {}", registerAsyncResult.cause().toString());
+                UploadResponses.statusResponse(ctx, ResponseStatus.INTERNAL_SERVER_ERROR);
+            } else {
+                logger.info("Upload {} created for {}", upload.getId(), upload.getPath());
+                ctx.response().putHeader(Headers.LOCATION_HEADER, UploadResponses.UPLOADS_PREFIX + upload.getId());
+                UploadResponses.offsetResponse(ctx, ResponseStatus.CREATED, upload);
+            }
+        });
+    }
+
     private void setupContentTransfer(HttpServerRequest request,
-                                      DocumentContentResource resource) {
+                                      DocumentContentResource resource,
+                                      @Nullable UsageAccounting.Reservation reservation) {
         Pump pump = Pump.pump(request, resource.getWriteStream());
 
+        /* digests are computed as the content flows, never read back from disk */
+        ((PumpImpl<?>) pump).observer(resource.getDigestCalculator()::update);
+
         request.endHandler(event -> {
+            pump.stop();
             logger.debug("... incoming file transfer completed, {} bytes transferred.",
                 ((PumpImpl) pump).getBytesPumped());
 
             resource.getCloseHandler().handle(null);
         });
 
+        /* an interrupted transfer is never committed, the temporary file is just closed */
+        request.exceptionHandler(exception -> {
+            pump.stop();
+            logger.warn("Incoming file transfer interrupted: {}", exception.toString());
+
+            resource.getWriteStream().end();
+            if (reservation != null)
+                reservation.release();
+        });
+
         logger.debug("incoming file transfer started ...");
         pump.start();
 
@@ -1,6 +1,5 @@
 package org.blackcat.trunk.http.requests.handlers.impl;
 
-import io.vertx.core.Future;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
@@ -8,6 +7,8 @@ import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.web.RoutingContext;
 import org.blackcat.trunk.http.requests.handlers.PutSharingInformationRequestHandler;
 import org.blackcat.trunk.http.requests.response.ResponseUtils;
+import org.blackcat.trunk.jobs.JobStatus;
+import org.blackcat.trunk.jobs.ShareRewriteJob;
 import org.blackcat.trunk.mappers.UserMapper;
 import org.blackcat.trunk.queries.Queries;
 
@@ -16,7 +17,6 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static org.blackcat.trunk.util.Utils.isValidEmail;
 import static org.blackcat.trunk.util.Utils.urlDecode;
@@ -36,28 +36,43 @@ final public class PutSharingInformationRequestHandlerImpl extends BaseUserReque
                     ctx.fail(userMapperAsyncResult.cause());
                 else {
                     UserMapper userMapper = userMapperAsyncResult.result();
-                    if (userOwnsThisCollection(userMapper, collectionPath)) {
+                    if (! userOwnsThisCollection(userMapper, collectionPath)) {
+                        jsonResponseBuilder.methodNotAllowed(ctx);
+                    } else if (configuration.isShareInheritanceEnabled()) {
+                        writeCollectionShareInfo(ctx, collectionPath, userMapper);
+                    } else {
                         asyncRewriteCollectionShareInfo(ctx, collectionPath, userMapper);
-                    } else jsonResponseBuilder.methodNotAllowed(ctx);
+                    }
                 }
             });
         });
     }
 
-    private void asyncRewriteCollectionShareInfo(RoutingContext ctx, Path collectionPath, UserMapper userMapper) {
-        vertx.executeBlocking((Future<List<Path>> future) -> {
-            future.complete(pathStream(collectionPath).collect(Collectors.toList()));
-        }, asyncResult -> {
-            if (asyncResult.failed()) {
-                ctx.fail(asyncResult.cause());
+    /* descendants inherit the share, a single write is enough */
+    private void writeCollectionShareInfo(RoutingContext ctx, Path collectionPath, UserMapper userMapper) {
+        Queries.findUpdateShareEntity(ctx.vertx(), userMapper, collectionPath, newAuthorizedUsers(ctx), ar -> {
+            if (ar.failed()) {
+                logger.error("Failed to write sharing information for {}", collectionPath);
+                ctx.fail(ar.cause());
             } else {
-                setupRewriteTaskChain(ctx, userMapper, newAuthorizedUsers(ctx), asyncResult.result());
+                logger.info("Updated share permissions for {}, owner is {}.", collectionPath, userMapper.getEmail());
+                jsonResponseBuilder.success(ctx, new JsonObject());
             }
         });
     }
 
-    private Stream<Path> pathStream(Path collectionPath) {
-        return storage.streamDirectory(storage.getRoot().resolve(collectionPath));
+    /* per path shares: every descendant gets its own copy, which may take a while */
+    private void asyncRewriteCollectionShareInfo(RoutingContext ctx, Path collectionPath, UserMapper userMapper) {
+        JobStatus status = ShareRewriteJob.newStatus(userMapper, collectionPath, newAuthorizedUsers(ctx));
+        ShareRewriteJob.create(vertx, storage, jobRegistry, status,
+            configuration.getShareRewriteBatchSize(),
+            configuration.getShareRewriteConcurrency()).start();
+
+        /* return control to the user, process will continue in background */
+        jsonResponseBuilder.success(ctx, new JsonObject()
+                                             .put("data", new JsonObject()
+                                                              .put("job", status.getId())
+                                                              .put("href", "/jobs/" + status.getId())));
     }
 
     private boolean userOwnsThisCollection(UserMapper userMapper, Path collectionPath) {
@@ -70,53 +85,6 @@ final public class PutSharingInformationRequestHandlerImpl extends BaseUserReque
         return topLevelPath.relativize(requestPath);
     }
 
-    private void setupRewriteTaskChain(RoutingContext ctx, UserMapper userMapper,
-                                       List<String> newAuthorizedUsers, List<Path> paths) {
-
-        /* first link of the chain */
-        Future<Void> initFuture = Future.future(invoked -> {
-            logger.info("Started updating share permissions, owner is {}.", userMapper.getEmail());
-            jsonResponseBuilder.success(ctx, new JsonObject()); /* return control to the user, process will continue in background */
-        });
-
-        /* put together intermediate links of the chain (actual tasks) */
-        Future<Void> prevFuture = initFuture;
-        for (Path path : paths) {
-            Future chainFuture = Future.<Void> future();
-            rewriteTask(ctx, userMapper, path, newAuthorizedUsers, prevFuture, chainFuture);
-            prevFuture = chainFuture;
-        }
-
-        /* last link of the chain */
-        prevFuture.compose(invoked -> {
-            logger.info("Done updating share permissions ({} entries processed).", paths.size());
-        }, initFuture);
-
-        /* let's get this thing started ... */
-        initFuture.complete();
-    }
-
-    private Future rewriteTask(RoutingContext ctx, UserMapper userMapper,
-                               Path path, List<String> newAuthorizedUsers,
-                               Future<Void> prevFuture, Future chainFuture) {
-        return prevFuture.compose(invoked -> {
-            Queries.findUpdateShareEntity(ctx.vertx(), userMapper,
-                relativePath(path), newAuthorizedUsers, ar -> {
-                    if (ar.failed()) {
-                        logger.error("Failed to rewrite sharing information for {}", path);
-                        chainFuture.fail(ar.cause());
-                    } else {
-                        logger.debug("Rewrote sharing information for {}", path);
-                        chainFuture.complete();
-                    }
-                });
-        }, chainFuture);
-    }
-
-    private Path relativePath(Path path) {
-        return storage.getRoot().relativize(path);
-    }
-
     private List<String> newAuthorizedUsers(RoutingContext ctx) {
         JsonObject bodyAsJson = ctx.getBodyAsJson();
         JsonArray authorizedUsers = bodyAsJson.getJsonArray("authorizedUsers");
@@ -0,0 +1,95 @@
+package org.blackcat.trunk.http.requests.handlers.impl;
+
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+import org.blackcat.trunk.http.Headers;
+import org.blackcat.trunk.http.ResponseStatus;
+import org.blackcat.trunk.http.requests.handlers.PutUploadChunkRequestHandler;
+import org.blackcat.trunk.resource.exceptions.NotFoundException;
+import org.blackcat.trunk.uploads.Upload;
+
+/**
+ * Receives a chunk of a parallel upload (PUT /uploads/id/index), whole and with its
+ * checksum. Chunks may come concurrently and in any order, each is written at its own
+ * position; a chunk that fails or does not match its checksum is simply sent again, while
+ * one received already is refused. The last chunk commits the document, a failed commit
+ * is retried with an empty PATCH (see PatchUploadRequestHandlerImpl).
+ */
+final public class PutUploadChunkRequestHandlerImpl extends BaseUserRequestHandler
+    implements PutUploadChunkRequestHandler {
+
+    final private Logger logger = LoggerFactory.getLogger(PutUploadChunkRequestHandlerImpl.class);
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        super.handle(ctx);
+        HttpServerRequest request = ctx.request();
+
+        Upload upload = UploadResponses.lookup(ctx, uploadRegistry);
+        Integer index = upload == null || ! upload.isParallel() ? null : UploadResponses.chunkIndex(ctx, upload);
+        if (index == null) {
+            UploadResponses.statusResponse(ctx, ResponseStatus.NOT_FOUND);
+            return;
+        }
+
+        String contentType = request.getHeader(Headers.CONTENT_TYPE_HEADER);
+        if (! Headers.UPLOAD_CONTENT_TYPE.equals(contentType)) {
+            UploadResponses.statusResponse(ctx, ResponseStatus.UNSUPPORTED_MEDIA_TYPE);
+            return;
+        }
+
+        Long contentLength = UploadResponses.parseLength(request.getHeader(Headers.CONTENT_LENGTH_HEADER));
+        UploadResponses.Checksum checksum = UploadResponses.parseChecksum(request.getHeader(Headers.UPLOAD_CHECKSUM_HEADER));
+        if (contentLength == null || contentLength != upload.getChunkLength(index) || checksum == null) {
+            UploadResponses.statusResponse(ctx, ResponseStatus.BAD_REQUEST);
+            return;
+        }
+
+        if (! UploadResponses.reserve(ctx, storage, upload))
+            return;
+
+        /* received already, being received, or the upload is being committed */
+        if (! upload.acquireChunk(index)) {
+            UploadResponses.offsetResponse(ctx, ResponseStatus.CONFLICT, upload);
+            return;
+        }
+
+        storage.writeDocumentUpload(upload.getTempPath(), upload.getChunkPosition(index), request,
+            checksum::update, writeAsyncResult -> {
+                if (writeAsyncResult.failed()) {
+                    upload.releaseChunk(index, false);
+
+                    Throwable cause = writeAsyncResult.cause();
+                    if (cause instanceof NotFoundException) {
+                        logger.warn("Upload {} lost its temporary file", upload.getId());
+                        uploadRegistry.remove(upload);
+                        UploadResponses.statusResponse(ctx, ResponseStatus.NOT_FOUND);
+                    } else {
+                        logger.warn("Chunk {} of upload {} failed: {}", index, upload.getId(), cause.toString());
+                        UploadResponses.statusResponse(ctx, ResponseStatus.INTERNAL_SERVER_ERROR);
+                    }
+                    return;
+                }
+
+                /* an interrupted chunk is short, and has to be sent again anyway */
+                boolean verified = writeAsyncResult.result() == upload.getChunkLength(index) && checksum.matches();
+                if (! verified) {
+                    upload.releaseChunk(index, false);
+                    logger.warn("Chunk {} of upload {} is corrupt", index, upload.getId());
+                    UploadResponses.statusResponse(ctx, ResponseStatus.CHECKSUM_MISMATCH);
+                    return;
+                }
+
+                boolean last = upload.releaseChunk(index, true);
+                uploadRegistry.persist(upload);
+                if (! last) {
+                    UploadResponses.offsetResponse(ctx, ResponseStatus.NO_CONTENT, upload);
+                    return;
+                }
+
+                UploadResponses.commit(ctx, storage, uploadRegistry, upload);
+            });
+    }
+}
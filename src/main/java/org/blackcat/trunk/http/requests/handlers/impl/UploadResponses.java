@@ -0,0 +1,217 @@
+package org.blackcat.trunk.http.requests.handlers.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+import org.blackcat.trunk.http.Headers;
+import org.blackcat.trunk.http.ResponseStatus;
+import org.blackcat.trunk.resource.exceptions.QuotaExceededException;
+import org.blackcat.trunk.storage.Storage;
+import org.blackcat.trunk.uploads.Upload;
+import org.blackcat.trunk.uploads.UploadRegistry;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.blackcat.trunk.util.Utils.urlDecode;
+
+/**
+ * Helpers shared by the resumable upload handlers. Replies follow tus 1.0 (core protocol
+ * plus creation, termination and checksum): headers only, no body. Parallel uploads are
+ * an extension of ours, with Upload-Chunk-Size and Upload-Missing-Chunks headers.
+ */
+final class UploadResponses {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadResponses.class);
+
+    static final String UPLOADS_PREFIX = "/uploads/";
+
+    /* as named in Upload-Checksum headers (tus checksum extension) */
+    private static final Map<String, String> checksumAlgorithms = new HashMap<>();
+    static {
+        checksumAlgorithms.put("md5", "MD5");
+        checksumAlgorithms.put("sha1", "SHA-1");
+        checksumAlgorithms.put("sha256", "SHA-256");
+    }
+
+    private UploadResponses() {
+    }
+
+    /**
+     * @param ctx
+     * @param uploadRegistry
+     * @return the upload addressed by the request, or null if there is no such upload
+     * (other users' uploads do not exist, as far as the requester is concerned)
+     */
+    static Upload lookup(RoutingContext ctx, UploadRegistry uploadRegistry) {
+        String id = urlDecode(ctx.request().path()).substring(UPLOADS_PREFIX.length());
+        int slash = id.indexOf('/');
+        if (slash >= 0)
+            id = id.substring(0, slash);
+
+        Upload upload = uploadRegistry.get(id);
+        if (upload == null || ! ctx.<String>get("email").equals(upload.getOwner()))
+            return null;
+
+        return upload;
+    }
+
+    /**
+     * @param ctx
+     * @param upload
+     * @return the index of the chunk addressed by the request (/uploads/id/index), or
+     * null if there is no such chunk
+     */
+    static Integer chunkIndex(RoutingContext ctx, Upload upload) {
+        String path = urlDecode(ctx.request().path());
+        String prefix = UPLOADS_PREFIX + upload.getId() + "/";
+        if (! path.startsWith(prefix))
+            return null;
+
+        Long index = parseLength(path.substring(prefix.length()));
+        return index == null || index >= upload.getChunkCount() ? null : index.intValue();
+    }
+
+    /**
+     * Parses an Upload-Checksum header, i.e. algorithm name and base64 encoded digest.
+     *
+     * @param header
+     * @return the expected checksum, or null if header is missing or invalid
+     */
+    static Checksum parseChecksum(String header) {
+        if (header == null)
+            return null;
+
+        String[] parts = header.trim().split(" +");
+        String algorithm = parts.length == 2 ? checksumAlgorithms.get(parts[0].toLowerCase()) : null;
+        if (algorithm == null)
+            return null;
+
+        try {
+            return new Checksum(MessageDigest.getInstance(algorithm), Base64.getDecoder().decode(parts[1]));
+        } catch (NoSuchAlgorithmException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param header
+     * @return the non negative value of header, or null if missing or invalid
+     */
+    static Long parseLength(String header) {
+        if (header == null)
+            return null;
+
+        try {
+            long length = Long.parseLong(header.trim());
+            return length < 0 ? null : length;
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
+
+    /**
+     * @param cause
+     * @return the status reporting a failure to create or commit an upload
+     */
+    static ResponseStatus failureStatus(Throwable cause) {
+        return cause instanceof QuotaExceededException ? ResponseStatus.INSUFFICIENT_STORAGE : ResponseStatus.CONFLICT;
+    }
+
+    /**
+     * Reserves the length of an upload against its owner's quota, unless it has been already:
+     * reservations are not persisted, so uploads left by a previous run reserve again as
+     * they are resumed. Replies if the quota would be exceeded.
+     *
+     * @param ctx
+     * @param storage
+     * @param upload
+     * @return false if the quota would be exceeded
+     */
+    static boolean reserve(RoutingContext ctx, Storage storage, Upload upload) {
+        if (upload.reserve(storage.getUsageAccounting()))
+            return true;
+
+        logger.warn("Quota exceeded, refusing to resume upload {}", upload.getId());
+        statusResponse(ctx, ResponseStatus.INSUFFICIENT_STORAGE);
+        return false;
+    }
+
+    /**
+     * Moves a complete upload into place, which must have been left busy. A failed commit
+     * leaves the upload in the registry, to be retried with an empty PATCH at its end.
+     *
+     * @param ctx
+     * @param storage
+     * @param uploadRegistry
+     * @param upload
+     */
+    static void commit(RoutingContext ctx, Storage storage, UploadRegistry uploadRegistry, Upload upload) {
+        storage.commitDocumentUpload(upload.getTempPath(), upload.getPath(), upload.getReservation(), commitAsyncResult -> {
+            upload.release();
+            if (commitAsyncResult.failed()) {
+                logger.warn("Could not commit upload {}: {}", upload.getId(), commitAsyncResult.cause().toString());
+                statusResponse(ctx, failureStatus(commitAsyncResult.cause()));
+            } else {
+                uploadRegistry.remove(upload);
+                offsetResponse(ctx, ResponseStatus.NO_CONTENT, upload);
+            }
+        });
+    }
+
+    static void offsetResponse(RoutingContext ctx, ResponseStatus status, Upload upload) {
+        ctx.response()
+            .putHeader(Headers.UPLOAD_OFFSET_HEADER, String.valueOf(upload.getOffset()))
+            .putHeader(Headers.UPLOAD_LENGTH_HEADER, String.valueOf(upload.getLength()))
+            .putHeader(Headers.CACHE_CONTROL_HEADER, "no-store");
+
+        if (upload.isParallel()) {
+            ctx.response()
+                .putHeader(Headers.UPLOAD_CHUNK_SIZE_HEADER, String.valueOf(upload.getChunkSize()))
+                .putHeader(Headers.UPLOAD_MISSING_CHUNKS_HEADER, upload.getMissingChunks());
+        }
+
+        statusResponse(ctx, status);
+    }
+
+    static void statusResponse(RoutingContext ctx, ResponseStatus status) {
+        HttpServerResponse response = ctx.response();
+        if (response.ended() || response.closed())
+            return;
+
+        response
+            .setStatusCode(status.getStatusCode())
+            .setStatusMessage(status.getStatusMessage())
+            .putHeader(Headers.TUS_RESUMABLE_HEADER, Headers.TUS_VERSION)
+            .putHeader(Headers.CONTENT_LENGTH_HEADER, "0")
+            .end();
+    }
+
+    /* a digest being computed, and the value it is expected to have */
+    static final class Checksum {
+        final MessageDigest digest;
+        final byte[] expected;
+
+        Checksum(MessageDigest digest, byte[] expected) {
+            this.digest = digest;
+            this.expected = expected;
+        }
+
+        void update(Buffer buffer) {
+            digest.update(buffer.getByteBuf().nioBuffer());
+        }
+
+        boolean isSHA256() {
+            return "SHA-256".equals(digest.getAlgorithm());
+        }
+
+        boolean matches() {
+            return MessageDigest.isEqual(expected, digest.digest());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.blackcat.trunk.http.requests.impl;
 
 import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
@@ -14,12 +15,15 @@ import io.vertx.ext.web.handler.*;
 import io.vertx.ext.web.sstore.LocalSessionStore;
 import io.vertx.ext.web.templ.PebbleTemplateEngine;
 import org.blackcat.trunk.conf.Configuration;
+import org.blackcat.trunk.http.Headers;
 import org.blackcat.trunk.http.middleware.UserInfoHandler;
 import org.blackcat.trunk.http.requests.MainHandler;
 import org.blackcat.trunk.http.requests.handlers.*;
 import org.blackcat.trunk.http.requests.response.impl.HtmlResponseBuilderImpl;
 import org.blackcat.trunk.http.requests.response.impl.JsonResponseBuilderImpl;
+import org.blackcat.trunk.jobs.JobRegistry;
 import org.blackcat.trunk.storage.Storage;
+import org.blackcat.trunk.uploads.UploadRegistry;
 
 import java.text.MessageFormat;
 
@@ -29,24 +33,33 @@ import static org.blackcat.trunk.conf.Keys.OAUTH2_PROVIDER_KEYCLOAK;
 public final class MainHandlerImpl implements MainHandler {
 
     private final String OAUTH2_CALLBACK_LOCATION = "/callback";
+
+    /* an archive request is a list of hrefs, no more than this many bytes */
+    private final long ARCHIVE_REQUEST_BODY_LIMIT = 1024 * 1024;
     private final Logger logger = LoggerFactory.getLogger(MainHandlerImpl.class);
 
     private final Configuration configuration;
     private final Vertx vertx;
     private final Router router;
     private final Storage storage;
+    private final JobRegistry jobRegistry;
+    private final UploadRegistry uploadRegistry;
 
     private final HtmlResponseBuilderImpl htmlResponseBuilder;
     private final JsonResponseBuilderImpl jsonResponseBuilder;
 
     public MainHandlerImpl(final Vertx vertx,
                            final Configuration configuration,
-                           final Storage storage) {
+                           final Storage storage,
+                           final JobRegistry jobRegistry,
+                           final UploadRegistry uploadRegistry) {
 
         this.vertx = vertx;
         this.router = Router.router(vertx);
         this.configuration = configuration;
         this.storage = storage;
+        this.jobRegistry = jobRegistry;
+        this.uploadRegistry = uploadRegistry;
 
         this.htmlResponseBuilder = new HtmlResponseBuilderImpl(PebbleTemplateEngine.create(vertx));
         this.jsonResponseBuilder = new JsonResponseBuilderImpl();
@@ -64,14 +77,33 @@ public final class MainHandlerImpl implements MainHandler {
 
     private void setupMiddlewareHandlers() {
 
+        /* document uploads send 100 Continue by themselves, once they know the content fits the user quota */
+        router.route().handler(ctx -> {
+            HttpServerRequest request = ctx.request();
+            if (Headers.EXPECT_CONTINUE.equalsIgnoreCase(request.getHeader(Headers.EXPECT_HEADER)) &&
+                    ! (request.method() == HttpMethod.POST && request.path().startsWith("/protected/")))
+                ctx.response().writeContinue();
+
+            ctx.next();
+        });
+
         /* hack required to prevent request to be prematurely consumed when doing uploads */
         router.postWithRegex("/protected/.*").handler(ctx -> {
             ctx.request().pause();
             ctx.next();
         });
+        router.patchWithRegex("/uploads/.*").handler(ctx -> {
+            ctx.request().pause();
+            ctx.next();
+        });
+        router.putWithRegex("/uploads/.*").handler(ctx -> {
+            ctx.request().pause();
+            ctx.next();
+        });
 
         /* required */
         router.putWithRegex("/share/.*").handler(BodyHandler.create());
+        router.post("/archive").handler(BodyHandler.create().setBodyLimit(ARCHIVE_REQUEST_BODY_LIMIT));
 
         // We need cookies, sessions and request bodies
         router.route().handler(CookieHandler.create());
@@ -92,6 +124,8 @@ public final class MainHandlerImpl implements MainHandler {
         ctx.put( vertxKey, vertx);
         ctx.put( storageKey, storage);
         ctx.put( configurationKey, configuration);
+        ctx.put( jobRegistryKey, jobRegistry);
+        ctx.put( uploadRegistryKey, uploadRegistry);
 
         // it's up to the request handler to decider whether to use one or the other
         ctx.put(jsonResponseBuilderKey, jsonResponseBuilder);
@@ -116,7 +150,7 @@ public final class MainHandlerImpl implements MainHandler {
 
     private void setupProtectedHandlers() {
         /* An extra handler to fetch user info into context */
-        UserInfoHandler userInfoHandler = UserInfoHandler.create();
+        UserInfoHandler userInfoHandler = UserInfoHandler.create(configuration);
 
         /* protected */
         router.routeWithRegex("/protected/.*")
@@ -153,6 +187,42 @@ public final class MainHandlerImpl implements MainHandler {
         router.getWithRegex("/share/.*")
             .handler(GetSharingInformationRequestHandler.create());
 
+        /* background jobs */
+        router.routeWithRegex("/jobs/.*")
+            .handler(userInfoHandler);
+
+        router.getWithRegex("/jobs/.*")
+            .handler(GetJobStatusRequestHandler.create());
+
+        /* archives of selected resources */
+        router.route("/archive")
+            .handler(userInfoHandler);
+
+        router.post("/archive")
+            .handler(PostArchiveRequestHandler.create());
+
+        /* resumable uploads, created by POSTing to /protected/... */
+        router.routeWithRegex("/uploads/.*")
+            .handler(userInfoHandler);
+
+        router.headWithRegex("/uploads/.*")
+            .handler(HeadUploadRequestHandler.create());
+
+        router.patchWithRegex("/uploads/.*")
+            .handler(PatchUploadRequestHandler.create());
+
+        router.putWithRegex("/uploads/.*")
+            .handler(PutUploadChunkRequestHandler.create());
+
+        router.deleteWithRegex("/uploads/.*")
+            .handler(DeleteUploadRequestHandler.create());
+
+        /* administration */
+        router.routeWithRegex("/admin/.*")
+            .handler(userInfoHandler);
+
+        router.get("/admin/transfers")
+            .handler(GetTransfersRequestHandler.create());
     }
 
     private void setupPublicHandlers() {
@@ -199,6 +269,10 @@ public final class MainHandlerImpl implements MainHandler {
         authHandler.setupCallback(router.get(OAUTH2_CALLBACK_LOCATION));
         router.routeWithRegex("/protected/.*").handler(authHandler);
         router.routeWithRegex("/share/.*").handler(authHandler);
+        router.routeWithRegex("/jobs/.*").handler(authHandler);
+        router.route("/archive").handler(authHandler);
+        router.routeWithRegex("/uploads/.*").handler(authHandler);
+        router.routeWithRegex("/admin/.*").handler(authHandler);
     }
 
     @Override
@@ -207,7 +281,8 @@ public final class MainHandlerImpl implements MainHandler {
         router.accept(request);
     }
 
-    public static MainHandlerImpl create(Vertx vertx, Configuration configuration, Storage storage) {
-        return new MainHandlerImpl(vertx, configuration, storage);
+    public static MainHandlerImpl create(Vertx vertx, Configuration configuration, Storage storage,
+                                         JobRegistry jobRegistry, UploadRegistry uploadRegistry) {
+        return new MainHandlerImpl(vertx, configuration, storage, jobRegistry, uploadRegistry);
     }
 }
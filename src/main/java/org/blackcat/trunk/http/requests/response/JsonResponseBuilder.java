@@ -5,4 +5,6 @@ import io.vertx.ext.web.RoutingContext;
 
 public interface JsonResponseBuilder extends ResponseBuilder {
     void success(RoutingContext ctx, JsonObject result);
+
+    /* 507 */ void insufficientStorage(RoutingContext ctx);
 }
\ No newline at end of file
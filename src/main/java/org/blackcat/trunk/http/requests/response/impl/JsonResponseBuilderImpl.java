@@ -60,6 +60,11 @@ final public class JsonResponseBuilderImpl implements JsonResponseBuilder {
         errorResponse(ctx, ResponseStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @Override
+    public void insufficientStorage(RoutingContext ctx) {
+        errorResponse(ctx, ResponseStatus.INSUFFICIENT_STORAGE);
+    }
+
     private void errorResponse(RoutingContext ctx, ResponseStatus status) {
         ctx.response()
             .setStatusCode(status.getStatusCode())
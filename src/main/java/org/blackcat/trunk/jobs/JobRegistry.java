@@ -0,0 +1,53 @@
+package org.blackcat.trunk.jobs;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import org.blackcat.trunk.jobs.impl.JobRegistryImpl;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Keeps track of background jobs, persisting their status as JSON files in a directory.
+ */
+public interface JobRegistry {
+
+    /**
+     * Starts tracking status. The status is persisted right away.
+     *
+     * @param status
+     */
+    void register(JobStatus status);
+
+    /**
+     * @param id
+     * @return the status of the job with the given id, or null
+     */
+    JobStatus get(String id);
+
+    /**
+     * @param owner
+     * @return the status of every job owned by owner, most recent first
+     */
+    List<JobStatus> list(String owner);
+
+    /**
+     * Persists the current status of a registered job. Concurrent requests for the same job
+     * are coalesced, the last status always gets written.
+     *
+     * @param status
+     */
+    void persist(JobStatus status);
+
+    /**
+     * Loads the jobs left unfinished by a previous run (e.g. to resume them).
+     *
+     * @param handler
+     */
+    void loadUnfinished(Handler<AsyncResult<List<JobStatus>>> handler);
+
+    static JobRegistry create(Vertx vertx, Path directory) {
+        return new JobRegistryImpl(vertx, directory);
+    }
+}
@@ -0,0 +1,189 @@
+package org.blackcat.trunk.jobs;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of a background job. Statuses are persisted by the {@link JobRegistry}
+ * so that unfinished jobs can be resumed after a restart, starting from their
+ * checkpoint (whose meaning is up to the job).
+ *
+ * Not thread safe, meant to be updated from the context the job runs on.
+ */
+final public class JobStatus {
+
+    public enum State { RUNNING, COMPLETED, FAILED }
+
+    private final String id;
+    private final String type;
+    private final String owner;
+    private final JsonObject params;
+    private final long startedAt;
+
+    private State state = State.RUNNING;
+    private long processed;
+    private long total = -1;
+    private String checkpoint;
+    private String error;
+    private long updatedAt;
+    private long finishedAt;
+
+    /* throughput is measured since the job was (re)started in this process */
+    private long resumedAt;
+    private long processedAtResume;
+
+    public JobStatus(String type, String owner, JsonObject params) {
+        this(UUID.randomUUID().toString(), type, owner, params, System.currentTimeMillis());
+    }
+
+    private JobStatus(String id, String type, String owner, JsonObject params, long startedAt) {
+        this.id = id;
+        this.type = type;
+        this.owner = owner;
+        this.params = params;
+        this.startedAt = startedAt;
+        this.updatedAt = startedAt;
+        this.resumedAt = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public JsonObject getParams() {
+        return params;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isFinished() {
+        return state != State.RUNNING;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    /**
+     * @return the number of items to be processed, or -1 if not known (yet)
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+        this.updatedAt = System.currentTimeMillis();
+    }
+
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Records count more items as processed, everything up to checkpoint included.
+     *
+     * @param count
+     * @param checkpoint
+     */
+    public void advance(long count, String checkpoint) {
+        this.processed += count;
+        this.checkpoint = checkpoint;
+        this.updatedAt = System.currentTimeMillis();
+    }
+
+    public void complete() {
+        this.state = State.COMPLETED;
+        this.updatedAt = this.finishedAt = System.currentTimeMillis();
+    }
+
+    public void fail(String error) {
+        this.state = State.FAILED;
+        this.error = error;
+        this.updatedAt = this.finishedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @param now
+     * @return the estimated time to completion in seconds, or null if it can not be estimated
+     */
+    public Long getEta(long now) {
+        long elapsed = now - resumedAt;
+        long progress = processed - processedAtResume;
+        if (isFinished() || total < 0 || progress <= 0 || elapsed <= 0)
+            return null;
+
+        long remaining = Math.max(0, total - processed);
+        return TimeUnit.MILLISECONDS.toSeconds(remaining * elapsed / progress);
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject()
+                              .put("id", id)
+                              .put("type", type)
+                              .put("owner", owner)
+                              .put("params", params)
+                              .put("state", state.name())
+                              .put("processed", processed)
+                              .put("total", total)
+                              .put("startedAt", startedAt)
+                              .put("updatedAt", updatedAt);
+
+        if (checkpoint != null)
+            json.put("checkpoint", checkpoint);
+        if (error != null)
+            json.put("error", error);
+        if (finishedAt != 0)
+            json.put("finishedAt", finishedAt);
+
+        return json;
+    }
+
+    /**
+     * @return the persisted fields plus progress ratio and ETA, for reporting
+     */
+    public JsonObject toReport() {
+        return toJson()
+                   .put("progress", total > 0 ? Math.min(1.0, (double) processed / total) : null)
+                   .put("etaSeconds", getEta(System.currentTimeMillis()));
+    }
+
+    public static JobStatus fromJson(JsonObject json) {
+        JobStatus status = new JobStatus(json.getString("id"), json.getString("type"),
+            json.getString("owner"), json.getJsonObject("params"), json.getLong("startedAt"));
+
+        status.state = State.valueOf(json.getString("state"));
+        status.processed = status.processedAtResume = json.getLong("processed", 0L);
+        status.total = json.getLong("total", -1L);
+        status.checkpoint = json.getString("checkpoint");
+        status.error = json.getString("error");
+        status.updatedAt = json.getLong("updatedAt", status.startedAt);
+        status.finishedAt = json.getLong("finishedAt", 0L);
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return "JobStatus" + toJson().encode();
+    }
+}
@@ -0,0 +1,49 @@
+package org.blackcat.trunk.jobs;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.blackcat.trunk.eventbus.codecs.UserMapperCodec;
+import org.blackcat.trunk.jobs.impl.ShareRewriteJobImpl;
+import org.blackcat.trunk.mappers.UserMapper;
+import org.blackcat.trunk.storage.Storage;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Rewrites the per path share of every resource in a collection (the collection
+ * itself included). Paths are streamed from the storage and written in batches, a
+ * bounded number of batches at a time; progress is checkpointed after every batch.
+ */
+public interface ShareRewriteJob {
+
+    String TYPE = "share-rewrite";
+
+    /**
+     * Starts (or resumes) the job.
+     */
+    void start();
+
+    JobStatus getStatus();
+
+    /**
+     * Prepares the status of a new job.
+     *
+     * @param owner the owner of the collection
+     * @param collectionPath the collection, relative to the storage root
+     * @param authorizedUsers the new share
+     * @return
+     */
+    static JobStatus newStatus(UserMapper owner, Path collectionPath, List<String> authorizedUsers) {
+        return new JobStatus(TYPE, owner.getEmail(), new JsonObject()
+                                                          .put("owner", UserMapperCodec.toJson(owner))
+                                                          .put("collectionPath", collectionPath.toString())
+                                                          .put("authorizedUsers", new JsonArray(authorizedUsers)));
+    }
+
+    static ShareRewriteJob create(Vertx vertx, Storage storage, JobRegistry jobRegistry,
+                                  JobStatus status, int batchSize, int concurrency) {
+        return new ShareRewriteJobImpl(vertx, storage, jobRegistry, status, batchSize, concurrency);
+    }
+}
@@ -0,0 +1,50 @@
+package org.blackcat.trunk.jobs;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.blackcat.trunk.jobs.impl.TreeDeleteJobImpl;
+import org.blackcat.trunk.storage.Storage;
+
+import java.nio.file.Path;
+
+/**
+ * Removes a deleted collection from its tombstone (see {@link Storage#deleteTree}).
+ * Nested collections are walked in parallel, each entry being removed at a rate
+ * bounded for all jobs together; progress is the number of documents removed so far.
+ */
+public interface TreeDeleteJob {
+
+    String TYPE = "tree-delete";
+
+    /**
+     * Starts (or resumes) the job.
+     */
+    void start();
+
+    JobStatus getStatus();
+
+    /**
+     * Prepares the status of a new job.
+     *
+     * @param owner the email of the owner of the collection, or null if not known
+     * @param collectionPath the collection, relative to the storage root (the tombstone
+     * itself if not known)
+     * @param tombstone where the collection has been moved to (resolved)
+     * @param documents the number of documents in the collection, or -1 if not known
+     * @return
+     */
+    static JobStatus newStatus(String owner, Path collectionPath, Path tombstone, long documents) {
+        JobStatus status = new JobStatus(TYPE, owner, new JsonObject()
+                                                          .put("collectionPath", collectionPath.toString())
+                                                          .put("tombstone", tombstone.toString()));
+        status.setTotal(documents);
+        return status;
+    }
+
+    /**
+     * @param rate the entries removed per second, at most, by all jobs together
+     */
+    static TreeDeleteJob create(Vertx vertx, JobRegistry jobRegistry, JobStatus status, int rate) {
+        return new TreeDeleteJobImpl(vertx, jobRegistry, status, rate);
+    }
+}
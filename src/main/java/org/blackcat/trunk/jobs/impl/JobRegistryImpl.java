@@ -0,0 +1,137 @@
+package org.blackcat.trunk.jobs.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.blackcat.trunk.jobs.JobRegistry;
+import org.blackcat.trunk.jobs.JobStatus;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+final public class JobRegistryImpl implements JobRegistry {
+
+    final private Logger logger = LoggerFactory.getLogger(JobRegistryImpl.class);
+
+    static final private String jobFileSuffix = ".json";
+
+    private final Vertx vertx;
+    private final Path directory;
+    private final Map<String, JobStatus> jobs = new ConcurrentHashMap<>();
+
+    /* jobs being written, and jobs to be written again as soon as that is done */
+    private final Set<String> persisting = new HashSet<>();
+    private final Set<String> dirty = new HashSet<>();
+
+    public JobRegistryImpl(Vertx vertx, Path directory) {
+        this.vertx = vertx;
+        this.directory = directory;
+    }
+
+    @Override
+    public void register(JobStatus status) {
+        jobs.put(status.getId(), status);
+        persist(status);
+    }
+
+    @Override
+    public JobStatus get(String id) {
+        return jobs.get(id);
+    }
+
+    @Override
+    public List<JobStatus> list(String owner) {
+        return jobs.values().stream()
+                   .filter(status -> owner.equals(status.getOwner()))
+                   .sorted(Comparator.comparingLong(JobStatus::getStartedAt).reversed())
+                   .collect(Collectors.toList());
+    }
+
+    @Override
+    public void persist(JobStatus status) {
+        String id = status.getId();
+        synchronized (this) {
+            if (persisting.contains(id)) {
+                dirty.add(id);
+                return;
+            }
+            persisting.add(id);
+        }
+
+        /* serialized on the calling thread, written on a worker */
+        String contents = status.toJson().encodePrettily();
+        vertx.executeBlocking(future -> {
+            try {
+                write(id, contents);
+                future.complete();
+            } catch (IOException ioe) {
+                future.fail(ioe);
+            }
+        }, false, done -> {
+            if (done.failed())
+                logger.warn("Could not persist status of job {}: {}", id, done.cause().toString());
+
+            boolean again;
+            synchronized (this) {
+                persisting.remove(id);
+                again = dirty.remove(id);
+            }
+            if (again)
+                persist(status);
+        });
+    }
+
+    @Override
+    public void loadUnfinished(Handler<AsyncResult<List<JobStatus>>> handler) {
+        vertx.executeBlocking((Future<List<JobStatus>> future) -> {
+            List<JobStatus> unfinished = new ArrayList<>();
+            if (Files.isDirectory(directory)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + jobFileSuffix)) {
+                    for (Path path : stream) {
+                        try {
+                            JobStatus status = JobStatus.fromJson(
+                                new JsonObject(new String(Files.readAllBytes(path), StandardCharsets.UTF_8)));
+
+                            jobs.put(status.getId(), status);
+                            if (! status.isFinished())
+                                unfinished.add(status);
+                        } catch (IOException | DecodeException | IllegalArgumentException | NullPointerException e) {
+                            logger.warn("Skipping unreadable job status {}: {}", path, e.toString());
+                        }
+                    }
+                } catch (IOException ioe) {
+                    future.fail(ioe);
+                    return;
+                }
+            }
+            future.complete(unfinished);
+        }, handler);
+    }
+
+    /* write then rename, a crash never leaves a truncated status behind */
+    private void write(String id, String contents) throws IOException {
+        Files.createDirectories(directory);
+
+        Path target = directory.resolve(id + jobFileSuffix);
+        Path temp = directory.resolve("." + id + ".tmp");
+        Files.write(temp, contents.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
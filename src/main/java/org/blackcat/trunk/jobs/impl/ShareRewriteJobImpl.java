@@ -0,0 +1,188 @@
+package org.blackcat.trunk.jobs.impl;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.blackcat.trunk.eventbus.codecs.UserMapperCodec;
+import org.blackcat.trunk.jobs.JobRegistry;
+import org.blackcat.trunk.jobs.JobStatus;
+import org.blackcat.trunk.jobs.ShareRewriteJob;
+import org.blackcat.trunk.mappers.UserMapper;
+import org.blackcat.trunk.queries.Queries;
+import org.blackcat.trunk.storage.Storage;
+import org.blackcat.trunk.util.SortedWalk;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+final public class ShareRewriteJobImpl implements ShareRewriteJob {
+
+    final private Logger logger = LoggerFactory.getLogger(ShareRewriteJobImpl.class);
+
+    private final Vertx vertx;
+    private final Storage storage;
+    private final JobRegistry jobRegistry;
+    private final JobStatus status;
+    private final int batchSize;
+    private final int concurrency;
+
+    private final UserMapper owner;
+    private final Path collectionPath;
+    private final List<String> authorizedUsers;
+
+    /* accessed on worker threads only, one at a time (ordered) */
+    private SortedWalk walk;
+
+    private boolean fetching;
+    private boolean exhausted;
+    private int inFlight;
+
+    /* batches are checkpointed in walk order, whatever order they complete in */
+    private long nextSequence;
+    private long nextCheckpoint;
+    private final TreeMap<Long, List<Path>> completed = new TreeMap<>();
+
+    public ShareRewriteJobImpl(Vertx vertx, Storage storage, JobRegistry jobRegistry,
+                               JobStatus status, int batchSize, int concurrency) {
+        this.vertx = vertx;
+        this.storage = storage;
+        this.jobRegistry = jobRegistry;
+        this.status = status;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+
+        JsonObject params = status.getParams();
+        this.owner = UserMapperCodec.fromJson(params.getJsonObject("owner"));
+        this.collectionPath = Paths.get(params.getString("collectionPath"));
+        this.authorizedUsers = params.getJsonArray("authorizedUsers").getList();
+    }
+
+    @Override
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    @Override
+    public void start() {
+        jobRegistry.register(status);
+
+        Path start = storage.getRoot().resolve(collectionPath);
+        String checkpoint = status.getCheckpoint();
+        walk = new SortedWalk(start, checkpoint != null ? storage.getRoot().resolve(checkpoint) : null);
+
+        if (checkpoint != null)
+            logger.info("Resuming share rewrite job {} after {} ({} entries already processed).",
+                status.getId(), checkpoint, status.getProcessed());
+        else
+            logger.info("Started share rewrite job {} for {}, owner is {}.",
+                status.getId(), collectionPath, owner.getEmail());
+
+        /* counting is cheap compared to writing, and gives an ETA */
+        if (status.getTotal() < 0) {
+            vertx.executeBlocking((Future<Long> future) -> {
+                try (Stream<Path> paths = storage.streamDirectory(start)) {
+                    future.complete(paths.count());
+                }
+            }, false, countAsyncResult -> {
+                if (countAsyncResult.succeeded()) {
+                    status.setTotal(countAsyncResult.result());
+                    jobRegistry.persist(status);
+                }
+            });
+        }
+
+        pump();
+    }
+
+    /* keeps up to `concurrency` batches in flight, fetching one batch at a time from the walk */
+    private void pump() {
+        if (status.isFinished())
+            return;
+
+        if (exhausted) {
+            if (inFlight == 0)
+                complete();
+            return;
+        }
+
+        if (fetching || inFlight >= concurrency)
+            return;
+
+        fetching = true;
+        vertx.executeBlocking((Future<List<Path>> future) -> {
+            try {
+                future.complete(walk.next(batchSize));
+            } catch (Exception e) {
+                future.fail(e);
+            }
+        }, true, batchAsyncResult -> {
+            fetching = false;
+            if (batchAsyncResult.failed()) {
+                fail(batchAsyncResult.cause());
+                return;
+            }
+
+            List<Path> batch = batchAsyncResult.result();
+            if (batch.size() < batchSize)
+                exhausted = true;
+
+            if (! batch.isEmpty())
+                write(nextSequence ++, batch);
+
+            pump();
+        });
+    }
+
+    private void write(long sequence, List<Path> batch) {
+        List<Path> relativePaths = batch.stream()
+                                       .map(path -> storage.getRoot().relativize(path))
+                                       .collect(Collectors.toList());
+
+        ++ inFlight;
+        Queries.bulkUpdateShareEntities(vertx, owner, relativePaths, authorizedUsers, ar -> {
+            -- inFlight;
+            if (ar.failed()) {
+                fail(ar.cause());
+            } else {
+                logger.debug("Rewrote sharing information for {} entries (batch #{})", relativePaths.size(), sequence);
+                completed.put(sequence, relativePaths);
+                checkpoint();
+                pump();
+            }
+        });
+    }
+
+    private void checkpoint() {
+        boolean advanced = false;
+        while (! completed.isEmpty() && completed.firstKey() == nextCheckpoint) {
+            List<Path> batch = completed.remove(nextCheckpoint ++);
+            status.advance(batch.size(), batch.get(batch.size() - 1).toString());
+            advanced = true;
+        }
+
+        if (advanced)
+            jobRegistry.persist(status);
+    }
+
+    private void complete() {
+        status.complete();
+        jobRegistry.persist(status);
+        logger.info("Done with share rewrite job {} ({} entries processed).", status.getId(), status.getProcessed());
+    }
+
+    private void fail(Throwable cause) {
+        if (status.isFinished())
+            return;
+
+        logger.error("Share rewrite job {} failed after {} entries: {}", status.getId(),
+            status.getProcessed(), cause.toString());
+        status.fail(cause.toString());
+        jobRegistry.persist(status);
+    }
+}
@@ -0,0 +1,179 @@
+package org.blackcat.trunk.jobs.impl;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.blackcat.trunk.jobs.JobRegistry;
+import org.blackcat.trunk.jobs.JobStatus;
+import org.blackcat.trunk.jobs.TreeDeleteJob;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+final public class TreeDeleteJobImpl implements TreeDeleteJob {
+
+    final private Logger logger = LoggerFactory.getLogger(TreeDeleteJobImpl.class);
+
+    static private final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    /* the rate is the bound, a few walkers are enough to keep up with it on slow disks */
+    static private final int PARALLELISM = 4;
+
+    /* walkers sleep between removals, so they get threads of their own, shared by all jobs */
+    static private final ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+
+    /* the rate bounds all jobs together, removals are spaced by a single pacer */
+    static private final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+
+    private final Vertx vertx;
+    private final JobRegistry jobRegistry;
+    private final JobStatus status;
+    private final Path tombstone;
+    private final long interval;
+
+    /* updated by the walkers, reported on the context the job was started on */
+    private final AtomicLong removed = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private long reported;
+
+    public TreeDeleteJobImpl(Vertx vertx, JobRegistry jobRegistry, JobStatus status, int rate) {
+        this.vertx = vertx;
+        this.jobRegistry = jobRegistry;
+        this.status = status;
+        this.tombstone = Paths.get(status.getParams().getString("tombstone"));
+        this.interval = TimeUnit.SECONDS.toNanos(1) / rate;
+    }
+
+    @Override
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    @Override
+    public void start() {
+        jobRegistry.register(status);
+
+        String collectionPath = status.getParams().getString("collectionPath");
+        if (status.getProcessed() > 0)
+            logger.info("Resuming tree delete job {} for {} ({} documents already removed).",
+                status.getId(), collectionPath, status.getProcessed());
+        else
+            logger.info("Started tree delete job {} for {}, owner is {}.",
+                status.getId(), collectionPath, status.getOwner());
+
+        Context context = vertx.getOrCreateContext();
+        long timerId = vertx.setPeriodic(PROGRESS_INTERVAL, id -> report());
+        pool.execute(() -> {
+            String error = null;
+            try {
+                /* gone already if the job was done but not recorded as such */
+                if (Files.exists(tombstone, LinkOption.NOFOLLOW_LINKS))
+                    new RemoveTask(tombstone).invoke();
+            } catch (RuntimeException re) {
+                error = re.toString();
+            }
+
+            String cause = error;
+            context.runOnContext(v -> {
+                vertx.cancelTimer(timerId);
+                report();
+
+                if (cause != null)
+                    fail(cause);
+                else if (failures.get() > 0)
+                    fail(String.format("%d entries could not be removed", failures.get()));
+                else
+                    complete();
+            });
+        });
+    }
+
+    private void report() {
+        long count = removed.get() - reported;
+        if (count > 0) {
+            reported += count;
+            status.advance(count, null);
+            jobRegistry.persist(status);
+        }
+    }
+
+    /* spaces removals evenly, whichever walker performs them */
+    private void pace() {
+        long now = System.nanoTime();
+        long slot = Math.max(now, nextSlot.getAndUpdate(next -> Math.max(next, now) + interval));
+        try {
+            if (slot > now)
+                TimeUnit.NANOSECONDS.sleep(slot - now);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void remove(Path path, boolean document) {
+        pace();
+        try {
+            Files.deleteIfExists(path);
+            if (document)
+                removed.incrementAndGet();
+        } catch (IOException ioe) {
+            logger.warn("Could not remove {}: {}", path, ioe.toString());
+            failures.incrementAndGet();
+        }
+    }
+
+    private void complete() {
+        status.complete();
+        jobRegistry.persist(status);
+        logger.info("Done with tree delete job {} ({} documents removed).", status.getId(), status.getProcessed());
+    }
+
+    private void fail(String error) {
+        logger.error("Tree delete job {} failed after {} documents: {}", status.getId(),
+            status.getProcessed(), error);
+        status.fail(error);
+        jobRegistry.persist(status);
+    }
+
+    /* removes the entries of a directory, forking one task per nested directory, then the directory itself */
+    private final class RemoveTask extends RecursiveAction {
+        final Path directory;
+
+        RemoveTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            List<RemoveTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        RemoveTask subtask = new RemoveTask(entry);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    } else
+                        remove(entry, true);
+                }
+            } catch (IOException ioe) {
+                logger.warn("Could not list {}: {}", directory, ioe.toString());
+                failures.incrementAndGet();
+            }
+
+            for (RemoveTask subtask : subtasks)
+                subtask.join();
+
+            remove(directory, false);
+        }
+    }
+}
@@ -6,14 +6,67 @@ import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.blackcat.trunk.eventbus.codecs.MapperCodecs;
+import org.blackcat.trunk.eventbus.codecs.UserMapperCodec;
 import org.blackcat.trunk.eventbus.data.QueryType;
 import org.blackcat.trunk.mappers.ShareMapper;
 import org.blackcat.trunk.mappers.UserMapper;
 
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 final public class Queries {
+
+    static final private Logger logger = LoggerFactory.getLogger(Queries.class);
+
+    /** Keys of cached entries affected by a write (a JSON array, one message per write) are published here by the data store, so that every instance drops them */
+    static final public String INVALIDATIONS_ADDRESS = "data-store.invalidations";
+
+    static final private String SHARE_KEY_PREFIX = "share:";
+
+    static final private long CACHE_STATISTICS_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    /* one cache per vertx instance, shared by all the verticles deployed on it */
+    static final private Map<Vertx, QueryCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * Enables caching of user and share lookups for vertx. Subsequent calls have no effect.
+     *
+     * @param vertx
+     * @param maxEntries the maximum number of cached lookups
+     * @param ttl time to live of cached lookups, in seconds
+     */
+    static public void enableCache(Vertx vertx, int maxEntries, long ttl) {
+        if (maxEntries <= 0 || ttl <= 0)
+            return;
+
+        caches.computeIfAbsent(vertx, v -> {
+            QueryCache queryCache = new QueryCache(maxEntries, TimeUnit.SECONDS.toMillis(ttl));
+
+            v.eventBus().<JsonArray>consumer(INVALIDATIONS_ADDRESS, msg ->
+                msg.body().forEach(key -> queryCache.invalidate((String) key)));
+            v.setPeriodic(CACHE_STATISTICS_INTERVAL, id ->
+                logger.debug("Query cache statistics: {}", queryCache.statistics()));
+
+            return queryCache;
+        });
+    }
+
+    /**
+     * @param vertx
+     * @return hit/miss and latency statistics for the query cache, or null if caching is disabled
+     */
+    static public JsonObject cacheStatistics(Vertx vertx) {
+        QueryCache queryCache = caches.get(vertx);
+        return queryCache != null ? queryCache.statistics() : null;
+    }
+
     /**
      * Retrieves a User entity by email, or creates a new one if no such entity exists.
      *
@@ -27,15 +80,7 @@ final public class Queries {
                                .put("params", new JsonObject()
                                                   .put("email", email));
 
-        vertx.eventBus()
-            .send("data-store", query, reply -> {
-                if (reply.failed())
-                    handler.handle(Future.failedFuture(reply.cause()));
-                else {
-                    JsonObject obj = (JsonObject) reply.result().body();
-                    handler.handle(Future.succeededFuture(obj.mapTo(UserMapper.class)));
-                }
-            });
+        cachedQuery(vertx, userKey(email), query, handler);
     }
 
     /**
@@ -53,23 +98,62 @@ final public class Queries {
         JsonObject query = new JsonObject()
                                .put("type", QueryType.FIND_UPDATE_SHARE.getTag())
                                .put("params", new JsonObject()
-                                                  .put("owner", JsonObject.mapFrom(owner))
+                                                  .put("owner", UserMapperCodec.toJson(owner))
                                                   .put("collectionPath", collectionPath.toString())
                                                   .put("authorizedUsers", new JsonArray(authorizedUsers)));
 
         vertx.eventBus()
             .send("data-store", query, reply -> {
+                /* right away, the data store is going to publish the invalidation to everyone else */
+                QueryCache queryCache = caches.get(vertx);
+                if (queryCache != null)
+                    queryCache.invalidate(shareKey(collectionPath));
+
                 if (reply.failed())
                     handler.handle(Future.failedFuture(reply.cause()));
-                else {
-                    JsonObject obj = (JsonObject) reply.result().body();
-                    handler.handle(Future.succeededFuture(obj.mapTo(ShareMapper.class)));
-                }
+                else
+                    handler.handle(Future.succeededFuture((ShareMapper) reply.result().body()));
+            });
+    }
+
+    /**
+     * Updates (or creates) the sharing entities corresponding to collectionPaths in a single
+     * data store write.
+     *
+     * @param owner
+     * @param collectionPaths
+     * @param authorizedUsers
+     * @param handler
+     */
+    static public void bulkUpdateShareEntities(Vertx vertx, UserMapper owner, List<Path> collectionPaths,
+                                               List<String> authorizedUsers, Handler<AsyncResult<Void>> handler) {
+
+        JsonArray paths = new JsonArray();
+        collectionPaths.forEach(path -> paths.add(path.toString()));
+
+        JsonObject query = new JsonObject()
+                               .put("type", QueryType.BULK_UPDATE_SHARES.getTag())
+                               .put("params", new JsonObject()
+                                                  .put("owner", UserMapperCodec.toJson(owner))
+                                                  .put("collectionPaths", paths)
+                                                  .put("authorizedUsers", new JsonArray(authorizedUsers)));
+
+        vertx.eventBus()
+            .send("data-store", query, reply -> {
+                QueryCache queryCache = caches.get(vertx);
+                if (queryCache != null)
+                    collectionPaths.forEach(path -> queryCache.invalidate(shareKey(path)));
+
+                if (reply.failed())
+                    handler.handle(Future.failedFuture(reply.cause()));
+                else
+                    handler.handle(Future.succeededFuture());
             });
     }
 
     /**
-     * Fetches an existing share entity related to collectionPath or NULL if no such entity exists.
+     * Fetches the share entity in effect for collectionPath: its own or, when shares are inherited,
+     * the one of its nearest ancestor. A blank (not persisted) entity is returned if no such entity exists.
      *
      * @param collectionPath
      * @param handler
@@ -79,14 +163,59 @@ final public class Queries {
                                .put("type", QueryType.FIND_SHARE.getTag())
                                .put("params", new JsonObject()
                                                   .put("collectionPath", collectionPath.toString()));
+
+        cachedQuery(vertx, shareKey(collectionPath), query, handler);
+    }
+
+    /* sends query to the data store, unless a reply for key is cached */
+    @SuppressWarnings("unchecked")
+    static private <T> void cachedQuery(Vertx vertx, String key, JsonObject query,
+                                        Handler<AsyncResult<T>> handler) {
+        QueryCache queryCache = caches.get(vertx);
+        if (queryCache != null) {
+            Object cached = queryCache.get(key);
+            if (cached != null) {
+                handler.handle(Future.succeededFuture((T) MapperCodecs.copyOf(cached)));
+                return;
+            }
+        }
+
+        long generation = queryCache != null ? queryCache.generation() : 0;
+        long started = System.nanoTime();
+
         vertx.eventBus()
             .send("data-store", query, reply -> {
                 if (reply.failed())
                     handler.handle(Future.failedFuture(reply.cause()));
                 else {
-                    JsonObject obj = (JsonObject) reply.result().body();
-                    handler.handle(Future.succeededFuture(obj.mapTo(ShareMapper.class)));
+                    T obj = (T) reply.result().body();
+                    if (queryCache != null) {
+                        queryCache.recordRoundTrip(System.nanoTime() - started);
+                        queryCache.put(key, obj, generation);
+                        obj = (T) MapperCodecs.copyOf(obj);
+                    }
+                    handler.handle(Future.succeededFuture(obj));
                 }
             });
     }
+
+    static private String userKey(String email) {
+        return "user:" + email;
+    }
+
+    /**
+     * @param collectionPath
+     * @return the cache key for the share entity of collectionPath
+     */
+    static public String shareKey(Path collectionPath) {
+        return SHARE_KEY_PREFIX + collectionPath.toString();
+    }
+
+    /**
+     * @param key
+     * @return the collection path a share cache key refers to, or null for any other key
+     */
+    static public Path sharePath(String key) {
+        return key.startsWith(SHARE_KEY_PREFIX) ? Paths.get(key.substring(SHARE_KEY_PREFIX.length())) : null;
+    }
 }
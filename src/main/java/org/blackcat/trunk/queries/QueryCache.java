@@ -0,0 +1,183 @@
+package org.blackcat.trunk.queries;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded read-through cache of data-store replies, keyed by query.
+ *
+ * Entries expire after a fixed time to live and least recently used entries are
+ * evicted once the configured number of entries is exceeded. Replies are cached as
+ * received; callers are handed copies of cached mappers (see
+ * {@link org.blackcat.trunk.eventbus.codecs.MapperCodecs#copyOf}), never the cached
+ * instances themselves.
+ *
+ * Keys are also kept sorted, so that invalidating a whole tree of keys costs as much
+ * as the number of keys actually dropped.
+ */
+final public class QueryCache {
+
+    private final int maxEntries;
+    private final long ttl;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry> entries;
+    private final TreeSet<String> sortedKeys;
+
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final AtomicLong roundTripNanos = new AtomicLong();
+
+    /**
+     * @param maxEntries the maximum number of cached replies
+     * @param ttl time to live of cached replies, in milliseconds
+     */
+    public QueryCache(int maxEntries, long ttl) {
+        this(maxEntries, ttl, System::currentTimeMillis);
+    }
+
+    QueryCache(int maxEntries, long ttl, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(256, 0.75f, true);
+        this.sortedKeys = new TreeSet<>();
+    }
+
+    /**
+     * Returns the cached reply for key, or null.
+     *
+     * @param key
+     * @return
+     */
+    public Object get(String key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > clock.getAsLong()) {
+                    hits.incrementAndGet();
+                    return entry.value;
+                }
+
+                remove(key);
+                expirations.incrementAndGet();
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Returns a token to be passed to {@link #put(String, Object, long)}. Must be taken
+     * before the query is sent so that invalidations received meanwhile are not lost.
+     *
+     * @return
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches value for key, unless anything has been invalidated since generation was taken.
+     *
+     * @param key
+     * @param value
+     * @param generation
+     */
+    public synchronized void put(String key, Object value, long generation) {
+        if (generation != this.generation)
+            return;
+
+        entries.put(key, new Entry(value, clock.getAsLong() + ttl));
+        sortedKeys.add(key);
+
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            sortedKeys.remove(iterator.next().getKey());
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops key, along with every key below it when keys are paths (e.g. the shares
+     * inherited from the collection key refers to).
+     *
+     * @param key
+     */
+    public synchronized void invalidate(String key) {
+        ++ generation;
+        invalidations.incrementAndGet();
+
+        remove(key);
+
+        /* keys starting with key + "/" sort between key + "/" and key + "0" */
+        Iterator<String> iterator = sortedKeys.subSet(key + "/", key + "0").iterator();
+        while (iterator.hasNext()) {
+            entries.remove(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Records the duration of a data-store round trip (i.e. a miss).
+     *
+     * @param nanos
+     */
+    public void recordRoundTrip(long nanos) {
+        roundTrips.incrementAndGet();
+        roundTripNanos.addAndGet(nanos);
+    }
+
+    public JsonObject statistics() {
+        long hits = this.hits.get();
+        long misses = this.misses.get();
+        long lookups = hits + misses;
+        long roundTrips = this.roundTrips.get();
+
+        JsonObject statistics = new JsonObject()
+                                    .put("hits", hits)
+                                    .put("misses", misses)
+                                    .put("hitRatio", lookups == 0 ? 0.0 : (double) hits / lookups)
+                                    .put("evictions", evictions.get())
+                                    .put("expirations", expirations.get())
+                                    .put("invalidations", invalidations.get())
+                                    .put("averageRoundTripMillis", roundTrips == 0 ? 0.0 :
+                                        (double) roundTripNanos.get() / roundTrips / TimeUnit.MILLISECONDS.toNanos(1));
+
+        synchronized (this) {
+            statistics
+                .put("entries", entries.size())
+                .put("maxEntries", maxEntries);
+        }
+        return statistics;
+    }
+
+    private void remove(String key) {
+        if (entries.remove(key) != null)
+            sortedKeys.remove(key);
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long expiresAt;
+
+        Entry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
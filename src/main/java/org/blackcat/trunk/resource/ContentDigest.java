@@ -0,0 +1,68 @@
+package org.blackcat.trunk.resource;
+
+import io.vertx.core.json.JsonObject;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Digests of the content of a document (SHA-256 and CRC32C), computed once as it is
+ * written and kept along with it, so that downloads carry them at no cost.
+ */
+final public class ContentDigest {
+
+    private final byte[] sha256;
+    private final int crc32c;
+
+    public ContentDigest(byte[] sha256, int crc32c) {
+        this.sha256 = sha256.clone();
+        this.crc32c = crc32c;
+    }
+
+    public byte[] getSha256() {
+        return sha256.clone();
+    }
+
+    public int getCrc32c() {
+        return crc32c;
+    }
+
+    /**
+     * @return the value of a Digest header (RFC 3230) carrying both digests, base64 encoded
+     */
+    public String toDigestHeader() {
+        Base64.Encoder encoder = Base64.getEncoder();
+        return "sha-256=" + encoder.encodeToString(sha256) +
+                   ",crc32c=" + encoder.encodeToString(ByteBuffer.allocate(4).putInt(crc32c).array());
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                   .put("sha256", sha256)
+                   .put("crc32c", crc32c);
+    }
+
+    public static ContentDigest fromJson(JsonObject json) {
+        return new ContentDigest(json.getBinary("sha256"), json.getInteger("crc32c"));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ContentDigest)) return false;
+
+        ContentDigest that = (ContentDigest) o;
+        return crc32c == that.crc32c && Arrays.equals(sha256, that.sha256);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(sha256) + crc32c;
+    }
+
+    @Override
+    public String toString() {
+        return "ContentDigest{" + toDigestHeader() + '}';
+    }
+}
@@ -0,0 +1,108 @@
+package org.blackcat.trunk.resource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validators for a resource: a strong entity tag and a modification time.
+ *
+ * Versions are computed from filesystem metadata only, so that they can be checked
+ * without opening documents nor building collection listings.
+ */
+final public class ResourceVersion {
+
+    private final String entityTag;
+    private final long lastModifiedTime;
+    private final boolean collection;
+
+    public ResourceVersion(String entityTag, long lastModifiedTime, boolean collection) {
+        this.entityTag = entityTag;
+        this.lastModifiedTime = lastModifiedTime;
+        this.collection = collection;
+    }
+
+    /**
+     * Builds the version of a document from its attributes. The entity tag changes
+     * whenever the file is replaced (inode), truncated or extended (size) or written
+     * (modification time, at the best resolution the filesystem offers).
+     *
+     * @param attributes
+     * @return
+     */
+    public static ResourceVersion of(BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        return new ResourceVersion(String.format("\"%x-%x-%x\"",
+            fileKey != null ? fileKey.hashCode() : 0, attributes.size(),
+            attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS)),
+            attributes.lastModifiedTime().toMillis(), false);
+    }
+
+    /**
+     * Derives the version of a listing that also tells the tree sizes of the collections
+     * listed, which change along with anything below them: the entity tag is a digest of
+     * this one and of every tree size, the modification time the most recent of all.
+     *
+     * @param treeSizes the tree sizes of the collections listed, by name
+     * @return
+     */
+    public ResourceVersion withTreeSizes(Map<String, TreeSize> treeSizes) {
+        if (treeSizes.isEmpty())
+            return this;
+
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+
+        messageDigest.update(entityTag.getBytes(StandardCharsets.UTF_8));
+        long lastModifiedTime = this.lastModifiedTime;
+        for (Map.Entry<String, TreeSize> entry : new TreeMap<>(treeSizes).entrySet()) {
+            TreeSize treeSize = entry.getValue();
+            messageDigest.update((byte) 0);
+            messageDigest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            messageDigest.update((byte) 0);
+            messageDigest.update(String.format("%d:%d:%d", treeSize.getBytes(), treeSize.getDocuments(),
+                treeSize.getLastModifiedTime()).getBytes(StandardCharsets.UTF_8));
+
+            lastModifiedTime = Math.max(lastModifiedTime, treeSize.getLastModifiedTime());
+        }
+
+        StringBuilder entityTag = new StringBuilder("\"");
+        byte[] digest = messageDigest.digest();
+        for (int i = 0; i < 16; ++ i)
+            entityTag.append(String.format("%02x", digest[i]));
+
+        return new ResourceVersion(entityTag.append('"').toString(), lastModifiedTime, collection);
+    }
+
+    /**
+     * @return the entity tag, quoted
+     */
+    public String getEntityTag() {
+        return entityTag;
+    }
+
+    public long getLastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    public boolean isCollection() {
+        return collection;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceVersion{" +
+                "entityTag=" + entityTag +
+                ", lastModifiedTime=" + lastModifiedTime +
+                ", collection=" + collection +
+                '}';
+    }
+}
@@ -0,0 +1,44 @@
+package org.blackcat.trunk.resource;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Totals for a collection and everything below it: bytes and documents stored, and the
+ * time of the most recent change.
+ */
+final public class TreeSize {
+
+    private final long bytes;
+    private final long documents;
+    private final long lastModifiedTime;
+
+    public TreeSize(long bytes, long documents, long lastModifiedTime) {
+        this.bytes = bytes;
+        this.documents = documents;
+        this.lastModifiedTime = lastModifiedTime;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getDocuments() {
+        return documents;
+    }
+
+    public long getLastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                   .put("bytes", bytes)
+                   .put("documents", documents)
+                   .put("modified", lastModifiedTime);
+    }
+
+    @Override
+    public String toString() {
+        return "TreeSize" + toJson().encode();
+    }
+}
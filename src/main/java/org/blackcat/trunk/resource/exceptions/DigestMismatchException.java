@@ -0,0 +1,8 @@
+package org.blackcat.trunk.resource.exceptions;
+
+public class DigestMismatchException extends ResourceException {
+
+    public DigestMismatchException(String s) {
+        super(s);
+    }
+}
@@ -0,0 +1,8 @@
+package org.blackcat.trunk.resource.exceptions;
+
+public class QuotaExceededException extends ResourceException {
+
+    public QuotaExceededException(String s) {
+        super(s);
+    }
+}
@@ -0,0 +1,34 @@
+package org.blackcat.trunk.resource.impl;
+
+import org.blackcat.trunk.resource.TreeSize;
+import org.blackcat.trunk.util.Utils;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+final public class CollectionDescriptorResource extends BaseResource {
+    @Override
+    public int getOrdering() {
+        return 0;
+    }
+
+    final private TreeSize treeSize;
+
+    public CollectionDescriptorResource(String name, TreeSize treeSize) {
+        setName(name);
+        this.treeSize = treeSize;
+    }
+
+    public TreeSize getTreeSize() {
+        return treeSize;
+    }
+
+    public String getHumanLastModificationTime() {
+        return Instant.ofEpochMilli(treeSize.getLastModifiedTime())
+                .atOffset(ZoneOffset.UTC).toString();
+    }
+
+    public String getHumanLength() {
+        return Utils.humanReadableByteCount(treeSize.getBytes());
+    }
+}
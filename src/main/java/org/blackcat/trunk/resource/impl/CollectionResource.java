@@ -1,6 +1,7 @@
 package org.blackcat.trunk.resource.impl;
 
 import org.blackcat.trunk.resource.Resource;
+import org.blackcat.trunk.resource.ResourceVersion;
 
 import java.util.*;
 
@@ -26,6 +27,16 @@ public final class CollectionResource extends BaseResource {
         items = new TreeSet<>();
     }
 
+    private ResourceVersion version;
+
+    public ResourceVersion getVersion() {
+        return version;
+    }
+
+    public void setVersion(ResourceVersion version) {
+        this.version = version;
+    }
+
     private int size;
     public int getSize() {
         return size;
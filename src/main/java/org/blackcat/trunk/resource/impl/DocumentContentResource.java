@@ -1,8 +1,15 @@
 package org.blackcat.trunk.resource.impl;
 
 import io.vertx.core.Handler;
+import io.vertx.core.file.AsyncFile;
 import io.vertx.core.streams.ReadStream;
 import io.vertx.core.streams.WriteStream;
+import org.blackcat.trunk.resource.ContentDigest;
+import org.blackcat.trunk.resource.ResourceVersion;
+import org.blackcat.trunk.streams.digest.DigestCalculator;
+import org.blackcat.trunk.streams.range.RangeReadStream;
+
+import java.nio.file.Path;
 
 public final class DocumentContentResource extends BaseResource {
 
@@ -21,6 +28,16 @@ public final class DocumentContentResource extends BaseResource {
         return mimetype;
     }
 
+    private ResourceVersion version;
+    public ResourceVersion getVersion() {
+        return version;
+    }
+
+    private Path path;
+    public Path getPath() {
+        return path;
+    }
+
     private ReadStream readStream;
     public ReadStream getReadStream() {
         return readStream;
@@ -31,11 +48,52 @@ public final class DocumentContentResource extends BaseResource {
         return writeStream;
     }
 
+    private ContentDigest contentDigest;
+    /**
+     * @return the digest of the content, if known
+     */
+    public ContentDigest getContentDigest() {
+        return contentDigest;
+    }
+
+    public void setContentDigest(ContentDigest contentDigest) {
+        this.contentDigest = contentDigest;
+    }
+
+    private DigestCalculator digestCalculator;
+    /**
+     * @return the calculator content written has to be fed to, checked before the content is committed
+     */
+    public DigestCalculator getDigestCalculator() {
+        return digestCalculator;
+    }
+
     private Handler<Void> closeHandler;
     public Handler<Void> getCloseHandler() {
         return closeHandler;
     }
 
+    /**
+     * @return true if slices of the content can be read independently (see {@link #getRangeReadStream})
+     */
+    public boolean isSeekable() {
+        return readStream instanceof AsyncFile;
+    }
+
+    /**
+     * Returns a stream over a slice of the content, read with positional reads. Requires a seekable resource.
+     *
+     * @param offset
+     * @param length
+     * @return
+     */
+    public RangeReadStream getRangeReadStream(long offset, long length) {
+        if (! isSeekable())
+            throw new IllegalStateException("Resource content is not seekable");
+
+        return RangeReadStream.create((AsyncFile) readStream, offset, length);
+    }
+
     public DocumentContentResource(String mimetype, long length, ReadStream readStream, Handler<Void> closeHandler) {
         this.mimetype = mimetype;
         this.length = length;
@@ -43,8 +101,17 @@ public final class DocumentContentResource extends BaseResource {
         this.closeHandler = closeHandler;
     }
 
-    public DocumentContentResource(WriteStream writeStream, Handler<Void> closeHandler) {
+    public DocumentContentResource(String mimetype, long length, ResourceVersion version,
+                                   Path path, AsyncFile file, Handler<Void> closeHandler) {
+        this(mimetype, length, file, closeHandler);
+        this.version = version;
+        this.path = path;
+    }
+
+    public DocumentContentResource(WriteStream writeStream, DigestCalculator digestCalculator,
+                                   Handler<Void> closeHandler) {
         this.writeStream = writeStream;
+        this.digestCalculator = digestCalculator;
         this.closeHandler = closeHandler;
     }
 }
@@ -2,8 +2,12 @@ package org.blackcat.trunk.storage;
 
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.file.FileProps;
+import io.vertx.core.streams.ReadStream;
 import org.blackcat.trunk.resource.Resource;
+import org.blackcat.trunk.resource.ResourceVersion;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -13,6 +17,11 @@ public interface Storage {
 
     Path getRoot();
 
+    /**
+     * @return bytes and documents stored by each user, kept up to date by the storage
+     */
+    UsageAccounting getUsageAccounting();
+
     /**
      * Stream interface to the file walker in the storage
      *
@@ -38,6 +47,21 @@ public interface Storage {
      */
     void delete(Path path, Handler<AsyncResult<Void>> handler);
 
+    /**
+     * Deletes a resource along with everything below it. Documents are deleted right away;
+     * collections disappear at once, atomically moved to a hidden tombstone whose removal
+     * is left to the caller
+     * @param path the resource to be deleted from the storage
+     * @param handler gets the tombstone, or null if path was a document
+     */
+    void deleteTree(Path path, Handler<AsyncResult<Path>> handler);
+
+    /**
+     * @return the directory tombstones are moved to (see {@link #deleteTree}), which may
+     * not exist yet
+     */
+    Path getTombstones();
+
     /**
      * Retrieves a resource from the storage
      * @param path the resource to be retrieved from the storage
@@ -45,6 +69,14 @@ public interface Storage {
      */
     void get(Path path, Handler<AsyncResult<Resource>> handler);
 
+    /**
+     * Retrieves the current version of a resource, without opening documents nor
+     * building collection listings
+     * @param path the resource to be checked
+     * @param handler
+     */
+    void getVersion(Path path, Handler<AsyncResult<ResourceVersion>> handler);
+
     /**
      * Puts a collection resource (i.e. directory) on the storage
      * @param path the resource to be put on the storage
@@ -55,7 +87,73 @@ public interface Storage {
     /**
      * Puts a document resource (i.e. file) on the storage
      * @param path the resource to be put on the storage
+     * @param reservation bytes reserved for the content, if its length is known in advance
+     * (see {@link UsageAccounting#reserve}), exchanged for what the document actually adds
+     * once the content is moved into place. Released by the caller once done either way
+     * @param handler
+     */
+    void putDocumentResource(Path path, @Nullable UsageAccounting.Reservation reservation,
+                             Handler<AsyncResult<Resource>> handler);
+
+    /**
+     * Puts a document resource whose content is on the storage already, found by its
+     * SHA-256 digest, without transferring it
+     * @param path the resource to be put on the storage
+     * @param digest the SHA-256 digest of the content
+     * @param length the length of the content
+     * @param handler gets false if no such content is known, i.e. it has to be transferred
+     */
+    void putDocumentByDigest(Path path, byte[] digest, long length, Handler<AsyncResult<Boolean>> handler);
+
+    /**
+     * Starts a resumable upload of a document resource (i.e. file): checks the document
+     * can be put at path, and creates an empty temporary file for its content
+     * @param path the resource to be put on the storage
+     * @param handler gets the temporary file
+     */
+    void putDocumentUpload(Path path, Handler<AsyncResult<Path>> handler);
+
+    /**
+     * Writes content to the temporary file of an upload, starting at offset (its current
+     * size). An interrupted content stream is not a failure, as what has been received is kept
+     * @param tempPath the temporary file
+     * @param offset
+     * @param content
+     * @param handler gets the new size of the temporary file
+     */
+    void appendDocumentUpload(Path tempPath, long offset, ReadStream<Buffer> content,
+                              Handler<AsyncResult<Long>> handler);
+
+    /**
+     * Sets the size of the temporary file of an upload, so that chunks can be written at
+     * their positions in any order
+     * @param tempPath the temporary file
+     * @param length
+     * @param handler
+     */
+    void allocateDocumentUpload(Path tempPath, long length, Handler<AsyncResult<Void>> handler);
+
+    /**
+     * Writes content to the temporary file of an upload at position, with positional
+     * writes: several streams may write to the same file at once, at different positions
+     * @param tempPath the temporary file
+     * @param position
+     * @param content
+     * @param observer is handed every buffer of content, in order, as it is written (e.g. to verify it)
+     * @param handler gets the number of bytes written, once all of them are
+     */
+    void writeDocumentUpload(Path tempPath, long position, ReadStream<Buffer> content,
+                             Handler<Buffer> observer, Handler<AsyncResult<Long>> handler);
+
+    /**
+     * Moves the temporary file of a complete upload into place
+     * @param tempPath the temporary file
+     * @param path the resource to be put on the storage
+     * @param reservation bytes reserved when the upload was created, exchanged for what the
+     * document actually adds (see {@link UsageAccounting#reserve(Path, long, UsageAccounting.Reservation)}).
+     * Released by the caller once done either way
      * @param handler
      */
-    void putDocumentResource(Path path, Handler<AsyncResult<Resource>> handler);
+    void commitDocumentUpload(Path tempPath, Path path, @Nullable UsageAccounting.Reservation reservation,
+                              Handler<AsyncResult<Void>> handler);
 }
@@ -0,0 +1,525 @@
+package org.blackcat.trunk.storage;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.blackcat.trunk.resource.TreeSize;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bytes and documents stored below each collection of the storage root, kept as a tree
+ * mirroring the collections, whose top-level nodes are the users' and are checked
+ * against an optional quota.
+ *
+ * Every node holds the totals of its whole subtree and the time of its most recent
+ * change. Nodes are maintained incrementally by the storage as documents are moved into
+ * place or deleted, each change being added to the ancestors of the document, so that
+ * neither checking a quota nor telling the size of a collection ever walks the tree.
+ * The tree is seeded, and then periodically reconciled, by a parallel scan of the
+ * storage. A scan may or may not have seen a change made while it was running, so the
+ * users changed meanwhile are not taken from it: they are scanned again while seeding,
+ * and keep their incrementally maintained counters once seeded. Hidden entries
+ * (temporary files, internal directories) are never accounted for.
+ *
+ * Bytes about to be written are reserved against the quota (see {@link #reserve}) until
+ * they are accounted for, so that concurrent writes can not all pass the same check.
+ *
+ * Thread-safe.
+ */
+final public class UsageAccounting {
+
+    private final Logger logger = LoggerFactory.getLogger(UsageAccounting.class);
+
+    /* seeding scans users changed meanwhile again, this many times at most */
+    private static final int MAX_RESCANS = 3;
+
+    /* threads walking a single collection, see measure() */
+    private static final int MEASURE_PARALLELISM = 2;
+
+    private final Path root;
+    private final long userQuota;
+
+    private volatile Node tree = new Node();
+
+    /* changes are applied concurrently (read lock), a scanned tree replaces the current one alone (write lock) */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /* users changed during the scan in progress, if any (swapped under the write lock) */
+    private volatile Set<String> changedUsers;
+    private volatile boolean seeded;
+
+    /* bytes reserved by writes in progress, by user */
+    private final Map<String, Long> reservations = new ConcurrentHashMap<>();
+
+    /**
+     * @param root the storage root
+     * @param userQuota bytes each user may store, 0 meaning unlimited
+     */
+    public UsageAccounting(Path root, long userQuota) {
+        this.root = root;
+        this.userQuota = userQuota;
+    }
+
+    public long getUserQuota() {
+        return userQuota;
+    }
+
+    /**
+     * Accounts for a change to the document at path.
+     *
+     * @param path the document (resolved)
+     * @param bytes the change in bytes used
+     * @param documents the change in documents stored
+     */
+    public void add(Path path, long bytes, long documents) {
+        Path relative = relativize(path);
+        if (relative == null || relative.getNameCount() < 2)
+            return;
+
+        record(new Change(relative, bytes, documents, System.currentTimeMillis(), false));
+    }
+
+    /**
+     * Accounts for the removal of the collection at path, along with everything below it.
+     *
+     * @param path the collection (resolved)
+     */
+    public void remove(Path path) {
+        Path relative = relativize(path);
+        if (relative == null)
+            return;
+
+        record(new Change(relative, 0, 0, System.currentTimeMillis(), true));
+    }
+
+    /**
+     * @param path a resource (resolved)
+     * @param bytes the bytes about to be added under path
+     * @return false if the quota of the user path belongs to would be exceeded, bytes
+     * reserved by writes in progress included (always true while usage is not known yet)
+     */
+    public boolean allows(Path path, long bytes) {
+        if (userQuota == 0 || bytes <= 0 || ! seeded)
+            return true;
+
+        String user = userOf(path);
+        return user == null || getBytes(user) + reservations.getOrDefault(user, 0L) + bytes <= userQuota;
+    }
+
+    /**
+     * Reserves bytes about to be added under path, if the quota allows (see {@link #allows}).
+     *
+     * @param path a resource (resolved)
+     * @param bytes the bytes about to be added under path
+     * @return the reservation, to be released once the bytes have been accounted for or
+     * will not be written after all; null if the quota would be exceeded
+     */
+    @Nullable
+    public Reservation reserve(Path path, long bytes) {
+        return reserve(path, bytes, null);
+    }
+
+    /**
+     * Reserves bytes about to be added under path in exchange for held, e.g. the bytes
+     * reserved when an upload was created, once it is committed for what it actually adds.
+     * The bytes of held count as available, and held is released if, and only if, the new
+     * reservation is granted.
+     *
+     * @param path a resource (resolved)
+     * @param bytes the bytes about to be added under path
+     * @param held a reservation to be given back in exchange, or null
+     * @return the reservation, or null if the quota would be exceeded
+     */
+    @Nullable
+    public Reservation reserve(Path path, long bytes, @Nullable Reservation held) {
+        String user = userOf(path);
+        if (userQuota == 0 || bytes <= 0 || ! seeded || user == null) {
+            if (held != null)
+                held.release();
+            return new Reservation(null, 0);
+        }
+
+        boolean[] granted = { false };
+        reservations.compute(user, (name, reserved) -> {
+            long current = reserved != null ? reserved : 0;
+            long available = userQuota - getBytes(name) - bytes;
+
+            /* held is given back here, in the same step, unless released meanwhile */
+            if (held != null && name.equals(held.user) && current - held.bytes <= available &&
+                    held.released.compareAndSet(false, true))
+                current -= held.bytes;
+            else if (current > available)
+                return reserved;
+
+            granted[0] = true;
+            return current + bytes;
+        });
+        if (! granted[0])
+            return null;
+
+        if (held != null)
+            held.release();
+        return new Reservation(user, bytes);
+    }
+
+    public long getBytes(String user) {
+        Node node = tree.children.get(user);
+        return node != null ? node.bytes.get() : 0;
+    }
+
+    public long getDocuments(String user) {
+        Node node = tree.children.get(user);
+        return node != null ? node.documents.get() : 0;
+    }
+
+    /**
+     * @param path a collection (resolved)
+     * @return the totals below path, without touching the disk; null while usage is not
+     * known yet, or if path is not accounted for (see {@link #measure})
+     */
+    @Nullable
+    public TreeSize treeSize(Path path) {
+        if (! seeded)
+            return null;
+        if (path.equals(root))
+            return tree.snapshot();
+
+        Path relative = relativize(path);
+        if (relative == null)
+            return null;
+
+        Node node = tree;
+        for (Path name : relative) {
+            node = node.children.get(name.toString());
+            if (node == null)
+                return new TreeSize(0, 0, 0);
+        }
+        return node.snapshot();
+    }
+
+    /**
+     * Computes the totals below path by walking it (blocking, meant to be run on a worker
+     * thread). The walk runs on a small pool of its own, never on the common pool.
+     *
+     * @param path a collection (resolved)
+     * @return
+     */
+    public TreeSize measure(Path path) {
+        ForkJoinPool pool = new ForkJoinPool(MEASURE_PARALLELISM);
+        try {
+            return pool.invoke(new ScanTask(path)).snapshot();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * Rebuilds the whole tree with a parallel scan of the storage (blocking, meant to be
+     * run on a worker thread). Only one scan may run at a time.
+     *
+     * @param parallelism the number of threads walking the tree
+     * @return the number of users whose counters had drifted
+     * @throws IOException if the storage root can not be read
+     */
+    public synchronized int reconcile(int parallelism) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Set<String> changed = track();
+
+            Set<String> users = new HashSet<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(root, UsageAccounting::isVisible)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry))
+                        users.add(entry.getFileName().toString());
+                }
+            }
+            Map<String, Node> scanned = scan(pool, users);
+
+            /* nothing to fall back on yet: users changed meanwhile are scanned again */
+            for (int rescans = 0; ! seeded && ! changed.isEmpty() && rescans < MAX_RESCANS; ++ rescans) {
+                Set<String> rescanned = changed;
+                changed = track();
+                scanned.putAll(scan(pool, rescanned));
+            }
+
+            return replace(scanned, changed);
+        } finally {
+            changedUsers = null;
+            pool.shutdown();
+        }
+    }
+
+    /* starts recording the users changed from now on */
+    private Set<String> track() {
+        Set<String> changed = ConcurrentHashMap.newKeySet();
+        lock.writeLock().lock();
+        try {
+            changedUsers = changed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return changed;
+    }
+
+    /* scans the given users' trees, those gone meanwhile map to null */
+    private Map<String, Node> scan(ForkJoinPool pool, Set<String> users) {
+        Map<String, ScanTask> tasks = new HashMap<>();
+        for (String user : users) {
+            Path userPath = root.resolve(user);
+            if (Files.isDirectory(userPath)) {
+                ScanTask task = new ScanTask(userPath);
+                pool.execute(task);
+                tasks.put(user, task);
+            }
+        }
+
+        Map<String, Node> scanned = new HashMap<>();
+        for (String user : users) {
+            ScanTask task = tasks.get(user);
+            scanned.put(user, task != null ? task.join() : null);
+        }
+        return scanned;
+    }
+
+    /* the scanned tree replaces the current one, but for the users changed during the scan once seeded */
+    private int replace(Map<String, Node> scanned, Set<String> changed) {
+        int drifted = 0;
+        lock.writeLock().lock();
+        try {
+            changedUsers = null;
+
+            Set<String> users = new HashSet<>(tree.children.keySet());
+            users.addAll(scanned.keySet());
+
+            Node replacement = new Node();
+            for (String user : users) {
+                Node previous = tree.children.get(user);
+                Node actual = scanned.get(user);
+
+                if (seeded && changed.contains(user)) {
+                    logger.debug("{} changed during the scan, keeping its counters", user);
+                    actual = previous;
+                } else if (seeded && ! sameTotals(previous, actual))
+                    ++ drifted;
+
+                if (actual != null)
+                    replacement.attach(user, actual);
+            }
+            tree = replacement;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        seeded = true;
+        return drifted;
+    }
+
+    private static boolean sameTotals(@Nullable Node node, @Nullable Node other) {
+        return (node != null ? node.bytes.get() : 0) == (other != null ? other.bytes.get() : 0) &&
+                   (node != null ? node.documents.get() : 0) == (other != null ? other.documents.get() : 0);
+    }
+
+    public JsonObject statistics() {
+        Node node = tree;
+        return new JsonObject()
+                   .put("seeded", seeded)
+                   .put("users", node.children.size())
+                   .put("bytes", node.bytes.get())
+                   .put("documents", node.documents.get());
+    }
+
+    private void record(Change change) {
+        lock.readLock().lock();
+        try {
+            change.applyTo(tree);
+
+            Set<String> changed = changedUsers;
+            if (changed != null)
+                changed.add(change.path.getName(0).toString());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* path relative to the root, if path is accounted for */
+    @Nullable
+    private Path relativize(Path path) {
+        if (! path.startsWith(root) || path.equals(root))
+            return null;
+
+        Path relative = root.relativize(path);
+        for (Path name : relative) {
+            if (name.toString().startsWith("."))
+                return null;
+        }
+        return relative;
+    }
+
+    /* the user path belongs to, if path is accounted for and below a user's tree */
+    @Nullable
+    private String userOf(Path path) {
+        Path relative = relativize(path);
+        return relative == null || relative.getNameCount() < 2 ? null : relative.getName(0).toString();
+    }
+
+    private static boolean isVisible(Path entry) {
+        return ! entry.getFileName().toString().startsWith(".");
+    }
+
+    /**
+     * Bytes reserved against a user's quota, see {@link #reserve}.
+     */
+    public final class Reservation {
+        private final String user;
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Reservation(@Nullable String user, long bytes) {
+            this.user = user;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Gives the bytes back, once accounted for (see {@link #add}) or not written after
+         * all. Releasing more than once has no effect.
+         */
+        public void release() {
+            if (user != null && released.compareAndSet(false, true))
+                reservations.computeIfPresent(user, (name, reserved) -> reserved > bytes ? reserved - bytes : null);
+        }
+    }
+
+    private static final class Node {
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong documents = new AtomicLong();
+        final AtomicLong lastModifiedTime = new AtomicLong();
+        final Map<String, Node> children = new ConcurrentHashMap<>();
+
+        void add(long bytes, long documents, long time) {
+            this.bytes.addAndGet(bytes);
+            this.documents.addAndGet(documents);
+            this.lastModifiedTime.accumulateAndGet(time, Math::max);
+        }
+
+        void attach(String name, Node child) {
+            children.put(name, child);
+            add(child.bytes.get(), child.documents.get(), child.lastModifiedTime.get());
+        }
+
+        TreeSize snapshot() {
+            return new TreeSize(bytes.get(), documents.get(), lastModifiedTime.get());
+        }
+    }
+
+    /* a change to a document, or the removal of a collection, relative to the root */
+    private static final class Change {
+        final Path path;
+        final long bytes;
+        final long documents;
+        final long time;
+        final boolean removal;
+
+        Change(Path path, long bytes, long documents, long time, boolean removal) {
+            this.path = path;
+            this.bytes = bytes;
+            this.documents = documents;
+            this.time = time;
+            this.removal = removal;
+        }
+
+        /* every collection on the way gets the change, from the root down */
+        void applyTo(Node tree) {
+            List<Node> ancestors = new ArrayList<>();
+            Node node = tree;
+            int depth = path.getNameCount() - 1;
+            for (int i = 0; i < depth && node != null; ++ i) {
+                ancestors.add(node);
+                node = removal
+                           ? node.children.get(path.getName(i).toString())
+                           : node.children.computeIfAbsent(path.getName(i).toString(), name -> new Node());
+            }
+            if (node == null)
+                return;
+            ancestors.add(node);
+
+            long bytes = this.bytes, documents = this.documents;
+            if (removal) {
+                Node removed = node.children.remove(path.getFileName().toString());
+                if (removed == null)
+                    return;
+
+                bytes = - removed.bytes.get();
+                documents = - removed.documents.get();
+            }
+
+            for (Node ancestor : ancestors)
+                ancestor.add(bytes, documents, time);
+        }
+    }
+
+    /* sums a collection, forking one task per nested collection */
+    private final class ScanTask extends RecursiveTask<Node> {
+        final Path directory;
+
+        ScanTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected Node compute() {
+            Node node = new Node();
+            Map<String, ScanTask> subtasks = new HashMap<>();
+
+            try {
+                node.add(0, 0, Files.getLastModifiedTime(directory).toMillis());
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, UsageAccounting::isVisible)) {
+                    for (Path entry : entries) {
+                        BasicFileAttributes attributes;
+                        try {
+                            attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                        } catch (IOException ioe) {
+                            continue;
+                        }
+
+                        if (attributes.isDirectory()) {
+                            ScanTask subtask = new ScanTask(entry);
+                            subtask.fork();
+                            subtasks.put(entry.getFileName().toString(), subtask);
+                        } else if (attributes.isRegularFile())
+                            node.add(attributes.size(), 1, attributes.lastModifiedTime().toMillis());
+                    }
+                }
+            } catch (IOException ioe) {
+                logger.warn("Could not scan {}: {}", directory, ioe.toString());
+            }
+
+            for (Map.Entry<String, ScanTask> subtask : subtasks.entrySet())
+                node.attach(subtask.getKey(), subtask.getValue().join());
+
+            return node;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package org.blackcat.trunk.storage.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.file.FileSystem;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.blackcat.trunk.resource.ContentDigest;
+import org.blackcat.trunk.resource.exceptions.ConflictException;
+import org.blackcat.trunk.resource.exceptions.QuotaExceededException;
+import org.blackcat.trunk.storage.UsageAccounting;
+import org.blackcat.trunk.storage.exceptions.StorageException;
+import org.blackcat.trunk.streams.digest.DigestCalculator;
+import org.blackcat.trunk.util.Utils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A {@link FileSystemStorage} keeping every distinct content once, as a blob named after
+ * its SHA-256 digest in a hidden fan-out directory under the root (.blobs/ab/cd/abcd...).
+ *
+ * Documents are hard links to their blob, so the filesystem keeps the reference counts:
+ * documents are read, listed, archived and deleted just as plain files, and a blob whose
+ * only link is its own name is garbage. Contents are hashed as they are moved into place,
+ * unless their digests have been computed as they were written, and documents whose
+ * content is known already can be put by digest, with no transfer.
+ *
+ * Blobs are never written to, as contents are always written to temporary files first.
+ * Where hard links are not supported, documents are stored as plain files.
+ *
+ * Next to each blob, an empty marker per user storing it (abcd....uuid) records when that
+ * user last referenced it: a content can only be put by digest by users who have stored
+ * it themselves, and unreferenced blobs are kept for a grace time after their last use.
+ * Blobs themselves are never touched, as their times are those of every document
+ * linking to them.
+ */
+public class ContentAddressedStorage extends FileSystemStorage {
+
+    static private final String BLOBS_DIRECTORY = ".blobs";
+    static private final long GARBAGE_COLLECTION_INTERVAL = TimeUnit.HOURS.toMillis(1);
+    static private final long GARBAGE_GRACE_TIME = TimeUnit.HOURS.toMillis(1);
+
+    private Logger logger = LoggerFactory.getLogger(ContentAddressedStorage.class);
+
+    private Vertx vertx;
+    private Path blobsRoot;
+
+    public ContentAddressedStorage(Vertx vertx, Path root, long cacheSize, long userQuota) {
+        super(vertx, root, cacheSize, userQuota);
+        this.vertx = vertx;
+        this.blobsRoot = root.resolve(BLOBS_DIRECTORY);
+
+        vertx.setPeriodic(GARBAGE_COLLECTION_INTERVAL, id -> collectGarbage(done -> {
+            if (done.failed())
+                logger.warn("Could not collect unreferenced blobs: {}", done.cause().toString());
+            else
+                logger.debug("Blob statistics: {}", done.result());
+        }));
+    }
+
+    @Override
+    public void putDocumentByDigest(Path path, byte[] digest, long length, Handler<AsyncResult<Boolean>> handler) {
+        if (digest.length != 32) {
+            handler.handle(Future.succeededFuture(false));
+            return;
+        }
+
+        checkDocumentPath(path, checkAsyncResult -> {
+            if (checkAsyncResult.failed()) {
+                handler.handle(Future.failedFuture(checkAsyncResult.cause()));
+                return;
+            }
+
+            vertx.executeBlocking((Future<Boolean> future) -> {
+                Path blobPath = blobPath(toHex(digest));
+                Path linkPath = path.resolveSibling(Utils.makeTempFileName("." + path.getFileName()));
+
+                /* the digest alone never grants a content the user has not stored already */
+                String owner = ownerOf(path);
+                if (owner == null || ! Files.exists(markerPath(blobPath, owner))) {
+                    future.complete(false);
+                    return;
+                }
+
+                try {
+                    if (Files.size(blobPath) != length) {
+                        future.complete(false);
+                        return;
+                    }
+
+                    long replacedLength = Files.isRegularFile(path) ? Files.size(path) : -1;
+                    UsageAccounting.Reservation reservation =
+                        getUsageAccounting().reserve(path, length - Math.max(0, replacedLength));
+                    if (reservation == null) {
+                        future.fail(new QuotaExceededException("User quota exceeded."));
+                        return;
+                    }
+
+                    try {
+                        Files.createLink(linkPath, blobPath);
+                        mark(blobPath, owner);
+                        Files.move(linkPath, path, StandardCopyOption.ATOMIC_MOVE);
+                        accountReplacement(path, length, replacedLength);
+                    } finally {
+                        reservation.release();
+                    }
+                    future.complete(true);
+                } catch (NoSuchFileException nsfe) {
+                    /* unknown, or just collected */
+                    future.complete(false);
+                } catch (IOException | UnsupportedOperationException e) {
+                    deleteQuietly(linkPath);
+                    future.fail(new ConflictException(e));
+                }
+            }, false, linkAsyncResult -> {
+                if (linkAsyncResult.succeeded() && linkAsyncResult.result())
+                    invalidate(path);
+
+                handler.handle(linkAsyncResult);
+            });
+        });
+    }
+
+    @Override
+    protected void moveIntoPlace(FileSystem fileSystem, String tempPathString, String destPathString,
+                                 @Nullable UsageAccounting.Reservation held, Handler<AsyncResult<Void>> handler) {
+        Path tempPath = Paths.get(tempPathString);
+        Path destPath = Paths.get(destPathString);
+
+        vertx.executeBlocking((Future<Void> future) -> {
+            try {
+                long length = Files.size(tempPath);
+                long replacedLength = Files.isRegularFile(destPath) ? Files.size(destPath) : -1;
+                UsageAccounting.Reservation reservation =
+                    getUsageAccounting().reserve(destPath, length - Math.max(0, replacedLength), held);
+                if (reservation == null) {
+                    future.fail(new QuotaExceededException("User quota exceeded."));
+                    return;
+                }
+
+                try {
+                    Files.move(reference(tempPath, destPath), destPath, StandardCopyOption.ATOMIC_MOVE);
+                    accountReplacement(destPath, length, replacedLength);
+                } finally {
+                    reservation.release();
+                }
+                future.complete();
+            } catch (IOException ioe) {
+                future.fail(ioe);
+            }
+        }, false, moveAsyncResult -> {
+            invalidate(destPath);
+            handler.handle(moveAsyncResult);
+        });
+    }
+
+    /**
+     * Deletes the blobs no document refers to any more, once unused for the grace time
+     * (blocking work is done on a worker thread).
+     *
+     * @param handler gets statistics about the blobs kept and collected
+     */
+    public void collectGarbage(Handler<AsyncResult<JsonObject>> handler) {
+        collectGarbage(GARBAGE_GRACE_TIME, handler);
+    }
+
+    void collectGarbage(long graceTime, Handler<AsyncResult<JsonObject>> handler) {
+        vertx.executeBlocking((Future<JsonObject> future) -> {
+            long blobs = 0, bytes = 0, savedBytes = 0, unreferenced = 0, collected = 0, collectedBytes = 0;
+            long threshold = System.currentTimeMillis() - graceTime;
+
+            if (Files.isDirectory(blobsRoot)) {
+                try (Stream<Path> paths = Files.walk(blobsRoot)) {
+                    Iterator<Path> iterator = paths.iterator();
+                    while (iterator.hasNext()) {
+                        Path path = iterator.next();
+                        BasicFileAttributes attributes;
+                        try {
+                            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                        } catch (NoSuchFileException nsfe) {
+                            /* a marker collected along with its blob */
+                            continue;
+                        }
+                        if (! attributes.isRegularFile())
+                            continue;
+
+                        /* markers go along with their blob, those left behind are dropped */
+                        String name = path.getFileName().toString();
+                        int dot = name.indexOf('.');
+                        if (dot >= 0) {
+                            if (! Files.exists(path.resolveSibling(name.substring(0, dot))))
+                                Files.deleteIfExists(path);
+                            continue;
+                        }
+
+                        int links = (Integer) Files.getAttribute(path, "unix:nlink");
+                        if (links > 1) {
+                            ++ blobs;
+                            bytes += attributes.size();
+                            savedBytes += attributes.size() * (links - 2);
+                        } else if (lastUse(path, attributes) > threshold) {
+                            ++ unreferenced;
+                        } else {
+                            Files.deleteIfExists(path);
+                            forEachMarker(path, Files::deleteIfExists);
+                            ++ collected;
+                            collectedBytes += attributes.size();
+                        }
+                    }
+                } catch (IOException | UncheckedIOException | UnsupportedOperationException |
+                             IllegalArgumentException e) {
+                    future.fail(new StorageException(e));
+                    return;
+                }
+            }
+
+            future.complete(new JsonObject()
+                                .put("blobs", blobs)
+                                .put("bytes", bytes)
+                                .put("savedBytes", savedBytes)
+                                .put("unreferenced", unreferenced)
+                                .put("collected", collected)
+                                .put("collectedBytes", collectedBytes));
+        }, false, handler);
+    }
+
+    /* the file to be moved into place: tempPath itself, or a link to the blob already holding its content */
+    private Path reference(Path tempPath, Path destPath) throws IOException {
+        Path linkPath = null;
+        try {
+            /* documents written by transfers or uploads come with their digests already */
+            ContentDigest contentDigest = DigestAttributes.read(tempPath);
+            if (contentDigest == null)
+                contentDigest = DigestCalculator.digest(tempPath);
+
+            Path blobPath = blobPath(toHex(contentDigest.getSha256()));
+            Files.createDirectories(blobPath.getParent());
+
+            String owner = ownerOf(destPath);
+            try {
+                /* new content, the temporary file becomes its blob */
+                Files.createLink(blobPath, tempPath);
+                mark(blobPath, owner);
+                return tempPath;
+            } catch (FileAlreadyExistsException faee) {
+                linkPath = tempPath.resolveSibling(Utils.makeTempFileName(tempPath.getFileName().toString()));
+                Files.createLink(linkPath, blobPath);
+                mark(blobPath, owner);
+                if (DigestAttributes.read(blobPath) == null)
+                    DigestAttributes.write(blobPath, contentDigest);
+
+                /* nothing may fail past this point */
+                Files.delete(tempPath);
+                return linkPath;
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("Could not deduplicate {}, storing a plain file: {}", destPath, e.toString());
+            if (linkPath != null)
+                deleteQuietly(linkPath);
+
+            return tempPath;
+        }
+    }
+
+    /* the trunk a document belongs to, null if none */
+    @Nullable
+    private String ownerOf(Path path) {
+        Path relativePath = getRoot().relativize(path);
+        return relativePath.getNameCount() > 1 ? relativePath.getName(0).toString() : null;
+    }
+
+    /* records that owner has (just) stored the content of blobPath */
+    private static void mark(Path blobPath, @Nullable String owner) throws IOException {
+        if (owner == null)
+            return;
+
+        Path markerPath = markerPath(blobPath, owner);
+        try {
+            Files.createFile(markerPath);
+        } catch (FileAlreadyExistsException faee) {
+            Files.setLastModifiedTime(markerPath, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+    }
+
+    private static Path markerPath(Path blobPath, String owner) {
+        return blobPath.resolveSibling(blobPath.getFileName() + "." + owner);
+    }
+
+    /* when the blob was last stored by anyone */
+    private static long lastUse(Path blobPath, BasicFileAttributes attributes) throws IOException {
+        long[] lastUse = { attributes.lastModifiedTime().toMillis() };
+        forEachMarker(blobPath, markerPath -> {
+            try {
+                lastUse[0] = Math.max(lastUse[0], Files.getLastModifiedTime(markerPath).toMillis());
+            } catch (NoSuchFileException nsfe) {
+                /* collected meanwhile */
+            }
+        });
+        return lastUse[0];
+    }
+
+    private static void forEachMarker(Path blobPath, MarkerConsumer consumer) throws IOException {
+        try (DirectoryStream<Path> markers =
+                 Files.newDirectoryStream(blobPath.getParent(), blobPath.getFileName() + ".*")) {
+            for (Path markerPath : markers)
+                consumer.accept(markerPath);
+        }
+    }
+
+    @FunctionalInterface
+    private interface MarkerConsumer {
+        void accept(Path markerPath) throws IOException;
+    }
+
+    private Path blobPath(String hex) {
+        return blobsRoot.resolve(hex.substring(0, 2)).resolve(hex.substring(2, 4)).resolve(hex);
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ioe) {
+            logger.warn("Could not delete {}", path);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes)
+            hex.append(String.format("%02x", b));
+
+        return hex.toString();
+    }
+
+    public static ContentAddressedStorage create(Vertx vertx, Path path, long cacheSize) {
+        return new ContentAddressedStorage(vertx, path, cacheSize, 0);
+    }
+
+    public static ContentAddressedStorage create(Vertx vertx, Path path, long cacheSize, long userQuota) {
+        return new ContentAddressedStorage(vertx, path, cacheSize, userQuota);
+    }
+}
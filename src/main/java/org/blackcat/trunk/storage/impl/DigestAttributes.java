@@ -0,0 +1,81 @@
+package org.blackcat.trunk.storage.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import org.blackcat.trunk.resource.ContentDigest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+
+/**
+ * Keeps the {@link ContentDigest} of documents in an extended attribute (user.trunk.digest),
+ * which follows the file through renames and links and goes away with it. The length and
+ * modification time of the file are recorded too, so that digests of documents changed
+ * behind our back are ignored. All methods are blocking.
+ */
+final class DigestAttributes {
+
+    private static final String ATTRIBUTE_NAME = "trunk.digest";
+
+    private DigestAttributes() {
+    }
+
+    /**
+     * @param path
+     * @return the digest of the document at path, or null if unknown or stale
+     */
+    static ContentDigest read(Path path) {
+        UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+        if (view == null)
+            return null;
+
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (! view.list().contains(ATTRIBUTE_NAME))
+                return null;
+
+            ByteBuffer value = ByteBuffer.allocate(view.size(ATTRIBUTE_NAME));
+            view.read(ATTRIBUTE_NAME, value);
+
+            JsonObject json = new JsonObject(Buffer.buffer(value.array()));
+            if (json.getLong("length", -1L) != attributes.size() ||
+                    json.getLong("modified", -1L) != attributes.lastModifiedTime().toMillis())
+                return null;
+
+            return ContentDigest.fromJson(json);
+        } catch (IOException | UnsupportedOperationException | DecodeException |
+                     ClassCastException | NullPointerException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Attaches digest to the document at path, as it is now.
+     *
+     * @param path
+     * @param digest
+     * @return false if the filesystem does not support extended attributes
+     */
+    static boolean write(Path path, ContentDigest digest) {
+        UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+        if (view == null)
+            return false;
+
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            JsonObject json = digest.toJson()
+                                  .put("length", attributes.size())
+                                  .put("modified", attributes.lastModifiedTime().toMillis());
+
+            view.write(ATTRIBUTE_NAME, ByteBuffer.wrap(json.toBuffer().getBytes()));
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package org.blackcat.trunk.storage.impl;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.blackcat.trunk.resource.ResourceVersion;
+import org.blackcat.trunk.resource.impl.CollectionResource;
+import org.blackcat.trunk.resource.impl.DocumentDescriptorResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Single-pass directory lister (blocking, meant to be run on a worker thread).
+ *
+ * Entries are enumerated with a {@link DirectoryStream} and their attributes are
+ * read exactly once each. Item counts for nested collections are memoized against
+ * the directory modification time, which changes whenever an entry is added to or
+ * removed from it, so unchanged sub-collections are never read again.
+ *
+ * Every listing carries a {@link ResourceVersion} whose entity tag is a digest of the
+ * listed entries (name, kind, size and modification time), which {@link #version} can
+ * compute on its own without building the listing.
+ */
+final public class DirectoryScanner {
+
+    private static final int DEFAULT_MAX_CACHED_COUNTS = 16384;
+
+    private final Logger logger = LoggerFactory.getLogger(DirectoryScanner.class);
+
+    private final Function<Path, String> mimeTypeResolver;
+    private final Map<Path, ChildCount> childCounts;
+
+    public DirectoryScanner(Function<Path, String> mimeTypeResolver) {
+        this(mimeTypeResolver, DEFAULT_MAX_CACHED_COUNTS);
+    }
+
+    public DirectoryScanner(Function<Path, String> mimeTypeResolver, int maxCachedCounts) {
+        this.mimeTypeResolver = mimeTypeResolver;
+        this.childCounts = new LinkedHashMap<Path, ChildCount>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, ChildCount> eldest) {
+                return size() > maxCachedCounts;
+            }
+        };
+    }
+
+    /**
+     * Lists the collection at path.
+     *
+     * @param path the directory to be listed
+     * @return a collection resource holding one item per visible entry
+     * @throws IOException if the directory itself can not be read
+     */
+    public CollectionResource scan(Path path) throws IOException {
+        CollectionResource collectionResource = new CollectionResource();
+        ListingDigest listingDigest = new ListingDigest(Files.getLastModifiedTime(path));
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, DirectoryScanner::isVisible)) {
+            for (Path entryPath : stream) {
+                String entryNameString = entryPath.getFileName().toString();
+
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(entryPath, BasicFileAttributes.class);
+                } catch (IOException ioe) {
+                    logger.warn("Skipping unreadable entry: {}", entryPath);
+                    continue;
+                }
+
+                if (attributes.isDirectory()) {
+                    try {
+                        collectionResource.addItem(
+                            new CollectionResource(entryNameString,
+                                childCount(entryPath, attributes.lastModifiedTime())));
+                        listingDigest.add(entryNameString, attributes);
+                    } catch (IOException ioe) {
+                        logger.warn("Skipping unreadable directory: {}", entryPath);
+                    }
+                } else if (attributes.isRegularFile()) {
+                    collectionResource.addItem(
+                        new DocumentDescriptorResource(entryNameString, mimeTypeResolver.apply(entryPath),
+                            attributes.creationTime().toMillis(), attributes.lastModifiedTime().toMillis(),
+                            attributes.lastAccessTime().toMillis(), attributes.size()));
+                    listingDigest.add(entryNameString, attributes);
+                } else {
+                    logger.warn("Unexpected filesystem object: {}", entryPath);
+                }
+            }
+        }
+
+        collectionResource.setVersion(listingDigest.version());
+        return collectionResource;
+    }
+
+    /**
+     * Computes the version of the collection at path, i.e. the one {@link #scan} would
+     * attach to its listing, reading entry attributes only.
+     *
+     * @param path the directory
+     * @return
+     * @throws IOException if the directory itself can not be read
+     */
+    public ResourceVersion version(Path path) throws IOException {
+        ListingDigest listingDigest = new ListingDigest(Files.getLastModifiedTime(path));
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, DirectoryScanner::isVisible)) {
+            for (Path entryPath : stream) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(entryPath, BasicFileAttributes.class);
+                } catch (IOException ioe) {
+                    continue;
+                }
+
+                if (attributes.isDirectory() || attributes.isRegularFile())
+                    listingDigest.add(entryPath.getFileName().toString(), attributes);
+            }
+        }
+
+        return listingDigest.version();
+    }
+
+    /**
+     * Drops any memoized count for path (e.g. after an entry has been added or removed).
+     *
+     * @param path
+     */
+    public void invalidate(Path path) {
+        synchronized (childCounts) {
+            childCounts.remove(path);
+        }
+    }
+
+    private int childCount(Path path, FileTime lastModifiedTime) throws IOException {
+        synchronized (childCounts) {
+            ChildCount cached = childCounts.get(path);
+            if (cached != null && cached.lastModifiedTime.equals(lastModifiedTime))
+                return cached.count;
+        }
+
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, DirectoryScanner::isVisible)) {
+            for (Path ignored : stream)
+                ++ count;
+        }
+
+        synchronized (childCounts) {
+            childCounts.put(path, new ChildCount(lastModifiedTime, count));
+        }
+        return count;
+    }
+
+    /* hidden files are never listed */
+    private static boolean isVisible(Path entry) {
+        return ! entry.getFileName().toString().startsWith(".");
+    }
+
+    /* order independent digest of a directory listing */
+    private static final class ListingDigest {
+        final TreeMap<String, String> entries = new TreeMap<>();
+        long lastModifiedTime;
+
+        ListingDigest(FileTime directoryLastModifiedTime) {
+            this.lastModifiedTime = directoryLastModifiedTime.toMillis();
+        }
+
+        void add(String name, BasicFileAttributes attributes) {
+            /* a nested collection is listed with its items count, which changes along with its mtime */
+            entries.put(name, String.format("%s:%d:%d", attributes.isDirectory() ? "d" : "f",
+                attributes.isDirectory() ? 0 : attributes.size(),
+                attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS)));
+
+            lastModifiedTime = Math.max(lastModifiedTime, attributes.lastModifiedTime().toMillis());
+        }
+
+        ResourceVersion version() {
+            MessageDigest messageDigest;
+            try {
+                messageDigest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException nsae) {
+                throw new IllegalStateException(nsae);
+            }
+
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                messageDigest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                messageDigest.update((byte) 0);
+                messageDigest.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                messageDigest.update((byte) 0);
+            }
+
+            StringBuilder entityTag = new StringBuilder("\"");
+            byte[] digest = messageDigest.digest();
+            for (int i = 0; i < 16; ++ i)
+                entityTag.append(String.format("%02x", digest[i]));
+
+            return new ResourceVersion(entityTag.append('"').toString(), lastModifiedTime, true);
+        }
+    }
+
+    private static final class ChildCount {
+        final FileTime lastModifiedTime;
+        final int count;
+
+        ChildCount(FileTime lastModifiedTime, int count) {
+            this.lastModifiedTime = lastModifiedTime;
+            this.count = count;
+        }
+    }
+}
@@ -4,42 +4,96 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.file.AsyncFile;
 import io.vertx.core.file.FileProps;
 import io.vertx.core.file.FileSystem;
 import io.vertx.core.file.OpenOptions;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.Pump;
+import io.vertx.core.streams.ReadStream;
+import org.blackcat.trunk.resource.ContentDigest;
 import org.blackcat.trunk.resource.Resource;
+import org.blackcat.trunk.resource.ResourceVersion;
+import org.blackcat.trunk.resource.TreeSize;
 import org.blackcat.trunk.resource.exceptions.ConflictException;
+import org.blackcat.trunk.resource.exceptions.DigestMismatchException;
 import org.blackcat.trunk.resource.exceptions.NotFoundException;
+import org.blackcat.trunk.resource.exceptions.QuotaExceededException;
+import org.blackcat.trunk.resource.exceptions.ResourceException;
 import org.blackcat.trunk.resource.exceptions.UnsupportedException;
+import org.blackcat.trunk.resource.impl.CollectionDescriptorResource;
 import org.blackcat.trunk.resource.impl.CollectionResource;
 import org.blackcat.trunk.resource.impl.DocumentContentResource;
 import org.blackcat.trunk.resource.impl.DocumentDescriptorResource;
 import org.blackcat.trunk.storage.Storage;
+import org.blackcat.trunk.storage.UsageAccounting;
 import org.blackcat.trunk.storage.exceptions.StorageException;
+import org.blackcat.trunk.streams.digest.DigestCalculator;
+import org.blackcat.trunk.streams.pump.TransferRegistry;
 import org.blackcat.trunk.util.Utils;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 
 public class FileSystemStorage implements Storage {
 
     private Logger logger = LoggerFactory.getLogger(FileSystemStorage.class);
     static private final OpenOptions openOptions = new OpenOptions();
+    static private final OpenOptions uploadOpenOptions = new OpenOptions()
+                                                             .setCreate(false)
+                                                             .setTruncateExisting(false);
+    static private final long CACHE_STATISTICS_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+    static private final String TOMBSTONES_DIRECTORY = ".tombstones";
 
     private Vertx vertx;
     private Path root;
+    private DirectoryScanner directoryScanner;
+    private UsageAccounting usageAccounting;
+
+    @Nullable
+    private ResourceCache resourceCache;
 
     public FileSystemStorage(Vertx vertx, Path root) {
+        this(vertx, root, 0);
+    }
+
+    public FileSystemStorage(Vertx vertx, Path root, long cacheSize) {
+        this(vertx, root, cacheSize, 0);
+    }
+
+    public FileSystemStorage(Vertx vertx, Path root, long cacheSize, long userQuota) {
         this.vertx = vertx;
         this.root = root;
+        this.directoryScanner = new DirectoryScanner(this::getMimeType);
+        this.usageAccounting = new UsageAccounting(root, userQuota);
+
+        if (cacheSize > 0) {
+            resourceCache = new ResourceCache(cacheSize);
+            vertx.setPeriodic(CACHE_STATISTICS_INTERVAL, id ->
+                logger.debug("Resource cache statistics: {}", resourceCache.statistics()));
+        }
+    }
+
+    /**
+     * @return hit/miss statistics for the resource cache, or null if caching is disabled
+     */
+    @Nullable
+    public JsonObject getCacheStatistics() {
+        return resourceCache != null ? resourceCache.statistics() : null;
     }
 
     @Override
@@ -47,6 +101,16 @@ public class FileSystemStorage implements Storage {
         return root;
     }
 
+    @Override
+    public Path getTombstones() {
+        return root.resolve(TOMBSTONES_DIRECTORY);
+    }
+
+    @Override
+    public UsageAccounting getUsageAccounting() {
+        return usageAccounting;
+    }
+
     @Override
     public FileProps resourceProperties(Path path) {
         return vertx.fileSystem().propsBlocking(path.toString());
@@ -68,6 +132,16 @@ public class FileSystemStorage implements Storage {
         /* local ref to the filesystem object */
         FileSystem fileSystem = vertx.fileSystem();
 
+        /* served from cache? */
+        Resource cachedResource = cachedResource(path);
+        if (cachedResource != null) {
+            resourceHandler.handle(Future.succeededFuture(cachedResource));
+            return;
+        }
+
+        /* taken before hitting the disk, so that changes made meanwhile are not cached */
+        long generation = resourceCache != null ? resourceCache.generation() : 0;
+
         /* if resource exists ... */
         String pathString = path.toString();
         fileSystem.exists(pathString, existsAsyncResult -> {
@@ -77,88 +151,71 @@ public class FileSystemStorage implements Storage {
             else if (existsAsyncResult.result()) {
                 fileSystem.props(pathString, filePropsAsyncResult -> {
                     normalResource(path, resourceHandler,
-                        fileSystem, pathString, filePropsAsyncResult);
+                        fileSystem, pathString, filePropsAsyncResult, generation);
                 });
             }
 
             /* Not found. Is it a `/meta` GET request? */
             else if (path.endsWith("meta")) {
-                metaResource(path, resourceHandler, fileSystem);
+                metaResource(path, resourceHandler, fileSystem, generation);
             }
 
             else resourceHandler.handle(Future.failedFuture(new NotFoundException()));
         });
     } /* get() */
 
+    @Nullable
+    private Resource cachedResource(Path path) {
+        if (resourceCache == null)
+            return null;
+
+        if (path.endsWith("meta"))
+            return resourceCache.get(path.getParent(), DocumentDescriptorResource.class,
+                path, CollectionResource.class);
+
+        return resourceCache.get(path, CollectionResource.class);
+    }
+
     private void normalResource(Path path, Handler<AsyncResult<Resource>> resourceHandler, FileSystem fileSystem,
-                                String pathString, AsyncResult<FileProps> filePropsAsyncResult) {
+                                String pathString, AsyncResult<FileProps> filePropsAsyncResult, long generation) {
         FileProps fileProperties = filePropsAsyncResult.result();
 
         /* Directory? */
         if (fileProperties.isDirectory()) {
-            fileSystem.readDir(pathString, dirAsyncResult -> {
-
-                vertx.executeBlocking(future -> {
-                    CollectionResource collectionResource =
-                        new CollectionResource();
-
-                    for (String entry : dirAsyncResult.result()) {
-                        Path entryPath = Paths.get(entry);
-                        String entryPathString = entryPath.toString();
-
-                        Path entryName = path.relativize(entryPath);
-                        String entryNameString = entryName.toString();
-
-                        /* ignore hidden files */
-                        if (entryNameString.startsWith("."))
-                            continue;
-
-                        FileProps fileProps = fileSystem.propsBlocking(entry);
-                        if (fileProps.isDirectory()) {
-                            try {
-                                List<String> nestedEntries = fileSystem.readDirBlocking(entryPathString);
-                                collectionResource.addItem(
-                                    new CollectionResource(
-                                        entryNameString, nestedEntries.size()));
-                            } catch (RuntimeException re) {
-                                logger.warn("Skipping unreadable directory: {0}", entryPath);
-                            }
-                        } else if (fileProps.isRegularFile()) {
-                            String mimeType = getMimeType(entryPath);
-                            collectionResource.addItem(
-                                new DocumentDescriptorResource(entryNameString, mimeType,
-                                    fileProps.creationTime(), fileProps.lastModifiedTime(),
-                                    fileProps.lastAccessTime(), fileProps.size()));
-                        } else {
-                            logger.warn("Unexpected filesystem object: {0}", entryName);
-                        }
-                    }
+            vertx.executeBlocking((Future<CollectionResource> future) -> {
+                try {
+                    CollectionResource collectionResource = directoryScanner.scan(path);
+                    if (resourceCache != null)
+                        resourceCache.put(path, collectionResource, generation);
 
                     future.complete(collectionResource);
-                }, done -> {
-                    final CollectionResource collectionResource = (CollectionResource) done.result();
-                    resourceHandler.handle(Future.succeededFuture(collectionResource));
-                });
+                } catch (IOException ioe) {
+                    future.fail(new StorageException(ioe));
+                }
+            }, done -> {
+                if (done.failed())
+                    resourceHandler.handle(Future.failedFuture(done.cause()));
+                else
+                    resourceHandler.handle(Future.succeededFuture(done.result()));
             });
         }
 
         /* Regular file? */
         else if (fileProperties.isRegularFile()) {
-            fileSystem.open(pathString, openOptions, openAsyncResult -> {
-                AsyncFile asyncFile = openAsyncResult.result();
+            vertx.executeBlocking((Future<DocumentAttributes> future) -> {
                 try {
-                    String mimeType = Files.probeContentType(path);
-                    DocumentContentResource documentContentResource =
-                        new DocumentContentResource(mimeType, fileProperties.size(),
-                            asyncFile, event -> {
-                            logger.trace("Closing input stream");
-                            asyncFile.close();
-                        });
-
-                    resourceHandler.handle(Future.succeededFuture(documentContentResource));
+                    future.complete(new DocumentAttributes(
+                        ResourceVersion.of(Files.readAttributes(path, BasicFileAttributes.class)),
+                        DigestAttributes.read(path)));
                 } catch (IOException ioe) {
-                    resourceHandler.handle(Future.failedFuture(new ConflictException(ioe)));
+                    future.fail(new StorageException(ioe));
                 }
+            }, false, attributesAsyncResult -> {
+                if (attributesAsyncResult.failed())
+                    resourceHandler.handle(Future.failedFuture(attributesAsyncResult.cause()));
+                else
+                    openDocument(path, resourceHandler, fileSystem, pathString,
+                        fileProperties, attributesAsyncResult.result());
             });
         }
 
@@ -167,7 +224,64 @@ public class FileSystemStorage implements Storage {
         }
     }
 
-    private void metaResource(Path path, Handler<AsyncResult<Resource>> resourceHandler, FileSystem fileSystem) {
+    private void openDocument(Path path, Handler<AsyncResult<Resource>> resourceHandler, FileSystem fileSystem,
+                              String pathString, FileProps fileProperties, DocumentAttributes attributes) {
+        fileSystem.open(pathString, openOptions, openAsyncResult -> {
+            AsyncFile asyncFile = openAsyncResult.result();
+            try {
+                String mimeType = Files.probeContentType(path);
+
+                /* closed when done, or on interruption: whichever comes first */
+                AtomicBoolean closed = new AtomicBoolean();
+                DocumentContentResource documentContentResource =
+                    new DocumentContentResource(mimeType, fileProperties.size(),
+                        attributes.version, path, asyncFile, event -> {
+                        if (closed.getAndSet(true))
+                            return;
+
+                        logger.trace("Closing input stream");
+                        asyncFile.close();
+                    });
+                documentContentResource.setContentDigest(attributes.digest);
+
+                resourceHandler.handle(Future.succeededFuture(documentContentResource));
+            } catch (IOException ioe) {
+                resourceHandler.handle(Future.failedFuture(new ConflictException(ioe)));
+            }
+        });
+    }
+
+    @Override
+    public void getVersion(Path path, Handler<AsyncResult<ResourceVersion>> versionHandler) {
+
+        /* cached listings are kept up to date by the cache itself */
+        CollectionResource cachedCollection =
+            resourceCache != null ? resourceCache.get(path, CollectionResource.class) : null;
+
+        if (cachedCollection != null && cachedCollection.getVersion() != null) {
+            versionHandler.handle(Future.succeededFuture(cachedCollection.getVersion()));
+            return;
+        }
+
+        vertx.executeBlocking((Future<ResourceVersion> future) -> {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.isDirectory())
+                    future.complete(directoryScanner.version(path));
+                else if (attributes.isRegularFile())
+                    future.complete(ResourceVersion.of(attributes));
+                else
+                    future.fail(new UnsupportedException());
+            } catch (NoSuchFileException nsfe) {
+                future.fail(new NotFoundException());
+            } catch (IOException ioe) {
+                future.fail(new StorageException(ioe));
+            }
+        }, false, versionHandler);
+    } /* getVersion() */
+
+    private void metaResource(Path path, Handler<AsyncResult<Resource>> resourceHandler, FileSystem fileSystem,
+                              long generation) {
         Path resourcePath = path.getParent();
         String resourcePathString = resourcePath.toString();
 
@@ -182,8 +296,7 @@ public class FileSystemStorage implements Storage {
                     FileProps fileProperties = filePropsAsyncResult.result();
 
                     if (fileProperties.isDirectory()) {
-                        // TODO: 2/13/18 meta not yet supported for collections
-                        resourceHandler.handle(Future.failedFuture(new UnsupportedException()));
+                        collectionMetaResource(resourcePath, fileProperties, resourceHandler);
                     } else if (fileProperties.isRegularFile()) {
                         String mimeType = getMimeType(resourcePath);
                         DocumentDescriptorResource documentDescriptorResource =
@@ -191,13 +304,46 @@ public class FileSystemStorage implements Storage {
                                 fileProperties.creationTime(), fileProperties.lastModifiedTime(),
                                 fileProperties.lastAccessTime(), fileProperties.size());
 
+                        if (resourceCache != null) {
+                            vertx.executeBlocking(future -> {
+                                resourceCache.put(resourcePath, documentDescriptorResource, generation);
+                                future.complete();
+                            }, false, null);
+                        }
+
                         resourceHandler.handle(Future.succeededFuture(documentDescriptorResource));
                     }
                 });
             }
+
+            else resourceHandler.handle(Future.failedFuture(new NotFoundException()));
         });
     }
 
+    /* answered from the usage tree, without walking the collection unless the tree is still being seeded */
+    private void collectionMetaResource(Path path, FileProps fileProperties,
+                                        Handler<AsyncResult<Resource>> resourceHandler) {
+        String name = path.equals(root) ? "" : path.getFileName().toString();
+
+        TreeSize treeSize = usageAccounting.treeSize(path);
+        if (treeSize != null) {
+            resourceHandler.handle(Future.succeededFuture(
+                new CollectionDescriptorResource(name, newest(treeSize, fileProperties.lastModifiedTime()))));
+            return;
+        }
+
+        vertx.executeBlocking((Future<Resource> future) -> {
+            future.complete(new CollectionDescriptorResource(name,
+                newest(usageAccounting.measure(path), fileProperties.lastModifiedTime())));
+        }, false, resourceHandler);
+    }
+
+    /* the collection itself changes when an entry is added or removed, even if nothing is accounted */
+    private static TreeSize newest(TreeSize treeSize, long lastModifiedTime) {
+        return new TreeSize(treeSize.getBytes(), treeSize.getDocuments(),
+            Math.max(treeSize.getLastModifiedTime(), lastModifiedTime));
+    }
+
     @Override
     public void putCollectionResource(Path path, Handler<AsyncResult<Void>> resourceHandler) {
         FileSystem fileSystem = vertx.fileSystem();
@@ -247,6 +393,7 @@ public class FileSystemStorage implements Storage {
 
     private void mkDir(Handler<AsyncResult<Void>> resourceHandler, FileSystem fileSystem, String pathString) {
         fileSystem.mkdirs(pathString, asyncMkdirsResult -> {
+            invalidate(Paths.get(pathString));
             if (asyncMkdirsResult.failed())
                 resourceHandler.handle(Future.failedFuture(
                     new ConflictException(asyncMkdirsResult.cause())));
@@ -257,13 +404,162 @@ public class FileSystemStorage implements Storage {
     }
 
     @Override
-    public void putDocumentResource(Path path, Handler<AsyncResult<Resource>> resourceHandler) {
+    public void putDocumentResource(Path path, @Nullable UsageAccounting.Reservation reservation,
+                                    Handler<AsyncResult<Resource>> resourceHandler) {
+        checkDocumentPath(path, checkAsyncResult -> {
+            if (checkAsyncResult.failed())
+                resourceHandler.handle(Future.failedFuture(checkAsyncResult.cause()));
+            else {
+                putDocumentHelper(path, reservation, resourceHandler, completed -> {
+                    if (completed.failed())
+                        resourceHandler.handle(Future.failedFuture(completed.cause()));
+                    else
+                        resourceHandler.handle(Future.succeededFuture());
+                });
+            }
+        });
+    } /* putDocumentResource() */
+
+    @Override
+    public void putDocumentByDigest(Path path, byte[] digest, long length, Handler<AsyncResult<Boolean>> handler) {
+        /* contents are not indexed here, see ContentAddressedStorage */
+        handler.handle(Future.succeededFuture(false));
+    }
+
+    @Override
+    public void putDocumentUpload(Path path, Handler<AsyncResult<Path>> handler) {
+        checkDocumentPath(path, checkAsyncResult -> {
+            if (checkAsyncResult.failed()) {
+                handler.handle(Future.failedFuture(checkAsyncResult.cause()));
+                return;
+            }
+
+            /* hidden, unfinished uploads are never listed */
+            Path tempPath = path.resolveSibling(Utils.makeTempFileName("." + path.getFileName()));
+            vertx.fileSystem().createFile(tempPath.toString(), createAsyncResult -> {
+                if (createAsyncResult.failed())
+                    handler.handle(Future.failedFuture(new ConflictException(createAsyncResult.cause())));
+                else
+                    handler.handle(Future.succeededFuture(tempPath));
+            });
+        });
+    }
+
+    @Override
+    public void appendDocumentUpload(Path tempPath, long offset, ReadStream<Buffer> content,
+                                     Handler<AsyncResult<Long>> handler) {
+        FileSystem fileSystem = vertx.fileSystem();
+        String tempPathString = tempPath.toString();
+
+        fileSystem.open(tempPathString, uploadOpenOptions, openAsyncResult -> {
+            if (openAsyncResult.failed()) {
+                handler.handle(Future.failedFuture(new NotFoundException()));
+                return;
+            }
+
+            AsyncFile asyncFile = openAsyncResult.result();
+            asyncFile.setWritePos(offset);
+            Pump pump = Pump.pump(content, asyncFile);
+
+            /* either way, whatever has been written is kept and the new offset reported */
+            AtomicBoolean finished = new AtomicBoolean();
+            Handler<Void> finish = done -> {
+                if (finished.getAndSet(true))
+                    return;
+
+                pump.stop();
+                asyncFile.close(closeAsyncResult ->
+                    fileSystem.props(tempPathString, propsAsyncResult -> {
+                        if (propsAsyncResult.failed())
+                            handler.handle(Future.failedFuture(propsAsyncResult.cause()));
+                        else
+                            handler.handle(Future.succeededFuture(propsAsyncResult.result().size()));
+                    }));
+            };
+
+            content.endHandler(finish);
+            content.exceptionHandler(exception -> {
+                logger.warn("Upload to {} interrupted: {}", tempPath, exception.toString());
+                finish.handle(null);
+            });
+
+            pump.start();
+            content.resume();
+        });
+    }
+
+    @Override
+    public void allocateDocumentUpload(Path tempPath, long length, Handler<AsyncResult<Void>> handler) {
+        vertx.executeBlocking(future -> {
+            try (RandomAccessFile file = new RandomAccessFile(tempPath.toFile(), "rw")) {
+                file.setLength(length);
+                future.complete();
+            } catch (IOException ioe) {
+                future.fail(new ConflictException(ioe));
+            }
+        }, false, handler);
+    }
+
+    @Override
+    public void writeDocumentUpload(Path tempPath, long position, ReadStream<Buffer> content,
+                                    Handler<Buffer> observer, Handler<AsyncResult<Long>> handler) {
+        vertx.fileSystem().open(tempPath.toString(), uploadOpenOptions, openAsyncResult -> {
+            if (openAsyncResult.failed()) {
+                handler.handle(Future.failedFuture(new NotFoundException()));
+                return;
+            }
+
+            AsyncFile asyncFile = openAsyncResult.result();
+            TransferRegistry.Transfer transfer = TransferRegistry.getInstance().open(content, asyncFile);
+            PositionalWriter writer = new PositionalWriter(asyncFile, position, content, transfer, handler);
+            content
+                .exceptionHandler(writer::fail)
+                .endHandler(writer::end)
+                .handler(buffer -> {
+                    observer.handle(buffer);
+                    writer.write(buffer);
+                });
+
+            content.resume();
+        });
+    }
+
+    @Override
+    public void commitDocumentUpload(Path tempPath, Path path, @Nullable UsageAccounting.Reservation reservation,
+                                     Handler<AsyncResult<Void>> handler) {
+        /* uploads come in pieces, possibly out of order and across restarts: their digest is computed once, here */
+        vertx.executeBlocking((Future<Void> future) -> {
+            try {
+                DigestAttributes.write(tempPath, DigestCalculator.digest(tempPath));
+                future.complete();
+            } catch (IOException ioe) {
+                future.fail(new NotFoundException());
+            }
+        }, false, digestAsyncResult -> {
+            if (digestAsyncResult.failed()) {
+                handler.handle(Future.failedFuture(digestAsyncResult.cause()));
+                return;
+            }
+
+            moveIntoPlace(vertx.fileSystem(), tempPath.toString(), path.toString(), reservation, moveAsyncResult -> {
+                if (moveAsyncResult.failed())
+                    handler.handle(Future.failedFuture(resourceException(moveAsyncResult.cause())));
+                else {
+                    logger.info("Upload of {} completed.", path);
+                    handler.handle(Future.succeededFuture());
+                }
+            });
+        });
+    }
+
+    /* a document can be put over another document, or where nothing is yet provided the parent collection exists */
+    protected void checkDocumentPath(Path path, Handler<AsyncResult<Void>> handler) {
         FileSystem fileSystem = vertx.fileSystem();
         String pathString = path.toString();
 
         fileSystem.exists(pathString, existsAsyncResult -> {
             if (existsAsyncResult.failed())
-                resourceHandler.handle(Future.failedFuture(existsAsyncResult.cause()));
+                handler.handle(Future.failedFuture(existsAsyncResult.cause()));
 
             else if (existsAsyncResult.result()) {
                 fileSystem.props(pathString, propsAsyncResult -> {
@@ -271,20 +567,18 @@ public class FileSystemStorage implements Storage {
 
                     /* if resource already exists and it's a collection we complain */
                     if (props.isDirectory()) {
-                        resourceHandler.handle(Future.failedFuture(
+                        handler.handle(Future.failedFuture(
                             new ConflictException("A collection with the same name already exists.")));
                     }
 
                     /* ... we overwrite it */
                     else if (props.isRegularFile()) {
-                        putDocumentHelper(path, resourceHandler, completed -> {
-                            resourceHandler.handle(Future.succeededFuture());
-                        });
+                        handler.handle(Future.succeededFuture());
                     }
 
                     /* ??? */
                     else {
-                        resourceHandler.handle(Future.failedFuture(new ConflictException(
+                        handler.handle(Future.failedFuture(new ConflictException(
                             "Existing resource is neither a collection nor a document.")));
                     }
                 });
@@ -297,24 +591,22 @@ public class FileSystemStorage implements Storage {
 
                 fileSystem.exists(parentPathString, parentExistsAsyncResult -> {
                     if (parentExistsAsyncResult.failed())
-                        resourceHandler.handle(Future.failedFuture(parentExistsAsyncResult.cause()));
+                        handler.handle(Future.failedFuture(parentExistsAsyncResult.cause()));
 
                     else if (parentExistsAsyncResult.result()) {
-                        putDocumentHelper(path, resourceHandler, completed -> {
-                            resourceHandler.handle(Future.succeededFuture());
-                        });
+                        handler.handle(Future.succeededFuture());
                     } else {
-                        resourceHandler.handle(Future.failedFuture(new ConflictException(
+                        handler.handle(Future.failedFuture(new ConflictException(
                             "Parent collection not existing.")));
                     }
                 });
             }
         });
-    } /* putDocumentResource() */
+    }
 
-    private void putDocumentHelper(Path fullPath,
+    private void putDocumentHelper(Path fullPath, @Nullable UsageAccounting.Reservation reservation,
                                    Handler<AsyncResult<Resource>> handler,
-                                   Handler<Void> completionHandler) {
+                                   Handler<AsyncResult<Void>> completionHandler) {
 
         FileSystem fileSystem = vertx.fileSystem();
         String destPathString = fullPath.toString();
@@ -329,9 +621,11 @@ public class FileSystemStorage implements Storage {
                     openAsyncResult.result();
 
                 // TODO: 2/13/18 this is way too hard to read. Refactor it!
+                DigestCalculator digestCalculator = new DigestCalculator();
                 DocumentContentResource documentContentResource =
-                    new DocumentContentResource(asyncFile,
-                        done -> completeTransfer(fileSystem, asyncFile, destPathString, tempPathString, completionHandler));
+                    new DocumentContentResource(asyncFile, digestCalculator,
+                        done -> completeTransfer(fileSystem, asyncFile, destPathString, tempPathString,
+                            digestCalculator, reservation, completionHandler));
 
                 handler.handle(Future.succeededFuture(documentContentResource));
             }
@@ -339,24 +633,106 @@ public class FileSystemStorage implements Storage {
     } /* putDocumentHelper() */
 
     private void completeTransfer(FileSystem fileSystem, AsyncFile asyncFile, String destPathString,
-                                  String tempPathString, Handler<Void> completionHandler) {
+                                  String tempPathString, DigestCalculator digestCalculator,
+                                  @Nullable UsageAccounting.Reservation reservation,
+                                  Handler<AsyncResult<Void>> completionHandler) {
         asyncFile.close(
             closeAsyncResult -> {
+                /* content not matching what the client declared is dropped, the previous document is kept */
+                if (! digestCalculator.matches()) {
+                    logger.warn("Digest mismatch, discarding transfer to {}", destPathString);
+                    fileSystem.delete(tempPathString, deleteAsyncResult ->
+                        completionHandler.handle(Future.failedFuture(
+                            new DigestMismatchException("Content does not match its declared digest."))));
+                    return;
+                }
+
+                vertx.executeBlocking(future -> {
+                    DigestAttributes.write(Paths.get(tempPathString), digestCalculator.finish());
+                    future.complete();
+                }, false, digestAsyncResult ->
+                    commitTransfer(fileSystem, destPathString, tempPathString, reservation, completionHandler));
+            });
+    }
+
+    private void commitTransfer(FileSystem fileSystem, String destPathString, String tempPathString,
+                                @Nullable UsageAccounting.Reservation reservation,
+                                Handler<AsyncResult<Void>> completionHandler) {
+        moveIntoPlace(fileSystem, tempPathString, destPathString, reservation,
+            moveAsyncResult -> {
+                if (moveAsyncResult.failed()) {
+                    fileSystem.delete(tempPathString, deleteAsyncResult ->
+                        completionHandler.handle(Future.failedFuture(resourceException(moveAsyncResult.cause()))));
+                    return;
+                }
+
+                fileSystem.props(destPathString, filePropsAsyncResult -> {
+                    if (filePropsAsyncResult.succeeded()) {
+                        FileProps result = filePropsAsyncResult.result();
+                        logger.info("File transfer operation completed ({} bytes written).",
+                            result.size());
+                    }
+                    completionHandler.handle(Future.succeededFuture());
+                });
+            });
+    }
+
+    /* every document written ends up here, from the temporary file it has been written to */
+    protected void moveIntoPlace(FileSystem fileSystem, String tempPathString, String destPathString,
+                                 @Nullable UsageAccounting.Reservation held, Handler<AsyncResult<Void>> handler) {
+        Path destPath = Paths.get(destPathString);
+
+        fileSystem.props(tempPathString, tempPropsAsyncResult -> {
+            if (tempPropsAsyncResult.failed()) {
+                handler.handle(Future.failedFuture(tempPropsAsyncResult.cause()));
+                return;
+            }
+
+            long length = tempPropsAsyncResult.result().size();
+            fileSystem.props(destPathString, destPropsAsyncResult -> {
+                /* replacing a document, or adding one */
+                long replacedLength = destPropsAsyncResult.succeeded() ? destPropsAsyncResult.result().size() : -1;
+                UsageAccounting.Reservation reservation =
+                    usageAccounting.reserve(destPath, length - Math.max(0, replacedLength), held);
+                if (reservation == null) {
+                    handler.handle(Future.failedFuture(new QuotaExceededException("User quota exceeded.")));
+                    return;
+                }
+
+                /* held until the bytes are accounted for, or known not to be there */
                 fileSystem.delete(destPathString,
                     deleteAsyncResult -> {
                         fileSystem.move(tempPathString, destPathString,
                             moveAsyncResult -> {
-                                fileSystem.props(destPathString, filePropsAsyncResult -> {
-                                    if (filePropsAsyncResult.succeeded()) {
-                                        FileProps result = filePropsAsyncResult.result();
-                                        logger.info("File transfer operation completed ({} bytes written).",
-                                            result.size());
-                                        completionHandler.handle(null);
-                                    }
-                                });
+                                invalidate(destPath);
+                                if (moveAsyncResult.succeeded())
+                                    accountReplacement(destPath, length, replacedLength);
+                                reservation.release();
+
+                                handler.handle(moveAsyncResult);
                             });
                     });
             });
+        });
+    }
+
+    /**
+     * Accounts for a document of the given length put at path.
+     *
+     * @param path
+     * @param length
+     * @param replacedLength the length of the document replaced, -1 if there was none
+     */
+    protected void accountReplacement(Path path, long length, long replacedLength) {
+        if (replacedLength < 0)
+            usageAccounting.add(path, length, 1);
+        else
+            usageAccounting.add(path, length - replacedLength, 0);
+    }
+
+    /* failures the handlers tell apart go through, others are conflicts */
+    private static ResourceException resourceException(Throwable cause) {
+        return cause instanceof ResourceException ? (ResourceException) cause : new ConflictException(cause);
     }
 
     @Nullable
@@ -388,18 +764,185 @@ public class FileSystemStorage implements Storage {
         });
     } /* delete() */
 
+    @Override
+    public void deleteTree(Path path, Handler<AsyncResult<Path>> handler) {
+        vertx.executeBlocking((Future<Path> future) -> {
+            try {
+                if (! Files.readAttributes(path, BasicFileAttributes.class).isDirectory()) {
+                    future.complete(null);
+                    return;
+                }
+                if (path.equals(root)) {
+                    future.fail(new ConflictException("The storage root can not be deleted."));
+                    return;
+                }
+
+                /* same filesystem, a rename makes the whole tree disappear at once */
+                Path tombstone = getTombstones().resolve(UUID.randomUUID().toString());
+                Files.createDirectories(tombstone.getParent());
+                Files.move(path, tombstone, StandardCopyOption.ATOMIC_MOVE);
+                future.complete(tombstone);
+            } catch (NoSuchFileException nsfe) {
+                future.fail(new NotFoundException());
+            } catch (IOException ioe) {
+                future.fail(new ConflictException(ioe));
+            }
+        }, false, buryAsyncResult -> {
+            if (buryAsyncResult.failed())
+                handler.handle(Future.failedFuture(buryAsyncResult.cause()));
+
+            else if (buryAsyncResult.result() == null) {
+                delete(path, deleteAsyncResult -> {
+                    if (deleteAsyncResult.failed())
+                        handler.handle(Future.failedFuture(deleteAsyncResult.cause()));
+                    else
+                        handler.handle(Future.succeededFuture());
+                });
+            }
+
+            else {
+                usageAccounting.remove(path);
+                invalidateTree(path);
+                handler.handle(Future.succeededFuture(buryAsyncResult.result()));
+            }
+        });
+    }
+
     private void deleteResource(FileSystem fileSystem, String pathString,
                                 Handler<AsyncResult<Void>> resourceHandler) {
-        fileSystem.delete(pathString, deleteAsyncResult -> {
-            if (deleteAsyncResult.failed())
-                resourceHandler.handle(Future.failedFuture(
-                    new ConflictException(deleteAsyncResult.cause())));
-            else
-                resourceHandler.handle(Future.succeededFuture());
+        fileSystem.props(pathString, propsAsyncResult -> {
+            /* collections can only be deleted when empty */
+            FileProps props = propsAsyncResult.succeeded() ? propsAsyncResult.result() : null;
+
+            fileSystem.delete(pathString, deleteAsyncResult -> {
+                invalidateTree(Paths.get(pathString));
+                if (deleteAsyncResult.failed())
+                    resourceHandler.handle(Future.failedFuture(
+                        new ConflictException(deleteAsyncResult.cause())));
+                else {
+                    if (props != null && props.isRegularFile())
+                        usageAccounting.add(Paths.get(pathString), - props.size(), -1);
+                    else if (props != null && props.isDirectory())
+                        usageAccounting.remove(Paths.get(pathString));
+
+                    resourceHandler.handle(Future.succeededFuture());
+                }
+            });
         });
     }
 
+    protected void invalidate(Path path) {
+        if (resourceCache != null)
+            resourceCache.invalidate(path);
+    }
+
+    private void invalidateTree(Path path) {
+        if (resourceCache != null)
+            resourceCache.invalidateTree(path);
+    }
+
+    /* what is read on the worker thread before opening a document */
+    private static final class DocumentAttributes {
+        final ResourceVersion version;
+
+        @Nullable
+        final ContentDigest digest;
+
+        DocumentAttributes(ResourceVersion version, @Nullable ContentDigest digest) {
+            this.version = version;
+            this.digest = digest;
+        }
+    }
+
+    /* positional writes as content comes, pausing it while too many bytes are waiting to be written */
+    private static final class PositionalWriter {
+        static final long MAX_PENDING_BYTES = 4 * 1024 * 1024;
+
+        final AsyncFile asyncFile;
+        final ReadStream<Buffer> content;
+        final TransferRegistry.Transfer transfer;
+        final Handler<AsyncResult<Long>> handler;
+
+        long position;
+        long written;
+        long pending;
+        boolean ended;
+        boolean closed;
+        Throwable failure;
+
+        PositionalWriter(AsyncFile asyncFile, long position, ReadStream<Buffer> content,
+                         TransferRegistry.Transfer transfer, Handler<AsyncResult<Long>> handler) {
+            this.asyncFile = asyncFile;
+            this.position = position;
+            this.content = content;
+            this.transfer = transfer;
+            this.handler = handler;
+        }
+
+        void write(Buffer buffer) {
+            if (failure != null)
+                return;
+
+            pending += buffer.length();
+            if (pending > MAX_PENDING_BYTES)
+                content.pause();
+
+            asyncFile.write(buffer, position, writeAsyncResult -> {
+                pending -= buffer.length();
+                if (writeAsyncResult.failed())
+                    fail(writeAsyncResult.cause());
+                else {
+                    written += buffer.length();
+                    transfer.add(buffer.length());
+                }
+
+                if (! ended && pending <= MAX_PENDING_BYTES / 2)
+                    content.resume();
+                complete();
+            });
+            position += buffer.length();
+        }
+
+        void end(Void ignored) {
+            ended = true;
+            complete();
+        }
+
+        void fail(Throwable cause) {
+            if (failure == null)
+                failure = cause;
+
+            complete();
+        }
+
+        /* once everything has been written, or there is nothing more to wait for */
+        void complete() {
+            if (closed || (! ended && failure == null) || pending > 0)
+                return;
+
+            closed = true;
+            transfer.close();
+
+            asyncFile.close(closeAsyncResult -> {
+                if (failure != null)
+                    handler.handle(Future.failedFuture(failure));
+                else if (closeAsyncResult.failed())
+                    handler.handle(Future.failedFuture(closeAsyncResult.cause()));
+                else
+                    handler.handle(Future.succeededFuture(written));
+            });
+        }
+    }
+
     public static FileSystemStorage create(Vertx vertx, Path path) {
         return new FileSystemStorage(vertx, path);
     }
+
+    public static FileSystemStorage create(Vertx vertx, Path path, long cacheSize) {
+        return new FileSystemStorage(vertx, path, cacheSize);
+    }
+
+    public static FileSystemStorage create(Vertx vertx, Path path, long cacheSize, long userQuota) {
+        return new FileSystemStorage(vertx, path, cacheSize, userQuota);
+    }
 }
@@ -0,0 +1,357 @@
+package org.blackcat.trunk.storage.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.blackcat.trunk.resource.Resource;
+import org.blackcat.trunk.resource.impl.CollectionResource;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Bounded cache of collection listings and document descriptors, keyed by resolved path.
+ *
+ * The cache is size-aware: a collection weighs as much as the number of items it
+ * holds (plus one), a document descriptor weighs one. Least recently used entries are
+ * evicted once the total weight exceeds the configured limit.
+ *
+ * Entries are invalidated explicitly by the storage on every put and delete, and by a
+ * {@link WatchService} registered on every directory backing a cached entry, so that
+ * changes made outside the application are picked up too. Entries whose directory can
+ * not be watched are never cached.
+ */
+final public class ResourceCache {
+
+    private final Logger logger = LoggerFactory.getLogger(ResourceCache.class);
+
+    private final long maxWeight;
+    private final LinkedHashMap<Path, Resource> entries;
+    private final Map<Path, Watch> watches;
+    private final WatchService watchService;
+
+    private long weight;
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ResourceCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+        this.entries = new LinkedHashMap<>(1024, 0.75f, true);
+        this.watches = new HashMap<>();
+        this.watchService = newWatchService();
+
+        if (watchService != null) {
+            Thread watcher = new Thread(this::watchLoop, "trunk-storage-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    /**
+     * Returns the cached resource of the given type for path, or null.
+     *
+     * @param path
+     * @param type
+     * @return
+     */
+    public <T extends Resource> T get(Path path, Class<T> type) {
+        return type.cast(count(path, lookup(path, type)));
+    }
+
+    /**
+     * Returns the cached resource of the given type for path or, failing that, the one
+     * of alternateType for alternatePath, or null. Counts as a single lookup.
+     *
+     * @param path
+     * @param type
+     * @param alternatePath
+     * @param alternateType
+     * @return
+     */
+    public Resource get(Path path, Class<? extends Resource> type,
+                        Path alternatePath, Class<? extends Resource> alternateType) {
+        Resource resource = lookup(path, type);
+        if (resource == null)
+            resource = lookup(alternatePath, alternateType);
+
+        return count(path, resource);
+    }
+
+    /**
+     * Returns a token to be passed to {@link #put(Path, Resource, long)}. Must be taken
+     * before the resource is read from disk so that concurrent invalidations are not lost.
+     *
+     * @return
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches resource for path, unless anything has been invalidated since generation
+     * was taken or the backing directory can not be watched (blocking).
+     *
+     * @param path
+     * @param resource
+     * @param generation
+     */
+    public void put(Path path, Resource resource, long generation) {
+        Path directory = directoryOf(path, resource);
+        if (! watch(directory))
+            return;
+
+        synchronized (this) {
+            Watch watch = watches.get(directory);
+            if (generation != this.generation || watch == null) {
+                release(directory);
+                return;
+            }
+
+            ++ watch.references;
+            weight += weightOf(resource);
+
+            Resource previous = entries.put(path, resource);
+            if (previous != null)
+                forget(path, previous);
+
+            evict();
+        }
+    }
+
+    /**
+     * Invalidates path and the listings affected by a change to it, see
+     * {@link #removeListings(Path)}.
+     *
+     * @param path
+     */
+    public synchronized void invalidate(Path path) {
+        ++ generation;
+        invalidations.incrementAndGet();
+
+        remove(path);
+        removeListings(path);
+    }
+
+    /**
+     * Invalidates path, everything below it and the listings affected by a change to it,
+     * see {@link #removeListings(Path)}.
+     *
+     * @param path
+     */
+    public synchronized void invalidateTree(Path path) {
+        ++ generation;
+        invalidations.incrementAndGet();
+
+        Iterator<Map.Entry<Path, Resource>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Resource> entry = iterator.next();
+            if (entry.getKey().startsWith(path)) {
+                iterator.remove();
+                forget(entry.getKey(), entry.getValue());
+            }
+        }
+        removeListings(path);
+    }
+
+    public synchronized void clear() {
+        ++ generation;
+        invalidations.incrementAndGet();
+
+        Iterator<Map.Entry<Path, Resource>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Resource> entry = iterator.next();
+            iterator.remove();
+            forget(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public JsonObject statistics() {
+        long hits = this.hits.get();
+        long misses = this.misses.get();
+        long lookups = hits + misses;
+
+        JsonObject statistics = new JsonObject()
+                                    .put("hits", hits)
+                                    .put("misses", misses)
+                                    .put("hitRatio", lookups == 0 ? 0.0 : (double) hits / lookups)
+                                    .put("evictions", evictions.get())
+                                    .put("invalidations", invalidations.get());
+
+        synchronized (this) {
+            statistics
+                .put("entries", entries.size())
+                .put("weight", weight)
+                .put("maxWeight", maxWeight)
+                .put("watchedDirectories", watches.size());
+        }
+        return statistics;
+    }
+
+    private Resource lookup(Path path, Class<? extends Resource> type) {
+        Resource resource;
+        synchronized (this) {
+            resource = entries.get(path);
+        }
+        return type.isInstance(resource) ? resource : null;
+    }
+
+    private Resource count(Path path, Resource resource) {
+        if (resource != null) {
+            hits.incrementAndGet();
+            logger.trace("Cache hit for {}", path);
+        } else {
+            misses.incrementAndGet();
+            logger.trace("Cache miss for {}", path);
+        }
+        return resource;
+    }
+
+    /*
+     * The parent lists path itself, the grandparent lists the parent along with its items
+     * count and modification time, both of which change when path is added or removed.
+     * Ancestors above are not affected.
+     */
+    private void removeListings(Path path) {
+        Path parent = path.getParent();
+        if (parent == null)
+            return;
+
+        remove(parent);
+        remove(parent.getParent());
+    }
+
+    private void remove(Path path) {
+        if (path == null)
+            return;
+
+        Resource removed = entries.remove(path);
+        if (removed != null)
+            forget(path, removed);
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Path, Resource>> iterator = entries.entrySet().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            Map.Entry<Path, Resource> eldest = iterator.next();
+            iterator.remove();
+            forget(eldest.getKey(), eldest.getValue());
+            evictions.incrementAndGet();
+        }
+    }
+
+    /* bookkeeping for an entry that has just left the cache */
+    private void forget(Path path, Resource resource) {
+        weight -= weightOf(resource);
+
+        Watch watch = watches.get(directoryOf(path, resource));
+        if (watch != null)
+            -- watch.references;
+        release(directoryOf(path, resource));
+    }
+
+    /* stop watching directories no longer backing any cached entry */
+    private void release(Path directory) {
+        Watch watch = watches.get(directory);
+        if (watch != null && watch.references <= 0) {
+            watches.remove(directory);
+            watch.key.cancel();
+        }
+    }
+
+    private boolean watch(Path directory) {
+        if (watchService == null || directory == null)
+            return false;
+
+        synchronized (this) {
+            if (watches.containsKey(directory))
+                return true;
+        }
+
+        try {
+            WatchKey watchKey = directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            synchronized (this) {
+                /* registering twice the same directory yields the same key */
+                watches.putIfAbsent(directory, new Watch(watchKey));
+            }
+            return true;
+        } catch (IOException | ClosedWatchServiceException e) {
+            logger.warn("Can not watch {}, not caching ({})", directory, e.toString());
+            return false;
+        }
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey watchKey = watchService.take();
+                Path directory = (Path) watchKey.watchable();
+
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        logger.warn("Watch events overflow, dropping all cached resources");
+                        clear();
+                    } else {
+                        Path changed = directory.resolve((Path) event.context());
+                        logger.trace("{} {}", event.kind(), changed);
+                        invalidateTree(changed);
+                    }
+                }
+
+                if (! watchKey.reset()) {
+                    synchronized (this) {
+                        watches.remove(directory);
+                    }
+                    invalidateTree(directory);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.info("Storage watcher terminated");
+        }
+    }
+
+    private static Path directoryOf(Path path, Resource resource) {
+        return resource instanceof CollectionResource ? path : path.getParent();
+    }
+
+    private static long weightOf(Resource resource) {
+        if (resource instanceof CollectionResource) {
+            Integer itemsCount = ((CollectionResource) resource).getItemsCount();
+            return 1 + (itemsCount == null ? 0 : itemsCount);
+        }
+        return 1;
+    }
+
+    private WatchService newWatchService() {
+        try {
+            return FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("Filesystem watch not available, resource cache disabled ({})", e.toString());
+            return null;
+        }
+    }
+
+    private static final class Watch {
+        final WatchKey key;
+        int references;
+
+        Watch(WatchKey key) {
+            this.key = key;
+        }
+    }
+}
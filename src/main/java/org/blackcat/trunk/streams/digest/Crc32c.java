@@ -0,0 +1,69 @@
+package org.blackcat.trunk.streams.digest;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli), as used by iSCSI and cloud storage APIs; java.util.zip.CRC32C
+ * only comes with Java 9. Table driven, eight bytes at a time.
+ */
+final public class Crc32c implements Checksum {
+
+    private static final int POLYNOMIAL = 0x82F63B78; /* reversed */
+    private static final int[][] tables = new int[8][256];
+    static {
+        for (int n = 0; n < 256; ++ n) {
+            int crc = n;
+            for (int k = 0; k < 8; ++ k)
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            tables[0][n] = crc;
+        }
+        for (int n = 0; n < 256; ++ n) {
+            for (int t = 1; t < 8; ++ t)
+                tables[t][n] = (tables[t - 1][n] >>> 8) ^ tables[0][tables[t - 1][n] & 0xFF];
+        }
+    }
+
+    private int crc = 0xFFFFFFFF;
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ tables[0][(crc ^ b) & 0xFF];
+    }
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        update(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Updates the checksum with the remaining bytes of buffer, leaving its position at its limit.
+     *
+     * @param buffer
+     */
+    public void update(ByteBuffer buffer) {
+        int c = crc;
+        while (buffer.remaining() >= 8) {
+            int low = c ^ (buffer.get() & 0xFF | (buffer.get() & 0xFF) << 8 |
+                               (buffer.get() & 0xFF) << 16 | (buffer.get() & 0xFF) << 24);
+            c = tables[7][low & 0xFF] ^ tables[6][(low >>> 8) & 0xFF] ^
+                    tables[5][(low >>> 16) & 0xFF] ^ tables[4][low >>> 24] ^
+                    tables[3][buffer.get() & 0xFF] ^ tables[2][buffer.get() & 0xFF] ^
+                    tables[1][buffer.get() & 0xFF] ^ tables[0][buffer.get() & 0xFF];
+        }
+        while (buffer.hasRemaining())
+            c = (c >>> 8) ^ tables[0][(c ^ buffer.get()) & 0xFF];
+
+        crc = c;
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+}
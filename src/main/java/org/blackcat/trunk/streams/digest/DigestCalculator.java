@@ -0,0 +1,167 @@
+package org.blackcat.trunk.streams.digest;
+
+import io.vertx.core.buffer.Buffer;
+import org.blackcat.trunk.resource.ContentDigest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Computes the {@link ContentDigest} of a content incrementally, as its buffers flow
+ * (e.g. through a pump), and checks it against what the client declared in Digest
+ * (RFC 3230) and Content-MD5 (RFC 1864) headers. MD5 and SHA-1 are only computed when
+ * declared; unknown algorithms are ignored.
+ *
+ * Not thread-safe: buffers are expected in order, from one context at a time.
+ */
+final public class DigestCalculator {
+
+    private static final int FILE_BUFFER_SIZE = 65536;
+
+    /* as named in Digest headers (IANA HTTP Digest Algorithm Values) */
+    private static final Map<String, String> algorithms = new HashMap<>();
+    static {
+        algorithms.put("md5", "MD5");
+        algorithms.put("sha", "SHA-1");
+        algorithms.put("sha-256", "SHA-256");
+    }
+
+    private final MessageDigest sha256 = messageDigest("SHA-256");
+    private final Crc32c crc32c = new Crc32c();
+
+    private final Map<String, MessageDigest> declared = new HashMap<>();
+    private final Map<String, byte[]> expected = new HashMap<>();
+    private final Map<String, byte[]> actual = new HashMap<>();
+
+    private ContentDigest result;
+
+    /**
+     * Records the digests declared by the client.
+     *
+     * @param digestHeader the Digest header value, may be null
+     * @param contentMD5Header the Content-MD5 header value, may be null
+     * @return false if either is malformed
+     */
+    public boolean expect(String digestHeader, String contentMD5Header) {
+        try {
+            if (contentMD5Header != null)
+                expectDigest("md5", contentMD5Header.trim());
+
+            if (digestHeader != null) {
+                for (String instance : digestHeader.split(",")) {
+                    int equals = instance.indexOf('=');
+                    if (equals < 0)
+                        return false;
+
+                    expectDigest(instance.substring(0, equals).trim().toLowerCase(), instance.substring(equals + 1).trim());
+                }
+            }
+        } catch (IllegalArgumentException iae) {
+            return false;
+        }
+        return true;
+    }
+
+    private void expectDigest(String algorithm, String value) {
+        byte[] bytes = Base64.getDecoder().decode(value);
+        if ("crc32c".equals(algorithm)) {
+            if (bytes.length != 4)
+                throw new IllegalArgumentException("Invalid crc32c digest");
+
+            expected.put(algorithm, bytes);
+        }
+        else if (algorithms.containsKey(algorithm)) {
+            expected.put(algorithm, bytes);
+            if (! "sha-256".equals(algorithm))
+                declared.put(algorithm, messageDigest(algorithms.get(algorithm)));
+        }
+    }
+
+    /**
+     * @return true if the client declared any digest
+     */
+    public boolean hasExpectations() {
+        return ! expected.isEmpty();
+    }
+
+    public void update(Buffer buffer) {
+        update(buffer.getByteBuf().nioBuffer());
+    }
+
+    /**
+     * Updates the digests with the remaining bytes of buffer, leaving its position unchanged.
+     *
+     * @param buffer
+     */
+    public void update(ByteBuffer buffer) {
+        sha256.update(buffer.duplicate());
+        crc32c.update(buffer.duplicate());
+        for (MessageDigest messageDigest : declared.values())
+            messageDigest.update(buffer.duplicate());
+    }
+
+    /**
+     * Completes the computation, once all of the content has been seen.
+     *
+     * @return the digest of the content
+     */
+    public ContentDigest finish() {
+        if (result == null) {
+            result = new ContentDigest(sha256.digest(), (int) crc32c.getValue());
+
+            actual.put("sha-256", result.getSha256());
+            actual.put("crc32c", ByteBuffer.allocate(4).putInt(result.getCrc32c()).array());
+            for (Map.Entry<String, MessageDigest> entry : declared.entrySet())
+                actual.put(entry.getKey(), entry.getValue().digest());
+        }
+        return result;
+    }
+
+    /**
+     * @return true if every digest the client declared matches the content (see {@link #finish})
+     */
+    public boolean matches() {
+        finish();
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            if (! MessageDigest.isEqual(entry.getValue(), actual.get(entry.getKey())))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Computes the digest of a whole file (blocking).
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static ContentDigest digest(Path path) throws IOException {
+        DigestCalculator calculator = new DigestCalculator();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(FILE_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                calculator.update(buffer);
+                buffer.clear();
+            }
+        }
+        return calculator.finish();
+    }
+
+    private static MessageDigest messageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+    }
+}
@@ -16,13 +16,18 @@ package org.blackcat.trunk.streams.pump;
  * You may elect to redistribute this code under either of these licenses.
  */
 
+import io.vertx.core.Context;
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.core.streams.Pump;
 import io.vertx.core.streams.ReadStream;
 import io.vertx.core.streams.WriteStream;
+import org.blackcat.trunk.streams.throttle.BandwidthLimiter;
+
+import java.util.concurrent.atomic.LongAdder;
 
 
 /**
@@ -39,6 +44,10 @@ import io.vertx.core.streams.WriteStream;
  * e.g. from an {@link io.vertx.core.http.HttpServerRequest} to an {@link io.vertx.core.file.AsyncFile},
  * or from {@link io.vertx.core.net.NetSocket} to a {@link io.vertx.core.http.WebSocket}.<p>
  *
+ * Streams bound to {@link BandwidthLimiter} are also throttled: after each write the read
+ * stream is paused for as long as the limiter asks, and resumed only once both the delay
+ * has elapsed and the write queue has drained.<p>
+ *
  * Instances of this class are not thread-safe.<p>
  *
  * @author <a href="http://tfox.org">Tim Fox</a>
@@ -49,9 +58,17 @@ public class PumpImpl<T> implements Pump {
     private final WriteStream<T> writeStream;
     private final Handler<T> dataHandler;
     private final Handler<Void> drainHandler;
+    private Handler<Buffer> observer;
+
+    private final LongAdder pumped = new LongAdder();
+    private final LongAdder bytesPumped = new LongAdder();
+    private TransferRegistry.Transfer registered;
 
-    private int pumped;
-    private long bytesPumped;
+    private BandwidthLimiter.Transfer transfer;
+    private Vertx vertx;
+    private long timerId = -1;
+    private boolean throttled;
+    private boolean queueFull;
 
     static private Logger logger;
 
@@ -71,20 +88,28 @@ public class PumpImpl<T> implements Pump {
         this.writeStream = ws;
 
         drainHandler = v -> {
-            readStream.resume();
+            queueFull = false;
+            resumeIfReady();
         };
 
         dataHandler = data -> {
             Buffer buf = (Buffer) data;
 
             // logger.debug("writing {} bytes", buf.length());
+            if (observer != null)
+                observer.handle(buf);
+
             writeStream.write(data);
             incPumped(buf);
 
             if (writeStream.writeQueueFull()) {
+                queueFull = true;
                 readStream.pause();
                 writeStream.drainHandler(drainHandler);
             }
+
+            if (transfer != null)
+                throttle(transfer.consume(buf.length()));
         };
     }
 
@@ -97,12 +122,30 @@ public class PumpImpl<T> implements Pump {
         return this;
     }
 
+    /**
+     * Hands every buffer to {@code observer}, in order, as it is pumped (e.g. to digest the content on the fly)
+     */
+    public PumpImpl observer(Handler<Buffer> observer) {
+        this.observer = observer;
+        return this;
+    }
+
     /**
      * Start the Pump. The Pump can be started and stopped multiple times.
      */
     @Override
     public PumpImpl start() {
         logger.debug("pump started");
+
+        if (registered == null)
+            registered = TransferRegistry.getInstance().open(readStream, writeStream);
+
+        Context context = Vertx.currentContext();
+        if (transfer == null && context != null) {
+            vertx = context.owner();
+            transfer = BandwidthLimiter.getInstance().open(readStream, writeStream);
+        }
+
         readStream.handler(dataHandler);
         return this;
     }
@@ -115,28 +158,64 @@ public class PumpImpl<T> implements Pump {
         logger.debug("pump stopped");
         writeStream.drainHandler(null);
         readStream.handler(null);
+
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+        throttled = queueFull = false;
+
+        if (transfer != null) {
+            transfer.close();
+            transfer = null;
+        }
+
+        if (registered != null) {
+            registered.close();
+            registered = null;
+        }
         return this;
     }
 
+    private void throttle(long delay) {
+        if (delay <= 0 || timerId != -1)
+            return;
+
+        throttled = true;
+        readStream.pause();
+        timerId = vertx.setTimer(delay, id -> {
+            timerId = -1;
+            throttled = false;
+            resumeIfReady();
+        });
+    }
+
+    private void resumeIfReady() {
+        if (! throttled && ! queueFull)
+            readStream.resume();
+    }
+
     /**
      * Return the total number of elements pumped by this pump.
      */
     @Override
-    public synchronized int numberPumped() {
-        return pumped;
+    public int numberPumped() {
+        return (int) pumped.sum();
     }
 
-    public synchronized long getBytesPumped() {
-        return bytesPumped;
+    public long getBytesPumped() {
+        return bytesPumped.sum();
     }
 
-    // Note we synchronize as numberPumped can be called from a different thread however incPumped will always
-    // be called from the same thread so we benefit from bias locked optimisation which should give a very low
-    // overhead
-    private synchronized void incPumped(Buffer data) {
+    // Counters are LongAdders: incPumped is always called from the same thread, while
+    // readers (e.g. the transfer registry) may be on any thread, and neither takes a lock
+    private void incPumped(Buffer data) {
         int written = data.length();
 
-        pumped ++;
-        bytesPumped += written;
+        pumped.increment();
+        bytesPumped.add(written);
+
+        if (registered != null)
+            registered.add(written);
     }
 }
@@ -0,0 +1,182 @@
+package org.blackcat.trunk.streams.pump;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide registry of in-flight transfers, i.e. running pumps, sendfile downloads
+ * and chunk writes of parallel uploads, along with totals over all transfers since startup.
+ *
+ * Streams are bound to the user, path and direction of the request they serve (see
+ * {@link #bind}); transfers between unbound streams are registered as internal ones.
+ * Byte counts are {@link LongAdder}s, so that pumps on different event loops never
+ * contend on a lock for each chunk.
+ */
+final public class TransferRegistry {
+
+    public enum Direction { UPLOAD, DOWNLOAD, INTERNAL }
+
+    private static final TransferRegistry instance = new TransferRegistry();
+
+    private final Map<Object, Binding> bindings = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Map<Long, Transfer> transfers = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+    private final LongAdder downloadedBytes = new LongAdder();
+    private final LongAdder internalBytes = new LongAdder();
+
+    public static TransferRegistry getInstance() {
+        return instance;
+    }
+
+    TransferRegistry() {
+    }
+
+    /**
+     * Binds stream to a user (null if anonymous), path and direction. Bindings do not keep
+     * streams alive.
+     *
+     * @param stream
+     * @param user
+     * @param path
+     * @param direction
+     */
+    public void bind(Object stream, String user, String path, Direction direction) {
+        bindings.put(stream, new Binding(user, path, direction));
+    }
+
+    /**
+     * Registers a new transfer from readStream to writeStream, accounted to whichever is
+     * bound (the write stream first).
+     *
+     * @param readStream
+     * @param writeStream
+     * @return
+     */
+    public Transfer open(Object readStream, Object writeStream) {
+        Binding binding = bindings.get(writeStream);
+        if (binding == null)
+            binding = bindings.get(readStream);
+        if (binding == null)
+            binding = Binding.INTERNAL;
+
+        Transfer transfer = new Transfer(nextId.incrementAndGet(), binding);
+        transfers.put(transfer.id, transfer);
+        started.increment();
+        return transfer;
+    }
+
+    /**
+     * @return the in-flight transfers, oldest first, along with totals
+     */
+    public JsonObject statistics() {
+        long now = System.currentTimeMillis();
+
+        JsonArray inFlight = new JsonArray();
+        transfers.values().stream()
+            .sorted(Comparator.comparingLong(transfer -> transfer.id))
+            .forEach(transfer -> inFlight.add(transfer.toJson(now)));
+
+        return new JsonObject()
+                   .put("transfers", inFlight)
+                   .put("totals", new JsonObject()
+                                      .put("started", started.sum())
+                                      .put("completed", completed.sum())
+                                      .put("uploadedBytes", uploadedBytes.sum())
+                                      .put("downloadedBytes", downloadedBytes.sum())
+                                      .put("internalBytes", internalBytes.sum()));
+    }
+
+    private LongAdder totalOf(Direction direction) {
+        switch (direction) {
+            case UPLOAD: return uploadedBytes;
+            case DOWNLOAD: return downloadedBytes;
+            default: return internalBytes;
+        }
+    }
+
+    /**
+     * An in-flight transfer. Counters may be updated from one thread and read from any.
+     */
+    final public class Transfer {
+
+        private final long id;
+        private final Binding binding;
+        private final long startTime = System.currentTimeMillis();
+        private final LongAdder chunks = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder total;
+
+        private Transfer(long id, Binding binding) {
+            this.id = id;
+            this.binding = binding;
+            this.total = totalOf(binding.direction);
+        }
+
+        /**
+         * Accounts length more bytes to the transfer.
+         *
+         * @param length
+         */
+        public void add(long length) {
+            chunks.increment();
+            bytes.add(length);
+            total.add(length);
+        }
+
+        long getChunks() {
+            return chunks.sum();
+        }
+
+        long getBytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * Ends the transfer, whether it completed or not. Closing twice is harmless.
+         */
+        public void close() {
+            if (transfers.remove(id) != null)
+                completed.increment();
+        }
+
+        private JsonObject toJson(long now) {
+            long bytes = this.bytes.sum();
+            long elapsed = Math.max(1, now - startTime);
+
+            return new JsonObject()
+                       .put("id", id)
+                       .put("user", binding.user)
+                       .put("path", binding.path)
+                       .put("direction", binding.direction.name().toLowerCase())
+                       .put("bytes", bytes)
+                       .put("rate", bytes * 1000 / elapsed)
+                       .put("startTime", startTime);
+        }
+    }
+
+    private static final class Binding {
+        static final Binding INTERNAL = new Binding(null, null, Direction.INTERNAL);
+
+        final String user;
+        final String path;
+        final Direction direction;
+
+        Binding(String user, String path, Direction direction) {
+            this.user = user;
+            this.path = path;
+            this.direction = direction;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.blackcat.trunk.streams.range;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.streams.ReadStream;
+import org.blackcat.trunk.streams.range.impl.RangeReadStreamImpl;
+
+/**
+ * Exposes a slice of an AsyncFile as a ReadStream that can be used with the
+ * Vert.X Pump mechanism. The slice is read with positional reads, so several
+ * range streams can share the same AsyncFile, one after the other.
+ */
+abstract public class RangeReadStream implements ReadStream<Buffer> {
+    static public RangeReadStream create(AsyncFile file, long offset, long length) {
+        return new RangeReadStreamImpl(file, offset, length);
+    }
+
+    public abstract long getBytesRead();
+}
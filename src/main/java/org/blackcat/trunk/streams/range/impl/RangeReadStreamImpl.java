@@ -0,0 +1,127 @@
+package org.blackcat.trunk.streams.range.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.blackcat.trunk.streams.range.RangeReadStream;
+
+final public class RangeReadStreamImpl extends RangeReadStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(RangeReadStreamImpl.class);
+
+    private static final int TRANSFER_SIZE = 8192;
+
+    private final AsyncFile file;
+    private final long offset;
+    private final long end;
+    private long position;
+
+    private boolean paused;
+    private boolean readInProgress;
+    private boolean ended;
+
+    private Handler<Buffer> dataHandler;
+    private Handler<Void> endHandler;
+    private Handler<Throwable> exceptionHandler;
+
+    public RangeReadStreamImpl(AsyncFile file, long offset, long length) {
+        this.file = file;
+        this.offset = offset;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    @Override
+    public synchronized long getBytesRead() {
+        return position - offset;
+    }
+
+    @Override
+    public synchronized RangeReadStream exceptionHandler(Handler<Throwable> handler) {
+        this.exceptionHandler = handler;
+        return this;
+    }
+
+    @Override
+    public synchronized RangeReadStream handler(Handler<Buffer> handler) {
+        this.dataHandler = handler;
+        if (dataHandler != null && ! paused)
+            doRead();
+        return this;
+    }
+
+    @Override
+    public synchronized RangeReadStream pause() {
+        this.paused = true;
+        return this;
+    }
+
+    @Override
+    public synchronized RangeReadStream resume() {
+        if (paused) {
+            this.paused = false;
+            if (dataHandler != null)
+                doRead();
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized RangeReadStream endHandler(Handler<Void> handler) {
+        this.endHandler = handler;
+        return this;
+    }
+
+    private synchronized void doRead() {
+        if (readInProgress || ended)
+            return;
+
+        if (position >= end) {
+            handleEnd();
+            return;
+        }
+
+        readInProgress = true;
+        int chunkSize = (int) Math.min(TRANSFER_SIZE, end - position);
+        file.read(Buffer.buffer(chunkSize), 0, position, chunkSize, ar -> {
+            if (ar.failed()) {
+                handleException(ar.cause());
+                return;
+            }
+
+            Buffer buffer = ar.result();
+            synchronized (this) {
+                readInProgress = false;
+
+                /* premature EOF, the file was truncated under our feet */
+                if (buffer.length() == 0) {
+                    handleException(new IllegalStateException("Unexpected end of file"));
+                    return;
+                }
+
+                position += buffer.length();
+                if (dataHandler != null)
+                    dataHandler.handle(buffer);
+
+                if (! paused && dataHandler != null)
+                    doRead();
+            }
+        });
+    }
+
+    private void handleEnd() {
+        ended = true;
+        if (endHandler != null)
+            endHandler.handle(null);
+    }
+
+    private void handleException(Throwable t) {
+        ended = true;
+        if (exceptionHandler != null)
+            exceptionHandler.handle(t);
+        else
+            logger.error("Unhandled exception", t);
+    }
+}
@@ -0,0 +1,48 @@
+package org.blackcat.trunk.streams.tar;
+
+/**
+ * The formats collections can be downloaded as.
+ */
+public enum ArchiveFormat {
+
+    TAR("tar", "tar", "application/x-tar"),
+    TGZ("tgz", "tar.gz", "application/gzip"),
+    ZIP("zip", "zip", "application/zip");
+
+    private final String tag;
+    private final String extension;
+    private final String mimeType;
+
+    ArchiveFormat(String tag, String extension, String mimeType) {
+        this.tag = tag;
+        this.extension = extension;
+        this.mimeType = mimeType;
+    }
+
+    /**
+     * @return the value of the archive request parameter selecting this format
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * @param tag
+     * @return the format selected by tag, null if unknown
+     */
+    public static ArchiveFormat of(String tag) {
+        for (ArchiveFormat format : values()) {
+            if (format.tag.equals(tag))
+                return format;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,329 @@
+package org.blackcat.trunk.streams.tar;
+
+import org.blackcat.trunk.resource.ResourceVersion;
+import org.kamranzafar.jtar.TarConstants;
+import org.kamranzafar.jtar.PermissionUtils;
+import org.kamranzafar.jtar.TarEntry;
+import org.kamranzafar.jtar.TarHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The layout of a tar archive: every member is a 512 bytes header, followed by the
+ * member contents, padded to a multiple of 512 bytes. Two zero blocks end the archive.
+ *
+ * Knowing names and sizes up front, the length of the archive is known before it is
+ * produced, and any byte range of it maps to a sequence of {@link Segment}s: slices of
+ * generated headers and padding, and regions of member files. Archives laid out from
+ * the same files, in the same order, with the same sizes and modification times are
+ * identical and share the same version, so that downloads can be resumed.
+ */
+final public class TarLayout {
+
+    private static final Logger logger = LoggerFactory.getLogger(TarLayout.class);
+
+    private final List<Member> members;
+    private final long length;
+    private final ResourceVersion version;
+
+    private TarLayout(List<Member> members, long length, ResourceVersion version) {
+        this.members = Collections.unmodifiableList(members);
+        this.length = length;
+        this.version = version;
+    }
+
+    public List<Member> getMembers() {
+        return members;
+    }
+
+    /**
+     * @return the length of the whole archive, in bytes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return a strong validator for the archive
+     */
+    public ResourceVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * Lays out an archive of files (blocking).
+     *
+     * @param root members are named relative to root
+     * @param files regular files, in archive order
+     * @return
+     */
+    public static TarLayout of(Path root, Iterator<Path> files) {
+        List<Member> members = new ArrayList<>();
+        MessageDigest messageDigest = newMessageDigest();
+        long lastModifiedTime = 0;
+        long offset = 0;
+
+        while (files.hasNext()) {
+            Path path = files.next();
+            String name = root.relativize(path).toString();
+
+            BasicFileAttributes attributes;
+            int permissions;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                permissions = PermissionUtils.permissions(path.toFile());
+            } catch (IOException | IllegalArgumentException e) {
+                logger.error("Could not add {} [{}]", name, e.toString());
+                continue;
+            }
+
+            Member member = new Member(path, name, attributes.size(),
+                attributes.lastModifiedTime().to(TimeUnit.SECONDS), permissions, offset);
+            members.add(member);
+            offset = member.getEnd();
+
+            messageDigest.update(String.format("%s:%d:%o:%d", name, attributes.size(), permissions,
+                attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS)).getBytes(StandardCharsets.UTF_8));
+            messageDigest.update((byte) 0);
+            lastModifiedTime = Math.max(lastModifiedTime, attributes.lastModifiedTime().toMillis());
+        }
+
+        StringBuilder entityTag = new StringBuilder("\"tar-");
+        byte[] digest = messageDigest.digest();
+        for (int i = 0; i < 16; ++ i)
+            entityTag.append(String.format("%02x", digest[i]));
+
+        return new TarLayout(members, offset + TarConstants.EOF_BLOCK,
+            new ResourceVersion(entityTag.append('"').toString(), lastModifiedTime, false));
+    }
+
+    /**
+     * @param first the offset of the first byte
+     * @param length the number of bytes
+     * @return the segments making up the given range of the archive, in order
+     */
+    public Iterator<Segment> segments(long first, long length) {
+        return new SegmentIterator(first, Math.min(first + length, this.length));
+    }
+
+    /**
+     * @param size
+     * @return the number of zero bytes following a member of the given size
+     */
+    public static int padding(long size) {
+        return (int) ((TarConstants.DATA_BLOCK - size % TarConstants.DATA_BLOCK) % TarConstants.DATA_BLOCK);
+    }
+
+    private static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    final public static class Member {
+        private final Path path;
+        private final String name;
+        private final long size;
+        private final long modTime;
+        private final int permissions;
+        private final long offset;
+
+        Member(Path path, String name, long size, long modTime, int permissions, long offset) {
+            this.path = path;
+            this.name = name;
+            this.size = size;
+            this.modTime = modTime;
+            this.permissions = permissions;
+            this.offset = offset;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the modification time, in seconds since the epoch
+         */
+        public long getModTime() {
+            return modTime;
+        }
+
+        /**
+         * @return the offset of the member header within the archive
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return the offset of the member contents within the archive
+         */
+        public long getContentOffset() {
+            return offset + TarConstants.HEADER_BLOCK;
+        }
+
+        /**
+         * @return the offset following the member (padding included)
+         */
+        public long getEnd() {
+            return getContentOffset() + size + padding(size);
+        }
+
+        /**
+         * @return the member header, as of when the archive was laid out (the file itself
+         * may have changed or gone since)
+         */
+        public byte[] header() {
+            TarEntry entry = new TarEntry(TarHeader.createHeader(name, size, modTime, false, permissions));
+
+            byte[] header = new byte[TarConstants.HEADER_BLOCK];
+            entry.writeEntryHeader(header);
+            return header;
+        }
+    }
+
+    /**
+     * A slice of the archive: part of a member header, contents or padding, or of the
+     * end of the archive.
+     */
+    final public static class Segment {
+
+        public enum Kind { HEADER, CONTENT, PADDING, END }
+
+        private final Kind kind;
+        private final Member member;
+        private final long offset;
+        private final long length;
+
+        Segment(Kind kind, Member member, long offset, long length) {
+            this.kind = kind;
+            this.member = member;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the member this segment belongs to, null for the end of the archive
+         */
+        public Member getMember() {
+            return member;
+        }
+
+        /**
+         * @return the offset of the segment within its part (e.g. within the member file
+         * for contents)
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return the bytes of a generated segment (anything but contents)
+         */
+        public byte[] bytes() {
+            if (kind == Kind.CONTENT)
+                throw new IllegalStateException("Contents are not generated");
+
+            if (kind == Kind.HEADER)
+                return Arrays.copyOfRange(member.header(), (int) offset, (int) (offset + length));
+
+            return new byte[(int) length];
+        }
+    }
+
+    /* walks the members overlapping [position, limit) */
+    private final class SegmentIterator implements Iterator<Segment> {
+        private final long limit;
+        private long position;
+        private int index;
+
+        SegmentIterator(long first, long limit) {
+            this.position = first;
+            this.limit = limit;
+            this.index = firstMember(first);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < limit;
+        }
+
+        @Override
+        public Segment next() {
+            if (! hasNext())
+                throw new NoSuchElementException();
+
+            Segment segment;
+            if (index == members.size()) {
+                long endOffset = length - TarConstants.EOF_BLOCK;
+                segment = new Segment(Segment.Kind.END, null, position - endOffset, limit - position);
+            } else {
+                Member member = members.get(index);
+                long contentEnd = member.getContentOffset() + member.getSize();
+
+                if (position < member.getContentOffset())
+                    segment = new Segment(Segment.Kind.HEADER, member, position - member.getOffset(),
+                        Math.min(limit, member.getContentOffset()) - position);
+                else if (position < contentEnd)
+                    segment = new Segment(Segment.Kind.CONTENT, member, position - member.getContentOffset(),
+                        Math.min(limit, contentEnd) - position);
+                else
+                    segment = new Segment(Segment.Kind.PADDING, member, position - contentEnd,
+                        Math.min(limit, member.getEnd()) - position);
+            }
+
+            position += segment.getLength();
+            if (index < members.size() && position >= members.get(index).getEnd())
+                ++ index;
+
+            return segment;
+        }
+
+        /* binary search of the first member ending past offset */
+        private int firstMember(long offset) {
+            int low = 0;
+            int high = members.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (members.get(middle).getEnd() <= offset)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+    }
+}
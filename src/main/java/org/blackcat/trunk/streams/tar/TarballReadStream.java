@@ -0,0 +1,64 @@
+package org.blackcat.trunk.streams.tar;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import org.blackcat.trunk.streams.tar.impl.TarballReadStreamImpl;
+
+/**
+ * Streams an archive of a collection as a ReadStream that can be used with the
+ * Vert.X Pump mechanism.
+ *
+ * The archive is produced straight into buffers on a bounded worker pool, a few chunks
+ * ahead of the consumer: the next file is already being read while the current one is
+ * written out, and production stops as long as the stream is paused. Any byte range of
+ * a tar archive can be streamed on its own.
+ *
+ * Compressed tar archives are streamed as a sequence of independent gzip members, which
+ * are compressed in parallel across the pool. Documents compressed already (as told by
+ * their MIME type) are stored, both in gzip members and zip entries.
+ */
+public abstract class TarballReadStream implements ReadStream<Buffer> {
+
+    /** The pool archives are produced on, shared by every archive being streamed */
+    public static final String WORKER_POOL_NAME = "trunk-archiver";
+
+    /**
+     * @param vertx
+     * @param layout the archive to be streamed
+     * @param first the offset of the first byte to be streamed
+     * @param length the number of bytes to be streamed
+     * @param workers the size of the worker pool
+     * @param chunkSize the size of produced buffers, in bytes
+     * @return
+     */
+    static public TarballReadStream create(Vertx vertx, TarLayout layout, long first, long length,
+                                           int workers, int chunkSize) {
+        return new TarballReadStreamImpl(vertx, layout, first, length, workers, chunkSize);
+    }
+
+    /**
+     * @param vertx
+     * @param layout the members to be archived
+     * @param format the archive format
+     * @param level the deflate level, for compressed formats
+     * @param workers the size of the worker pool, i.e. how many chunks can be compressed at once
+     * @param chunkSize the size of produced buffers (before compression), in bytes
+     * @return
+     */
+    static public TarballReadStream create(Vertx vertx, TarLayout layout, ArchiveFormat format, int level,
+                                           int workers, int chunkSize) {
+        return new TarballReadStreamImpl(vertx, layout, format, level, workers, chunkSize);
+    }
+
+    /**
+     * @return the number of bytes handed over so far
+     */
+    public abstract long getBytesRead();
+
+    /**
+     * Stops producing the archive and releases any resource held (e.g. when the client
+     * goes away). No handler is called afterwards.
+     */
+    public abstract void cancel();
+}
@@ -0,0 +1,59 @@
+package org.blackcat.trunk.streams.tar.impl;
+
+/**
+ * The size of the chunks an archive is produced in: it doubles every time the consumer
+ * is found waiting for data, and halves when the consumer falls behind.
+ *
+ * Changed from the context the stream belongs to, read by the worker producing chunks.
+ */
+final class AdaptiveChunkSize {
+
+    /* chunks are never smaller than this, unless the configured size is */
+    static final int MIN_CHUNK_SIZE = 8192;
+
+    private final int min;
+    private final int max;
+    private volatile int current;
+
+    /**
+     * @param max the largest size chunks may grow to
+     */
+    AdaptiveChunkSize(int max) {
+        this(Math.min(MIN_CHUNK_SIZE, max), max);
+    }
+
+    /**
+     * @param min the initial, and smallest, size
+     * @param max the largest size chunks may grow to
+     */
+    AdaptiveChunkSize(int min, int max) {
+        this.min = min;
+        this.max = max;
+        this.current = min;
+    }
+
+    /**
+     * @return a size always fixed at size
+     */
+    static AdaptiveChunkSize fixed(int size) {
+        return new AdaptiveChunkSize(size, size);
+    }
+
+    int get() {
+        return current;
+    }
+
+    int getMax() {
+        return max;
+    }
+
+    /* the consumer keeps up */
+    void grow() {
+        current = (int) Math.min(max, 2L * current);
+    }
+
+    /* the consumer falls behind */
+    void shrink() {
+        current = Math.max(min, current / 2);
+    }
+}
@@ -0,0 +1,43 @@
+package org.blackcat.trunk.streams.tar.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * A chunk of an archive, along with a hint on whether it is worth compressing.
+ *
+ * Chunks may be pooled buffers: these must be released once consumed, and never be
+ * handed over as they are (buffers handed over are never released).
+ */
+final class Chunk {
+
+    private final ByteBuf data;
+    private final boolean compressible;
+
+    Chunk(ByteBuf data, boolean compressible) {
+        this.data = data;
+        this.compressible = compressible;
+    }
+
+    /**
+     * @return the contents of the chunk, valid until the chunk is released
+     */
+    Buffer getData() {
+        return Buffer.buffer(data);
+    }
+
+    /**
+     * @return false if the chunk holds contents which are compressed already
+     */
+    boolean isCompressible() {
+        return compressible;
+    }
+
+    /**
+     * Gives a pooled chunk back to its pool (no effect on other chunks but the release of
+     * their memory, which is left to the garbage collector anyway).
+     */
+    void release() {
+        data.release();
+    }
+}
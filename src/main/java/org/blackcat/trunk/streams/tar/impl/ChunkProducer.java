@@ -0,0 +1,21 @@
+package org.blackcat.trunk.streams.tar.impl;
+
+import java.io.IOException;
+
+/**
+ * Produces an archive chunk by chunk (blocking, not thread safe: meant to be driven by
+ * one worker task at a time).
+ */
+interface ChunkProducer {
+
+    /**
+     * @return the next chunk of the archive, null when the archive is over
+     * @throws IOException
+     */
+    Chunk next() throws IOException;
+
+    /**
+     * Releases any file being archived.
+     */
+    void close();
+}
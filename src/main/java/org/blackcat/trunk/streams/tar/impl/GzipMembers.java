@@ -0,0 +1,59 @@
+package org.blackcat.trunk.streams.tar.impl;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses chunks into self-contained gzip members (RFC 1952): members being
+ * independent from each other, they can be compressed in parallel, and their
+ * concatenation is a valid gzip stream.
+ */
+final class GzipMembers {
+
+    private static final byte[] HEADER = {
+        0x1f, (byte) 0x8b, /* magic */
+        Deflater.DEFLATED, 0, /* no flags */
+        0, 0, 0, 0, /* no modification time, output only depends on input */
+        0, (byte) 0xff /* no extra flags, unknown OS */
+    };
+
+    private static final int OUTPUT_BUFFER_SIZE = 8192;
+
+    private GzipMembers() {
+    }
+
+    /**
+     * @param data
+     * @param compress false to store data as is (e.g. if it is compressed already)
+     * @param level the deflate level used when compressing
+     * @return a gzip member holding data
+     */
+    static Buffer of(Buffer data, boolean compress, int level) {
+        byte[] input = data.getBytes();
+        Buffer member = Buffer.buffer(HEADER.length + input.length / (compress ? 2 : 1) + 64)
+                            .appendBytes(HEADER);
+
+        Deflater deflater = new Deflater(compress ? level : Deflater.NO_COMPRESSION, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+
+            byte[] output = new byte[OUTPUT_BUFFER_SIZE];
+            while (! deflater.finished()) {
+                int count = deflater.deflate(output);
+                member.appendBytes(output, 0, count);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(input);
+
+        return member
+                   .appendIntLE((int) crc.getValue())
+                   .appendIntLE(input.length);
+    }
+}
@@ -0,0 +1,201 @@
+package org.blackcat.trunk.streams.tar.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.blackcat.trunk.streams.tar.TarLayout;
+import org.kamranzafar.jtar.TarConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.function.Predicate;
+
+/**
+ * Produces a byte range of a tar archive chunk by chunk (blocking, not thread safe: meant
+ * to be driven by one worker task at a time).
+ *
+ * File contents are read straight into the chunks being produced. Chunks meant to be
+ * compressed, hence consumed right away, are pooled direct buffers; chunks handed over as
+ * they are are not, the Vert.x buffers wrapping them being never released. The archive is
+ * exactly as
+ * long as its layout says, even if files change while being archived: growing files are
+ * truncated, shrinking (or vanished) ones padded with zeros.
+ *
+ * When members compressed already are told apart, their contents never share a chunk
+ * with contents worth compressing.
+ */
+final class TarProducer implements ChunkProducer {
+
+    private static final byte[] ZEROS = new byte[TarConstants.EOF_BLOCK];
+
+    private final Logger logger = LoggerFactory.getLogger(TarProducer.class);
+
+    private final Iterator<TarLayout.Segment> segments;
+    private final Predicate<TarLayout.Member> compressed;
+    private final AdaptiveChunkSize chunkSize;
+    private final boolean pooled;
+
+    /* the size of the chunk being produced */
+    private int limit;
+
+    /* the contents segment being read, if any */
+    private TarLayout.Segment segment;
+    private TarLayout.Segment pending;
+    private FileChannel channel;
+    private long position;
+    private long remaining;
+
+    private long entries;
+    private long contentBytes;
+
+    /**
+     * @param layout the archive
+     * @param first the offset of the first byte to be produced
+     * @param length the number of bytes to be produced
+     * @param chunkSize
+     */
+    TarProducer(TarLayout layout, long first, long length, int chunkSize) {
+        this(layout, first, length, member -> false, AdaptiveChunkSize.fixed(chunkSize), false);
+    }
+
+    /**
+     * @param layout the archive
+     * @param first the offset of the first byte to be produced
+     * @param length the number of bytes to be produced
+     * @param chunkSize
+     */
+    TarProducer(TarLayout layout, long first, long length, AdaptiveChunkSize chunkSize) {
+        this(layout, first, length, member -> false, chunkSize, false);
+    }
+
+    /**
+     * @param layout the archive
+     * @param first the offset of the first byte to be produced
+     * @param length the number of bytes to be produced
+     * @param compressed tells members whose contents are compressed already
+     * @param chunkSize
+     * @param pooled true if chunks are released once consumed (see {@link Chunk#release})
+     */
+    TarProducer(TarLayout layout, long first, long length, Predicate<TarLayout.Member> compressed,
+                AdaptiveChunkSize chunkSize, boolean pooled) {
+        this.segments = layout.segments(first, length);
+        this.compressed = compressed;
+        this.chunkSize = chunkSize;
+        this.pooled = pooled;
+    }
+
+    @Override
+    public Chunk next() throws IOException {
+        limit = chunkSize.get();
+        ByteBuf chunk = pooled
+                            ? PooledByteBufAllocator.DEFAULT.directBuffer(limit + TarConstants.EOF_BLOCK)
+                            : Unpooled.buffer(limit + TarConstants.EOF_BLOCK);
+        try {
+            return next(chunk);
+        } catch (IOException | RuntimeException e) {
+            chunk.release();
+            throw e;
+        }
+    }
+
+    private Chunk next(ByteBuf chunk) throws IOException {
+        Boolean compressible = null;
+
+        while (chunk.writerIndex() < limit && (segment != null || pending != null || segments.hasNext())) {
+            if (segment != null) {
+                compressible = ! compressed.test(segment.getMember());
+                appendContents(chunk);
+            }
+            else {
+                TarLayout.Segment next = pending != null ? pending : segments.next();
+                pending = null;
+
+                if (next.getKind() == TarLayout.Segment.Kind.CONTENT) {
+                    /* contents compressed already and contents worth compressing go apart */
+                    if (compressible != null && compressible == compressed.test(next.getMember())) {
+                        pending = next;
+                        break;
+                    }
+                    openContents(next);
+                }
+                else {
+                    /* generated segments are at most as long as the end of the archive */
+                    if (next.getKind() == TarLayout.Segment.Kind.HEADER && next.getOffset() == 0) {
+                        ++ entries;
+                        logger.trace("adding {} ...", next.getMember().getName());
+                    }
+                    chunk.writeBytes(next.bytes());
+                }
+            }
+        }
+
+        if (chunk.writerIndex() == 0) {
+            chunk.release();
+            logger.debug("Archived {} entries, {} bytes of content data", entries, contentBytes);
+            return null;
+        }
+        return new Chunk(chunk, compressible == null || compressible);
+    }
+
+    @Override
+    public void close() {
+        closeChannel();
+        segment = null;
+    }
+
+    private void openContents(TarLayout.Segment segment) {
+        this.segment = segment;
+        this.position = segment.getOffset();
+        this.remaining = segment.getLength();
+
+        try {
+            channel = FileChannel.open(segment.getMember().getPath(), StandardOpenOption.READ);
+        } catch (IOException ioe) {
+            /* the file went away since the layout was computed, keep the archive consistent */
+            logger.error("Could not read {}, padding with zeros [{}]",
+                segment.getMember().getName(), ioe.toString());
+        }
+    }
+
+    private void appendContents(ByteBuf chunk) throws IOException {
+        int space = (int) Math.min(remaining, limit - chunk.writerIndex());
+
+        int count = -1;
+        if (channel != null) {
+            count = chunk.writeBytes(channel, position, space);
+            if (count >= 0) {
+                contentBytes += count;
+            } else {
+                /* the file shrunk under our feet */
+                logger.warn("Unexpected end of {}, padding {} bytes", segment.getMember().getName(), remaining);
+                closeChannel();
+            }
+        }
+
+        if (count < 0) {
+            count = Math.min(space, ZEROS.length);
+            chunk.writeBytes(ZEROS, 0, count);
+        }
+
+        position += count;
+        remaining -= count;
+        if (remaining == 0)
+            close();
+    }
+
+    private void closeChannel() {
+        if (channel == null)
+            return;
+
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            logger.warn(ioe.toString());
+        }
+        channel = null;
+    }
+}
@@ -0,0 +1,279 @@
+package org.blackcat.trunk.streams.tar.impl;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.blackcat.trunk.streams.tar.ArchiveFormat;
+import org.blackcat.trunk.streams.tar.TarLayout;
+import org.blackcat.trunk.streams.tar.TarballReadStream;
+import org.blackcat.trunk.util.MimeTypes;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Not thread safe, meant to be used from the context that created it.
+ *
+ * Chunks are produced one at a time, in order. When compressed as gzip members, chunks
+ * are compressed as soon as they are produced, as many at a time as there are workers,
+ * and handed over in order.
+ *
+ * Chunks start small and grow, up to the configured chunk size, as long as the consumer
+ * keeps asking for more; they shrink again when it pauses the stream (see
+ * {@link AdaptiveChunkSize}). Chunks compressed as gzip members are pooled buffers,
+ * released as soon as compressed or dropped.
+ */
+final public class TarballReadStreamImpl extends TarballReadStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(TarballReadStreamImpl.class);
+
+    /* chunks produced ahead of the consumer */
+    private static final int PREFETCH_CHUNKS = 4;
+
+    private final WorkerExecutor workerExecutor;
+
+    /* accessed on worker threads only, one task at a time (see producing) */
+    private final ChunkProducer producer;
+    private final AdaptiveChunkSize chunkSize;
+
+    /* the deflate level chunks are compressed with, none if negative */
+    private final int gzipLevel;
+    private final int prefetchChunks;
+
+    /* produced chunks, in order, some possibly still being compressed */
+    private final Deque<Slot> chunks = new ArrayDeque<>();
+    private long bytesRead;
+
+    private boolean paused;
+    private boolean producing;
+    private boolean produced;
+    private boolean ended;
+    private boolean released;
+
+    private Handler<Buffer> dataHandler;
+    private Handler<Void> endHandler;
+    private Handler<Throwable> exceptionHandler;
+
+    public TarballReadStreamImpl(Vertx vertx, TarLayout layout, long first, long length, int workers, int chunkSize) {
+        this(vertx, new AdaptiveChunkSize(chunkSize), -1, workers,
+            size -> new TarProducer(layout, first, length, size));
+    }
+
+    public TarballReadStreamImpl(Vertx vertx, TarLayout layout, ArchiveFormat format, int level,
+                                 int workers, int chunkSize) {
+        this(vertx, new AdaptiveChunkSize(chunkSize), format == ArchiveFormat.TGZ ? level : -1, workers,
+            size -> producer(layout, format, level, size));
+    }
+
+    private TarballReadStreamImpl(Vertx vertx, AdaptiveChunkSize chunkSize, int gzipLevel, int workers,
+                                  Function<AdaptiveChunkSize, ChunkProducer> producer) {
+        this.chunkSize = chunkSize;
+        this.producer = producer.apply(chunkSize);
+        this.gzipLevel = gzipLevel;
+        this.prefetchChunks = gzipLevel < 0 ? PREFETCH_CHUNKS : Math.max(PREFETCH_CHUNKS, 2 * workers);
+
+        /* shared pools are reference counted, this one is released along with the stream */
+        this.workerExecutor = vertx.createSharedWorkerExecutor(WORKER_POOL_NAME, workers);
+    }
+
+    private static ChunkProducer producer(TarLayout layout, ArchiveFormat format, int level,
+                                          AdaptiveChunkSize chunkSize) {
+        Predicate<TarLayout.Member> compressed = member -> MimeTypes.isCompressed(MimeTypes.of(member.getPath()));
+
+        switch (format) {
+            case TAR:
+                return new TarProducer(layout, 0, layout.getLength(), chunkSize);
+            case TGZ:
+                return new TarProducer(layout, 0, layout.getLength(), compressed, chunkSize, true);
+            case ZIP:
+                return new ZipProducer(layout, compressed, level, chunkSize);
+            default:
+                throw new IllegalArgumentException(format.toString());
+        }
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public TarballReadStream exceptionHandler(Handler<Throwable> handler) {
+        this.exceptionHandler = handler;
+        return this;
+    }
+
+    @Override
+    public TarballReadStream handler(Handler<Buffer> handler) {
+        this.dataHandler = handler;
+        if (dataHandler != null)
+            deliver();
+        return this;
+    }
+
+    @Override
+    public TarballReadStream pause() {
+        if (! paused) {
+            this.paused = true;
+            chunkSize.shrink();
+        }
+        return this;
+    }
+
+    @Override
+    public TarballReadStream resume() {
+        if (paused) {
+            this.paused = false;
+            deliver();
+        }
+        return this;
+    }
+
+    @Override
+    public TarballReadStream endHandler(Handler<Void> handler) {
+        this.endHandler = handler;
+        return this;
+    }
+
+    @Override
+    public void cancel() {
+        if (! ended) {
+            ended = true;
+            chunks.clear();
+            logger.debug("Archive canceled after {} bytes", bytesRead);
+            release();
+        }
+    }
+
+    /* hands over whatever has been produced, then keeps the producer going */
+    private void deliver() {
+        while (! paused && ! ended && dataHandler != null && ! chunks.isEmpty() && chunks.peek().data != null) {
+            Buffer chunk = chunks.poll().data;
+            bytesRead += chunk.length();
+            dataHandler.handle(chunk);
+        }
+
+        if (! ended && produced && chunks.isEmpty()) {
+            ended = true;
+            release();
+            if (endHandler != null)
+                endHandler.handle(null);
+            return;
+        }
+
+        produce();
+    }
+
+    private void produce() {
+        if (ended || producing || produced || dataHandler == null || chunks.size() >= prefetchChunks)
+            return;
+
+        /*
+         * Not ordered: the context-wide ordering would serialize every archive served from this
+         * context, while the producing flag already keeps this stream at one task at a time.
+         */
+        producing = true;
+        workerExecutor.executeBlocking((Future<Chunk> future) -> {
+            try {
+                future.complete(producer.next());
+            } catch (Exception e) {
+                future.fail(e);
+            }
+        }, false, chunkAsyncResult -> {
+            producing = false;
+            if (ended) {
+                if (chunkAsyncResult.succeeded() && chunkAsyncResult.result() != null)
+                    chunkAsyncResult.result().release();
+                if (released)
+                    closeProducer();
+                return;
+            }
+
+            if (chunkAsyncResult.failed()) {
+                ended = true;
+                release();
+                handleException(chunkAsyncResult.cause());
+                return;
+            }
+
+            /* the consumer has been waiting for this one */
+            if (chunks.isEmpty() && ! paused)
+                chunkSize.grow();
+
+            Chunk chunk = chunkAsyncResult.result();
+            if (chunk == null)
+                produced = true;
+            else if (gzipLevel < 0)
+                chunks.add(new Slot(chunk.getData()));
+            else
+                compress(chunk);
+
+            deliver();
+        });
+    }
+
+    /* not ordered: chunks are compressed in parallel, their slots keep them in order */
+    private void compress(Chunk chunk) {
+        Slot slot = new Slot(null);
+        chunks.add(slot);
+
+        workerExecutor.executeBlocking((Future<Buffer> future) -> {
+            try {
+                future.complete(GzipMembers.of(chunk.getData(), chunk.isCompressible(), gzipLevel));
+            } finally {
+                chunk.release();
+            }
+        }, false, memberAsyncResult -> {
+            if (ended)
+                return;
+
+            if (memberAsyncResult.failed()) {
+                ended = true;
+                release();
+                handleException(memberAsyncResult.cause());
+                return;
+            }
+
+            slot.data = memberAsyncResult.result();
+            deliver();
+        });
+    }
+
+    /* the producer is never closed under the feet of a running task: if any, it closes it when done */
+    private void release() {
+        if (released)
+            return;
+
+        released = true;
+        if (! producing)
+            closeProducer();
+    }
+
+    private void closeProducer() {
+        workerExecutor.executeBlocking(future -> {
+            producer.close();
+            future.complete();
+        }, false, done -> workerExecutor.close());
+    }
+
+    private void handleException(Throwable t) {
+        if (exceptionHandler != null)
+            exceptionHandler.handle(t);
+        else
+            logger.error("Unhandled exception", t);
+    }
+
+    private static final class Slot {
+        Buffer data;
+
+        Slot(Buffer data) {
+            this.data = data;
+        }
+    }
+}
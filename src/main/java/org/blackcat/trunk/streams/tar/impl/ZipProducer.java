@@ -0,0 +1,146 @@
+package org.blackcat.trunk.streams.tar.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.blackcat.trunk.streams.tar.TarLayout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Produces a zip archive of the members of a layout, chunk by chunk (blocking, not
+ * thread safe: meant to be driven by one worker task at a time).
+ *
+ * Members compressed already are stored with no compression. Sizes are recorded after
+ * each entry, so files changing while being archived are archived as they are read.
+ */
+final class ZipProducer implements ChunkProducer {
+
+    private final Logger logger = LoggerFactory.getLogger(ZipProducer.class);
+
+    private final Iterator<TarLayout.Member> members;
+    private final Predicate<TarLayout.Member> compressed;
+    private final int level;
+    private final AdaptiveChunkSize chunkSize;
+    private final ByteBuffer readBuffer;
+
+    private final ChunkSink sink = new ChunkSink();
+    private final ZipOutputStream zipOutputStream = new ZipOutputStream(sink);
+
+    private FileChannel channel;
+    private boolean finished;
+
+    private long entries;
+    private long contentBytes;
+
+    /**
+     * @param layout the members to be archived, in order
+     * @param compressed tells members whose contents are compressed already
+     * @param level the deflate level
+     * @param chunkSize
+     */
+    ZipProducer(TarLayout layout, Predicate<TarLayout.Member> compressed, int level, AdaptiveChunkSize chunkSize) {
+        this.members = layout.getMembers().iterator();
+        this.compressed = compressed;
+        this.level = level;
+        this.chunkSize = chunkSize;
+        this.readBuffer = ByteBuffer.allocate(chunkSize.getMax());
+    }
+
+    @Override
+    public Chunk next() throws IOException {
+        int limit = chunkSize.get();
+        sink.chunk = Unpooled.buffer(limit + limit / 16);
+
+        while (sink.chunk.writerIndex() < limit && ! finished) {
+            if (channel != null)
+                appendContents(limit);
+            else if (members.hasNext())
+                openEntry(members.next());
+            else {
+                zipOutputStream.finish();
+                finished = true;
+                logger.debug("Archived {} entries, {} bytes of content data", entries, contentBytes);
+            }
+        }
+
+        ByteBuf chunk = sink.chunk;
+        sink.chunk = null;
+        return chunk.writerIndex() > 0 ? new Chunk(chunk, false) : null;
+    }
+
+    @Override
+    public void close() {
+        closeChannel();
+        finished = true;
+    }
+
+    private void openEntry(TarLayout.Member member) throws IOException {
+        try {
+            channel = FileChannel.open(member.getPath(), StandardOpenOption.READ);
+        } catch (IOException ioe) {
+            logger.error("Could not add {} [{}]", member.getName(), ioe.toString());
+            return;
+        }
+
+        ZipEntry entry = new ZipEntry(member.getName());
+        entry.setLastModifiedTime(FileTime.from(member.getModTime(), TimeUnit.SECONDS));
+
+        zipOutputStream.setLevel(compressed.test(member) ? Deflater.NO_COMPRESSION : level);
+        zipOutputStream.putNextEntry(entry);
+        ++ entries;
+        logger.trace("adding {} ...", member.getName());
+    }
+
+    private void appendContents(int limit) throws IOException {
+        readBuffer.clear().limit(limit);
+
+        int count = channel.read(readBuffer);
+        if (count < 0) {
+            zipOutputStream.closeEntry();
+            closeChannel();
+        } else {
+            zipOutputStream.write(readBuffer.array(), 0, count);
+            contentBytes += count;
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null)
+            return;
+
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            logger.warn(ioe.toString());
+        }
+        channel = null;
+    }
+
+    /* the zip stream writes straight into the chunk being produced */
+    private static final class ChunkSink extends OutputStream {
+        ByteBuf chunk;
+
+        @Override
+        public void write(int b) {
+            chunk.writeByte(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            chunk.writeBytes(b, off, len);
+        }
+    }
+}
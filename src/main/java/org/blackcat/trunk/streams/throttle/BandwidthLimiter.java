@@ -0,0 +1,238 @@
+package org.blackcat.trunk.streams.throttle;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide bandwidth limiter, shared by all pumps.
+ *
+ * Streams are bound to the user and route they serve (see {@link #bind}); a pump moving
+ * data between bound streams opens a {@link Transfer} and asks it how long to wait after
+ * each chunk. Each transfer gets its own token bucket, whose rate is the smallest of its
+ * fair shares of the global, user and route limits: every limit is divided among the
+ * transfers currently active within it, in proportion to the weights of their users.
+ * Transfers idle for a while (e.g. blocked on a slow client) leave their share to others
+ * until they move data again.
+ *
+ * Limits may be changed at any time with {@link #reconfigure}, taking effect immediately
+ * on active transfers too.
+ */
+final public class BandwidthLimiter {
+
+    /** Event bus address accepting new limits, as per {@link BandwidthLimits#fromJson} */
+    public static final String RECONFIGURE_ADDRESS = "trunk.bandwidth.reconfigure";
+
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    private static final BandwidthLimiter instance = new BandwidthLimiter();
+
+    private final Logger logger = LoggerFactory.getLogger(BandwidthLimiter.class);
+
+    private final Map<Object, Binding> bindings = Collections.synchronizedMap(new WeakHashMap<>());
+    private volatile BandwidthLimits limits = BandwidthLimits.UNLIMITED;
+
+    /* guarded by this */
+    private final Set<Transfer> active = new HashSet<>();
+    private long lastPrune;
+    private long throttled;
+    private long throttledMillis;
+
+    public static BandwidthLimiter getInstance() {
+        return instance;
+    }
+
+    BandwidthLimiter() {
+    }
+
+    /**
+     * Binds stream to a user (null if anonymous) and route. Bindings do not keep streams alive.
+     *
+     * @param stream
+     * @param user
+     * @param route
+     */
+    public void bind(Object stream, String user, String route) {
+        bindings.put(stream, new Binding(user, route));
+    }
+
+    /**
+     * @param stream
+     * @return true if data going through stream is subject to any limit
+     */
+    public boolean isLimited(Object stream) {
+        Binding binding = bindings.get(stream);
+        return binding != null && limits.isLimited(binding.user, binding.route);
+    }
+
+    /**
+     * Opens a transfer from readStream to writeStream, accounted to whichever is bound
+     * (the write stream first).
+     *
+     * @param readStream
+     * @param writeStream
+     * @return null if neither stream is bound or no limit applies
+     */
+    public Transfer open(Object readStream, Object writeStream) {
+        Binding binding = bindings.get(writeStream);
+        if (binding == null)
+            binding = bindings.get(readStream);
+
+        if (binding == null || ! limits.isLimited(binding.user, binding.route))
+            return null;
+
+        return new Transfer(binding.user, binding.route);
+    }
+
+    public BandwidthLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Replaces current limits, rebalancing active transfers.
+     *
+     * @param limits
+     */
+    public synchronized void reconfigure(BandwidthLimits limits) {
+        logger.info("Bandwidth limits: {}", limits);
+        this.limits = limits;
+        rebalance(System.nanoTime());
+    }
+
+    public synchronized JsonObject statistics() {
+        return new JsonObject()
+                   .put("activeTransfers", active.size())
+                   .put("throttled", throttled)
+                   .put("throttledMillis", throttledMillis)
+                   .put("limits", limits.toJson());
+    }
+
+    /* a transfer's rate is the tightest among its fair shares of each applicable limit */
+    private void rebalance(long now) {
+        BandwidthLimits limits = this.limits;
+
+        long globalWeight = 0;
+        Map<String, Long> userWeights = new HashMap<>();
+        Map<String, Long> routeWeights = new HashMap<>();
+        for (Transfer transfer : active) {
+            transfer.weight = limits.getUserWeight(transfer.user);
+            globalWeight += transfer.weight;
+            if (transfer.user != null)
+                userWeights.merge(transfer.user, (long) transfer.weight, Long::sum);
+            if (transfer.route != null)
+                routeWeights.merge(transfer.route, (long) transfer.weight, Long::sum);
+        }
+
+        for (Transfer transfer : active) {
+            long rate = share(0, limits.getGlobalLimit(), transfer.weight, globalWeight);
+            if (transfer.user != null)
+                rate = share(rate, limits.getUserLimit(), transfer.weight, userWeights.get(transfer.user));
+            if (transfer.route != null)
+                rate = share(rate, limits.getRouteLimit(transfer.route), transfer.weight, routeWeights.get(transfer.route));
+
+            transfer.bucket.setRate(rate, now);
+        }
+    }
+
+    private static long share(long rate, long limit, long weight, long totalWeight) {
+        if (limit <= 0 || totalWeight <= 0)
+            return rate;
+
+        long share = Math.max(1, limit * weight / totalWeight);
+        return rate <= 0 ? share : Math.min(rate, share);
+    }
+
+    /* transfers that have not moved data for a while stop counting towards fair shares */
+    private void pruneIdle(long now) {
+        if (now - lastPrune < IDLE_TIMEOUT / 5)
+            return;
+
+        lastPrune = now;
+        boolean pruned = false;
+        for (Iterator<Transfer> iterator = active.iterator(); iterator.hasNext(); ) {
+            Transfer transfer = iterator.next();
+            if (now - transfer.lastActive > IDLE_TIMEOUT) {
+                iterator.remove();
+                pruned = true;
+            }
+        }
+
+        if (pruned)
+            rebalance(now);
+    }
+
+    /**
+     * A flow of data subject to limits. Not meant to be shared among pumps.
+     */
+    final public class Transfer {
+
+        private final String user;
+        private final String route;
+        private final TokenBucket bucket;
+
+        private int weight;
+        private long lastActive;
+
+        private Transfer(String user, String route) {
+            this.user = user;
+            this.route = route;
+            this.bucket = new TokenBucket(0, System.nanoTime());
+        }
+
+        /**
+         * Accounts for bytes just transferred.
+         *
+         * @param bytes
+         * @return how long (milliseconds) to hold off before transferring any more
+         */
+        public long consume(long bytes) {
+            synchronized (BandwidthLimiter.this) {
+                long now = System.nanoTime();
+                lastActive = now;
+                if (active.add(this))
+                    rebalance(now);
+                else
+                    pruneIdle(now);
+
+                long delay = bucket.take(bytes, now);
+                if (delay > 0) {
+                    ++ throttled;
+                    throttledMillis += delay;
+                }
+                return delay;
+            }
+        }
+
+        public void close() {
+            synchronized (BandwidthLimiter.this) {
+                if (active.remove(this))
+                    rebalance(System.nanoTime());
+            }
+        }
+
+        long getRate() {
+            synchronized (BandwidthLimiter.this) {
+                return bucket.getRate();
+            }
+        }
+    }
+
+    private static final class Binding {
+        final String user;
+        final String route;
+
+        Binding(String user, String route) {
+            this.user = user;
+            this.route = route;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.blackcat.trunk.streams.throttle;
+
+import io.vertx.core.json.JsonObject;
+
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.blackcat.trunk.conf.Keys.*;
+
+/**
+ * Bandwidth limits, in bytes per second (0 means unlimited): over all transfers, over
+ * the transfers of each user and over the transfers of each route (e.g. "GET /protected").
+ * Within each limit, active transfers share the bandwidth in proportion to the weight of
+ * their user (1 unless configured otherwise).
+ */
+final public class BandwidthLimits {
+
+    public static final BandwidthLimits UNLIMITED =
+        new BandwidthLimits(0, 0, Collections.emptyMap(), Collections.emptyMap());
+
+    private final long globalLimit;
+    private final long userLimit;
+    private final Map<String, Long> routeLimits;
+    private final Map<String, Integer> userWeights;
+
+    public BandwidthLimits(long globalLimit, long userLimit,
+                           Map<String, Long> routeLimits, Map<String, Integer> userWeights) {
+        this.globalLimit = globalLimit;
+        this.userLimit = userLimit;
+        this.routeLimits = Collections.unmodifiableMap(new HashMap<>(routeLimits));
+        this.userWeights = Collections.unmodifiableMap(new HashMap<>(userWeights));
+    }
+
+    public long getGlobalLimit() {
+        return globalLimit;
+    }
+
+    public long getUserLimit() {
+        return userLimit;
+    }
+
+    /**
+     * @param route
+     * @return the limit of the given route, 0 if unlimited
+     */
+    public long getRouteLimit(String route) {
+        return route == null ? 0 : routeLimits.getOrDefault(route, 0L);
+    }
+
+    /**
+     * @param user
+     * @return the weight of the given user's transfers
+     */
+    public int getUserWeight(String user) {
+        return user == null ? 1 : userWeights.getOrDefault(user, 1);
+    }
+
+    /**
+     * @param user
+     * @param route
+     * @return true if transfers of user on route are limited at all
+     */
+    public boolean isLimited(String user, String route) {
+        return globalLimit > 0 || (user != null && userLimit > 0) || getRouteLimit(route) > 0;
+    }
+
+    /**
+     * Parses limits from their JSON representation, i.e. the bandwidth configuration section.
+     *
+     * @param jsonObject
+     * @return
+     * @throws IllegalArgumentException if any limit or weight is invalid
+     */
+    public static BandwidthLimits fromJson(JsonObject jsonObject) {
+        long globalLimit = limit(BANDWIDTH_GLOBAL_LIMIT,
+            jsonObject.getLong(BANDWIDTH_GLOBAL_LIMIT, DEFAULT_BANDWIDTH_GLOBAL_LIMIT));
+        long userLimit = limit(BANDWIDTH_USER_LIMIT,
+            jsonObject.getLong(BANDWIDTH_USER_LIMIT, DEFAULT_BANDWIDTH_USER_LIMIT));
+
+        Map<String, Long> routeLimits = new HashMap<>();
+        jsonObject.getJsonObject(BANDWIDTH_ROUTE_LIMITS, new JsonObject()).forEach(entry ->
+            routeLimits.put(entry.getKey(), limit(entry.getKey(), number(entry.getKey(), entry.getValue()).longValue())));
+
+        Map<String, Integer> userWeights = new HashMap<>();
+        jsonObject.getJsonObject(BANDWIDTH_USER_WEIGHTS, new JsonObject()).forEach(entry -> {
+            int weight = number(entry.getKey(), entry.getValue()).intValue();
+            if (weight <= 0)
+                throw new IllegalArgumentException(MessageFormat.format(
+                    "Invalid bandwidth weight for {0}: {1}", entry.getKey(), weight));
+            userWeights.put(entry.getKey(), weight);
+        });
+
+        return new BandwidthLimits(globalLimit, userLimit, routeLimits, userWeights);
+    }
+
+    public JsonObject toJson() {
+        JsonObject routeLimits = new JsonObject();
+        this.routeLimits.forEach(routeLimits::put);
+
+        JsonObject userWeights = new JsonObject();
+        this.userWeights.forEach(userWeights::put);
+
+        return new JsonObject()
+                   .put(BANDWIDTH_GLOBAL_LIMIT, globalLimit)
+                   .put(BANDWIDTH_USER_LIMIT, userLimit)
+                   .put(BANDWIDTH_ROUTE_LIMITS, routeLimits)
+                   .put(BANDWIDTH_USER_WEIGHTS, userWeights);
+    }
+
+    private static long limit(String name, long limit) {
+        if (limit < 0)
+            throw new IllegalArgumentException(MessageFormat.format(
+                "Invalid bandwidth limit for {0}: {1}", name, limit));
+        return limit;
+    }
+
+    private static Number number(String name, Object value) {
+        if (! (value instanceof Number))
+            throw new IllegalArgumentException(MessageFormat.format(
+                "Not a number for {0}: {1}", name, value));
+        return (Number) value;
+    }
+
+    @Override
+    public String toString() {
+        return "BandwidthLimits{" +
+                "globalLimit=" + globalLimit +
+                ", userLimit=" + userLimit +
+                ", routeLimits=" + routeLimits +
+                ", userWeights=" + userWeights +
+                '}';
+    }
+}
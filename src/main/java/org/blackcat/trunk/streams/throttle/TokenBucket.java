@@ -0,0 +1,68 @@
+package org.blackcat.trunk.streams.throttle;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket (not thread safe). Tokens are bytes, refilled at a given rate up to a
+ * given burst. Taking more tokens than available leaves the bucket in debt, which
+ * tells how long the taker must wait before going on.
+ */
+final class TokenBucket {
+
+    private long rate;
+    private long burst;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param rate bytes per second, 0 for no limit
+     * @param now nanoseconds, as per {@link System#nanoTime()}
+     */
+    TokenBucket(long rate, long now) {
+        this.lastRefill = now;
+        setRate(rate, now);
+        this.tokens = burst;
+    }
+
+    /**
+     * Changes the rate, keeping whatever has been accumulated (up to the new burst).
+     *
+     * @param rate bytes per second, 0 for no limit
+     * @param now
+     */
+    void setRate(long rate, long now) {
+        refill(now);
+        this.rate = rate;
+
+        /* a quarter of a second worth of transfer, no less than a typical chunk */
+        this.burst = Math.max(rate / 4, 16384);
+        this.tokens = Math.min(tokens, burst);
+    }
+
+    long getRate() {
+        return rate;
+    }
+
+    /**
+     * @param bytes
+     * @param now
+     * @return how long to wait (milliseconds) before taking any more
+     */
+    long take(long bytes, long now) {
+        if (rate <= 0)
+            return 0;
+
+        refill(now);
+        tokens -= bytes;
+        if (tokens >= 0)
+            return 0;
+
+        return Math.max(1, (long) Math.ceil(-tokens * TimeUnit.SECONDS.toMillis(1) / rate));
+    }
+
+    private void refill(long now) {
+        if (rate > 0)
+            tokens = Math.min(burst, tokens + (double) rate * (now - lastRefill) / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+    }
+}
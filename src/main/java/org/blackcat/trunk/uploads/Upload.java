@@ -0,0 +1,313 @@
+package org.blackcat.trunk.uploads;
+
+import io.vertx.core.json.JsonObject;
+import org.blackcat.trunk.storage.UsageAccounting;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.UUID;
+
+/**
+ * A resumable upload of a document, in either of two modes:
+ *
+ * <ul>
+ *     <li>sequential: content is appended to a temporary file until its declared length
+ *     is reached. The offset is the size of the temporary file, so it is never persisted;</li>
+ *     <li>parallel: content is split in chunks of a fixed size (the last one may be
+ *     shorter), which may be received concurrently and in any order, each written at its
+ *     position into a preallocated temporary file. Received chunks are persisted.</li>
+ * </ul>
+ *
+ * Either way, the temporary file is moved into place once all of the content has been
+ * received. Uploads are persisted by the {@link UploadRegistry} so that they survive restarts.
+ * Their length is reserved against the owner's quota meanwhile; reservations are not
+ * persisted, uploads left by a previous run reserve again as they are resumed.
+ *
+ * Requests for the same upload may be served on different event loops, hence the
+ * mutable state is synchronized.
+ */
+final public class Upload {
+
+    private final String id;
+    private final String owner;
+    private final Path path;
+    private final Path tempPath;
+    private final long length;
+    private final long chunkSize;
+    private final long createdAt;
+
+    private long offset;
+    private long updatedAt;
+    private boolean busy;
+    private UsageAccounting.Reservation reservation;
+
+    /* parallel mode only */
+    private final BitSet received = new BitSet();
+    private final BitSet receiving = new BitSet();
+
+    /**
+     * Creates a sequential upload.
+     */
+    public Upload(String owner, Path path, Path tempPath, long length) {
+        this(owner, path, tempPath, length, 0);
+    }
+
+    /**
+     * Creates a parallel upload if chunkSize is positive, a sequential one otherwise.
+     */
+    public Upload(String owner, Path path, Path tempPath, long length, long chunkSize) {
+        this(UUID.randomUUID().toString(), owner, path, tempPath, length, chunkSize, System.currentTimeMillis());
+    }
+
+    private Upload(String id, String owner, Path path, Path tempPath, long length, long chunkSize, long createdAt) {
+        this.id = id;
+        this.owner = owner;
+        this.path = path;
+        this.tempPath = tempPath;
+        this.length = length;
+        this.chunkSize = chunkSize;
+        this.createdAt = createdAt;
+        this.updatedAt = createdAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return the document being uploaded (resolved)
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    public Path getTempPath() {
+        return tempPath;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public boolean isParallel() {
+        return chunkSize > 0;
+    }
+
+    /**
+     * @return the size of chunks (parallel mode), 0 otherwise
+     */
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return the number of chunks (parallel mode)
+     */
+    public int getChunkCount() {
+        return chunkSize > 0 ? (int) ((length + chunkSize - 1) / chunkSize) : 0;
+    }
+
+    /**
+     * @param index
+     * @return the position of chunk index in the content (parallel mode)
+     */
+    public long getChunkPosition(int index) {
+        return index * chunkSize;
+    }
+
+    /**
+     * @param index
+     * @return the length of chunk index (parallel mode)
+     */
+    public long getChunkLength(int index) {
+        return Math.min(chunkSize, length - getChunkPosition(index));
+    }
+
+    /**
+     * @return the number of bytes received so far, from the beginning of the content
+     * without gaps (in parallel mode, chunks received past a missing one do not count)
+     */
+    public synchronized long getOffset() {
+        if (isParallel())
+            return Math.min(length, received.nextClearBit(0) * chunkSize);
+
+        return offset;
+    }
+
+    /**
+     * @param offset the number of bytes received so far (sequential mode)
+     */
+    public synchronized void setOffset(long offset) {
+        this.offset = offset;
+        this.updatedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the bytes reserved for the upload, null if none have been yet
+     */
+    @Nullable
+    public synchronized UsageAccounting.Reservation getReservation() {
+        return reservation;
+    }
+
+    /**
+     * @param reservation the bytes reserved for the upload as it is created
+     */
+    public synchronized void setReservation(UsageAccounting.Reservation reservation) {
+        this.reservation = reservation;
+    }
+
+    /**
+     * Reserves the length of the upload against the quota, unless it has been already (an
+     * upload left by a previous run is resumed).
+     *
+     * @param usageAccounting
+     * @return false if the quota would be exceeded
+     */
+    public synchronized boolean reserve(UsageAccounting usageAccounting) {
+        if (reservation == null)
+            reservation = usageAccounting.reserve(path, length);
+
+        return reservation != null;
+    }
+
+    /**
+     * Gives back the bytes reserved for the upload, if any (e.g. once terminated).
+     */
+    public synchronized void releaseReservation() {
+        if (reservation != null)
+            reservation.release();
+    }
+
+    public synchronized long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public synchronized boolean isComplete() {
+        if (isParallel())
+            return received.cardinality() == getChunkCount();
+
+        return offset == length;
+    }
+
+    /**
+     * @return the chunks not received yet, as ranges of indexes, e.g. "0-3,7" (parallel mode)
+     */
+    public synchronized String getMissingChunks() {
+        StringBuilder missing = new StringBuilder();
+        int count = getChunkCount();
+        for (int first = received.nextClearBit(0); first < count; first = received.nextClearBit(first)) {
+            int end = received.nextSetBit(first);
+            if (end < 0 || end > count)
+                end = count;
+
+            if (missing.length() > 0)
+                missing.append(',');
+            missing.append(first);
+            if (end - 1 > first)
+                missing.append('-').append(end - 1);
+
+            first = end;
+        }
+        return missing.toString();
+    }
+
+    /**
+     * Marks the upload as busy (receiving content in sequential mode, being committed or
+     * terminated either way). Content is never received concurrently in sequential mode.
+     *
+     * @return false if it already was, or chunks are being received
+     */
+    public synchronized boolean acquire() {
+        if (busy || ! receiving.isEmpty())
+            return false;
+
+        busy = true;
+        return true;
+    }
+
+    public synchronized void release() {
+        busy = false;
+    }
+
+    /**
+     * Marks chunk index as being received (parallel mode).
+     *
+     * @param index
+     * @return false if the upload is busy, or the chunk is being received or has been
+     * received already (a verified chunk is never written over)
+     */
+    public synchronized boolean acquireChunk(int index) {
+        if (busy || receiving.get(index) || received.get(index))
+            return false;
+
+        receiving.set(index);
+        return true;
+    }
+
+    /**
+     * Marks chunk index as no longer being received (parallel mode).
+     *
+     * @param index
+     * @param complete whether the whole chunk has been received (and verified)
+     * @return true if this was the last chunk missing, in which case the upload is left
+     * busy, to be committed
+     */
+    public synchronized boolean releaseChunk(int index, boolean complete) {
+        receiving.clear(index);
+        if (complete) {
+            received.set(index);
+            updatedAt = System.currentTimeMillis();
+        }
+
+        if (isComplete() && receiving.isEmpty() && ! busy) {
+            busy = true;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized JsonObject toJson() {
+        JsonObject json = new JsonObject()
+                              .put("id", id)
+                              .put("owner", owner)
+                              .put("path", path.toString())
+                              .put("tempPath", tempPath.toString())
+                              .put("length", length)
+                              .put("createdAt", createdAt);
+
+        if (isParallel()) {
+            json.put("chunkSize", chunkSize)
+                .put("received", received.toByteArray())
+                .put("updatedAt", updatedAt);
+        }
+        return json;
+    }
+
+    public static Upload fromJson(JsonObject json) {
+        Upload upload = new Upload(json.getString("id"), json.getString("owner"),
+            Paths.get(json.getString("path")), Paths.get(json.getString("tempPath")),
+            json.getLong("length"), json.getLong("chunkSize", 0L), json.getLong("createdAt"));
+
+        if (upload.isParallel()) {
+            upload.received.or(BitSet.valueOf(json.getBinary("received", new byte[0])));
+            upload.updatedAt = json.getLong("updatedAt", upload.createdAt);
+        }
+        return upload;
+    }
+
+    @Override
+    public String toString() {
+        return "Upload" + toJson().put("offset", getOffset()).encode();
+    }
+}
@@ -0,0 +1,65 @@
+package org.blackcat.trunk.uploads;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import org.blackcat.trunk.uploads.impl.UploadRegistryImpl;
+
+import java.nio.file.Path;
+
+/**
+ * Keeps track of resumable uploads, persisting them as JSON files in a directory.
+ */
+public interface UploadRegistry {
+
+    /**
+     * Starts tracking upload, persisting it.
+     *
+     * @param upload
+     * @param handler
+     */
+    void register(Upload upload, Handler<AsyncResult<Void>> handler);
+
+    /**
+     * Persists the current state of a registered upload (i.e. the chunks received, in
+     * parallel mode). Concurrent requests for the same upload are coalesced, the last
+     * state always gets written.
+     *
+     * @param upload
+     */
+    void persist(Upload upload);
+
+    /**
+     * @param id
+     * @return the upload with the given id, or null
+     */
+    Upload get(String id);
+
+    /**
+     * Stops tracking upload (e.g. once committed), releasing its reservation. Its temporary
+     * file is left alone.
+     *
+     * @param upload
+     */
+    void remove(Upload upload);
+
+    /**
+     * Loads the uploads left by a previous run, with their offsets, dropping those whose
+     * temporary file is gone.
+     *
+     * @param handler
+     */
+    void load(Handler<AsyncResult<Void>> handler);
+
+    /**
+     * Drops uploads not updated in the last ttl milliseconds, deleting their temporary files
+     * and releasing their reservations.
+     *
+     * @param ttl
+     */
+    void expire(long ttl);
+
+    static UploadRegistry create(Vertx vertx, Path directory) {
+        return new UploadRegistryImpl(vertx, directory);
+    }
+}
@@ -0,0 +1,192 @@
+package org.blackcat.trunk.uploads.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.blackcat.trunk.uploads.Upload;
+import org.blackcat.trunk.uploads.UploadRegistry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+final public class UploadRegistryImpl implements UploadRegistry {
+
+    final private Logger logger = LoggerFactory.getLogger(UploadRegistryImpl.class);
+
+    static final private String uploadFileSuffix = ".json";
+
+    private final Vertx vertx;
+    private final Path directory;
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+
+    /* uploads being written, and uploads to be written again as soon as that is done */
+    private final Set<String> persisting = new HashSet<>();
+    private final Set<String> dirty = new HashSet<>();
+
+    public UploadRegistryImpl(Vertx vertx, Path directory) {
+        this.vertx = vertx;
+        this.directory = directory;
+    }
+
+    @Override
+    public void register(Upload upload, Handler<AsyncResult<Void>> handler) {
+        String contents = upload.toJson().encodePrettily();
+        vertx.executeBlocking((Future<Void> future) -> {
+            try {
+                write(upload.getId(), contents);
+                future.complete();
+            } catch (IOException ioe) {
+                future.fail(ioe);
+            }
+        }, false, done -> {
+            if (done.succeeded())
+                uploads.put(upload.getId(), upload);
+            handler.handle(done);
+        });
+    }
+
+    @Override
+    public void persist(Upload upload) {
+        String id = upload.getId();
+        synchronized (this) {
+            if (persisting.contains(id)) {
+                dirty.add(id);
+                return;
+            }
+            persisting.add(id);
+        }
+
+        String contents = upload.toJson().encodePrettily();
+        vertx.executeBlocking(future -> {
+            try {
+                /* a removed upload stays removed */
+                if (uploads.containsKey(id))
+                    write(id, contents);
+                future.complete();
+            } catch (IOException ioe) {
+                future.fail(ioe);
+            }
+        }, false, done -> {
+            if (done.failed())
+                logger.warn("Could not persist upload {}: {}", id, done.cause().toString());
+
+            boolean again;
+            synchronized (this) {
+                persisting.remove(id);
+                again = dirty.remove(id);
+            }
+            if (again)
+                persist(upload);
+        });
+    }
+
+    @Override
+    public Upload get(String id) {
+        return uploads.get(id);
+    }
+
+    @Override
+    public void remove(Upload upload) {
+        uploads.remove(upload.getId());
+        upload.releaseReservation();
+        vertx.executeBlocking(future -> {
+            try {
+                Files.deleteIfExists(directory.resolve(upload.getId() + uploadFileSuffix));
+                future.complete();
+            } catch (IOException ioe) {
+                future.fail(ioe);
+            }
+        }, false, done -> {
+            if (done.failed())
+                logger.warn("Could not remove upload {}: {}", upload.getId(), done.cause().toString());
+        });
+    }
+
+    @Override
+    public void load(Handler<AsyncResult<Void>> handler) {
+        vertx.executeBlocking((Future<Void> future) -> {
+            if (Files.isDirectory(directory)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + uploadFileSuffix)) {
+                    for (Path path : stream) {
+                        try {
+                            Upload upload = Upload.fromJson(
+                                new JsonObject(new String(Files.readAllBytes(path), StandardCharsets.UTF_8)));
+
+                            /* whatever made it to disk is a valid prefix of the content (sequential mode) */
+                            if (Files.isRegularFile(upload.getTempPath())) {
+                                if (! upload.isParallel())
+                                    upload.setOffset(Math.min(upload.getLength(), Files.size(upload.getTempPath())));
+                                uploads.put(upload.getId(), upload);
+                            } else {
+                                logger.warn("Dropping upload {}, its temporary file is gone", upload.getId());
+                                Files.delete(path);
+                            }
+                        } catch (IOException | DecodeException | ClassCastException | NullPointerException e) {
+                            logger.warn("Skipping unreadable upload {}: {}", path, e.toString());
+                        }
+                    }
+                } catch (IOException ioe) {
+                    future.fail(ioe);
+                    return;
+                }
+            }
+            future.complete();
+        }, handler);
+    }
+
+    @Override
+    public void expire(long ttl) {
+        long now = System.currentTimeMillis();
+
+        List<Upload> expired = new ArrayList<>();
+        for (Upload upload : uploads.values()) {
+            /* busy uploads are receiving data right now */
+            if (now - upload.getUpdatedAt() > ttl && upload.acquire()) {
+                uploads.remove(upload.getId());
+                upload.releaseReservation();
+                expired.add(upload);
+            }
+        }
+
+        if (expired.isEmpty())
+            return;
+
+        vertx.executeBlocking(future -> {
+            for (Upload upload : expired) {
+                logger.info("Upload {} expired", upload.getId());
+                try {
+                    Files.deleteIfExists(upload.getTempPath());
+                    Files.deleteIfExists(directory.resolve(upload.getId() + uploadFileSuffix));
+                } catch (IOException ioe) {
+                    logger.warn("Could not clean up upload {}: {}", upload.getId(), ioe.toString());
+                }
+            }
+            future.complete();
+        }, false, done -> {});
+    }
+
+    /* write then rename, a crash never leaves a truncated upload behind */
+    private void write(String id, String contents) throws IOException {
+        Files.createDirectories(directory);
+
+        Path target = directory.resolve(id + uploadFileSuffix);
+        Path temp = directory.resolve("." + id + ".tmp");
+        Files.write(temp, contents.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,88 @@
+package org.blackcat.trunk.util;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * MIME types by file extension, as listed in mime-types.properties.
+ */
+final public class MimeTypes {
+
+    private static final Logger logger = LoggerFactory.getLogger(MimeTypes.class);
+
+    private static final String RESOURCE_NAME = "/mime-types.properties";
+
+    /* application types whose contents are compressed already */
+    private static final String[] COMPRESSED_APPLICATION_MARKERS = {
+        "zip", "compressed", "gzip", "bzip", "xz", "lzma", "rar", "java-archive", "package-archive", "mp4"
+    };
+
+    private static final Properties mimeTypes = load();
+
+    private MimeTypes() {
+    }
+
+    /**
+     * @param path
+     * @return the MIME type of path, null if unknown
+     */
+    public static String of(Path path) {
+        Path fileName = path.getFileName();
+        if (fileName == null)
+            return null;
+
+        String name = fileName.toString();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || dot == name.length() - 1)
+            return null;
+
+        return mimeTypes.getProperty(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param mimeType
+     * @return true if documents of the given type are compressed already, so that
+     * compressing them again is just a waste of cycles
+     */
+    public static boolean isCompressed(String mimeType) {
+        if (mimeType == null)
+            return false;
+
+        if (mimeType.startsWith("video/"))
+            return true;
+
+        if (mimeType.startsWith("image/"))
+            return mimeType.equals("image/jpeg") || mimeType.equals("image/png") ||
+                       mimeType.equals("image/gif") || mimeType.equals("image/webp");
+
+        if (mimeType.startsWith("audio/"))
+            return ! mimeType.contains("wav") && ! mimeType.contains("aiff") && ! mimeType.contains("midi");
+
+        if (mimeType.startsWith("application/")) {
+            for (String marker : COMPRESSED_APPLICATION_MARKERS) {
+                if (mimeType.contains(marker))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static Properties load() {
+        Properties properties = new Properties();
+        try (InputStream inputStream = MimeTypes.class.getResourceAsStream(RESOURCE_NAME)) {
+            if (inputStream != null)
+                properties.load(inputStream);
+            else
+                logger.warn("{} not found, MIME types unknown", RESOURCE_NAME);
+        } catch (IOException ioe) {
+            logger.warn("Could not load {} [{}]", RESOURCE_NAME, ioe.toString());
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,149 @@
+package org.blackcat.trunk.util;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prefix tree mapping paths to values, one level per path component. Lookups cost
+ * O(depth) regardless of the number of paths stored. Not thread safe.
+ *
+ * @param <V> the type of mapped values
+ */
+final public class PathTrie<V> {
+
+    private final Node<V> root = new Node<>();
+    private int size;
+
+    /**
+     * Maps path to value.
+     *
+     * @param path
+     * @param value
+     * @return the value previously mapped to path, or null
+     */
+    public V put(Path path, V value) {
+        Node<V> node = root;
+        for (Path component : path)
+            node = node.children.computeIfAbsent(component.toString(), name -> new Node<>());
+
+        V previous = node.value;
+        if (previous == null)
+            ++ size;
+
+        node.value = value;
+        return previous;
+    }
+
+    /**
+     * @param path
+     * @return the value mapped to path itself, or null
+     */
+    public V get(Path path) {
+        Node<V> node = find(path);
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * @param path
+     * @return the value mapped to the longest prefix of path (path included), or null
+     */
+    public V getNearest(Path path) {
+        Node<V> node = root;
+        V nearest = root.value;
+
+        for (Path component : path) {
+            node = node.children.get(component.toString());
+            if (node == null)
+                break;
+
+            if (node.value != null)
+                nearest = node.value;
+        }
+        return nearest;
+    }
+
+    /**
+     * Collects the paths strictly below path that are mapped to a value.
+     *
+     * @param path
+     * @return
+     */
+    public List<Path> descendants(Path path) {
+        List<Path> descendants = new ArrayList<>();
+
+        Node<V> node = find(path);
+        if (node != null)
+            collect(node, path, descendants);
+
+        return descendants;
+    }
+
+    /**
+     * Removes the mapping for path, if any.
+     *
+     * @param path
+     * @return the value previously mapped to path, or null
+     */
+    public V remove(Path path) {
+        Deque<Node<V>> visited = new ArrayDeque<>();
+        Deque<String> names = new ArrayDeque<>();
+
+        Node<V> node = root;
+        for (Path component : path) {
+            visited.push(node);
+            names.push(component.toString());
+
+            node = node.children.get(component.toString());
+            if (node == null)
+                return null;
+        }
+
+        V previous = node.value;
+        if (previous != null) {
+            node.value = null;
+            -- size;
+        }
+
+        /* prune branches left empty */
+        while (! visited.isEmpty() && node.value == null && node.children.isEmpty()) {
+            Node<V> parent = visited.pop();
+            parent.children.remove(names.pop());
+            node = parent;
+        }
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private Node<V> find(Path path) {
+        Node<V> node = root;
+        for (Path component : path) {
+            node = node.children.get(component.toString());
+            if (node == null)
+                return null;
+        }
+        return node;
+    }
+
+    private void collect(Node<V> node, Path path, List<Path> descendants) {
+        for (Map.Entry<String, Node<V>> child : node.children.entrySet()) {
+            Path childPath = path.resolve(child.getKey());
+            if (child.getValue().value != null)
+                descendants.add(childPath);
+
+            collect(child.getValue(), childPath, descendants);
+        }
+    }
+
+    private static final class Node<V> {
+        final Map<String, Node<V>> children = new HashMap<>(4);
+        V value;
+    }
+}
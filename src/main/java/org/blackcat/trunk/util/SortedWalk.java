@@ -0,0 +1,95 @@
+package org.blackcat.trunk.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Depth first walk of a file tree, visiting siblings in name order (blocking).
+ *
+ * Unlike {@link Files#walk}, the visiting order is deterministic: a walk can be
+ * resumed after a given path, whole subtrees already visited are skipped without
+ * being listed. Only the directories on the current branch are held in memory.
+ *
+ * Hidden entries (e.g. the temporary files of uploads in progress) are skipped along
+ * with everything below them, as in collection listings.
+ */
+final public class SortedWalk {
+
+    private final Deque<Iterator<Path>> branch = new ArrayDeque<>();
+    private final Path resumeAfter;
+
+    /**
+     * @param start the root of the walk, visited first
+     * @param resumeAfter the last path visited by a previous walk, or null
+     */
+    public SortedWalk(Path start, Path resumeAfter) {
+        this.resumeAfter = resumeAfter;
+        this.branch.push(Collections.singletonList(start).iterator());
+    }
+
+    /**
+     * @param count
+     * @return up to count paths, less only when the walk is over
+     * @throws IOException
+     */
+    public List<Path> next(int count) throws IOException {
+        List<Path> paths = new ArrayList<>(count);
+
+        while (paths.size() < count && ! branch.isEmpty()) {
+            Iterator<Path> siblings = branch.peek();
+            if (! siblings.hasNext()) {
+                branch.pop();
+                continue;
+            }
+
+            Path path = siblings.next();
+            boolean pending = resumeAfter == null || compare(path, resumeAfter) > 0;
+            if (pending)
+                paths.add(path);
+
+            /* descend only where something is left to visit */
+            if ((pending || resumeAfter.startsWith(path)) && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+                branch.push(children(path));
+        }
+
+        return paths;
+    }
+
+    private static Iterator<Path> children(Path directory) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries
+                       .filter(entry -> ! entry.getFileName().toString().startsWith("."))
+                       .sorted(Comparator.comparing(entry -> entry.getFileName().toString()))
+                       .collect(Collectors.toList())
+                       .iterator();
+        }
+    }
+
+    /**
+     * Compares paths in visiting order: component by component, ancestors first.
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    public static int compare(Path a, Path b) {
+        int common = Math.min(a.getNameCount(), b.getNameCount());
+        for (int i = 0; i < common; ++ i) {
+            int result = a.getName(i).toString().compareTo(b.getName(i).toString());
+            if (result != 0)
+                return result;
+        }
+        return Integer.compare(a.getNameCount(), b.getNameCount());
+    }
+}
@@ -17,7 +17,13 @@ import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.regex.Pattern;
@@ -29,6 +35,10 @@ final public class Utils {
 
     static final int DISK_STORAGE_UNIT = 1024;
 
+    /* IMF-fixdate: RFC_1123_DATE_TIME does not zero-pad the day of month */
+    static final DateTimeFormatter httpDateFormatter =
+        DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
     private Utils()
     {}
 
@@ -63,6 +73,33 @@ final public class Utils {
         }
     }
 
+    /**
+     * Formats an epoch timestamp as an HTTP-date (RFC 7231 IMF-fixdate), e.g. for Last-Modified.
+     *
+     * @param epochMillis
+     * @return
+     */
+    @NotNull
+    public static String httpDate(long epochMillis) {
+        return httpDateFormatter.format(Instant.ofEpochMilli(epochMillis));
+    }
+
+    /**
+     * Parses an HTTP-date (RFC 7231).
+     *
+     * @param httpDate
+     * @return the epoch timestamp in milliseconds, or null if httpDate is not a valid date.
+     */
+    public static Long parseHttpDate(String httpDate) {
+        Objects.requireNonNull(httpDate);
+        try {
+            return ZonedDateTime.parse(httpDate, DateTimeFormatter.RFC_1123_DATE_TIME)
+                       .toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
     @NotNull
     public static String makeTempFileName(String nameStub) {
         Objects.requireNonNull(nameStub);
@@ -1,5 +1,6 @@
 package org.blackcat.trunk.verticles;
 
+import de.braintags.io.vertx.pojomapper.dataaccess.delete.IDelete;
 import de.braintags.io.vertx.pojomapper.dataaccess.query.IQuery;
 import de.braintags.io.vertx.pojomapper.dataaccess.query.IQueryResult;
 import de.braintags.io.vertx.pojomapper.dataaccess.write.IWrite;
@@ -7,15 +8,26 @@ import de.braintags.io.vertx.pojomapper.dataaccess.write.IWriteEntry;
 import de.braintags.io.vertx.pojomapper.dataaccess.write.IWriteResult;
 import de.braintags.io.vertx.pojomapper.mongo.MongoDataStore;
 import io.vertx.core.*;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.mongo.MongoClient;
 import org.blackcat.trunk.conf.Configuration;
+import org.blackcat.trunk.eventbus.codecs.MapperCodecs;
+import org.blackcat.trunk.eventbus.codecs.ShareMapperCodec;
+import org.blackcat.trunk.eventbus.codecs.UserMapperCodec;
 import org.blackcat.trunk.eventbus.data.QueryType;
 import org.blackcat.trunk.mappers.ShareMapper;
 import org.blackcat.trunk.mappers.UserMapper;
+import org.blackcat.trunk.queries.Queries;
+import org.blackcat.trunk.util.PathTrie;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
@@ -24,16 +36,25 @@ final public class DataStoreVerticle extends AbstractVerticle {
     private Logger logger = LoggerFactory.getLogger(DataStoreVerticle.class);
     private MongoDataStore mongoDataStore;
 
+    /* every persisted share, by collection path (event loop only) */
+    private final PathTrie<ShareMapper> shareIndex = new PathTrie<>();
+    private boolean shareInheritance;
+
+    static private final String originHeader = "origin";
+
     public static final int ERR_COULD_NOT_CREATE_USER  = 1;
     public static final int ERR_COULD_NOT_FIND_SHARE   = 2;
     public static final int ERR_COULD_NOT_UPDATE_SHARE = 3;
     public static final int ERR_UNSUPPORTED_QUERY_TYPE = 4;
+    public static final int ERR_COULD_NOT_BULK_UPDATE_SHARES = 5;
 
     @Override
     public void start(Future<Void> startFuture) {
         Context context = vertx.getOrCreateContext();
 
         Configuration configuration = new Configuration(context.config());
+        MapperCodecs.register(vertx);
+        shareInheritance = configuration.isShareInheritanceEnabled();
         String connectionString = String.format("%s://%s:%s",
             configuration.getDatabaseType(),
             configuration.getDatabaseHost(),
@@ -50,13 +71,58 @@ final public class DataStoreVerticle extends AbstractVerticle {
         /* determine if mongo is alive and well... */
         mongoClient.getCollections(ar -> {
             if (ar.succeeded()) {
-                setupMessageHandlers();
-                startFuture.complete();
+                loadShareIndex(loadAsyncResult -> {
+                    if (loadAsyncResult.failed())
+                        startFuture.fail(loadAsyncResult.cause());
+                    else {
+                        setupMessageHandlers();
+                        startFuture.complete();
+                    }
+                });
+            }
+        });
+    }
+
+    /* share lookups are served from memory, the index is loaded once at startup */
+    private void loadShareIndex(Handler<AsyncResult<Void>> handler) {
+        IQuery<ShareMapper> shareQuery = mongoDataStore.createQuery(ShareMapper.class);
+        shareQuery.execute(shareQueryAsyncResult -> {
+            if (shareQueryAsyncResult.failed())
+                handler.handle(Future.failedFuture(shareQueryAsyncResult.cause()));
+            else {
+                shareQueryAsyncResult.result().toArray(sharesAsyncResult -> {
+                    if (sharesAsyncResult.failed())
+                        handler.handle(Future.failedFuture(sharesAsyncResult.cause()));
+                    else {
+                        for (ShareMapper shareMapper : sharesAsyncResult.result())
+                            shareIndex.put(Paths.get(shareMapper.getCollectionPath()), shareMapper);
+
+                        logger.info("Loaded {} shares ({}).", shareIndex.size(),
+                            shareInheritance ? "inherited" : "per path");
+                        handler.handle(Future.succeededFuture());
+                    }
+                });
             }
         });
     }
 
     private void setupMessageHandlers() {
+        /* shares written by other data store instances */
+        vertx.eventBus()
+            .<JsonArray>consumer(Queries.INVALIDATIONS_ADDRESS, msg -> {
+                if (deploymentID().equals(msg.headers().get(originHeader)))
+                    return;
+
+                List<Path> collectionPaths = new ArrayList<>();
+                for (Object key : msg.body()) {
+                    Path collectionPath = Queries.sharePath((String) key);
+                    if (collectionPath != null)
+                        collectionPaths.add(collectionPath);
+                }
+                if (! collectionPaths.isEmpty())
+                    reloadShares(collectionPaths);
+            });
+
         vertx.eventBus()
             .consumer("data-store", msg -> {
                 JsonObject obj = (JsonObject) msg.body();
@@ -70,7 +136,7 @@ final public class DataStoreVerticle extends AbstractVerticle {
                             msg.fail(ERR_COULD_NOT_CREATE_USER, "Could not create user");
                         else {
                             UserMapper userMapper = userMapperAsyncResult.result();
-                            msg.reply(JsonObject.mapFrom(userMapper));
+                            msg.reply(userMapper);
                         }
                     });
                 } else if (queryType.equals(QueryType.FIND_SHARE.getTag())) {
@@ -79,7 +145,7 @@ final public class DataStoreVerticle extends AbstractVerticle {
                             msg.fail(ERR_COULD_NOT_FIND_SHARE, "Could not find share");
                         else {
                             ShareMapper shareMapper = shareMapperAsyncResult.result();
-                            msg.reply(JsonObject.mapFrom(shareMapper));
+                            msg.reply(shareMapper);
                         }
                     });
                 } else if (queryType.equals(QueryType.FIND_UPDATE_SHARE.getTag())) {
@@ -88,9 +154,16 @@ final public class DataStoreVerticle extends AbstractVerticle {
                             msg.fail(ERR_COULD_NOT_UPDATE_SHARE, "Could not update share");
                         else {
                             ShareMapper shareMapper = shareMapperAsyncResult.result();
-                            msg.reply(JsonObject.mapFrom(shareMapper));
+                            msg.reply(shareMapper);
                         }
                     });
+                } else if (queryType.equals(QueryType.BULK_UPDATE_SHARES.getTag())) {
+                    bulkUpdateShares(params, countAsyncResult -> {
+                        if (countAsyncResult.failed())
+                            msg.fail(ERR_COULD_NOT_BULK_UPDATE_SHARES, "Could not update shares");
+                        else
+                            msg.reply(new JsonObject().put("count", countAsyncResult.result()));
+                    });
                 } else {
                     logger.error("Unsupported query type: {}", queryType);
                     msg.fail(ERR_UNSUPPORTED_QUERY_TYPE, "Unsupported query type");
@@ -150,72 +223,168 @@ final public class DataStoreVerticle extends AbstractVerticle {
     private void findShare(JsonObject params, Handler<AsyncResult<ShareMapper>> handler) {
         String collectionPath = params.getString("collectionPath");
 
-        IQuery<ShareMapper> shareQuery = mongoDataStore.createQuery(ShareMapper.class);
-        shareQuery.field("collectionPath").is(collectionPath);
-        shareQuery.execute(shareQueryAsyncResult -> {
-            if (shareQueryAsyncResult.failed()) {
-                Throwable cause = shareQueryAsyncResult.cause();
-                logger.error(cause.toString());
+        /* O(depth): the nearest ancestor holding a share (the collection itself included) */
+        Path path = Paths.get(collectionPath);
+        ShareMapper shareMapper = shareInheritance ? shareIndex.getNearest(path) : shareIndex.get(path);
+
+        if (shareMapper != null) {
+            logger.trace("Found sharing info {} for {}", shareMapper, collectionPath);
+            handler.handle(Future.succeededFuture(shareMapper));
+        } else {
+            logger.trace("No sharing info found for {}", collectionPath);
+            shareMapper = new ShareMapper();
+            shareMapper.setCollectionPath(collectionPath);
+            handler.handle(Future.succeededFuture(shareMapper));
+        }
+    }
+
+    private void findUpdateShare(JsonObject params, Handler<AsyncResult<ShareMapper>> handler) {
+        UserMapper owner = UserMapperCodec.fromJson(params.getJsonObject("owner"));
+        String collectionPath = params.getString("collectionPath");
+        List<String> authorizedUsers = params.getJsonArray("authorizedUsers").getList();
+
+        /* indexed entities are not touched until the write succeeds */
+        Path path = Paths.get(collectionPath);
+        ShareMapper existing = shareIndex.get(path);
+        ShareMapper shareMapper = existing != null ? copyOf(existing) : new ShareMapper();
+
+        shareMapper.setCollectionPath(collectionPath);
+        shareMapper.setOwner(owner);
+        shareMapper.setAuthorizedUsers(authorizedUsers);
+
+        IWrite<ShareMapper> shareWrite = mongoDataStore.createWrite(ShareMapper.class);
+        shareWrite.add(shareMapper);
+        shareWrite.save(shareWriteAsyncResult -> {
+
+            if (shareWriteAsyncResult.failed()) {
+                Throwable cause = shareWriteAsyncResult.cause();
+                logger.error(cause);
                 handler.handle(Future.failedFuture(cause));
             } else {
-                IQueryResult<ShareMapper> shareQueryResult = shareQueryAsyncResult.result();
-                if (!shareQueryResult.isEmpty()) {
-                    shareQueryResult.iterator().next(shareNextAsyncResult -> {
-                        if (shareNextAsyncResult.failed()) {
-                            Throwable cause = shareNextAsyncResult.cause();
-                            logger.error(cause);
-                            handler.handle(Future.failedFuture(cause));
-                        } else {
-                            ShareMapper shareMapper = shareNextAsyncResult.result();
-                            logger.trace("Found sharing info {} for {}", shareMapper, collectionPath);
-                            handler.handle(Future.succeededFuture(shareMapper));
-                        }
-                    });
-                } else {
-                    logger.trace("No sharing info found for {}", collectionPath);
-                    ShareMapper shareMapper = new ShareMapper();
-                    shareMapper.setCollectionPath(collectionPath);
+                IWriteResult shareWriteResult = shareWriteAsyncResult.result();
+                IWriteEntry shareWriteEntry = shareWriteResult.iterator().next();
+                logger.trace("{} {}", shareWriteEntry.getAction(), shareWriteEntry.getStoreObject());
+
+                shareIndex.put(path, shareMapper);
+                removeDescendantShares(path, done -> {
+                    publishInvalidations(Collections.singletonList(path));
                     handler.handle(Future.succeededFuture(shareMapper));
-                }
+                });
             }
         });
     }
 
-    private void findUpdateShare(JsonObject params, Handler<AsyncResult<ShareMapper>> handler) {
-        UserMapper owner = params.getJsonObject("owner").mapTo(UserMapper.class);
-        String collectionPath = params.getString("collectionPath");
+    /* one write, many entities: the driver turns it into a single round trip per batch */
+    private void bulkUpdateShares(JsonObject params, Handler<AsyncResult<Integer>> handler) {
+        UserMapper owner = UserMapperCodec.fromJson(params.getJsonObject("owner"));
+        List<String> collectionPaths = params.getJsonArray("collectionPaths").getList();
         List<String> authorizedUsers = params.getJsonArray("authorizedUsers").getList();
 
-        findShare(new JsonObject()
-                      .put("collectionPath", collectionPath), shareMapperAsyncResult -> {
+        if (collectionPaths.isEmpty()) {
+            handler.handle(Future.succeededFuture(0));
+            return;
+        }
 
-            if (shareMapperAsyncResult.failed()) {
-                Throwable cause = shareMapperAsyncResult.cause();
-                logger.error(cause.toString());
+        IWrite<ShareMapper> shareWrite = mongoDataStore.createWrite(ShareMapper.class);
+        List<ShareMapper> shareMappers = new ArrayList<>(collectionPaths.size());
+        for (String collectionPath : collectionPaths) {
+            ShareMapper existing = shareIndex.get(Paths.get(collectionPath));
+            ShareMapper shareMapper = existing != null ? copyOf(existing) : new ShareMapper();
+
+            shareMapper.setCollectionPath(collectionPath);
+            shareMapper.setOwner(owner);
+            shareMapper.setAuthorizedUsers(authorizedUsers);
+
+            shareWrite.add(shareMapper);
+            shareMappers.add(shareMapper);
+        }
+
+        shareWrite.save(shareWriteAsyncResult -> {
+            if (shareWriteAsyncResult.failed()) {
+                Throwable cause = shareWriteAsyncResult.cause();
+                logger.error(cause);
                 handler.handle(Future.failedFuture(cause));
             } else {
-                ShareMapper shareMapper = shareMapperAsyncResult.result();
-                IWrite<ShareMapper> shareWrite = mongoDataStore.createWrite(ShareMapper.class);
+                List<Path> paths = new ArrayList<>(shareMappers.size());
+                for (ShareMapper shareMapper : shareMappers) {
+                    Path path = Paths.get(shareMapper.getCollectionPath());
+                    shareIndex.put(path, shareMapper);
+                    paths.add(path);
+                }
+                /* one message for the whole batch, other instances reload it in one query */
+                publishInvalidations(paths);
+                logger.trace("Wrote {} shares", shareMappers.size());
+                handler.handle(Future.succeededFuture(shareMappers.size()));
+            }
+        });
+    }
 
-                shareMapper.setOwner(owner);
-                shareMapper.setAuthorizedUsers(authorizedUsers);
+    /* indexed entities are shared with every reader, hence never modified in place */
+    private static ShareMapper copyOf(ShareMapper shareMapper) {
+        return ShareMapperCodec.copyOf(shareMapper);
+    }
 
-                shareWrite.add(shareMapper);
-                shareWrite.save(shareWriteAsyncResult -> {
+    /* with inheritance, a share overrides whatever was set below it (e.g. per path records) */
+    private void removeDescendantShares(Path path, Handler<Void> handler) {
+        List<Path> descendants = shareInheritance ? shareIndex.descendants(path) : null;
+        if (descendants == null || descendants.isEmpty()) {
+            handler.handle(null);
+            return;
+        }
 
-                    if (shareWriteAsyncResult.failed()) {
-                        Throwable cause = shareWriteAsyncResult.cause();
-                        logger.error(cause);
-                        handler.handle(Future.failedFuture(cause));
-                    } else {
-                        IWriteResult shareWriteResult = shareWriteAsyncResult.result();
-                        IWriteEntry shareWriteEntry = shareWriteResult.iterator().next();
+        IDelete<ShareMapper> shareDelete = mongoDataStore.createDelete(ShareMapper.class);
+        for (Path descendant : descendants)
+            shareDelete.add(shareIndex.get(descendant));
 
-                        logger.trace("{} {}", shareWriteEntry.getAction(), shareWriteEntry.getStoreObject());
-                        handler.handle(Future.succeededFuture(shareMapper));
-                    }
-                });
+        shareDelete.delete(shareDeleteAsyncResult -> {
+            if (shareDeleteAsyncResult.failed()) {
+                /* still in effect for their own subtrees, will be retried on next update */
+                logger.warn("Could not remove {} shares below {}: {}", descendants.size(), path,
+                    shareDeleteAsyncResult.cause().toString());
+            } else {
+                descendants.forEach(shareIndex::remove);
+                logger.debug("Removed {} shares below {}", descendants.size(), path);
             }
+            handler.handle(null);
+        });
+    }
+
+    private void publishInvalidations(List<Path> paths) {
+        JsonArray keys = new JsonArray();
+        paths.forEach(path -> keys.add(Queries.shareKey(path)));
+        vertx.eventBus().publish(Queries.INVALIDATIONS_ADDRESS, keys,
+            new DeliveryOptions().addHeader(originHeader, deploymentID()));
+    }
+
+    /* refreshes the index after shares have been written elsewhere */
+    private void reloadShares(List<Path> paths) {
+        List<String> collectionPaths = new ArrayList<>(paths.size());
+        paths.forEach(path -> collectionPaths.add(path.toString()));
+
+        IQuery<ShareMapper> shareQuery = mongoDataStore.createQuery(ShareMapper.class);
+        shareQuery.field("collectionPath").in(collectionPaths);
+        shareQuery.execute(shareQueryAsyncResult -> {
+            if (shareQueryAsyncResult.failed()) {
+                logger.error(shareQueryAsyncResult.cause().toString());
+                return;
+            }
+
+            shareQueryAsyncResult.result().toArray(sharesAsyncResult -> {
+                if (sharesAsyncResult.failed()) {
+                    logger.error(sharesAsyncResult.cause().toString());
+                    return;
+                }
+
+                /* paths not returned have been unshared */
+                if (shareInheritance)
+                    paths.forEach(path -> shareIndex.descendants(path).forEach(shareIndex::remove));
+                paths.forEach(shareIndex::remove);
+
+                for (ShareMapper share : sharesAsyncResult.result())
+                    shareIndex.put(Paths.get(share.getCollectionPath()), share);
+
+                logger.trace("Reloaded sharing info for {} collections", paths.size());
+            });
         });
     }
 }
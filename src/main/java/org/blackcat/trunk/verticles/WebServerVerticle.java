@@ -9,18 +9,39 @@ package org.blackcat.trunk.verticles;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
 import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.core.net.JksOptions;
 import org.blackcat.trunk.conf.Configuration;
+import org.blackcat.trunk.eventbus.codecs.MapperCodecs;
 import org.blackcat.trunk.http.requests.MainHandler;
+import org.blackcat.trunk.jobs.JobRegistry;
+import org.blackcat.trunk.jobs.JobStatus;
+import org.blackcat.trunk.jobs.ShareRewriteJob;
+import org.blackcat.trunk.jobs.TreeDeleteJob;
+import org.blackcat.trunk.queries.Queries;
 import org.blackcat.trunk.storage.Storage;
+import org.blackcat.trunk.storage.UsageAccounting;
+import org.blackcat.trunk.storage.impl.ContentAddressedStorage;
 import org.blackcat.trunk.storage.impl.FileSystemStorage;
+import org.blackcat.trunk.streams.pump.TransferRegistry;
+import org.blackcat.trunk.streams.throttle.BandwidthLimiter;
+import org.blackcat.trunk.streams.throttle.BandwidthLimits;
+import org.blackcat.trunk.uploads.UploadRegistry;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class WebServerVerticle extends AbstractVerticle {
 
+    static private final long TRANSFER_STATISTICS_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+    static private final long UPLOAD_EXPIRY_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
     private Logger logger = LoggerFactory.getLogger(WebServerVerticle.class);
 
     @Override
@@ -28,13 +49,91 @@ public class WebServerVerticle extends AbstractVerticle {
         /* retrieve configuration object from vertx ctx */
         Configuration configuration = Configuration.create(vertx.getOrCreateContext().config());
 
-        /* configure disk storage */
-        Storage storage = FileSystemStorage.create(vertx, Paths.get(configuration.getStorageRoot()));
+        /* configure disk storage, deduplicating contents if so requested */
+        Path storageRoot = Paths.get(configuration.getStorageRoot());
+        Storage storage = configuration.isStorageDeduplicationEnabled()
+                              ? ContentAddressedStorage.create(vertx, storageRoot, configuration.getStorageCacheSize(),
+                                    configuration.getStorageUserQuota())
+                              : FileSystemStorage.create(vertx, storageRoot, configuration.getStorageCacheSize(),
+                                    configuration.getStorageUserQuota());
+
+        /* usage is accounted incrementally, seeded by a parallel scan and periodically reconciled the same way */
+        reconcileUsage(storage.getUsageAccounting());
+        vertx.setPeriodic(TimeUnit.SECONDS.toMillis(configuration.getStorageUsageReconcileInterval()),
+            id -> reconcileUsage(storage.getUsageAccounting()));
+
+        /* data store replies travel as mappers, copied rather than serialized within the JVM */
+        MapperCodecs.register(vertx);
+
+        /* user and share lookups are cached in front of the data store */
+        Queries.enableCache(vertx, configuration.getDatabaseCacheSize(), configuration.getDatabaseCacheTTL());
+
+        /* tombstones left by a previous run, listed before any request can add one */
+        Set<String> tombstones = new HashSet<>();
+        String tombstonesPath = storage.getTombstones().toString();
+        if (vertx.fileSystem().existsBlocking(tombstonesPath)) {
+            for (String tombstone : vertx.fileSystem().readDirBlocking(tombstonesPath))
+                tombstones.add(Paths.get(tombstone).getFileName().toString());
+        }
+
+        /* background jobs are tracked in a hidden directory under the storage root, and resumed on restart */
+        JobRegistry jobRegistry = JobRegistry.create(vertx, storage.getRoot().resolve(".jobs"));
+        jobRegistry.loadUnfinished(unfinishedAsyncResult -> {
+            if (unfinishedAsyncResult.failed()) {
+                logger.warn("Could not load unfinished jobs: {}", unfinishedAsyncResult.cause().toString());
+                return;
+            }
+
+            for (JobStatus status : unfinishedAsyncResult.result()) {
+                if (ShareRewriteJob.TYPE.equals(status.getType()))
+                    ShareRewriteJob.create(vertx, storage, jobRegistry, status,
+                        configuration.getShareRewriteBatchSize(),
+                        configuration.getShareRewriteConcurrency()).start();
+                else if (TreeDeleteJob.TYPE.equals(status.getType())) {
+                    tombstones.remove(Paths.get(status.getParams().getString("tombstone")).getFileName().toString());
+                    TreeDeleteJob.create(vertx, jobRegistry, status, configuration.getStorageDeleteRate()).start();
+                }
+            }
+
+            /* deleted collections whose job was never recorded, e.g. on a crash right after the move */
+            for (String tombstone : tombstones) {
+                Path tombstonePath = storage.getTombstones().resolve(tombstone);
+                logger.info("Removing orphaned tombstone {}", tombstonePath);
+                JobStatus status = TreeDeleteJob.newStatus(null,
+                    storage.getRoot().relativize(tombstonePath), tombstonePath, -1);
+                TreeDeleteJob.create(vertx, jobRegistry, status, configuration.getStorageDeleteRate()).start();
+            }
+        });
+
+        /* resumable uploads are tracked in a hidden directory too, and survive restarts until they expire */
+        UploadRegistry uploadRegistry = UploadRegistry.create(vertx, storage.getRoot().resolve(".uploads"));
+        uploadRegistry.load(loadAsyncResult -> {
+            if (loadAsyncResult.failed())
+                logger.warn("Could not load uploads: {}", loadAsyncResult.cause().toString());
+        });
+        long uploadExpiry = TimeUnit.SECONDS.toMillis(configuration.getStorageUploadExpiry());
+        vertx.setPeriodic(UPLOAD_EXPIRY_INTERVAL, id -> uploadRegistry.expire(uploadExpiry));
+
+        /* bandwidth limits apply to all pumped transfers, and can be changed at runtime over the event bus */
+        BandwidthLimiter.getInstance().reconfigure(configuration.getBandwidthLimits());
+        vertx.eventBus().<JsonObject>consumer(BandwidthLimiter.RECONFIGURE_ADDRESS, message -> {
+            try {
+                BandwidthLimiter.getInstance().reconfigure(BandwidthLimits.fromJson(message.body()));
+                message.reply(BandwidthLimiter.getInstance().getLimits().toJson());
+            } catch (IllegalArgumentException | ClassCastException e) {
+                logger.warn("Rejected bandwidth limits: {}", e.getMessage());
+                message.fail(400, e.getMessage());
+            }
+        });
+
+        /* in-flight transfers are reported at /admin/transfers, totals are logged too */
+        vertx.setPeriodic(TRANSFER_STATISTICS_INTERVAL, id ->
+            logger.debug("Transfer statistics: {}", TransferRegistry.getInstance().statistics().getJsonObject("totals")));
 
         HttpServerOptions httpServerOptions =
             new HttpServerOptions()
-                // in vertx 2x 100-continues was activated per default, in vertx 3x it is off per default.
-                .setHandle100ContinueAutomatically(true);
+                // 100 Continue is sent by the handlers, so that uploads exceeding a quota are refused first.
+                .setHandle100ContinueAutomatically(false);
 
         boolean sslEnabled = configuration.isSSLEnabled();
         if (sslEnabled) {
@@ -51,7 +150,7 @@ public class WebServerVerticle extends AbstractVerticle {
 
         int httpPort = configuration.getHttpPort();
         vertx.createHttpServer(httpServerOptions)
-            .requestHandler(MainHandler.create(vertx, configuration, storage))
+            .requestHandler(MainHandler.create(vertx, configuration, storage, jobRegistry, uploadRegistry))
             .listen(httpPort, result -> {
                 if (result.succeeded()) {
                     logger.debug("Web server is now ready to accept requests on port {} {}.",
@@ -60,4 +159,20 @@ public class WebServerVerticle extends AbstractVerticle {
                 }
             });
     }
+
+    private void reconcileUsage(UsageAccounting usageAccounting) {
+        vertx.executeBlocking((Future<Integer> future) -> {
+            try {
+                future.complete(usageAccounting.reconcile(Runtime.getRuntime().availableProcessors()));
+            } catch (IOException ioe) {
+                future.fail(ioe);
+            }
+        }, false, reconcileAsyncResult -> {
+            if (reconcileAsyncResult.failed())
+                logger.warn("Could not reconcile usage: {}", reconcileAsyncResult.cause().toString());
+            else
+                logger.debug("Usage reconciled ({} users drifted): {}",
+                    reconcileAsyncResult.result(), usageAccounting.statistics());
+        });
+    }
 }
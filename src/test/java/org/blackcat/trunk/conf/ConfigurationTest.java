@@ -1,11 +1,13 @@
 package org.blackcat.trunk.conf;
 
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.blackcat.trunk.conf.exceptions.ConfigurationException;
 import org.junit.Test;
 
 import static org.blackcat.trunk.conf.Keys.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class ConfigurationTest {
@@ -145,6 +147,33 @@ public class ConfigurationTest {
         assertEquals( myFancyPort, configuration.getDatabasePort());
     }
 
+    @Test
+    public void emptyFileYieldsCorrectDatabaseCacheDefaults() {
+        Configuration configuration = new Configuration(minimalGoogleConfiguration());
+
+        assertEquals(Keys.DEFAULT_DATABASE_CACHE_SIZE, configuration.getDatabaseCacheSize());
+        assertEquals(Keys.DEFAULT_DATABASE_CACHE_TTL, configuration.getDatabaseCacheTTL());
+        assertEquals(Keys.DEFAULT_DATABASE_SHARE_INHERITANCE, configuration.isShareInheritanceEnabled());
+        assertEquals(Keys.DEFAULT_DATABASE_SHARE_REWRITE_BATCH_SIZE, configuration.getShareRewriteBatchSize());
+        assertEquals(Keys.DEFAULT_DATABASE_SHARE_REWRITE_CONCURRENCY, configuration.getShareRewriteConcurrency());
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void zeroShareRewriteConcurrencyIsRejected() {
+        JsonObject json = minimalGoogleConfiguration()
+                              .put(Keys.DATABASE_SECTION, new JsonObject()
+                                                              .put(Keys.DATABASE_SHARE_REWRITE_CONCURRENCY, 0));
+        new Configuration(json);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void negativeDatabaseCacheTTLIsRejected() {
+        JsonObject json = minimalGoogleConfiguration()
+                              .put(Keys.DATABASE_SECTION, new JsonObject()
+                                                              .put(Keys.DATABASE_CACHE_TTL, -1));
+        new Configuration(json);
+    }
+
     @Test(expected = ConfigurationException.class)
     public void oauth2GoogleWrongSecret() {
         String myFancyWrongSecret = "01234567-9ABC-DEF0-1234-56789ABCDEF";
@@ -162,6 +191,15 @@ public class ConfigurationTest {
         Configuration configuration = new Configuration(json);
 
         assertEquals(Keys.DEFAULT_STORAGE_ROOT, configuration.getStorageRoot());
+        assertEquals(Keys.DEFAULT_STORAGE_CACHE_SIZE, configuration.getStorageCacheSize());
+        assertEquals(Keys.DEFAULT_STORAGE_ARCHIVE_WORKERS, configuration.getStorageArchiveWorkers());
+        assertEquals(Keys.DEFAULT_STORAGE_ARCHIVE_CHUNK_SIZE, configuration.getStorageArchiveChunkSize());
+        assertEquals(Keys.DEFAULT_STORAGE_ARCHIVE_COMPRESSION_LEVEL, configuration.getStorageArchiveCompressionLevel());
+        assertEquals(Keys.DEFAULT_STORAGE_UPLOAD_EXPIRY, configuration.getStorageUploadExpiry());
+        assertEquals(Keys.DEFAULT_STORAGE_DEDUPLICATE, configuration.isStorageDeduplicationEnabled());
+        assertEquals(Keys.DEFAULT_STORAGE_USER_QUOTA, configuration.getStorageUserQuota());
+        assertEquals(Keys.DEFAULT_STORAGE_USAGE_RECONCILE_INTERVAL, configuration.getStorageUsageReconcileInterval());
+        assertEquals(Keys.DEFAULT_STORAGE_DELETE_RATE, configuration.getStorageDeleteRate());
     }
 
     @Test
@@ -174,6 +212,125 @@ public class ConfigurationTest {
         assertEquals(myFancyRoot, configuration.getStorageRoot());
     }
 
+    @Test
+    public void storageCacheSizeOverridesStorageDefaults() {
+        long myFancyCacheSize = 0;
+        JsonObject json = minimalGoogleConfiguration()
+            .put(Keys.STORAGE_SECTION, new JsonObject()
+                                           .put(Keys.STORAGE_CACHE_SIZE, myFancyCacheSize));
+        Configuration configuration = new Configuration(json);
+        assertEquals(myFancyCacheSize, configuration.getStorageCacheSize());
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void negativeStorageCacheSizeIsRejected() {
+        JsonObject json = minimalGoogleConfiguration()
+            .put(Keys.STORAGE_SECTION, new JsonObject()
+                                           .put(Keys.STORAGE_CACHE_SIZE, -1));
+        new Configuration(json);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void tinyArchiveChunkSizeIsRejected() {
+        JsonObject json = minimalGoogleConfiguration()
+            .put(Keys.STORAGE_SECTION, new JsonObject()
+                                           .put(Keys.STORAGE_ARCHIVE_CHUNK_SIZE, 100));
+        new Configuration(json);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void outOfRangeArchiveCompressionLevelIsRejected() {
+        JsonObject json = minimalGoogleConfiguration()
+            .put(Keys.STORAGE_SECTION, new JsonObject()
+                                           .put(Keys.STORAGE_ARCHIVE_COMPRESSION_LEVEL, 10));
+        new Configuration(json);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void negativeUserQuotaIsRejected() {
+        JsonObject json = minimalGoogleConfiguration()
+            .put(Keys.STORAGE_SECTION, new JsonObject()
+                                           .put(Keys.STORAGE_USER_QUOTA, -1));
+        new Configuration(json);
+    }
+
+    @Test
+    public void onlyListedUsersAreAdmins() {
+        JsonObject json = minimalGoogleConfiguration();
+        assertFalse(new Configuration(json).isAdmin("joe@example.com"));
+
+        json.put(Keys.SERVER_SECTION, new JsonObject()
+                                          .put(Keys.SERVER_ADMINS, new JsonArray().add("joe@example.com")));
+        Configuration configuration = new Configuration(json);
+        assertTrue(configuration.isAdmin("joe@example.com"));
+        assertFalse(configuration.isAdmin("jane@example.com"));
+        assertFalse(configuration.isAdmin(null));
+    }
+
+    @Test
+    public void bandwidthLimitsAreParsed() {
+        JsonObject json = minimalGoogleConfiguration()
+            .put(Keys.BANDWIDTH_SECTION, new JsonObject()
+                                             .put(Keys.BANDWIDTH_USER_LIMIT, 1048576)
+                                             .put(Keys.BANDWIDTH_ROUTE_LIMITS, new JsonObject()
+                                                                                   .put("GET /protected", 4194304))
+                                             .put(Keys.BANDWIDTH_USER_WEIGHTS, new JsonObject()
+                                                                                   .put("joe@example.com", 3)));
+        Configuration configuration = new Configuration(json);
+
+        assertEquals(Keys.DEFAULT_BANDWIDTH_GLOBAL_LIMIT, configuration.getBandwidthLimits().getGlobalLimit());
+        assertEquals(1048576, configuration.getBandwidthLimits().getUserLimit());
+        assertEquals(4194304, configuration.getBandwidthLimits().getRouteLimit("GET /protected"));
+        assertEquals(0, configuration.getBandwidthLimits().getRouteLimit("GET /shared"));
+        assertEquals(3, configuration.getBandwidthLimits().getUserWeight("joe@example.com"));
+        assertEquals(1, configuration.getBandwidthLimits().getUserWeight("jane@example.com"));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void negativeBandwidthLimitIsRejected() {
+        JsonObject json = minimalGoogleConfiguration()
+            .put(Keys.BANDWIDTH_SECTION, new JsonObject()
+                                             .put(Keys.BANDWIDTH_GLOBAL_LIMIT, -1));
+        new Configuration(json);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void nonPositiveUploadExpiryIsRejected() {
+        JsonObject json = minimalGoogleConfiguration()
+            .put(Keys.STORAGE_SECTION, new JsonObject()
+                                           .put(Keys.STORAGE_UPLOAD_EXPIRY, 0));
+        new Configuration(json);
+    }
+
+    @Test
+    public void minimalConfigurationYieldsCorrectUserInfoDefaults() {
+        Configuration configuration = new Configuration(minimalGoogleConfiguration());
+
+        assertEquals(Keys.DEFAULT_OAUTH2_USER_INFO_SOURCE, configuration.getOauth2UserInfoSource());
+        assertEquals(Keys.DEFAULT_OAUTH2_USER_INFO_CACHE_TTL, configuration.getOauth2UserInfoCacheTTL());
+    }
+
+    @Test
+    public void jwtUserInfoSourceIsAcceptedWithKeycloakPublicKey() {
+        JsonObject json = minimalKeycloakConfiguration();
+        json.getJsonObject(Keys.OAUTH2_SECTION)
+            .put(Keys.OAUTH2_USER_INFO_SOURCE, Keys.OAUTH2_USER_INFO_SOURCE_JWT)
+            .put(Keys.OAUTH2_KEYCLOAK_SECTION, new JsonObject()
+                                                   .put(Keys.OAUTH2_KEYCLOAK_AUTH_SERVER_PUBLIC_KEY, "MIIBIjANBgkq"));
+
+        Configuration configuration = new Configuration(json);
+        assertEquals(Keys.OAUTH2_USER_INFO_SOURCE_JWT, configuration.getOauth2UserInfoSource());
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void jwtUserInfoSourceRequiresPublicKey() {
+        JsonObject json = minimalGoogleConfiguration();
+        json.getJsonObject(Keys.OAUTH2_SECTION)
+            .put(Keys.OAUTH2_USER_INFO_SOURCE, Keys.OAUTH2_USER_INFO_SOURCE_JWT);
+
+        new Configuration(json);
+    }
+
     private JsonObject minimalKeycloakConfiguration() {
         String myFancyClientID =
             "myFancyClient";
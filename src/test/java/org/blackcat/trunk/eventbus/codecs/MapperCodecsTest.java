@@ -0,0 +1,90 @@
+package org.blackcat.trunk.eventbus.codecs;
+
+import io.vertx.core.buffer.Buffer;
+import org.blackcat.trunk.mappers.ShareMapper;
+import org.blackcat.trunk.mappers.UserMapper;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class MapperCodecsTest {
+
+    @Test
+    public void copiesArePassedLocally() {
+        UserMapper userMapper = user();
+        UserMapper received = new UserMapperCodec().transform(userMapper);
+        assertNotSame(userMapper, received);
+        assertEquals(userMapper, received);
+
+        ShareMapper shareMapper = share();
+        ShareMapper receivedShare = new ShareMapperCodec().transform(shareMapper);
+        assertNotSame(shareMapper, receivedShare);
+        assertNotSame(shareMapper.getOwner(), receivedShare.getOwner());
+        assertEquals(shareMapper, receivedShare);
+
+        /* what the sender does afterwards is not seen by the receiver */
+        shareMapper.setAuthorizedUsers(Arrays.asList("intruder@example.com"));
+        shareMapper.getOwner().setEmail("intruder@example.com");
+        assertFalse(receivedShare.getAuthorizedUsers().contains("intruder@example.com"));
+        assertEquals("someone@example.com", receivedShare.getOwner().getEmail());
+
+        assertNotSame(shareMapper, MapperCodecs.copyOf(shareMapper));
+        Object reply = new Object();
+        assertSame(reply, MapperCodecs.copyOf(reply));
+    }
+
+    @Test
+    public void usersSurviveWireRoundTrip() {
+        UserMapperCodec codec = new UserMapperCodec();
+        UserMapper userMapper = user();
+        userMapper.setId(null);
+
+        /* codecs must honour the position they are given */
+        Buffer buffer = Buffer.buffer().appendString("junk");
+        codec.encodeToWire(buffer, userMapper);
+        assertEquals(userMapper, codec.decodeFromWire(4, buffer));
+    }
+
+    @Test
+    public void usersSurviveJsonRoundTrip() {
+        UserMapper userMapper = user();
+        assertEquals(userMapper, UserMapperCodec.fromJson(UserMapperCodec.toJson(userMapper)));
+    }
+
+    @Test
+    public void sharesSurviveWireRoundTrip() {
+        ShareMapperCodec codec = new ShareMapperCodec();
+        ShareMapper shareMapper = share();
+
+        Buffer buffer = Buffer.buffer();
+        codec.encodeToWire(buffer, shareMapper);
+        assertEquals(shareMapper, codec.decodeFromWire(0, buffer));
+
+        /* blank shares have no owner */
+        ShareMapper blank = new ShareMapper();
+        blank.setCollectionPath("uuid");
+
+        buffer = Buffer.buffer();
+        codec.encodeToWire(buffer, blank);
+        assertEquals(blank, codec.decodeFromWire(0, buffer));
+    }
+
+    private static ShareMapper share() {
+        ShareMapper shareMapper = new ShareMapper();
+        shareMapper.setId("5a7c");
+        shareMapper.setCollectionPath("uuid/photos/\u00e9t\u00e9");
+        shareMapper.setOwner(user());
+        shareMapper.setAuthorizedUsers(Arrays.asList("*", "guest@example.com"));
+        return shareMapper;
+    }
+
+    private static UserMapper user() {
+        UserMapper userMapper = new UserMapper();
+        userMapper.setId("5a7b");
+        userMapper.setEmail("someone@example.com");
+        userMapper.setUuid("0f6c1d0e-8e37-4b7a-9a8e-0d4c5a9c9b1e");
+        return userMapper;
+    }
+}
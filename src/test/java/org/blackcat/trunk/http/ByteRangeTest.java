@@ -0,0 +1,55 @@
+package org.blackcat.trunk.http;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ByteRangeTest {
+
+    @Test
+    public void parsesClosedOpenAndSuffixRanges() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-99, 500-, -10", 1000);
+        assertEquals(Arrays.asList(
+            new ByteRange(0, 99),
+            new ByteRange(500, 999),
+            new ByteRange(990, 999)), ranges);
+    }
+
+    @Test
+    public void clampsRangesToRepresentationLength() {
+        assertEquals(Collections.singletonList(new ByteRange(10, 19)),
+            ByteRange.parse("bytes=10-1000", 20));
+
+        assertEquals(Collections.singletonList(new ByteRange(0, 19)),
+            ByteRange.parse("bytes=-1000", 20));
+    }
+
+    @Test
+    public void dropsUnsatisfiableRanges() {
+        assertEquals(Collections.singletonList(new ByteRange(0, 0)),
+            ByteRange.parse("bytes=0-0,20-30", 20));
+
+        assertTrue(ByteRange.parse("bytes=20-30", 20).isEmpty());
+        assertTrue(ByteRange.parse("bytes=0-", 0).isEmpty());
+    }
+
+    @Test
+    public void ignoresMalformedHeaders() {
+        assertNull(ByteRange.parse(null, 100));
+        assertNull(ByteRange.parse("items=0-1", 100));
+        assertNull(ByteRange.parse("bytes=5-1", 100));
+        assertNull(ByteRange.parse("bytes=abc", 100));
+        assertNull(ByteRange.parse("bytes=1-x", 100));
+    }
+
+    @Test
+    public void formatsContentRange() {
+        assertEquals("bytes 0-99/1000", new ByteRange(0, 99).contentRange(1000));
+        assertEquals("bytes */1000", ByteRange.unsatisfiedContentRange(1000));
+        assertEquals(100, new ByteRange(0, 99).getLength());
+    }
+}
@@ -0,0 +1,43 @@
+package org.blackcat.trunk.http;
+
+import org.blackcat.trunk.resource.ResourceVersion;
+import org.blackcat.trunk.util.Utils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PreconditionsTest {
+
+    private final long lastModifiedTime = 1518480000000L;
+    private final ResourceVersion version = new ResourceVersion("\"abc-3-1\"", lastModifiedTime + 250, false);
+
+    @Test
+    public void ifNoneMatchComparesWeakly() {
+        assertTrue(Preconditions.isNotModified("\"abc-3-1\"", null, version));
+        assertTrue(Preconditions.isNotModified("\"x\", W/\"abc-3-1\"", null, version));
+        assertTrue(Preconditions.isNotModified("*", null, version));
+        assertFalse(Preconditions.isNotModified("\"abc-3-2\"", null, version));
+    }
+
+    @Test
+    public void ifNoneMatchTakesPrecedenceOverIfModifiedSince() {
+        assertFalse(Preconditions.isNotModified("\"other\"", Utils.httpDate(lastModifiedTime), version));
+    }
+
+    @Test
+    public void ifModifiedSinceComparesSeconds() {
+        assertTrue(Preconditions.isNotModified(null, Utils.httpDate(lastModifiedTime), version));
+        assertFalse(Preconditions.isNotModified(null, Utils.httpDate(lastModifiedTime - 1000), version));
+        assertFalse(Preconditions.isNotModified(null, "garbage", version));
+        assertFalse(Preconditions.isNotModified(null, null, version));
+    }
+
+    @Test
+    public void ifRangeComparesEntityTagsStrongly() {
+        assertTrue(Preconditions.isRangeApplicable(null, version));
+        assertTrue(Preconditions.isRangeApplicable("\"abc-3-1\"", version));
+        assertFalse(Preconditions.isRangeApplicable("W/\"abc-3-1\"", version));
+        assertTrue(Preconditions.isRangeApplicable(Utils.httpDate(lastModifiedTime), version));
+        assertFalse(Preconditions.isRangeApplicable(Utils.httpDate(lastModifiedTime + 5000), version));
+    }
+}
@@ -0,0 +1,101 @@
+package org.blackcat.trunk.http.requests.handlers.impl;
+
+import io.vertx.core.json.JsonArray;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class PostArchiveRequestHandlerImplTest {
+
+    private final Path root = Paths.get("/var/trunk");
+
+    @Test
+    public void hrefsAreMappedToProtectedPaths() {
+        List<Path> paths = PostArchiveRequestHandlerImpl.protectedPaths(new JsonArray()
+                                                                            .add("/protected/uuid/a%20b.txt")
+                                                                            .add("https://trunk.example.com/protected/uuid/photos/")
+                                                                            .add("/protected/uuid/./notes/../c.txt"));
+
+        assertEquals(Arrays.asList(Paths.get("uuid/a b.txt"), Paths.get("uuid/photos"), Paths.get("uuid/c.txt")),
+            paths);
+    }
+
+    @Test
+    public void traversalOutOfTheProtectedTreeIsRejected() {
+        assertNull(protectedPaths("/protected/../etc/passwd"));
+        assertNull(protectedPaths("/protected/uuid/../../etc/passwd"));
+        assertNull(protectedPaths("/protected/uuid/%2e%2e/%2e%2e/etc/passwd"));
+        assertNull(protectedPaths("/protected/uuid/.."));
+
+        /* normalized, ownership is checked on the result */
+        assertEquals(Collections.singletonList(Paths.get("other/a.txt")),
+            protectedPaths("/protected/uuid/../other/a.txt"));
+    }
+
+    @Test
+    public void onlyPathsBelowTheProtectedPrefixAreAccepted() {
+        assertNull(protectedPaths("/protected"));
+        assertNull(protectedPaths("/protected/"));
+        assertNull(protectedPaths("/public/uuid/a.txt"));
+        assertNull(protectedPaths("protected/uuid/a.txt"));
+        assertNull(protectedPaths("mailto:someone@example.com"));
+        assertNull(protectedPaths("/protected/uuid/%zz"));
+    }
+
+    @Test
+    public void malformedSelectionsAreRejected() {
+        assertNull(PostArchiveRequestHandlerImpl.protectedPaths(null));
+        assertNull(PostArchiveRequestHandlerImpl.protectedPaths("/protected/uuid/a.txt"));
+        assertNull(PostArchiveRequestHandlerImpl.protectedPaths(new JsonArray()));
+        assertNull(PostArchiveRequestHandlerImpl.protectedPaths(new JsonArray().add("/protected/uuid/a.txt").add(1)));
+    }
+
+    @Test
+    public void selectionsAreLimitedInSize() {
+        JsonArray hrefs = new JsonArray();
+        for (int i = 0; i < PostArchiveRequestHandlerImpl.MAX_RESOURCES; ++ i)
+            hrefs.add("/protected/uuid/" + i + ".txt");
+        assertEquals(PostArchiveRequestHandlerImpl.MAX_RESOURCES,
+            PostArchiveRequestHandlerImpl.protectedPaths(hrefs).size());
+
+        hrefs.add("/protected/uuid/one-too-many.txt");
+        assertNull(PostArchiveRequestHandlerImpl.protectedPaths(hrefs));
+    }
+
+    @Test
+    public void commonParentIsTheClosestCollectionHoldingEverything() {
+        assertEquals(root.resolve("uuid/photos"), commonParent("uuid/photos/a.jpg", "uuid/photos/2018/b.jpg"));
+        assertEquals(root.resolve("uuid"), commonParent("uuid/photos/a.jpg", "uuid/notes/c.txt"));
+        assertEquals(root.resolve("uuid/photos"), commonParent("uuid/photos/a.jpg"));
+    }
+
+    @Test
+    public void commonParentOfOverlappingSelections() {
+        assertEquals(root.resolve("uuid"), commonParent("uuid/photos", "uuid/photos/a.jpg"));
+        assertEquals(root.resolve("uuid"), commonParent("uuid/photos/a.jpg", "uuid/photos"));
+        assertEquals(root.resolve("uuid"), commonParent("uuid/photos", "uuid/photos"));
+    }
+
+    @Test
+    public void commonParentOfTheWholeTrunkIsTheStorageRoot() {
+        assertEquals(root, commonParent("uuid"));
+        assertEquals(root, commonParent("uuid", "uuid/photos/a.jpg"));
+    }
+
+    private static List<Path> protectedPaths(String href) {
+        return PostArchiveRequestHandlerImpl.protectedPaths(new JsonArray().add(href));
+    }
+
+    private Path commonParent(String... paths) {
+        return PostArchiveRequestHandlerImpl.commonParent(Arrays.stream(paths)
+                                                              .map(root::resolve)
+                                                              .collect(Collectors.toList()));
+    }
+}
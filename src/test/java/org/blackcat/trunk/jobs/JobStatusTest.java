@@ -0,0 +1,55 @@
+package org.blackcat.trunk.jobs;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JobStatusTest {
+
+    @Test
+    public void survivesJsonRoundTrip() {
+        JobStatus status = new JobStatus("test", "user@example.com", new JsonObject().put("key", "value"));
+        status.setTotal(10);
+        status.advance(4, "a/b");
+
+        JobStatus loaded = JobStatus.fromJson(status.toJson());
+        assertEquals(status.getId(), loaded.getId());
+        assertEquals("test", loaded.getType());
+        assertEquals("user@example.com", loaded.getOwner());
+        assertEquals("value", loaded.getParams().getString("key"));
+        assertEquals(JobStatus.State.RUNNING, loaded.getState());
+        assertEquals(4, loaded.getProcessed());
+        assertEquals(10, loaded.getTotal());
+        assertEquals("a/b", loaded.getCheckpoint());
+    }
+
+    @Test
+    public void failureIsFinal() {
+        JobStatus status = new JobStatus("test", "user@example.com", new JsonObject());
+        status.fail("boom");
+
+        JobStatus loaded = JobStatus.fromJson(status.toJson());
+        assertTrue(loaded.isFinished());
+        assertEquals(JobStatus.State.FAILED, loaded.getState());
+        assertEquals("boom", loaded.getError());
+    }
+
+    @Test
+    public void etaRequiresTotalAndProgress() {
+        JobStatus status = new JobStatus("test", "user@example.com", new JsonObject());
+        long now = System.currentTimeMillis() + 10000;
+        assertNull(status.getEta(now));
+
+        status.setTotal(100);
+        assertNull(status.getEta(now));
+
+        /* 10 items in (about) 10 seconds, 90 to go */
+        status.advance(10, "x");
+        long eta = status.getEta(now);
+        assertTrue(eta >= 85 && eta <= 90);
+
+        status.complete();
+        assertNull(status.getEta(now));
+    }
+}
@@ -0,0 +1,124 @@
+package org.blackcat.trunk.jobs.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import org.blackcat.trunk.jobs.JobRegistry;
+import org.blackcat.trunk.jobs.JobStatus;
+import org.blackcat.trunk.jobs.TreeDeleteJob;
+import org.blackcat.trunk.storage.impl.FileSystemStorage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class TreeDeleteJobImplTest {
+
+    private Vertx vertx;
+    private Path root;
+    private FileSystemStorage storage;
+    private JobRegistry jobRegistry;
+
+    @Before
+    public void setUp() throws IOException {
+        vertx = Vertx.vertx();
+        root = Files.createTempDirectory("trunk-delete");
+        storage = FileSystemStorage.create(vertx, root);
+        jobRegistry = JobRegistry.create(vertx, root.resolve(".jobs"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        vertx.close();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(java.io.File::delete);
+        }
+    }
+
+    @Test
+    public void collectionsDisappearAtOnceAndAreRemovedInBackground() throws Exception {
+        Path collection = Files.createDirectories(root.resolve("alice").resolve("photos"));
+        for (int i = 0; i < 5; ++ i) {
+            Path nested = Files.createDirectory(collection.resolve("album" + i));
+            for (int j = 0; j < 4; ++ j)
+                Files.write(nested.resolve("picture" + j), new byte[j]);
+        }
+        storage.getUsageAccounting().reconcile(1);
+        assertEquals(20, storage.getUsageAccounting().getDocuments("alice"));
+
+        Path tombstone = await(handler -> storage.deleteTree(collection, handler));
+        assertFalse(Files.exists(collection));
+        assertTrue(Files.isDirectory(tombstone));
+        assertEquals(0, storage.getUsageAccounting().getDocuments("alice"));
+
+        JobStatus status = TreeDeleteJob.newStatus("alice@example.com", root.relativize(collection), tombstone, 20);
+        vertx.runOnContext(v -> TreeDeleteJob.create(vertx, jobRegistry, status, 100000).start());
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (! status.isFinished() && System.currentTimeMillis() < deadline)
+            Thread.sleep(20);
+
+        assertEquals(JobStatus.State.COMPLETED, status.getState());
+        assertEquals(20, status.getProcessed());
+        assertFalse(Files.exists(tombstone));
+        assertTrue(Files.isDirectory(root.resolve("alice")));
+    }
+
+    @Test
+    public void concurrentJobsAllComplete() throws Exception {
+        JobStatus[] statuses = new JobStatus[3];
+        for (int i = 0; i < statuses.length; ++ i) {
+            Path collection = Files.createDirectories(root.resolve("alice").resolve("c" + i).resolve("nested"));
+            for (int j = 0; j < 5; ++ j)
+                Files.write(collection.resolve("picture" + j), new byte[j]);
+
+            Path tombstone = await(handler -> storage.deleteTree(collection.getParent(), handler));
+            statuses[i] = TreeDeleteJob.newStatus(null, tombstone, tombstone, -1);
+        }
+        for (JobStatus status : statuses)
+            vertx.runOnContext(v -> TreeDeleteJob.create(vertx, jobRegistry, status, 100000).start());
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        for (JobStatus status : statuses) {
+            while (! status.isFinished() && System.currentTimeMillis() < deadline)
+                Thread.sleep(20);
+
+            assertEquals(JobStatus.State.COMPLETED, status.getState());
+            assertEquals(5, status.getProcessed());
+            assertFalse(Files.exists(Paths.get(status.getParams().getString("tombstone"))));
+        }
+    }
+
+    @Test
+    public void documentsAreDeletedRightAway() throws Exception {
+        Path document = Files.write(Files.createDirectories(root.resolve("alice")).resolve("notes.txt"), new byte[3]);
+
+        Path tombstone = await(handler -> storage.deleteTree(document, handler));
+        assertNull(tombstone);
+        assertFalse(Files.exists(document));
+    }
+
+    private <T> T await(Consumer<Handler<AsyncResult<T>>> operation) throws Exception {
+        CompletableFuture<T> completion = new CompletableFuture<>();
+        vertx.runOnContext(v -> operation.accept(asyncResult -> {
+            if (asyncResult.succeeded())
+                completion.complete(asyncResult.result());
+            else
+                completion.completeExceptionally(asyncResult.cause());
+        }));
+        return completion.get(10, TimeUnit.SECONDS);
+    }
+}
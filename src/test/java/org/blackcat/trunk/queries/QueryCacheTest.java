@@ -0,0 +1,68 @@
+package org.blackcat.trunk.queries;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class QueryCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+
+    @Test
+    public void cachedRepliesExpire() {
+        QueryCache cache = new QueryCache(10, 100, now::get);
+        JsonObject reply = new JsonObject().put("email", "someone@example.com");
+
+        cache.put("user:someone@example.com", reply, cache.generation());
+        assertSame(reply, cache.get("user:someone@example.com"));
+
+        now.addAndGet(100);
+        assertNull(cache.get("user:someone@example.com"));
+        assertEquals(1L, cache.statistics().getLong("expirations").longValue());
+    }
+
+    @Test
+    public void invalidationDropsEntryAndInFlightReplies() {
+        QueryCache cache = new QueryCache(10, 100, now::get);
+
+        cache.put("share:a", new JsonObject(), cache.generation());
+        long generation = cache.generation();
+
+        cache.invalidate("share:a");
+        assertNull(cache.get("share:a"));
+
+        /* a reply to a query sent before the invalidation may be stale */
+        cache.put("share:a", new JsonObject(), generation);
+        assertNull(cache.get("share:a"));
+    }
+
+    @Test
+    public void invalidationDropsDescendantKeys() {
+        QueryCache cache = new QueryCache(10, 100, now::get);
+
+        cache.put("share:uuid/a/b", new JsonObject(), cache.generation());
+        cache.put("share:uuid/ab", new JsonObject(), cache.generation());
+
+        cache.invalidate("share:uuid/a");
+        assertNull(cache.get("share:uuid/a/b"));
+        assertNotNull(cache.get("share:uuid/ab"));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() {
+        QueryCache cache = new QueryCache(2, 100, now::get);
+
+        cache.put("a", new JsonObject(), cache.generation());
+        cache.put("b", new JsonObject(), cache.generation());
+        assertNotNull(cache.get("a"));
+        cache.put("c", new JsonObject(), cache.generation());
+
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(1L, cache.statistics().getLong("evictions").longValue());
+    }
+}
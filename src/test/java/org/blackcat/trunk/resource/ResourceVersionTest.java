@@ -0,0 +1,35 @@
+package org.blackcat.trunk.resource;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ResourceVersionTest {
+
+    private final long lastModifiedTime = 1518480000000L;
+    private final ResourceVersion version = new ResourceVersion("\"abc\"", lastModifiedTime, true);
+
+    @Test
+    public void treeSizesChangeTheVersion() {
+        Map<String, TreeSize> treeSizes = new HashMap<>();
+        assertSame(version, version.withTreeSizes(treeSizes));
+
+        treeSizes.put("a", new TreeSize(10, 1, lastModifiedTime - 1000));
+        treeSizes.put("b", new TreeSize(20, 2, lastModifiedTime - 1000));
+        ResourceVersion withTreeSizes = version.withTreeSizes(treeSizes);
+        assertNotEquals(version.getEntityTag(), withTreeSizes.getEntityTag());
+        assertTrue(withTreeSizes.getEntityTag().startsWith("\"") && withTreeSizes.getEntityTag().endsWith("\""));
+        assertEquals(lastModifiedTime, withTreeSizes.getLastModifiedTime());
+        assertTrue(withTreeSizes.isCollection());
+        assertEquals(withTreeSizes.getEntityTag(), version.withTreeSizes(new HashMap<>(treeSizes)).getEntityTag());
+
+        /* a document written deep below b, with nothing changing in the listing itself */
+        treeSizes.put("b", new TreeSize(25, 3, lastModifiedTime + 5000));
+        ResourceVersion changed = version.withTreeSizes(treeSizes);
+        assertNotEquals(withTreeSizes.getEntityTag(), changed.getEntityTag());
+        assertEquals(lastModifiedTime + 5000, changed.getLastModifiedTime());
+    }
+}
@@ -0,0 +1,199 @@
+package org.blackcat.trunk.storage;
+
+import org.blackcat.trunk.resource.TreeSize;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class UsageAccountingTest {
+
+    private Path root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("trunk-usage");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(java.io.File::delete);
+        }
+    }
+
+    @Test
+    public void scanSumsEachUserSkippingHiddenEntries() throws IOException {
+        Path alice = Files.createDirectories(root.resolve("alice").resolve("nested"));
+        Files.write(root.resolve("alice").resolve("a.txt"), new byte[10]);
+        Files.write(alice.resolve("b.txt"), new byte[5]);
+        Files.write(alice.resolve(".b.txt.tmp"), new byte[100]);
+        Files.write(Files.createDirectories(root.resolve("bob")).resolve("c.txt"), new byte[7]);
+        Files.write(Files.createDirectories(root.resolve(".uploads")).resolve("d"), new byte[1000]);
+
+        UsageAccounting usageAccounting = new UsageAccounting(root, 0);
+        assertFalse(usageAccounting.isSeeded());
+        assertEquals(0, usageAccounting.reconcile(2));
+        assertTrue(usageAccounting.isSeeded());
+
+        assertEquals(15, usageAccounting.getBytes("alice"));
+        assertEquals(2, usageAccounting.getDocuments("alice"));
+        assertEquals(7, usageAccounting.getBytes("bob"));
+        assertEquals(0, usageAccounting.getBytes(".uploads"));
+        assertEquals(22L, (long) usageAccounting.statistics().getLong("bytes"));
+    }
+
+    @Test
+    public void changesAreAccountedIncrementallyAndDriftIsReconciled() throws IOException {
+        Files.createDirectories(root.resolve("alice"));
+        UsageAccounting usageAccounting = new UsageAccounting(root, 0);
+        usageAccounting.reconcile(1);
+
+        Path document = root.resolve("alice").resolve("a.txt");
+        Files.write(document, new byte[10]);
+        usageAccounting.add(document, 10, 1);
+        usageAccounting.add(root.resolve("alice").resolve(".a.txt.tmp"), 100, 1);
+        assertEquals(10, usageAccounting.getBytes("alice"));
+        assertEquals(1, usageAccounting.getDocuments("alice"));
+        assertEquals(0, usageAccounting.reconcile(1));
+
+        /* changed behind the storage's back */
+        Files.write(document, new byte[20]);
+        assertEquals(1, usageAccounting.reconcile(1));
+        assertEquals(20, usageAccounting.getBytes("alice"));
+    }
+
+    @Test
+    public void changesPropagateToEveryAncestor() throws IOException {
+        Path nested = Files.createDirectories(root.resolve("alice").resolve("a").resolve("b"));
+        Files.write(root.resolve("alice").resolve("a").resolve("x.txt"), new byte[3]);
+        UsageAccounting usageAccounting = new UsageAccounting(root, 0);
+        assertNull(usageAccounting.treeSize(nested));
+        usageAccounting.reconcile(2);
+
+        TreeSize before = usageAccounting.treeSize(root.resolve("alice").resolve("a"));
+        assertEquals(3, before.getBytes());
+        assertEquals(1, before.getDocuments());
+        assertEquals(0, usageAccounting.treeSize(nested).getBytes());
+
+        usageAccounting.add(nested.resolve("y.txt"), 10, 1);
+        assertEquals(10, usageAccounting.treeSize(nested).getBytes());
+        assertEquals(13, usageAccounting.treeSize(root.resolve("alice").resolve("a")).getBytes());
+        assertEquals(2, usageAccounting.treeSize(root.resolve("alice")).getDocuments());
+        assertEquals(13, usageAccounting.treeSize(root).getBytes());
+        assertTrue(usageAccounting.treeSize(nested).getLastModifiedTime() >= before.getLastModifiedTime());
+
+        usageAccounting.remove(nested);
+        assertEquals(3, usageAccounting.getBytes("alice"));
+        assertEquals(1, usageAccounting.getDocuments("alice"));
+        assertEquals(0, usageAccounting.treeSize(nested).getDocuments());
+    }
+
+    @Test
+    public void measureWalksAnyCollection() throws IOException {
+        Path nested = Files.createDirectories(root.resolve("alice").resolve("a"));
+        Files.write(nested.resolve("x.txt"), new byte[3]);
+        Files.write(root.resolve("alice").resolve("y.txt"), new byte[4]);
+
+        TreeSize treeSize = new UsageAccounting(root, 0).measure(root.resolve("alice"));
+        assertEquals(7, treeSize.getBytes());
+        assertEquals(2, treeSize.getDocuments());
+    }
+
+    @Test
+    public void quotaIsEnforcedOnceSeeded() throws IOException {
+        Path document = Files.createDirectories(root.resolve("alice")).resolve("a.txt");
+        Files.write(document, new byte[60]);
+
+        UsageAccounting usageAccounting = new UsageAccounting(root, 100);
+        assertTrue(usageAccounting.allows(document, 1000));
+
+        usageAccounting.reconcile(1);
+        assertTrue(usageAccounting.allows(document, 40));
+        assertFalse(usageAccounting.allows(document, 41));
+        assertTrue(usageAccounting.allows(root.resolve("bob").resolve("b.txt"), 100));
+        assertTrue(usageAccounting.allows(document, -60));
+
+        assertTrue(new UsageAccounting(root, 0).allows(document, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void reservationsCountAgainstTheQuotaUntilReleased() throws IOException {
+        Path document = Files.createDirectories(root.resolve("alice")).resolve("a.txt");
+        Files.write(document, new byte[60]);
+        UsageAccounting usageAccounting = new UsageAccounting(root, 100);
+        usageAccounting.reconcile(1);
+
+        UsageAccounting.Reservation reservation = usageAccounting.reserve(document, 30);
+        assertNotNull(reservation);
+        assertNull(usageAccounting.reserve(root.resolve("alice").resolve("b.txt"), 11));
+        assertFalse(usageAccounting.allows(document, 11));
+        assertNotNull(usageAccounting.reserve(root.resolve("bob").resolve("b.txt"), 100));
+
+        reservation.release();
+        reservation.release();
+        assertNotNull(usageAccounting.reserve(root.resolve("alice").resolve("b.txt"), 40));
+    }
+
+    @Test
+    public void heldReservationsAreExchanged() throws IOException {
+        Path document = Files.createDirectories(root.resolve("alice")).resolve("a.txt");
+        Files.write(document, new byte[60]);
+        UsageAccounting usageAccounting = new UsageAccounting(root, 100);
+        usageAccounting.reconcile(1);
+
+        /* the bytes held count as available */
+        UsageAccounting.Reservation held = usageAccounting.reserve(document, 40);
+        assertNotNull(held);
+        assertNull(usageAccounting.reserve(document, 41, held));
+        UsageAccounting.Reservation reservation = usageAccounting.reserve(document, 30, held);
+        assertNotNull(reservation);
+        assertTrue(usageAccounting.allows(document, 10));
+
+        /* given back already */
+        held.release();
+        assertFalse(usageAccounting.allows(document, 11));
+        reservation.release();
+        assertTrue(usageAccounting.allows(document, 40));
+    }
+
+    @Test
+    public void writesDuringAScanAreCountedOnce() throws Exception {
+        for (int i = 0; i < 200; ++ i)
+            Files.write(Files.createDirectories(root.resolve("alice").resolve("d" + i)).resolve("a.txt"), new byte[1]);
+        Files.write(Files.createDirectories(root.resolve("bob")).resolve("b.txt"), new byte[2]);
+        UsageAccounting usageAccounting = new UsageAccounting(root, 0);
+        usageAccounting.reconcile(1);
+
+        Path collection = Files.createDirectories(root.resolve("alice").resolve("new"));
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 200; ++ i) {
+                    Path document = Files.write(collection.resolve(i + ".txt"), new byte[3]);
+                    usageAccounting.add(document, 3, 1);
+                }
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        });
+        writer.start();
+        assertEquals(0, usageAccounting.reconcile(1));
+        writer.join();
+
+        assertEquals(800, usageAccounting.getBytes("alice"));
+        assertEquals(400, usageAccounting.getDocuments("alice"));
+        assertEquals(600, usageAccounting.treeSize(collection).getBytes());
+        assertEquals(802, usageAccounting.treeSize(root).getBytes());
+        assertEquals(0, usageAccounting.reconcile(1));
+    }
+}
@@ -0,0 +1,173 @@
+package org.blackcat.trunk.storage.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.blackcat.trunk.streams.digest.DigestCalculator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ContentAddressedStorageTest {
+
+    private Vertx vertx;
+    private Path root;
+    private ContentAddressedStorage storage;
+
+    @Before
+    public void setUp() throws IOException {
+        vertx = Vertx.vertx();
+        root = Files.createTempDirectory("trunk-blobs");
+        storage = ContentAddressedStorage.create(vertx, root, 0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        vertx.close();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(java.io.File::delete);
+        }
+    }
+
+    @Test
+    public void identicalContentsAreStoredOnce() throws Exception {
+        byte[] content = randomContent();
+        Path first = put("first.bin", content);
+        Path second = put("second.bin", content);
+
+        assertArrayEquals(content, Files.readAllBytes(second));
+        assertEquals(fileKey(first), fileKey(second));
+        assertEquals(3, Files.getAttribute(first, "unix:nlink"));
+
+        JsonObject statistics = await(storage::collectGarbage);
+        assertEquals(1L, statistics.getLong("blobs").longValue());
+        assertEquals((long) content.length, statistics.getLong("savedBytes").longValue());
+    }
+
+    @Test
+    public void knownContentsArePutByDigest() throws Exception {
+        byte[] content = randomContent();
+        put("first.bin", content);
+
+        byte[] digest = DigestCalculator.digest(root.resolve("alice/first.bin")).getSha256();
+        Path copy = root.resolve("alice/copy.bin");
+        assertFalse(await((Handler<AsyncResult<Boolean>> handler) ->
+            storage.putDocumentByDigest(copy, digest, content.length + 1, handler)));
+        assertTrue(await((Handler<AsyncResult<Boolean>> handler) ->
+            storage.putDocumentByDigest(copy, digest, content.length, handler)));
+        assertArrayEquals(content, Files.readAllBytes(copy));
+
+        digest[0] ^= 1;
+        assertFalse(await((Handler<AsyncResult<Boolean>> handler) ->
+            storage.putDocumentByDigest(root.resolve("alice/other.bin"), digest, content.length, handler)));
+        assertFalse(Files.exists(root.resolve("alice/other.bin")));
+    }
+
+    @Test
+    public void contentsOfOtherUsersAreNotPutByDigest() throws Exception {
+        byte[] content = randomContent();
+        Path first = put("first.bin", content);
+        byte[] digest = DigestCalculator.digest(first).getSha256();
+
+        Path copy = Files.createDirectories(root.resolve("bob")).resolve("copy.bin");
+        assertFalse(await((Handler<AsyncResult<Boolean>> handler) ->
+            storage.putDocumentByDigest(copy, digest, content.length, handler)));
+        assertFalse(Files.exists(copy));
+    }
+
+    @Test
+    public void blobsAreNeverTouched() throws Exception {
+        byte[] content = randomContent();
+        Path first = put("first.bin", content);
+        FileTime lastModifiedTime = FileTime.fromMillis(1518480000000L);
+        Files.setLastModifiedTime(first, lastModifiedTime);
+
+        Path second = put("second.bin", content);
+        byte[] digest = DigestCalculator.digest(first).getSha256();
+        assertTrue(await((Handler<AsyncResult<Boolean>> handler) ->
+            storage.putDocumentByDigest(root.resolve("alice/third.bin"), digest, content.length, handler)));
+
+        assertEquals(fileKey(first), fileKey(second));
+        assertEquals(lastModifiedTime, Files.getLastModifiedTime(first));
+    }
+
+    @Test
+    public void unreferencedBlobsAreCollected() throws Exception {
+        byte[] content = randomContent();
+        Path first = put("first.bin", content);
+        Path second = put("second.bin", content);
+
+        Files.delete(first);
+        assertEquals(0L, collectGarbage(0).getLong("collected").longValue());
+
+        Files.delete(second);
+        JsonObject statistics = collectGarbage(0);
+        assertEquals(1L, statistics.getLong("collected").longValue());
+        assertEquals(0L, statistics.getLong("blobs").longValue());
+
+        /* markers go along with their blob */
+        try (Stream<Path> paths = Files.walk(root.resolve(".blobs"))) {
+            assertFalse(paths.anyMatch(Files::isRegularFile));
+        }
+    }
+
+    @Test
+    public void unreferencedBlobsAreKeptForTheGraceTime() throws Exception {
+        Files.delete(put("first.bin", randomContent()));
+
+        JsonObject statistics = await(storage::collectGarbage);
+        assertEquals(0L, statistics.getLong("collected").longValue());
+        assertEquals(1L, statistics.getLong("unreferenced").longValue());
+    }
+
+    private JsonObject collectGarbage(long graceTime) throws Exception {
+        return await((Handler<AsyncResult<JsonObject>> handler) -> storage.collectGarbage(graceTime, handler));
+    }
+
+    private Path put(String name, byte[] content) throws Exception {
+        Path trunk = Files.createDirectories(root.resolve("alice"));
+        Path document = trunk.resolve(name);
+        Path tempPath = Files.write(trunk.resolve("." + name + ".tmp"), content);
+        await((Handler<AsyncResult<Void>> handler) -> storage.commitDocumentUpload(tempPath, document, null, handler));
+        assertFalse(Files.exists(tempPath));
+        return document;
+    }
+
+    private static byte[] randomContent() {
+        byte[] content = new byte[100000];
+        new Random(42).nextBytes(content);
+        return content;
+    }
+
+    private static Object fileKey(Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    private static <T> T await(Consumer<Handler<AsyncResult<T>>> operation) throws Exception {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        operation.accept(done -> {
+            if (done.failed())
+                future.completeExceptionally(done.cause());
+            else
+                future.complete(done.result());
+        });
+        return future.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,92 @@
+package org.blackcat.trunk.storage.impl;
+
+import org.blackcat.trunk.resource.Resource;
+import org.blackcat.trunk.resource.ResourceVersion;
+import org.blackcat.trunk.resource.impl.CollectionResource;
+import org.blackcat.trunk.resource.impl.DocumentDescriptorResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class DirectoryScannerTest {
+
+    private Path root;
+    private DirectoryScanner scanner;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("trunk-scanner");
+        scanner = new DirectoryScanner(path -> "text/plain");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(java.io.File::delete);
+        }
+    }
+
+    @Test
+    public void listsDocumentsAndCollectionsSkippingHiddenEntries() throws IOException {
+        Files.write(root.resolve("a.txt"), new byte[] { 1, 2, 3 });
+        Files.write(root.resolve(".hidden"), new byte[] { 1 });
+        Path nested = Files.createDirectory(root.resolve("nested"));
+        Files.write(nested.resolve("x"), new byte[0]);
+        Files.write(nested.resolve("y"), new byte[0]);
+        Files.write(nested.resolve(".z"), new byte[0]);
+
+        CollectionResource collection = scanner.scan(root);
+        assertEquals(2, collection.getItems().size());
+
+        Iterator<Resource> iterator = collection.getItems().iterator();
+        CollectionResource first = (CollectionResource) iterator.next();
+        assertEquals("nested", first.getName());
+        assertEquals(2, first.getSize());
+
+        DocumentDescriptorResource second = (DocumentDescriptorResource) iterator.next();
+        assertEquals("a.txt", second.getName());
+        assertEquals(3, second.getLength());
+        assertEquals("text/plain", second.getMimeType());
+    }
+
+    @Test
+    public void childCountIsRefreshedWhenCollectionChanges() throws IOException {
+        Path nested = Files.createDirectory(root.resolve("nested"));
+        Files.write(nested.resolve("x"), new byte[0]);
+        assertEquals(1, ((CollectionResource) scanner.scan(root).getItems().iterator().next()).getSize());
+
+        Files.write(nested.resolve("y"), new byte[0]);
+        /* make sure the change is visible even on filesystems with coarse timestamps */
+        Files.setLastModifiedTime(nested, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+        assertEquals(2, ((CollectionResource) scanner.scan(root).getItems().iterator().next()).getSize());
+    }
+
+    @Test
+    public void versionMatchesListingAndTracksChanges() throws IOException {
+        Path document = root.resolve("a.txt");
+        Files.write(document, new byte[] { 1, 2, 3 });
+        Files.createDirectory(root.resolve("nested"));
+
+        ResourceVersion version = scanner.version(root);
+        assertTrue(version.isCollection());
+        assertEquals(version.getEntityTag(), scanner.scan(root).getVersion().getEntityTag());
+
+        Files.write(root.resolve(".hidden"), new byte[] { 1 });
+        assertEquals(version.getEntityTag(), scanner.version(root).getEntityTag());
+
+        Files.write(document, new byte[] { 1, 2, 3, 4 });
+        assertNotEquals(version.getEntityTag(), scanner.version(root).getEntityTag());
+    }
+}
@@ -0,0 +1,222 @@
+package org.blackcat.trunk.storage.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import org.blackcat.trunk.resource.exceptions.ConflictException;
+import org.blackcat.trunk.resource.exceptions.DigestMismatchException;
+import org.blackcat.trunk.resource.exceptions.QuotaExceededException;
+import org.blackcat.trunk.resource.impl.DocumentContentResource;
+import org.blackcat.trunk.storage.UsageAccounting;
+import org.blackcat.trunk.streams.digest.DigestCalculator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class FileSystemStorageUploadTest {
+
+    private Vertx vertx;
+    private Path root;
+    private FileSystemStorage storage;
+
+    @Before
+    public void setUp() throws IOException {
+        vertx = Vertx.vertx();
+        root = Files.createTempDirectory("trunk-storage");
+        storage = FileSystemStorage.create(vertx, root);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        vertx.close();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(java.io.File::delete);
+        }
+    }
+
+    @Test
+    public void chunksAreAppendedAtTheirOffsetsAndCommitted() throws Exception {
+        byte[] content = new byte[100000];
+        new Random(42).nextBytes(content);
+        Path document = root.resolve("document.bin");
+
+        Path tempPath = await(handler -> storage.putDocumentUpload(document, handler));
+        assertEquals(root, tempPath.getParent());
+        assertTrue(tempPath.getFileName().toString().startsWith("."));
+
+        long offset = await(handler -> append(tempPath, 0, Arrays.copyOfRange(content, 0, 30000), handler));
+        assertEquals(30000, offset);
+
+        offset = await(handler -> append(tempPath, 30000, Arrays.copyOfRange(content, 30000, content.length), handler));
+        assertEquals(content.length, offset);
+
+        await((Handler<AsyncResult<Void>> handler) -> storage.commitDocumentUpload(tempPath, document, null, handler));
+        assertArrayEquals(content, Files.readAllBytes(document));
+        assertFalse(Files.exists(tempPath));
+    }
+
+    @Test
+    public void chunksAreWrittenOutOfOrderIntoAllocatedFile() throws Exception {
+        byte[] content = new byte[100000];
+        new Random(7).nextBytes(content);
+        Path document = root.resolve("document.bin");
+        int chunkSize = 32768;
+
+        Path tempPath = await(handler -> storage.putDocumentUpload(document, handler));
+        await((Handler<AsyncResult<Void>> handler) -> storage.allocateDocumentUpload(tempPath, content.length, handler));
+        assertEquals(content.length, Files.size(tempPath));
+
+        for (int index : new int[] { 3, 1, 0, 2 }) {
+            int position = index * chunkSize;
+            byte[] chunk = Arrays.copyOfRange(content, position, Math.min(content.length, position + chunkSize));
+            long written = await(handler -> write(tempPath, position, chunk, handler));
+            assertEquals(chunk.length, written);
+        }
+
+        await((Handler<AsyncResult<Void>> handler) -> storage.commitDocumentUpload(tempPath, document, null, handler));
+        assertArrayEquals(content, Files.readAllBytes(document));
+        assertEquals(DigestCalculator.digest(document), DigestAttributes.read(document));
+    }
+
+    @Test
+    public void transfersNotMatchingTheirDigestAreDiscarded() throws Exception {
+        Path document = Files.write(root.resolve("document.txt"), "previous".getBytes(StandardCharsets.US_ASCII));
+        byte[] content = "next".getBytes(StandardCharsets.US_ASCII);
+
+        CompletableFuture<Throwable> completion = new CompletableFuture<>();
+        vertx.runOnContext(v -> storage.putDocumentResource(document, null, resourceAsyncResult -> {
+            if (resourceAsyncResult.failed())
+                completion.complete(resourceAsyncResult.cause());
+            else if (resourceAsyncResult.result() == null)
+                completion.complete(null);
+            else {
+                DocumentContentResource resource = (DocumentContentResource) resourceAsyncResult.result();
+                resource.getDigestCalculator().expect(null, "AAAAAAAAAAAAAAAAAAAAAA==");
+                resource.getDigestCalculator().update(Buffer.buffer(content));
+                resource.getWriteStream().write(Buffer.buffer(content));
+                resource.getCloseHandler().handle(null);
+            }
+        }));
+
+        assertTrue(completion.get(10, TimeUnit.SECONDS) instanceof DigestMismatchException);
+        assertArrayEquals("previous".getBytes(StandardCharsets.US_ASCII), Files.readAllBytes(document));
+        try (Stream<Path> entries = Files.list(root)) {
+            assertEquals(1, entries.count());
+        }
+    }
+
+    @Test
+    public void uploadsExceedingTheUserQuotaAreNotCommitted() throws Exception {
+        Path collection = Files.createDirectory(root.resolve("alice"));
+        Path document = Files.write(collection.resolve("document.bin"), new byte[60]);
+        FileSystemStorage quotaStorage = FileSystemStorage.create(vertx, root, 0, 100);
+        quotaStorage.getUsageAccounting().reconcile(1);
+
+        Path tempPath = await(handler -> quotaStorage.putDocumentUpload(document, handler));
+        await((Handler<AsyncResult<Long>> handler) -> append(tempPath, 0, new byte[100], handler));
+        await((Handler<AsyncResult<Void>> handler) -> quotaStorage.commitDocumentUpload(tempPath, document, null, handler));
+        assertEquals(100, quotaStorage.getUsageAccounting().getBytes("alice"));
+
+        Path other = collection.resolve("other.bin");
+        Path otherTempPath = await(handler -> quotaStorage.putDocumentUpload(other, handler));
+        await((Handler<AsyncResult<Long>> handler) -> append(otherTempPath, 0, new byte[1], handler));
+        try {
+            await((Handler<AsyncResult<Void>> handler) -> quotaStorage.commitDocumentUpload(otherTempPath, other, null, handler));
+            fail();
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof QuotaExceededException);
+        }
+        assertFalse(Files.exists(other));
+        /* kept, the commit can be retried once space has been freed */
+        assertTrue(Files.exists(otherTempPath));
+        assertEquals(100, quotaStorage.getUsageAccounting().getBytes("alice"));
+    }
+
+    @Test
+    public void uploadsAreCommittedWithTheirReservation() throws Exception {
+        Path collection = Files.createDirectory(root.resolve("alice"));
+        Path document = collection.resolve("document.bin");
+        FileSystemStorage quotaStorage = FileSystemStorage.create(vertx, root, 0, 100);
+        quotaStorage.getUsageAccounting().reconcile(1);
+
+        UsageAccounting.Reservation reservation = quotaStorage.getUsageAccounting().reserve(document, 100);
+        Path tempPath = await(handler -> quotaStorage.putDocumentUpload(document, handler));
+        await((Handler<AsyncResult<Long>> handler) -> append(tempPath, 0, new byte[100], handler));
+        await((Handler<AsyncResult<Void>> handler) ->
+            quotaStorage.commitDocumentUpload(tempPath, document, reservation, handler));
+
+        assertEquals(100, quotaStorage.getUsageAccounting().getBytes("alice"));
+        assertFalse(quotaStorage.getUsageAccounting().allows(document, 1));
+        reservation.release();
+        assertFalse(quotaStorage.getUsageAccounting().allows(document, 1));
+    }
+
+    @Test
+    public void uploadsNeedAParentCollection() throws Exception {
+        try {
+            await((Handler<AsyncResult<Path>> handler) ->
+                storage.putDocumentUpload(root.resolve("missing/document.bin"), handler));
+            fail();
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof ConflictException);
+        }
+    }
+
+    /* content is read from a file, as an AsyncFile is a ReadStream too */
+    private void append(Path tempPath, long offset, byte[] chunk, Handler<AsyncResult<Long>> handler) {
+        try {
+            Path source = Files.write(Files.createTempFile(root, "chunk", ""), chunk);
+            vertx.runOnContext(v -> {
+                AsyncFile content = vertx.fileSystem().openBlocking(source.toString(), new OpenOptions().setRead(true));
+                content.pause();
+                storage.appendDocumentUpload(tempPath, offset, content, handler);
+            });
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+
+    private void write(Path tempPath, long position, byte[] chunk, Handler<AsyncResult<Long>> handler) {
+        try {
+            Path source = Files.write(Files.createTempFile(root, "chunk", ""), chunk);
+            vertx.runOnContext(v -> {
+                AsyncFile content = vertx.fileSystem().openBlocking(source.toString(), new OpenOptions().setRead(true));
+                content.pause();
+                storage.writeDocumentUpload(tempPath, position, content, buffer -> {}, handler);
+            });
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+
+    private static <T> T await(Consumer<Handler<AsyncResult<T>>> operation) throws Exception {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        operation.accept(done -> {
+            if (done.failed())
+                future.completeExceptionally(done.cause());
+            else
+                future.complete(done.result());
+        });
+        return future.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,100 @@
+package org.blackcat.trunk.storage.impl;
+
+import org.blackcat.trunk.resource.impl.CollectionResource;
+import org.blackcat.trunk.resource.impl.DocumentDescriptorResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ResourceCacheTest {
+
+    private Path root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("trunk-cache");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(java.io.File::delete);
+        }
+    }
+
+    @Test
+    public void cachedCollectionIsServedUntilInvalidated() {
+        ResourceCache cache = new ResourceCache(100);
+        CollectionResource collection = new CollectionResource();
+
+        cache.put(root, collection, cache.generation());
+        assertSame(collection, cache.get(root, CollectionResource.class));
+        assertNull(cache.get(root, DocumentDescriptorResource.class));
+
+        cache.invalidate(root.resolve("child"));
+        assertNull(cache.get(root, CollectionResource.class));
+        assertEquals(1L, cache.statistics().getLong("hits").longValue());
+    }
+
+    @Test
+    public void staleGenerationIsNotCached() {
+        ResourceCache cache = new ResourceCache(100);
+        long generation = cache.generation();
+
+        cache.invalidate(root);
+        cache.put(root, new CollectionResource(), generation);
+        assertNull(cache.get(root, CollectionResource.class));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() throws IOException {
+        ResourceCache cache = new ResourceCache(2);
+        Path first = Files.createDirectory(root.resolve("first"));
+        Path second = Files.createDirectory(root.resolve("second"));
+
+        cache.put(first, new CollectionResource(), cache.generation());
+        cache.put(second, new CollectionResource(), cache.generation());
+        cache.put(root, new CollectionResource(), cache.generation());
+
+        assertNull(cache.get(first, CollectionResource.class));
+        assertNotNull(cache.get(second, CollectionResource.class));
+        assertNotNull(cache.get(root, CollectionResource.class));
+        assertEquals(1L, cache.statistics().getLong("evictions").longValue());
+    }
+
+    @Test
+    public void grandparentListingIsInvalidatedToo() throws IOException {
+        ResourceCache cache = new ResourceCache(100);
+        Path parent = Files.createDirectory(root.resolve("parent"));
+        Path child = Files.createDirectory(parent.resolve("child"));
+
+        cache.put(root, new CollectionResource(), cache.generation());
+        cache.put(parent, new CollectionResource(), cache.generation());
+        cache.put(child, new CollectionResource(), cache.generation());
+
+        /* root lists parent along with its items count */
+        cache.invalidate(parent.resolve("document"));
+        assertNull(cache.get(root, CollectionResource.class));
+        assertNull(cache.get(parent, CollectionResource.class));
+        assertNotNull(cache.get(child, CollectionResource.class));
+    }
+
+    @Test
+    public void alternateLookupCountsOnce() {
+        ResourceCache cache = new ResourceCache(100);
+
+        assertNull(cache.get(root.resolve("document"), DocumentDescriptorResource.class,
+            root.resolve("document").resolve("meta"), CollectionResource.class));
+        assertEquals(1L, cache.statistics().getLong("misses").longValue());
+    }
+}
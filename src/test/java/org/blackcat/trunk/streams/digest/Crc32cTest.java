@@ -0,0 +1,37 @@
+package org.blackcat.trunk.streams.digest;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Crc32cTest {
+
+    @Test
+    public void checkValueIsMatched() {
+        Crc32c crc32c = new Crc32c();
+        crc32c.update("123456789".getBytes(StandardCharsets.US_ASCII), 0, 9);
+        assertEquals(0xE3069283L, crc32c.getValue());
+    }
+
+    @Test
+    public void bulkUpdatesMatchByteUpdates() {
+        byte[] content = new byte[1021];
+        new Random(42).nextBytes(content);
+
+        Crc32c bulk = new Crc32c();
+        bulk.update(content, 0, 500);
+        bulk.update(content, 500, content.length - 500);
+
+        Crc32c bytewise = new Crc32c();
+        for (byte b : content)
+            bytewise.update(b);
+
+        assertEquals(bytewise.getValue(), bulk.getValue());
+
+        bulk.reset();
+        assertEquals(0L, bulk.getValue());
+    }
+}
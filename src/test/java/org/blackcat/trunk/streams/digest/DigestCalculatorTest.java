@@ -0,0 +1,48 @@
+package org.blackcat.trunk.streams.digest;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import static org.junit.Assert.*;
+
+public class DigestCalculatorTest {
+
+    private static final byte[] content = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void declaredDigestsAreChecked() throws Exception {
+        DigestCalculator calculator = new DigestCalculator();
+        assertTrue(calculator.expect("SHA-256=" + encode("SHA-256") + ", unknown=xyz", encode("MD5")));
+        assertTrue(calculator.hasExpectations());
+
+        calculator.update(Buffer.buffer(content).slice(0, 10));
+        calculator.update(Buffer.buffer(content).slice(10, content.length));
+        assertTrue(calculator.matches());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), calculator.finish().getSha256());
+    }
+
+    @Test
+    public void mismatchesAreReported() throws Exception {
+        DigestCalculator calculator = new DigestCalculator();
+        assertTrue(calculator.expect(null, encode("MD5")));
+
+        calculator.update(Buffer.buffer(content).slice(1, content.length));
+        assertFalse(calculator.matches());
+    }
+
+    @Test
+    public void malformedDeclarationsAreRejected() {
+        assertFalse(new DigestCalculator().expect("sha-256", null));
+        assertFalse(new DigestCalculator().expect("sha-256=not base64!", null));
+        assertFalse(new DigestCalculator().expect("crc32c=AAAA", null));
+        assertTrue(new DigestCalculator().expect(null, null));
+    }
+
+    private static String encode(String algorithm) throws Exception {
+        return Base64.getEncoder().encodeToString(MessageDigest.getInstance(algorithm).digest(content));
+    }
+}
@@ -0,0 +1,56 @@
+package org.blackcat.trunk.streams.pump;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TransferRegistryTest {
+
+    private TransferRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new TransferRegistry();
+    }
+
+    @Test
+    public void transfersAreReportedWhileInFlight() {
+        Object file = new Object();
+        Object response = new Object();
+        registry.bind(response, "joe@example.com", "/protected/joe/a.txt", TransferRegistry.Direction.DOWNLOAD);
+
+        TransferRegistry.Transfer transfer = registry.open(file, response);
+        transfer.add(1000);
+        transfer.add(24);
+        assertEquals(2, transfer.getChunks());
+
+        JsonObject reported = registry.statistics().getJsonArray("transfers").getJsonObject(0);
+        assertEquals("joe@example.com", reported.getString("user"));
+        assertEquals("/protected/joe/a.txt", reported.getString("path"));
+        assertEquals("download", reported.getString("direction"));
+        assertEquals(1024L, reported.getLong("bytes").longValue());
+
+        transfer.close();
+        transfer.close();
+        JsonObject statistics = registry.statistics();
+        assertTrue(statistics.getJsonArray("transfers").isEmpty());
+        assertEquals(1L, statistics.getJsonObject("totals").getLong("completed").longValue());
+        assertEquals(1024L, statistics.getJsonObject("totals").getLong("downloadedBytes").longValue());
+    }
+
+    @Test
+    public void unboundTransfersAreInternal() {
+        Object request = new Object();
+        registry.bind(request, null, "/protected/joe/b.txt", TransferRegistry.Direction.UPLOAD);
+
+        registry.open(request, new Object()).add(10);
+        registry.open(new Object(), new Object()).add(5);
+
+        JsonObject totals = registry.statistics().getJsonObject("totals");
+        assertEquals(2L, totals.getLong("started").longValue());
+        assertEquals(10L, totals.getLong("uploadedBytes").longValue());
+        assertEquals(5L, totals.getLong("internalBytes").longValue());
+    }
+}
@@ -0,0 +1,119 @@
+package org.blackcat.trunk.streams.tar;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kamranzafar.jtar.TarEntry;
+import org.kamranzafar.jtar.TarOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class TarLayoutTest {
+
+    private Path root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("trunk-layout");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(java.io.File::delete);
+        }
+    }
+
+    @Test
+    public void layoutMatchesArchiveWrittenByJtar() throws IOException {
+        Path nested = Files.createDirectory(root.resolve("nested"));
+        List<Path> files = Arrays.asList(
+            Files.write(root.resolve("a"), new byte[512]),
+            Files.write(root.resolve("b"), new byte[0]),
+            Files.write(nested.resolve("c"), new byte[513]));
+
+        TarLayout layout = TarLayout.of(root, files.iterator());
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (TarOutputStream out = new TarOutputStream(archive)) {
+            for (Path file : files) {
+                out.putNextEntry(new TarEntry(file.toFile(), root.relativize(file).toString()));
+                out.write(Files.readAllBytes(file));
+            }
+        }
+        byte[] expected = archive.toByteArray();
+        assertEquals(expected.length, layout.getLength());
+
+        /* headers are the same and where expected */
+        for (TarLayout.Member member : layout.getMembers()) {
+            byte[] header = Arrays.copyOfRange(expected, (int) member.getOffset(), (int) member.getContentOffset());
+            assertArrayEquals(header, member.header());
+        }
+
+        assertEquals("nested/c", layout.getMembers().get(2).getName());
+        assertEquals(0, layout.getMembers().get(1).getOffset() - layout.getMembers().get(0).getEnd());
+    }
+
+    @Test
+    public void segmentsCoverRangesAcrossMembers() throws IOException {
+        TarLayout layout = TarLayout.of(root, Arrays.asList(
+            Files.write(root.resolve("a"), new byte[100]),
+            Files.write(root.resolve("b"), new byte[0])).iterator());
+        assertEquals(512 + 512 + 512 + 1024, layout.getLength());
+
+        /* from within the first contents to the start of the end of the archive */
+        List<TarLayout.Segment> segments = new ArrayList<>();
+        layout.segments(600, 1000).forEachRemaining(segments::add);
+
+        assertEquals(4, segments.size());
+        assertSegment(segments.get(0), TarLayout.Segment.Kind.CONTENT, "a", 88, 12);
+        assertSegment(segments.get(1), TarLayout.Segment.Kind.PADDING, "a", 0, 412);
+        assertSegment(segments.get(2), TarLayout.Segment.Kind.HEADER, "b", 0, 512);
+        assertSegment(segments.get(3), TarLayout.Segment.Kind.END, null, 0, 64);
+
+        long total = 0;
+        for (Iterator<TarLayout.Segment> iterator = layout.segments(0, Long.MAX_VALUE); iterator.hasNext(); )
+            total += iterator.next().getLength();
+        assertEquals(layout.getLength(), total);
+    }
+
+    @Test
+    public void versionTracksMembers() throws IOException {
+        Path a = Files.write(root.resolve("a"), new byte[100]);
+        String entityTag = TarLayout.of(root, Collections.singletonList(a).iterator()).getVersion().getEntityTag();
+        assertEquals(entityTag, TarLayout.of(root, Collections.singletonList(a).iterator()).getVersion().getEntityTag());
+
+        Files.write(a, new byte[101]);
+        assertNotEquals(entityTag, TarLayout.of(root, Collections.singletonList(a).iterator()).getVersion().getEntityTag());
+    }
+
+    private static void assertSegment(TarLayout.Segment segment, TarLayout.Segment.Kind kind,
+                                      String name, long offset, long length) {
+        assertEquals(kind, segment.getKind());
+        assertEquals(name, segment.getMember() == null ? null : segment.getMember().getName());
+        assertEquals(offset, segment.getOffset());
+        assertEquals(length, segment.getLength());
+    }
+
+    @Test
+    public void membersArePaddedToWholeBlocks() {
+        assertEquals(0, TarLayout.padding(0));
+        assertEquals(511, TarLayout.padding(1));
+        assertEquals(0, TarLayout.padding(1024));
+        assertEquals(1, TarLayout.padding(1535));
+    }
+}
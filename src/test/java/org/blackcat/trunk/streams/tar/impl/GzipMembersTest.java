@@ -0,0 +1,49 @@
+package org.blackcat.trunk.streams.tar.impl;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class GzipMembersTest {
+
+    @Test
+    public void concatenatedMembersAreOneGzipStream() throws IOException {
+        byte[] text = new byte[20000];
+        Arrays.fill(text, (byte) 'a');
+        byte[] noise = new byte[5000];
+        new Random(42).nextBytes(noise);
+
+        Buffer compressed = GzipMembers.of(Buffer.buffer(text), true, 6);
+        Buffer stored = GzipMembers.of(Buffer.buffer(noise), false, 6);
+        assertTrue(compressed.length() < text.length / 10);
+        assertTrue(stored.length() > noise.length);
+
+        byte[] expected = Buffer.buffer(text).appendBytes(noise).getBytes();
+        assertArrayEquals(expected, gunzip(compressed.copy().appendBuffer(stored).getBytes()));
+    }
+
+    @Test
+    public void sameChunkYieldsSameMember() {
+        Buffer chunk = Buffer.buffer("hello, hello, hello");
+        assertEquals(GzipMembers.of(chunk, true, 9), GzipMembers.of(chunk, true, 9));
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1)
+                out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+}
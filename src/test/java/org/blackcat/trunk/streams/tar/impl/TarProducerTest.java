@@ -0,0 +1,180 @@
+package org.blackcat.trunk.streams.tar.impl;
+
+import io.vertx.core.buffer.Buffer;
+import org.blackcat.trunk.streams.tar.TarLayout;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kamranzafar.jtar.TarEntry;
+import org.kamranzafar.jtar.TarInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class TarProducerTest {
+
+    private Path root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("trunk-tar");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(java.io.File::delete);
+        }
+    }
+
+    @Test
+    public void archiveCanBeReadBack() throws IOException {
+        byte[] large = new byte[3000];
+        new Random(42).nextBytes(large);
+
+        Path first = Files.write(root.resolve("large.bin"), large);
+        Path second = Files.write(root.resolve("empty"), new byte[0]);
+        Path third = Files.write(root.resolve("small.txt"), "hello".getBytes());
+
+        /* chunks smaller than files exercise entries spanning several chunks */
+        TarLayout layout = TarLayout.of(root, Arrays.asList(first, second, third).iterator());
+        byte[] archive = produce(new TarProducer(layout, 0, layout.getLength(), 1024));
+        assertEquals(512 + 3072 + 512 + 512 + 512 + 1024, archive.length);
+
+        TarInputStream in = new TarInputStream(new ByteArrayInputStream(archive));
+
+        TarEntry entry = in.getNextEntry();
+        assertEquals("large.bin", entry.getName());
+        assertArrayEquals(large, contents(in));
+
+        entry = in.getNextEntry();
+        assertEquals("empty", entry.getName());
+        assertEquals(0, entry.getSize());
+
+        entry = in.getNextEntry();
+        assertEquals("small.txt", entry.getName());
+        assertEquals("hello", new String(contents(in)));
+
+        assertNull(in.getNextEntry());
+    }
+
+    @Test
+    public void anyRangeMatchesTheWholeArchive() throws IOException {
+        byte[] large = new byte[1500];
+        new Random(7).nextBytes(large);
+
+        TarLayout layout = TarLayout.of(root, Arrays.asList(
+            Files.write(root.resolve("a"), large),
+            Files.write(root.resolve("b"), "hello".getBytes())).iterator());
+        byte[] archive = produce(new TarProducer(layout, 0, layout.getLength(), 4096));
+
+        long[][] ranges = { { 0, 100 }, { 500, 1000 }, { 511, 2 }, { 2000, 600 }, { archive.length - 10, 10 } };
+        for (long[] range : ranges) {
+            byte[] expected = Arrays.copyOfRange(archive, (int) range[0], (int) (range[0] + range[1]));
+            assertArrayEquals(expected, produce(new TarProducer(layout, range[0], range[1], 256)));
+        }
+    }
+
+    @Test
+    public void changedFilesKeepTheLayoutLength() throws IOException {
+        Path shrinking = Files.write(root.resolve("shrinking"), new byte[1000]);
+        Path vanishing = Files.write(root.resolve("vanishing"), new byte[10]);
+
+        TarLayout layout = TarLayout.of(root, Arrays.asList(shrinking, vanishing).iterator());
+        Files.write(shrinking, new byte[10]);
+        Files.delete(vanishing);
+
+        byte[] archive = produce(new TarProducer(layout, 0, layout.getLength(), 4096));
+        assertEquals(layout.getLength(), archive.length);
+    }
+
+    @Test
+    public void compressedContentsGetChunksOfTheirOwn() throws IOException {
+        TarLayout layout = TarLayout.of(root, Arrays.asList(
+            Files.write(root.resolve("a.txt"), new byte[100]),
+            Files.write(root.resolve("b.jpg"), new byte[100]),
+            Files.write(root.resolve("c.txt"), new byte[100])).iterator());
+
+        TarProducer producer = new TarProducer(layout, 0, layout.getLength(),
+            member -> member.getName().endsWith(".jpg"), AdaptiveChunkSize.fixed(65536), true);
+
+        /* a.txt (and the header of b.jpg), then b.jpg (and the header of c.txt), then the rest */
+        assertEquals(1536, check(producer.next(), true));
+        assertEquals(100 + 412 + 512, check(producer.next(), false));
+        assertEquals(100 + 412 + 1024, check(producer.next(), true));
+        assertNull(producer.next());
+    }
+
+    @Test
+    public void chunksFollowTheAdaptiveSize() throws IOException {
+        TarLayout layout = TarLayout.of(root, Collections.singletonList(
+            Files.write(root.resolve("a.txt"), new byte[200000])).iterator());
+
+        AdaptiveChunkSize chunkSize = new AdaptiveChunkSize(65536);
+        TarProducer producer = new TarProducer(layout, 0, layout.getLength(), chunkSize);
+
+        assertEquals(AdaptiveChunkSize.MIN_CHUNK_SIZE, check(producer.next(), true));
+        chunkSize.grow();
+        assertEquals(2 * AdaptiveChunkSize.MIN_CHUNK_SIZE, check(producer.next(), true));
+        for (int i = 0; i < 10; ++ i)
+            chunkSize.grow();
+        assertEquals(65536, check(producer.next(), true));
+        chunkSize.shrink();
+        assertEquals(32768, check(producer.next(), true));
+    }
+
+    @Test
+    public void adaptiveSizeStaysWithinBounds() {
+        AdaptiveChunkSize chunkSize = new AdaptiveChunkSize(20000);
+        assertEquals(8192, chunkSize.get());
+        chunkSize.shrink();
+        assertEquals(8192, chunkSize.get());
+        chunkSize.grow();
+        chunkSize.grow();
+        assertEquals(20000, chunkSize.get());
+
+        assertEquals(512, new AdaptiveChunkSize(512).get());
+        AdaptiveChunkSize fixed = AdaptiveChunkSize.fixed(4096);
+        fixed.grow();
+        assertEquals(4096, fixed.get());
+    }
+
+    /* pooled or not, chunks are released once consumed, as the stream does */
+    private static int check(Chunk chunk, boolean compressible) {
+        assertEquals(compressible, chunk.isCompressible());
+        int length = chunk.getData().length();
+        chunk.release();
+        return length;
+    }
+
+    private static byte[] produce(TarProducer producer) throws IOException {
+        Buffer archive = Buffer.buffer();
+        Chunk chunk;
+        while ((chunk = producer.next()) != null) {
+            archive.appendBuffer(chunk.getData());
+            chunk.release();
+        }
+        return archive.getBytes();
+    }
+
+    private static byte[] contents(TarInputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] data = new byte[700];
+        int count;
+        while ((count = in.read(data)) != -1)
+            out.write(data, 0, count);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,83 @@
+package org.blackcat.trunk.streams.tar.impl;
+
+import io.vertx.core.buffer.Buffer;
+import org.blackcat.trunk.streams.tar.TarLayout;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.*;
+
+public class ZipProducerTest {
+
+    private Path root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("trunk-zip");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(java.io.File::delete);
+        }
+    }
+
+    @Test
+    public void archiveCanBeReadBack() throws IOException {
+        byte[] text = new byte[100000];
+        Arrays.fill(text, (byte) 'z');
+        byte[] noise = new byte[3000];
+        new Random(42).nextBytes(noise);
+
+        Path nested = Files.createDirectory(root.resolve("nested"));
+        TarLayout layout = TarLayout.of(root, Arrays.asList(
+            Files.write(root.resolve("text.txt"), text),
+            Files.write(nested.resolve("photo.jpg"), noise)).iterator());
+
+        ZipProducer producer = new ZipProducer(layout,
+            member -> member.getName().endsWith(".jpg"), 6, AdaptiveChunkSize.fixed(1024));
+
+        Buffer archive = Buffer.buffer();
+        Chunk chunk;
+        while ((chunk = producer.next()) != null)
+            archive.appendBuffer(chunk.getData());
+        assertTrue(archive.length() < text.length / 10 + noise.length + 1024);
+
+        ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(archive.getBytes()));
+
+        ZipEntry entry = in.getNextEntry();
+        assertEquals("text.txt", entry.getName());
+        assertArrayEquals(text, contents(in));
+
+        entry = in.getNextEntry();
+        assertEquals("nested/photo.jpg", entry.getName());
+        assertArrayEquals(noise, contents(in));
+
+        assertNull(in.getNextEntry());
+    }
+
+    private static byte[] contents(ZipInputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] data = new byte[700];
+        int count;
+        while ((count = in.read(data)) != -1)
+            out.write(data, 0, count);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,92 @@
+package org.blackcat.trunk.streams.throttle;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class BandwidthLimiterTest {
+
+    private BandwidthLimiter limiter;
+    private Object request;
+    private Object response;
+
+    @Before
+    public void setUp() {
+        limiter = new BandwidthLimiter();
+        request = new Object();
+        response = new Object();
+    }
+
+    @Test
+    public void unboundOrUnlimitedStreamsAreNotThrottled() {
+        limiter.reconfigure(new BandwidthLimits(0, 0,
+            Collections.singletonMap("GET /protected", 1024L), Collections.emptyMap()));
+        assertNull(limiter.open(request, response));
+
+        limiter.bind(response, "joe@example.com", "GET /shared");
+        assertFalse(limiter.isLimited(response));
+        assertNull(limiter.open(request, response));
+
+        limiter.bind(response, "joe@example.com", "GET /protected");
+        assertTrue(limiter.isLimited(response));
+        assertNotNull(limiter.open(request, response));
+    }
+
+    @Test
+    public void activeTransfersShareLimitsByWeight() {
+        limiter.reconfigure(new BandwidthLimits(400000, 0,
+            Collections.emptyMap(), Collections.singletonMap("joe@example.com", 3)));
+
+        Object other = new Object();
+        limiter.bind(response, "joe@example.com", "GET /protected");
+        limiter.bind(other, "jane@example.com", "GET /protected");
+
+        BandwidthLimiter.Transfer joe = limiter.open(request, response);
+        BandwidthLimiter.Transfer jane = limiter.open(request, other);
+
+        joe.consume(0);
+        assertEquals(400000, joe.getRate());
+
+        jane.consume(0);
+        assertEquals(300000, joe.getRate());
+        assertEquals(100000, jane.getRate());
+
+        /* closed transfers give their share back */
+        jane.close();
+        assertEquals(400000, joe.getRate());
+    }
+
+    @Test
+    public void tightestLimitWins() {
+        limiter.reconfigure(BandwidthLimits.fromJson(new JsonObject()
+                                                         .put("globalLimit", 1000000)
+                                                         .put("userLimit", 200000)));
+
+        Object other = new Object();
+        limiter.bind(response, "joe@example.com", "GET /protected");
+        limiter.bind(other, "joe@example.com", "GET /protected");
+
+        BandwidthLimiter.Transfer first = limiter.open(request, response);
+        BandwidthLimiter.Transfer second = limiter.open(request, other);
+        first.consume(0);
+        second.consume(0);
+
+        assertEquals(100000, first.getRate());
+        assertEquals(100000, second.getRate());
+
+        /* live reconfiguration applies to active transfers */
+        limiter.reconfigure(new BandwidthLimits(100000, 0, Collections.emptyMap(), Collections.emptyMap()));
+        assertEquals(50000, first.getRate());
+        assertEquals(2, limiter.statistics().getInteger("activeTransfers").intValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveWeightsAreRejected() {
+        BandwidthLimits.fromJson(new JsonObject()
+                                     .put("userWeights", new JsonObject().put("joe@example.com", 0)));
+    }
+}
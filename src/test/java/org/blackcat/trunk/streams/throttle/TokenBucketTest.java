@@ -0,0 +1,39 @@
+package org.blackcat.trunk.streams.throttle;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void unlimitedBucketNeverDelays() {
+        TokenBucket bucket = new TokenBucket(0, 0);
+        assertEquals(0, bucket.take(Long.MAX_VALUE / 2, 0));
+    }
+
+    @Test
+    public void debtIsPaidAtTheConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(1048576, 0);
+
+        /* the burst (a quarter of a second) goes through, the rest has to wait */
+        assertEquals(0, bucket.take(262144, 0));
+        assertEquals(500, bucket.take(524288, 0));
+
+        /* half a second later the debt has been paid */
+        assertEquals(0, bucket.take(1, SECOND / 2 + SECOND / 100));
+    }
+
+    @Test
+    public void rateChangesApplyToOutstandingDebt() {
+        TokenBucket bucket = new TokenBucket(1048576, 0);
+        bucket.take(262144 + 1048576, 0);
+
+        bucket.setRate(2097152, 0);
+        assertEquals(500, bucket.take(0, 0));
+    }
+}
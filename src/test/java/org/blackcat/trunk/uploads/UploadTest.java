@@ -0,0 +1,89 @@
+package org.blackcat.trunk.uploads;
+
+import org.junit.Test;
+
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+public class UploadTest {
+
+    private static Upload parallelUpload() {
+        /* 9 chunks of 100 bytes, the last one 50 bytes long */
+        return new Upload("owner", Paths.get("/root/document"), Paths.get("/root/.document.tmp"), 850, 100);
+    }
+
+    @Test
+    public void chunksAreLaidOutByIndex() {
+        Upload upload = parallelUpload();
+        assertTrue(upload.isParallel());
+        assertEquals(9, upload.getChunkCount());
+        assertEquals(800, upload.getChunkPosition(8));
+        assertEquals(50, upload.getChunkLength(8));
+        assertEquals("0-8", upload.getMissingChunks());
+    }
+
+    @Test
+    public void chunksAreReceivedOutOfOrder() {
+        Upload upload = parallelUpload();
+        for (int index : new int[] { 8, 2, 3, 5 }) {
+            assertTrue(upload.acquireChunk(index));
+            assertFalse(upload.releaseChunk(index, true));
+        }
+        assertEquals("0-1,4,6-7", upload.getMissingChunks());
+        assertEquals(0, upload.getOffset());
+
+        /* verified chunks are never written over */
+        assertFalse(upload.acquireChunk(2));
+        assertEquals("0-1,4,6-7", upload.getMissingChunks());
+
+        assertTrue(upload.acquireChunk(0));
+        assertFalse(upload.acquireChunk(0));
+        assertFalse(upload.acquire());
+        assertFalse(upload.releaseChunk(0, false));
+        assertEquals("0-1,4,6-7", upload.getMissingChunks());
+
+        for (int index : new int[] { 1, 0, 4, 6 }) {
+            assertTrue(upload.acquireChunk(index));
+            assertFalse(upload.releaseChunk(index, true));
+        }
+        assertEquals(700, upload.getOffset());
+
+        /* the last chunk leaves the upload busy, to be committed */
+        assertTrue(upload.acquireChunk(7));
+        assertTrue(upload.releaseChunk(7, true));
+        assertTrue(upload.isComplete());
+        assertEquals(850, upload.getOffset());
+        assertFalse(upload.acquireChunk(7));
+
+        /* a failed commit is retried as a whole, never by sending a chunk again */
+        upload.release();
+        assertFalse(upload.acquireChunk(7));
+        assertTrue(upload.acquire());
+    }
+
+    @Test
+    public void receivedChunksArePersisted() {
+        Upload upload = parallelUpload();
+        for (int index : new int[] { 0, 4, 5, 8 }) {
+            upload.acquireChunk(index);
+            upload.releaseChunk(index, true);
+        }
+
+        Upload restored = Upload.fromJson(upload.toJson());
+        assertEquals(upload.getId(), restored.getId());
+        assertEquals(100, restored.getChunkSize());
+        assertEquals("1-3,6-7", restored.getMissingChunks());
+        assertEquals(100, restored.getOffset());
+    }
+
+    @Test
+    public void sequentialUploadsHaveNoChunks() {
+        Upload upload = new Upload("owner", Paths.get("/root/document"), Paths.get("/root/.document.tmp"), 850);
+        assertFalse(upload.isParallel());
+        assertFalse(upload.toJson().containsKey("received"));
+
+        upload.setOffset(850);
+        assertTrue(upload.isComplete());
+    }
+}
@@ -0,0 +1,99 @@
+package org.blackcat.trunk.uploads.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Vertx;
+import org.blackcat.trunk.uploads.Upload;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class UploadRegistryImplTest {
+
+    private Vertx vertx;
+    private Path root;
+
+    @Before
+    public void setUp() throws IOException {
+        vertx = Vertx.vertx();
+        root = Files.createTempDirectory("trunk-uploads");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        vertx.close();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(java.io.File::delete);
+        }
+    }
+
+    @Test
+    public void uploadsSurviveRestartsWithTheirOffsets() throws Exception {
+        Path tempPath = Files.write(root.resolve(".a.txt.tmp"), new byte[1000]);
+        Upload upload = new Upload("joe@example.com", root.resolve("a.txt"), tempPath, 4096);
+
+        UploadRegistryImpl registry = new UploadRegistryImpl(vertx, root.resolve(".uploads"));
+        await(handler -> registry.register(upload, handler));
+        assertSame(upload, registry.get(upload.getId()));
+
+        UploadRegistryImpl restarted = new UploadRegistryImpl(vertx, root.resolve(".uploads"));
+        await(restarted::load);
+
+        Upload loaded = restarted.get(upload.getId());
+        assertEquals("joe@example.com", loaded.getOwner());
+        assertEquals(root.resolve("a.txt"), loaded.getPath());
+        assertEquals(4096, loaded.getLength());
+        assertEquals(1000, loaded.getOffset());
+    }
+
+    @Test
+    public void uploadsWithoutTemporaryFileAreDropped() throws Exception {
+        Upload upload = new Upload("joe@example.com", root.resolve("b.txt"), root.resolve(".b.txt.tmp"), 10);
+
+        UploadRegistryImpl registry = new UploadRegistryImpl(vertx, root.resolve(".uploads"));
+        await(handler -> registry.register(upload, handler));
+
+        UploadRegistryImpl restarted = new UploadRegistryImpl(vertx, root.resolve(".uploads"));
+        await(restarted::load);
+        assertNull(restarted.get(upload.getId()));
+    }
+
+    @Test
+    public void staleUploadsExpire() throws Exception {
+        Path tempPath = Files.write(root.resolve(".c.txt.tmp"), new byte[10]);
+        Upload upload = new Upload("joe@example.com", root.resolve("c.txt"), tempPath, 100);
+
+        UploadRegistryImpl registry = new UploadRegistryImpl(vertx, root.resolve(".uploads"));
+        await(handler -> registry.register(upload, handler));
+
+        registry.expire(TimeUnit.DAYS.toMillis(1));
+        assertNotNull(registry.get(upload.getId()));
+
+        Thread.sleep(5);
+        registry.expire(1);
+        assertNull(registry.get(upload.getId()));
+    }
+
+    private static void await(java.util.function.Consumer<io.vertx.core.Handler<AsyncResult<Void>>> operation)
+        throws Exception {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        operation.accept(done -> {
+            if (done.failed())
+                future.completeExceptionally(done.cause());
+            else
+                future.complete(null);
+        });
+        future.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,53 @@
+package org.blackcat.trunk.util;
+
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class PathTrieTest {
+
+    @Test
+    public void nearestAncestorValueIsFound() {
+        PathTrie<String> trie = new PathTrie<>();
+        trie.put(Paths.get("uuid/a"), "a");
+        trie.put(Paths.get("uuid/a/b/c"), "c");
+
+        assertEquals("a", trie.getNearest(Paths.get("uuid/a")));
+        assertEquals("a", trie.getNearest(Paths.get("uuid/a/b")));
+        assertEquals("c", trie.getNearest(Paths.get("uuid/a/b/c/d/e")));
+        assertNull(trie.getNearest(Paths.get("uuid/ab")));
+        assertNull(trie.get(Paths.get("uuid/a/b")));
+        assertEquals(2, trie.size());
+    }
+
+    @Test
+    public void descendantsAreCollected() {
+        PathTrie<String> trie = new PathTrie<>();
+        trie.put(Paths.get("uuid/a"), "a");
+        trie.put(Paths.get("uuid/a/b"), "b");
+        trie.put(Paths.get("uuid/a/b/c"), "c");
+        trie.put(Paths.get("uuid/ab"), "ab");
+
+        assertEquals(new HashSet<>(Arrays.asList(Paths.get("uuid/a/b"), Paths.get("uuid/a/b/c"))),
+            new HashSet<>(trie.descendants(Paths.get("uuid/a"))));
+        assertEquals(Collections.emptyList(), trie.descendants(Paths.get("uuid/x")));
+    }
+
+    @Test
+    public void removalPrunesEmptyBranches() {
+        PathTrie<String> trie = new PathTrie<>();
+        trie.put(Paths.get("uuid/a/b/c"), "c");
+        trie.put(Paths.get("uuid/a"), "a");
+
+        assertEquals("c", trie.remove(Paths.get("uuid/a/b/c")));
+        assertNull(trie.remove(Paths.get("uuid/a/b/c")));
+        assertEquals("a", trie.getNearest(Paths.get("uuid/a/b/c")));
+        assertTrue(trie.descendants(Paths.get("uuid/a")).isEmpty());
+        assertEquals(1, trie.size());
+    }
+}
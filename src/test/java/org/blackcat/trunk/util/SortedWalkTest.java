@@ -0,0 +1,100 @@
+package org.blackcat.trunk.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class SortedWalkTest {
+
+    private Path root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("trunk-walk");
+
+        Path b = Files.createDirectory(root.resolve("b"));
+        Files.write(b.resolve("y"), new byte[0]);
+        Files.write(b.resolve("x"), new byte[0]);
+        Files.write(root.resolve("c"), new byte[0]);
+        Path a = Files.createDirectory(root.resolve("a"));
+        Files.createDirectory(a.resolve("nested"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(java.io.File::delete);
+        }
+    }
+
+    @Test
+    public void visitsAncestorsFirstAndSiblingsInNameOrder() throws IOException {
+        assertEquals(Arrays.asList("", "a", "a/nested", "b", "b/x", "b/y", "c"),
+            names(walkAll(new SortedWalk(root, null), 2)));
+    }
+
+    @Test
+    public void resumesAfterCheckpoint() throws IOException {
+        assertEquals(Arrays.asList("b/y", "c"),
+            names(walkAll(new SortedWalk(root, root.resolve("b/x")), 10)));
+
+        assertEquals(Arrays.asList("b", "b/x", "b/y", "c"),
+            names(walkAll(new SortedWalk(root, root.resolve("a/nested")), 10)));
+    }
+
+    @Test
+    public void batchesAreFullUntilTheWalkIsOver() throws IOException {
+        SortedWalk walk = new SortedWalk(root, null);
+        assertEquals(3, walk.next(3).size());
+        assertEquals(3, walk.next(3).size());
+        assertEquals(1, walk.next(3).size());
+        assertTrue(walk.next(3).isEmpty());
+    }
+
+    @Test
+    public void hiddenEntriesAreSkipped() throws IOException {
+        Files.write(root.resolve("b").resolve(".x.0f6c1d0e"), new byte[10]);
+        Files.write(Files.createDirectory(root.resolve(".uploads")).resolve("u"), new byte[0]);
+
+        assertEquals(Arrays.asList("", "a", "a/nested", "b", "b/x", "b/y", "c"),
+            names(walkAll(new SortedWalk(root, null), 2)));
+    }
+
+    @Test
+    public void comparesComponentWise() {
+        assertTrue(SortedWalk.compare(Paths.get("/a"), Paths.get("/a/b")) < 0);
+        assertTrue(SortedWalk.compare(Paths.get("/a/z"), Paths.get("/a-b")) < 0);
+        assertEquals(0, SortedWalk.compare(Paths.get("/a/b"), Paths.get("/a/b")));
+    }
+
+    private static List<Path> walkAll(SortedWalk walk, int batchSize) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        List<Path> batch;
+        do {
+            batch = walk.next(batchSize);
+            paths.addAll(batch);
+        } while (batch.size() == batchSize);
+        return paths;
+    }
+
+    private List<String> names(List<Path> paths) {
+        return paths.stream()
+                   .map(path -> root.relativize(path).toString())
+                   .collect(Collectors.toList());
+    }
+}
@@ -37,6 +37,14 @@ public class UtilsTest {
     assertEquals("http%3A%2F%2Flocalhost%3A8080%2F", encoded);
   }
 
+  @Test
+  public void httpDate() {
+    assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", Utils.httpDate(784111777000L));
+    assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", Utils.httpDate(0L));
+    assertEquals(Long.valueOf(784111777000L), Utils.parseHttpDate("Sun, 06 Nov 1994 08:49:37 GMT"));
+    assertNull(Utils.parseHttpDate("yesterday"));
+  }
+
   @Test
   public void makeTempFileName() {
     String tmp1 = Utils.makeTempFileName("abc");